@@ -0,0 +1,369 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp;
+
+import net.nicoulaj.benchmark.mockwebapp.config.Mapping;
+import net.nicoulaj.benchmark.mockwebapp.config.MockWebAppConfig;
+import net.nicoulaj.benchmark.mockwebapp.replay.JsonReader;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link HttpServlet} that updates the mappings of the running {@link MockWebAppServlet}, one mapping at a time.
+ * <p/>
+ * <ul>
+ * <li>{@code GET} lists the mappings, one {@code index id} pair per line.</li>
+ * <li>{@code PUT /{id}} or {@code POST /{id}} adds the mapping in the request body, or replaces the mapping with the
+ * same id. The optional {@code index} parameter sets the position of a new mapping, by default it is added last.</li>
+ * <li>{@code DELETE /{id}} removes a mapping.</li>
+ * </ul>
+ * The mapping is either a {@code <mapping>} XML fragment, or a JSON object if the content type is JSON, eg:
+ * <pre>
+ * {"when": [{"path": "/a"}], "then": [{"delay": 100}, {"body": {"content-type": "text/plain", "value": "A"}}]}
+ * </pre>
+ * Each statement is an object with a single member named after the XML element. Its value is either the element
+ * text, or an object holding the element attributes, and its text as {@code value}.
+ * <p/>
+ * Changes are applied to a copy of the config, where only the changed mapping is compiled, which is then published
+ * atomically: requests in flight keep using the previous config. Changes survive reloads of the config file: they are
+ * applied again on top of it, and take precedence over the mappings of the file with the same id.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class MappingsServlet extends HttpServlet {
+
+    /**
+     * The maximum size of a mapping in a request body, in characters.
+     */
+    public static final int MAX_MAPPING_SIZE = 1024 * 1024;
+
+    /**
+     * Handle a GET request.
+     * <p/>
+     * Lists the mappings of the config in use as plain text.
+     *
+     * @param req  the client request.
+     * @param resp the servlet response.
+     * @throws IOException      if an input or output error occured while handling the request.
+     * @throws ServletException if the request could not be handled.
+     */
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        final MockWebAppServlet servlet = getMockWebAppServlet(resp);
+        if (servlet == null) return;
+        final MockWebAppConfig config = servlet.getMockWebAppConfig();
+        resp.setContentType("text/plain");
+        resp.setCharacterEncoding("UTF-8");
+        final PrintWriter writer = resp.getWriter();
+        if (config != null)
+            for (int i = 0; i < config.mappings.size(); i++) writer.println(i + " " + config.mappings.get(i).id);
+        writer.flush();
+    }
+
+    /**
+     * Handle a PUT request.
+     * <p/>
+     * Adds or replaces the mapping in the request body.
+     *
+     * @param req  the client request.
+     * @param resp the servlet response.
+     * @throws IOException      if an input or output error occured while handling the request.
+     * @throws ServletException if the request could not be handled.
+     */
+    @Override
+    protected void doPut(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        final MockWebAppServlet servlet = getMockWebAppServlet(resp);
+        final String id = getMappingId(req, resp);
+        if (servlet == null || id == null) return;
+
+        // Read and parse the mapping.
+        final String content = readContent(req);
+        if (content == null) {
+            sendError(resp, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "The mapping is too large");
+            return;
+        }
+        final Mapping mapping;
+        try {
+            final String contentType = req.getContentType();
+            mapping = MockWebAppConfig.Parser.parseMapping(contentType != null && contentType.contains("json") ? toXml(content) : content);
+        } catch (Exception e) {
+            sendError(resp, HttpServletResponse.SC_BAD_REQUEST, describe(e));
+            return;
+        }
+        mapping.id = id;
+        int index = -1;
+        if (req.getParameter("index") != null) {
+            try {
+                index = Integer.parseInt(req.getParameter("index"));
+            } catch (NumberFormatException e) {
+                sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "The index must be an integer");
+                return;
+            }
+        }
+
+        // Publish a copy of the config with the mapping.
+        boolean created;
+        while (true) {
+            final MockWebAppConfig config = servlet.getMockWebAppConfig();
+            if (config == null) {
+                sendError(resp, HttpServletResponse.SC_CONFLICT, "No config is loaded");
+                return;
+            }
+            created = config.indexOfMapping(id) < 0;
+            final MockWebAppConfig newConfig;
+            try {
+                newConfig = config.withMapping(mapping, index);
+            } catch (RuntimeException e) {
+                sendError(resp, HttpServletResponse.SC_BAD_REQUEST, describe(e));
+                return;
+            }
+            if (servlet.replaceMockWebAppConfig(config, newConfig)) {
+                servlet.logWarmupFailures(newConfig);
+                break;
+            }
+        }
+        resp.setStatus(created ? HttpServletResponse.SC_CREATED : HttpServletResponse.SC_OK);
+    }
+
+    /**
+     * Handle a POST request, like a PUT request.
+     *
+     * @param req  the client request.
+     * @param resp the servlet response.
+     * @throws IOException      if an input or output error occured while handling the request.
+     * @throws ServletException if the request could not be handled.
+     * @see #doPut(HttpServletRequest, HttpServletResponse)
+     */
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        doPut(req, resp);
+    }
+
+    /**
+     * Handle a DELETE request.
+     * <p/>
+     * Removes the mapping with the id in the request path.
+     *
+     * @param req  the client request.
+     * @param resp the servlet response.
+     * @throws IOException      if an input or output error occured while handling the request.
+     * @throws ServletException if the request could not be handled.
+     */
+    @Override
+    protected void doDelete(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        final MockWebAppServlet servlet = getMockWebAppServlet(resp);
+        final String id = getMappingId(req, resp);
+        if (servlet == null || id == null) return;
+        while (true) {
+            final MockWebAppConfig config = servlet.getMockWebAppConfig();
+            if (config == null || config.indexOfMapping(id) < 0) {
+                sendError(resp, HttpServletResponse.SC_NOT_FOUND, "No such mapping");
+                return;
+            }
+            final MockWebAppConfig newConfig = config.withoutMapping(id);
+            if (newConfig == null) {
+                sendError(resp, HttpServletResponse.SC_CONFLICT, "The last mapping cannot be removed");
+                return;
+            }
+            if (servlet.replaceMockWebAppConfig(config, newConfig)) break;
+        }
+        resp.setStatus(HttpServletResponse.SC_NO_CONTENT);
+    }
+
+    /**
+     * Get the {@link MockWebAppServlet} of this web application, or send an error if it is not started.
+     *
+     * @param resp the servlet response.
+     * @return the servlet, or null if not started.
+     * @throws IOException if the error could not be sent.
+     */
+    protected MockWebAppServlet getMockWebAppServlet(HttpServletResponse resp) throws IOException {
+        final MockWebAppServlet servlet = (MockWebAppServlet) getServletContext().getAttribute(MockWebAppServlet.CONTEXT_ATTRIBUTE);
+        if (servlet == null) sendError(resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "The mock web app is not started");
+        return servlet;
+    }
+
+    /**
+     * Get the mapping id from the request path, or send an error if there is none.
+     *
+     * @param req  the client request.
+     * @param resp the servlet response.
+     * @return the mapping id, or null if the path has none.
+     * @throws IOException if the error could not be sent.
+     */
+    protected static String getMappingId(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        final String pathInfo = req.getPathInfo();
+        final String id = pathInfo == null ? "" : pathInfo.startsWith("/") ? pathInfo.substring(1) : pathInfo;
+        if (id.length() == 0 || id.indexOf('/') >= 0) {
+            sendError(resp, HttpServletResponse.SC_BAD_REQUEST, "The request path must be a mapping id");
+            return null;
+        }
+        return id;
+    }
+
+    /**
+     * Read the request body.
+     *
+     * @param req the client request.
+     * @return the request body, or null if longer than {@link #MAX_MAPPING_SIZE}.
+     * @throws IOException if the request body could not be read.
+     */
+    protected static String readContent(HttpServletRequest req) throws IOException {
+        if (req.getCharacterEncoding() == null) req.setCharacterEncoding("UTF-8");
+        final Reader reader = req.getReader();
+        final StringBuilder content = new StringBuilder();
+        final char[] buffer = new char[4096];
+        for (int read; (read = reader.read(buffer)) >= 0; ) {
+            content.append(buffer, 0, read);
+            if (content.length() > MAX_MAPPING_SIZE) return null;
+        }
+        return content.toString();
+    }
+
+    /**
+     * Send an error status with a plain text message.
+     *
+     * @param resp    the servlet response.
+     * @param status  the error status.
+     * @param message the error message.
+     * @throws IOException if the error could not be sent.
+     */
+    protected static void sendError(HttpServletResponse resp, int status, String message) throws IOException {
+        resp.setStatus(status);
+        resp.setContentType("text/plain");
+        resp.setCharacterEncoding("UTF-8");
+        final PrintWriter writer = resp.getWriter();
+        writer.println(message);
+        writer.flush();
+    }
+
+    /**
+     * Describe a parsing or validation error, with its root cause.
+     *
+     * @param t the error.
+     * @return the error description.
+     */
+    protected static String describe(Throwable t) {
+        final StringBuilder description = new StringBuilder(String.valueOf(t.getMessage()));
+        for (Throwable cause = t.getCause(); cause != null; cause = cause.getCause())
+            if (cause.getMessage() != null) description.append(": ").append(cause.getMessage());
+        return description.toString();
+    }
+
+    /**
+     * Convert a JSON mapping to a {@code <mapping>} XML fragment.
+     *
+     * @param json the JSON mapping.
+     * @return the XML fragment.
+     * @throws IOException if the JSON mapping is malformed.
+     */
+    @SuppressWarnings("unchecked")
+    protected static String toXml(String json) throws IOException {
+        final Object value = new JsonReader(new StringReader(json)).readValue();
+        if (!(value instanceof Map)) throw new IOException("The mapping must be a JSON object");
+        final StringBuilder xml = new StringBuilder("<mapping>");
+        for (Map.Entry<String, Object> block : ((Map<String, Object>) value).entrySet()) {
+            if (!"when".equals(block.getKey()) && !"then".equals(block.getKey())) continue;
+            if (!(block.getValue() instanceof List)) throw new IOException("\"" + block.getKey() + "\" must be an array");
+            xml.append('<').append(block.getKey()).append('>');
+            for (Object statement : (List<Object>) block.getValue()) {
+                if (!(statement instanceof Map) || ((Map<String, Object>) statement).size() != 1)
+                    throw new IOException("Each statement must be an object with a single member");
+                final Map.Entry<String, Object> element = ((Map<String, Object>) statement).entrySet().iterator().next();
+                appendElement(xml, element.getKey(), element.getValue());
+            }
+            xml.append("</").append(block.getKey()).append('>');
+        }
+        return xml.append("</mapping>").toString();
+    }
+
+    /**
+     * Append a JSON statement as an XML element.
+     *
+     * @param xml   the XML to append to.
+     * @param name  the element name.
+     * @param value the element text, or an object holding its attributes and its text as {@code value}.
+     * @throws IOException if the statement cannot be converted.
+     */
+    @SuppressWarnings("unchecked")
+    protected static void appendElement(StringBuilder xml, String name, Object value) throws IOException {
+        if (!name.matches("[a-zA-Z][a-zA-Z0-9-]*")) throw new IOException("Invalid statement name: " + name);
+        xml.append('<').append(name);
+        Object text = value;
+        if (value instanceof Map) {
+            text = null;
+            for (Map.Entry<String, Object> attribute : ((Map<String, Object>) value).entrySet()) {
+                if ("value".equals(attribute.getKey())) {
+                    text = attribute.getValue();
+                    continue;
+                }
+                if (!attribute.getKey().matches("[a-zA-Z][a-zA-Z0-9-]*"))
+                    throw new IOException("Invalid attribute name: " + attribute.getKey());
+                xml.append(' ').append(attribute.getKey()).append("=\"");
+                appendText(xml, attribute.getValue());
+                xml.append('"');
+            }
+        }
+        xml.append('>');
+        appendText(xml, text);
+        xml.append("</").append(name).append('>');
+    }
+
+    /**
+     * Append a JSON scalar as escaped XML text.
+     *
+     * @param xml   the XML to append to.
+     * @param value the scalar, can be null.
+     * @throws IOException if the value is not a scalar.
+     */
+    protected static void appendText(StringBuilder xml, Object value) throws IOException {
+        if (value == null) return;
+        if (value instanceof Map || value instanceof List) throw new IOException("Nested objects and arrays are not supported");
+        final String text;
+        if (value instanceof Double && (Double) value == Math.rint((Double) value) && !Double.isInfinite((Double) value))
+            text = Long.toString(((Double) value).longValue());
+        else text = value.toString();
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    xml.append("&lt;");
+                    break;
+                case '>':
+                    xml.append("&gt;");
+                    break;
+                case '&':
+                    xml.append("&amp;");
+                    break;
+                case '"':
+                    xml.append("&quot;");
+                    break;
+                default:
+                    xml.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp;
+
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Metrics;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+
+/**
+ * {@link HttpServlet} that reports the {@link Metrics} counters, one {@code name value} pair per line.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class MetricsServlet extends HttpServlet {
+
+    /**
+     * Handle a GET request.
+     * <p/>
+     * Writes a snapshot of the {@link Metrics} counters as plain text.
+     *
+     * @param req  the client request.
+     * @param resp the servlet response.
+     * @throws IOException      if an input or output error occured while handling the request.
+     * @throws ServletException if the request could not be handled.
+     */
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        resp.setContentType("text/plain");
+        resp.setCharacterEncoding("UTF-8");
+        final PrintWriter writer = resp.getWriter();
+        for (Map.Entry<String, Long> entry : Metrics.snapshot().entrySet()) writer.println(entry.getKey() + ' ' + entry.getValue());
+        writer.flush();
+    }
+}
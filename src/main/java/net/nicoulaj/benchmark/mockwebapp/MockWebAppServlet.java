@@ -16,6 +16,7 @@
 package net.nicoulaj.benchmark.mockwebapp;
 
 import net.nicoulaj.benchmark.mockwebapp.config.MockWebAppConfig;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Schedule;
 import org.apache.commons.vfs.FileChangeEvent;
 import org.apache.commons.vfs.FileListener;
 import org.apache.commons.vfs.VFS;
@@ -28,6 +29,9 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * {@link HttpServlet} that defers requests handling to a {@link MockWebAppConfig}.
@@ -42,13 +46,33 @@ public class MockWebAppServlet extends HttpServlet {
      */
     public static final String MOCK_WEB_APP_CONF_PROPERTY = "mock-web-app-conf";
 
+    /**
+     * The methods dispatched by {@link HttpServlet} to a {@code doXXX} method.
+     */
+    protected static final Set<String> SERVLET_METHODS = new HashSet<String>(Arrays.asList("GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "TRACE"));
+
+    /**
+     * The name of the servlet context attribute referencing the {@link MockWebAppServlet}.
+     *
+     * @see MappingsServlet
+     */
+    public static final String CONTEXT_ATTRIBUTE = MockWebAppServlet.class.getName();
+
     /**
      * The {@link MockWebAppConfig} currently in use.
+     * <p/>
+     * Compiled configs are never modified once published: changes are applied to a copy, then published by replacing
+     * this reference.
+     */
+    protected volatile MockWebAppConfig mockWebAppConfig;
+
+    /**
+     * The configuration file or directory.
      */
-    protected MockWebAppConfig mockWebAppConfig;
+    protected File configFile;
 
     /**
-     * The file monitor used to detect changes in the configuration file.
+     * The file monitor used to detect changes in the configuration files.
      */
     protected DefaultFileMonitor fileMonitor;
 
@@ -56,7 +80,7 @@ public class MockWebAppServlet extends HttpServlet {
      * Initialize the servlet.
      * <p/>
      * Loads the {@link #mockWebAppConfig} by looking up the {@link #MOCK_WEB_APP_CONF_PROPERTY} as a system property or init parameter,
-     * and sets up a listener on the file changes.
+     * and sets up a listener on the file changes. The config can be a file or a directory of files.
      *
      * @param config the {@link ServletConfig}, optionally with a {@link #MOCK_WEB_APP_CONF_PROPERTY} parameter.
      * @throws ServletException if the {@link #MOCK_WEB_APP_CONF_PROPERTY} was neither defined as a system property nor an init parameter.
@@ -64,6 +88,7 @@ public class MockWebAppServlet extends HttpServlet {
     @Override
     public void init(ServletConfig config) throws ServletException {
         super.init(config);
+        getServletContext().setAttribute(CONTEXT_ATTRIBUTE, this);
 
         // Locate the config file parameter.
         String configFilePath = System.getProperty(MOCK_WEB_APP_CONF_PROPERTY);
@@ -71,8 +96,10 @@ public class MockWebAppServlet extends HttpServlet {
         if (configFilePath == null) throw new ServletException("No mock web app config file defined. Please define one using the '" + MOCK_WEB_APP_CONF_PROPERTY + "' system property or servlet init parameter.");
 
         // Setup the config file changes listener.
+        configFile = new File(configFilePath);
         try {
             fileMonitor = new DefaultFileMonitor(new ConfigFileListener());
+            fileMonitor.setRecursive(true);
             fileMonitor.addFile(VFS.getManager().resolveFile(new File("."), configFilePath));
             fileMonitor.start();
         } catch (Exception e) {
@@ -80,26 +107,106 @@ public class MockWebAppServlet extends HttpServlet {
         }
 
         // Load the config from the file.
-        final File configFile = new File(configFilePath);
         try {
             mockWebAppConfig = MockWebAppConfig.Parser.parseConfig(configFile);
-            getServletContext().log("Loaded config file " + configFilePath);
+            monitorFiles(mockWebAppConfig);
+            getServletContext().log("Loaded config file " + configFilePath + describeWarmup(mockWebAppConfig));
+            logWarmupFailures(mockWebAppConfig);
         } catch (Exception e) {
             getServletContext().log("Failed loading config, please replace it with a valid one", e);
         }
     }
 
+    /**
+     * Add the files a config was parsed from to the {@link #fileMonitor}, so that changes to included files are
+     * taken into account too.
+     *
+     * @param config the loaded config.
+     */
+    protected void monitorFiles(MockWebAppConfig config) {
+        if (fileMonitor == null) return;
+        for (File file : config.getFiles()) {
+            try {
+                fileMonitor.addFile(VFS.getManager().toFileObject(file));
+            } catch (Exception e) {
+                getServletContext().log("Failed monitoring config file " + file.getPath(), e);
+            }
+        }
+    }
+
+    /**
+     * Describe the warmup of a config for the reload log.
+     *
+     * @param config the loaded config.
+     * @return the warmup description, prefixed with a comma, or an empty string if there was no warmup.
+     */
+    protected static String describeWarmup(MockWebAppConfig config) {
+        final String warmup = config.describeWarmup();
+        return warmup == null ? "" : ", " + warmup;
+    }
+
+    /**
+     * Log the mappings that could not be warmed up when a config was built.
+     *
+     * @param config the loaded config.
+     */
+    protected void logWarmupFailures(MockWebAppConfig config) {
+        for (Exception e : config.getWarmupFailures()) getServletContext().log(e.getMessage(), e.getCause());
+    }
+
+    /**
+     * Get the {@link MockWebAppConfig} currently in use.
+     *
+     * @return the config, or null if none is loaded.
+     */
+    public MockWebAppConfig getMockWebAppConfig() {
+        return mockWebAppConfig;
+    }
+
+    /**
+     * Replace the {@link MockWebAppConfig} in use, if it did not change since it was read.
+     * <p/>
+     * Used to publish copies of the config updated at runtime, without losing concurrent updates.
+     *
+     * @param expected the config the update was derived from.
+     * @param config   the new config.
+     * @return true if the config was replaced.
+     */
+    public synchronized boolean replaceMockWebAppConfig(MockWebAppConfig expected, MockWebAppConfig config) {
+        if (mockWebAppConfig != expected) return false;
+        mockWebAppConfig = config;
+        return true;
+    }
+
     /**
      * Prepare the servlet for stopping service.
      * <p/>
-     * Disposes the config file changes monitor.
+     * Disposes the config file changes monitor and the {@link Schedule} tick.
      */
     @Override
     public void destroy() {
         if (fileMonitor != null) fileMonitor.stop();
+        Schedule.shutdown();
         super.destroy();
     }
 
+    /**
+     * Dispatch a request.
+     * <p/>
+     * Defers requests with a method {@link HttpServlet} does not handle (eg: {@code PATCH} or WebDAV methods) to
+     * {@link #mockWebAppConfig} when possible, and the others to the matching {@code doXXX} method.
+     *
+     * @param req  the client request.
+     * @param resp the servlet response.
+     * @throws IOException      if an input or output error occured while handling the request.
+     * @throws ServletException if the request could not be handled.
+     */
+    @Override
+    protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (mockWebAppConfig != null && !SERVLET_METHODS.contains(req.getMethod())) mockWebAppConfig.process(req, resp);
+        else super.service(req, resp);
+    }
+
     /**
      * Handle a GET request.
      * <p/>
@@ -236,27 +343,42 @@ public class MockWebAppServlet extends HttpServlet {
         /**
          * Handle a file deletion event.
          * <p/>
-         * Unsets {@link MockWebAppServlet#mockWebAppConfig}.
+         * Unsets {@link MockWebAppServlet#mockWebAppConfig} if the config file or directory was deleted, or reloads it
+         * if one of its files was deleted.
          *
          * @param fileChangeEvent the event to handle.
          */
         public void fileDeleted(FileChangeEvent fileChangeEvent) {
+            if (configFile.exists()) {
+                fileChanged(fileChangeEvent);
+                return;
+            }
             getServletContext().log("Config file deleted");
-            mockWebAppConfig = null;
+            synchronized (MockWebAppServlet.this) {
+                mockWebAppConfig = null;
+            }
         }
 
         /**
          * Handle a file change event.
          * <p/>
-         * Updates {@link MockWebAppServlet#mockWebAppConfig}.
+         * Updates {@link MockWebAppServlet#mockWebAppConfig} from {@link MockWebAppServlet#configFile}, reusing the
+         * files and mappings that did not change and keeping the mappings changed at runtime. The config is parsed
+         * again if it was changed at runtime in the meantime, so that such a change is not lost.
          *
          * @param fileChangeEvent the event to handle.
          */
         public void fileChanged(FileChangeEvent fileChangeEvent) {
             try {
-                final File configFile = new File(fileChangeEvent.getFile().getURL().getFile());
-                mockWebAppConfig = MockWebAppConfig.Parser.parseConfig(configFile);
-                getServletContext().log("Updated config from " + configFile.getPath());
+                MockWebAppConfig config;
+                while (true) {
+                    final MockWebAppConfig expected = mockWebAppConfig;
+                    config = MockWebAppConfig.Parser.parseConfig(configFile, expected);
+                    if (replaceMockWebAppConfig(expected, config)) break;
+                }
+                monitorFiles(config);
+                getServletContext().log("Updated config from " + fileChangeEvent.getFile().getName().getPath() + describeWarmup(config));
+                logWarmupFailures(config);
             } catch (Exception e) {
                 getServletContext().log("Failed updating config", e);
             }
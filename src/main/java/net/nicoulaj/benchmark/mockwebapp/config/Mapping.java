@@ -15,16 +15,19 @@
  */
 package net.nicoulaj.benchmark.mockwebapp.config;
 
-import net.nicoulaj.benchmark.mockwebapp.config.then.DelayAction;
-import net.nicoulaj.benchmark.mockwebapp.config.then.RandomDelayAction;
-import net.nicoulaj.benchmark.mockwebapp.config.then.StatusAction;
-import net.nicoulaj.benchmark.mockwebapp.config.then.ThenStatement;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.HeaderSet;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Selectivity;
+import net.nicoulaj.benchmark.mockwebapp.config.then.*;
 import net.nicoulaj.benchmark.mockwebapp.config.when.*;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.bind.annotation.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A {@link Mapping} is:
@@ -39,6 +42,27 @@ import java.util.List;
 @XmlAccessorType(XmlAccessType.FIELD)
 public class Mapping implements ConfigFragment {
 
+    /**
+     * The identifier of this mapping, unique in the config.
+     * <p/>
+     * Can be null. Needed to update or remove the mapping at runtime.
+     *
+     * @see MockWebAppConfig#withMapping(Mapping, int)
+     */
+    @XmlAttribute(required = false)
+    public String id;
+
+    /**
+     * The digest of the XML element this mapping was parsed from, or null if unknown.
+     * <p/>
+     * Mappings with the same digest have the same content, so a compiled mapping can be reused in place of a new one
+     * with the same digest.
+     *
+     * @see MockWebAppConfig.Parser#parseConfig(java.io.File, MockWebAppConfig)
+     */
+    @XmlTransient
+    protected String digest;
+
     /**
      * The list of {@link WhenStatement}s defining what requests should be matched.
      *
@@ -49,7 +73,10 @@ public class Mapping implements ConfigFragment {
                          @XmlElement(name = "url", type = URLCondition.class),
                          @XmlElement(name = "header", type = HeaderCondition.class),
                          @XmlElement(name = "method", type = MethodCondition.class),
-                         @XmlElement(name = "remote-address", type = RemoteAddressCondition.class)
+                         @XmlElement(name = "remote-address", type = RemoteAddressCondition.class),
+                         @XmlElement(name = "query-param", type = QueryParamCondition.class),
+                         @XmlElement(name = "path", type = PathCondition.class),
+                         @XmlElement(name = "body", type = BodyCondition.class)
                  })
     public List<WhenStatement> whenStatements;
 
@@ -62,10 +89,40 @@ public class Mapping implements ConfigFragment {
     @XmlElements({
                          @XmlElement(name = "status", type = StatusAction.class),
                          @XmlElement(name = "delay", type = DelayAction.class),
-                         @XmlElement(name = "random-delay", type = RandomDelayAction.class)
+                         @XmlElement(name = "random-delay", type = RandomDelayAction.class),
+                         @XmlElement(name = "cpu-burn", type = CpuBurnAction.class),
+                         @XmlElement(name = "allocate", type = AllocateAction.class),
+                         @XmlElement(name = "header", type = HeaderAction.class),
+                         @XmlElement(name = "body", type = BodyAction.class),
+                         @XmlElement(name = "sequence", type = SequenceAction.class)
                  })
     public List<ThenStatement> thenStatements;
 
+    /**
+     * The {@link #whenStatements} sorted by increasing cost, or null if not compiled.
+     *
+     * @see #compile(boolean, java.util.Map)
+     */
+    @XmlTransient
+    protected WhenStatement[] orderedWhenStatements;
+
+    /**
+     * The adaptive evaluation order of {@link #whenStatements}, or null if disabled.
+     *
+     * @see #compile(boolean, java.util.Map)
+     */
+    @XmlTransient
+    protected Selectivity selectivity;
+
+    /**
+     * The {@link #thenStatements} with consecutive {@link HeaderAction}s merged into {@link HeaderSet}s, or null if
+     * not compiled.
+     *
+     * @see #compile(boolean, java.util.Map)
+     */
+    @XmlTransient
+    protected ThenStatement[] compiledThenStatements;
+
     /**
      * Assert this {@link Mapping} is valid.
      * <p/>
@@ -82,13 +139,78 @@ public class Mapping implements ConfigFragment {
         for (ThenStatement thenStatement : thenStatements) thenStatement.validate();
     }
 
+    /**
+     * Compile this {@link Mapping} for handling requests.
+     * <p/>
+     * Sorts {@link #whenStatements} by increasing {@link WhenStatement#getCost() cost}, so that cheap statements can
+     * reject requests before expensive ones are evaluated, merges consecutive {@link HeaderAction}s into
+     * {@link HeaderSet}s and compiles {@link BodyAction} templates and {@link SequenceAction} steps.
+     *
+     * @param adaptive   whether to further adapt the evaluation order to the sampled rejection rates.
+     * @param headerSets the {@link HeaderSet}s already built for the config, by key.
+     */
+    public void compile(boolean adaptive, Map<List<String>, HeaderSet> headerSets) {
+        orderedWhenStatements = Selectivity.sortByCost(whenStatements.toArray(new WhenStatement[whenStatements.size()]));
+        selectivity = adaptive ? new Selectivity(orderedWhenStatements) : null;
+
+        compiledThenStatements = compileThenStatements(thenStatements, headerSets);
+    }
+
+    /**
+     * Compile a list of {@link ThenStatement}s.
+     * <p/>
+     * Merges consecutive {@link HeaderAction}s into {@link HeaderSet}s and compiles the {@link Compilable} statements,
+     * such as {@link BodyAction} templates, {@link DelayAction} and {@link StatusAction} schedules, and
+     * {@link SequenceAction} steps.
+     *
+     * @param thenStatements the statements to compile.
+     * @param headerSets     the {@link HeaderSet}s already built for the config, by key.
+     * @return the compiled statements.
+     */
+    public static ThenStatement[] compileThenStatements(List<ThenStatement> thenStatements,
+                                                        Map<List<String>, HeaderSet> headerSets) {
+        final List<ThenStatement> compiled = new ArrayList<ThenStatement>(thenStatements.size());
+        final List<HeaderAction> headers = new ArrayList<HeaderAction>();
+        for (ThenStatement thenStatement : thenStatements) {
+            if (thenStatement instanceof Compilable) ((Compilable) thenStatement).compile(headerSets);
+            if (thenStatement instanceof HeaderAction) {
+                headers.add((HeaderAction) thenStatement);
+                continue;
+            }
+            if (!headers.isEmpty()) compiled.add(HeaderSet.intern(headers, headerSets));
+            headers.clear();
+            compiled.add(thenStatement);
+        }
+        if (!headers.isEmpty()) compiled.add(HeaderSet.intern(headers, headerSets));
+        return compiled.toArray(new ThenStatement[compiled.size()]);
+    }
+
+    /**
+     * Get the order in which {@link #whenStatements} are currently evaluated.
+     *
+     * @return the statements, in evaluation order.
+     */
+    public List<WhenStatement> getEvaluationOrder() {
+        if (selectivity != null) return Arrays.asList(selectivity.getOrder());
+        if (orderedWhenStatements != null) return Arrays.asList(orderedWhenStatements);
+        return whenStatements;
+    }
+
     /**
      * Test whether the given {@link HttpServletRequest} matches this mapping.
+     * <p/>
+     * The evaluation order depends on how the mapping was {@link #compile(boolean, java.util.Map) compiled}, but not
+     * the result.
      *
      * @param req the {@link HttpServletRequest} to test.
      * @return true if if the request matches all {@link WhenStatement}s in {@link #whenStatements}.
      */
     public boolean matches(HttpServletRequest req) {
+        if (selectivity != null) return selectivity.matches(req);
+        if (orderedWhenStatements != null) {
+            for (WhenStatement matcher : orderedWhenStatements) if (!matcher.matches(req)) return false;
+            return true;
+        }
         for (WhenStatement matcher : whenStatements) if (!matcher.matches(req)) return false;
         return true;
     }
@@ -101,8 +223,33 @@ public class Mapping implements ConfigFragment {
      *
      * @param req  the {@link HttpServletRequest} to process.
      * @param resp the {@link HttpServletResponse} to use.
+     * @throws IOException if writing the response failed.
      */
-    public void process(HttpServletRequest req, HttpServletResponse resp) {
+    public void process(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (compiledThenStatements != null) {
+            for (ThenStatement processor : compiledThenStatements) processor.process(req, resp);
+            return;
+        }
         for (ThenStatement processor : thenStatements) processor.process(req, resp);
     }
+
+    /**
+     * Exercise this mapping with a request, without side effects, eg: to warm it up before it is used.
+     * <p/>
+     * Evaluates the {@link #whenStatements} against the request, then processes the statements that only write the
+     * response: bodies, headers and statuses. Delays, CPU burns, allocations and sequences are skipped. The statements
+     * are evaluated directly rather than through {@link #matches(HttpServletRequest)}, so synthetic requests are not
+     * sampled for the adaptive evaluation order.
+     *
+     * @param req  the {@link HttpServletRequest} to process.
+     * @param resp the {@link HttpServletResponse} to use.
+     * @throws IOException if writing the response failed.
+     */
+    public void warmUp(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        for (WhenStatement matcher : orderedWhenStatements != null ? Arrays.asList(orderedWhenStatements) : whenStatements)
+            if (!matcher.matches(req)) break;
+        for (ThenStatement processor : compiledThenStatements != null ? Arrays.asList(compiledThenStatements) : thenStatements)
+            if (processor instanceof BodyAction || processor instanceof HeaderAction || processor instanceof HeaderSet
+                || processor instanceof StatusAction) processor.process(req, resp);
+    }
 }
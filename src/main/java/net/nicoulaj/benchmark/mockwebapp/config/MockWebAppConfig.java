@@ -15,19 +15,52 @@
  */
 package net.nicoulaj.benchmark.mockwebapp.config;
 
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.AddressTrie;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.ClockCache;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.ElementDigester;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.HeaderIndex;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.HeaderSet;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.RequestSignature;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.RequestView;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Slot;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.SyntheticRequest;
+import net.nicoulaj.benchmark.mockwebapp.config.when.*;
+import org.xml.sax.InputSource;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLFilterImpl;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.net.URL;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A {@link MockWebAppConfig} describes the behaviour of a mock web application.
@@ -67,30 +100,170 @@ public class MockWebAppConfig implements ConfigFragment {
     @XmlElement(required = false, nillable = false, defaultValue = "all")
     public MatchingStrategy matchingStrategy = MatchingStrategy.all;
 
+    /**
+     * Whether to adapt the evaluation order of the {@link Mapping}s statements to their sampled rejection rates.
+     * <p/>
+     * Statements are always sorted by static cost first. Defaults to false.
+     *
+     * @see Mapping#compile(boolean, java.util.Map)
+     */
+    @XmlElement(required = false, nillable = false, defaultValue = "false")
+    public Boolean adaptiveOrdering;
+
+    /**
+     * The maximum number of request signatures for which matched {@link Mapping}s are cached.
+     * <p/>
+     * Can be null, in which case matches are not cached. The cache is disabled for configs with statements that depend
+     * on more than the request method, URI, query string, remote address and headers (eg: the body).
+     *
+     * @see #compile()
+     */
+    @XmlElement(required = false, nillable = false)
+    public Integer matchCacheSize;
+
+    /**
+     * The number of synthetic requests each new {@link Mapping} is exercised with before the config is used, so that
+     * the first real requests do not pay for the patterns compilation, classes loading and cold code.
+     * <p/>
+     * Can be null, in which case mappings are not warmed up.
+     *
+     * @see #warmUp(java.util.List)
+     */
+    @XmlElement(required = false, nillable = false)
+    public Integer warmup;
+
+    /**
+     * The upstream server to forward the requests matching no {@link Mapping} to.
+     * <p/>
+     * Can be null, in which case unmatched requests get an empty response.
+     */
+    @XmlElement(required = false, nillable = false)
+    public ProxyFallback proxy;
+
+    /**
+     * The paths of other config files or directories whose {@link #mappings} are added before the ones of this config.
+     * <p/>
+     * Relative paths are resolved against the directory of the including file. Directories include all their
+     * {@code .xml} files, by name order. Only the mappings and includes of included files are used, their other
+     * settings are ignored.
+     *
+     * @see Parser#parseConfig(java.io.File, MockWebAppConfig)
+     */
+    @XmlElement(name = "include", required = false, nillable = false)
+    public List<String> includes;
+
     /**
      * The list of {@link Mapping}s to matches requests against.
      *
      * @see #process(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
      */
-    @XmlElement(name = "mapping", required = true, nillable = false)
+    @XmlElement(name = "mapping", required = false, nillable = false)
     public List<Mapping> mappings;
 
+    /**
+     * The files this config was parsed from, or null if not parsed from files.
+     */
+    @XmlTransient
+    protected List<Parser.Document> documents;
+
+    /**
+     * The number of {@link Mapping}s warmed up when this config was built.
+     */
+    @XmlTransient
+    protected int warmedUpMappings;
+
+    /**
+     * The time spent warming the {@link Mapping}s up when this config was built (ns).
+     */
+    @XmlTransient
+    protected long warmupNanos;
+
+    /**
+     * The failures of the {@link Mapping}s that could not be warmed up when this config was built.
+     */
+    @XmlTransient
+    protected List<Exception> warmupFailures = Collections.emptyList();
+
+    /**
+     * The {@link Mapping}s changed at runtime, by {@link Mapping#id} in the order they were first changed: the mapping
+     * added or replaced, or null if removed. They are applied again each time the config file is reloaded.
+     *
+     * @see #withMapping(Mapping, int)
+     * @see #withoutMapping(String)
+     * @see #applyRuntimeChanges(MockWebAppConfig)
+     */
+    @XmlTransient
+    protected Map<String, Mapping> runtimeChanges = Collections.emptyMap();
+
+    /**
+     * The {@link Mapping}s matched by request signature, or null if disabled.
+     * <p/>
+     * Each compiled config has its own cache, so replacing the config invalidates all the cached matches at once.
+     */
+    @XmlTransient
+    protected ClockCache<String, Mapping[]> matchCache;
+
+    /**
+     * The signature used as {@link #matchCache} key.
+     */
+    @XmlTransient
+    protected RequestSignature signature;
+
     /**
      * Process a request and associated response.
      * <p/>
-     * Triggers {@link #mappings} as defined by the {@link #matchingStrategy}.
+     * Binds the request {@link RequestView} first, so that its arrival time is known to the statements, triggers
+     * {@link #mappings} as defined by the {@link #matchingStrategy}, or the {@link #proxy} if none matched, then
+     * releases the request {@link RequestView}.
      *
      * @param req  the client request.
      * @param resp the servlet response.
+     * @throws IOException if writing the response failed.
      * @see net.nicoulaj.benchmark.mockwebapp.MockWebAppServlet#doGet(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
      */
-    public void process(HttpServletRequest req, HttpServletResponse resp) {
+    public void process(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        RequestView.of(req);
+        try {
+            if (matchCache != null) {
+                final String key = signature.of(req);
+                Mapping[] matched = matchCache.get(key);
+                if (matched == null) {
+                    matched = match(req);
+                    matchCache.put(key, matched);
+                }
+                for (Mapping mapping : matched) mapping.process(req, resp);
+                if (matched.length == 0 && proxy != null) proxy.process(req, resp);
+                return;
+            }
+            boolean matched = false;
+            for (Mapping mapping : mappings) {
+                if (mapping.matches(req)) {
+                    mapping.process(req, resp);
+                    matched = true;
+                    if (MatchingStrategy.first.equals(matchingStrategy)) return;
+                }
+            }
+            if (!matched && proxy != null) proxy.process(req, resp);
+        } finally {
+            RequestView.release(req);
+        }
+    }
+
+    /**
+     * Find the {@link #mappings} to trigger for a request, as defined by the {@link #matchingStrategy}.
+     *
+     * @param req the client request.
+     * @return the matched mappings.
+     */
+    protected Mapping[] match(HttpServletRequest req) {
+        final List<Mapping> matched = new ArrayList<Mapping>(1);
         for (Mapping mapping : mappings) {
             if (mapping.matches(req)) {
-                mapping.process(req, resp);
-                if (MatchingStrategy.first.equals(matchingStrategy)) return;
+                matched.add(mapping);
+                if (MatchingStrategy.first.equals(matchingStrategy)) break;
             }
         }
+        return matched.toArray(new Mapping[matched.size()]);
     }
 
     /**
@@ -101,8 +274,384 @@ public class MockWebAppConfig implements ConfigFragment {
      * @throws Exception if an element of the {@link MockWebAppConfig} is invalid.
      */
     public void validate() throws Throwable {
+        validate(mappings);
+    }
+
+    /**
+     * Assert this {@link MockWebAppConfig} is valid, assuming the {@link #mappings} not in {@code targets} are.
+     *
+     * @param targets the mappings to validate.
+     * @throws Exception if an element of the {@link MockWebAppConfig} is invalid.
+     */
+    protected void validate(List<Mapping> targets) throws Throwable {
         assert mappings != null && !mappings.isEmpty() : "At least one mapping should be declared";
-        for (Mapping mapping : mappings) mapping.validate();
+        assert matchCacheSize == null || matchCacheSize > 0 : "The match cache size must be positive";
+        assert warmup == null || warmup > 0 : "The warmup requests count must be positive";
+        final Set<String> ids = new HashSet<String>();
+        for (Mapping mapping : mappings) assert mapping.id == null || ids.add(mapping.id) : "The mapping id '" + mapping.id + "' is not unique";
+        if (proxy != null) proxy.validate();
+        for (Mapping mapping : targets) mapping.validate();
+    }
+
+    /**
+     * Compile this {@link MockWebAppConfig} for handling requests.
+     * <p/>
+     * Builds the structures shared by the statements of all {@link #mappings}, compiles each mapping and sets up the
+     * {@link #matchCache} and {@link #proxy} if enabled. Must be called on a valid config, before it is used by other
+     * threads.
+     */
+    public void compile() {
+        compile(mappings);
+    }
+
+    /**
+     * Compile this {@link MockWebAppConfig} for handling requests, assuming the {@link #mappings} not in
+     * {@code targets} are already compiled.
+     *
+     * @param targets the mappings to compile.
+     */
+    protected void compile(List<Mapping> targets) {
+        compileMappings(targets);
+        bindConditions();
+        compileMatchCache();
+        if (proxy != null) proxy.compile();
+    }
+
+    /**
+     * Replace the {@link #mappings} that did not change since a previous config by their compiled instance.
+     * <p/>
+     * The mappings of the files that were not parsed again are the compiled instances themselves, and are kept as
+     * is. The other mappings are compared by {@link Mapping#digest}, so only mappings parsed from an identical XML
+     * element are reused, along with their compiled statements, encoded bodies and sampled selectivity. Each compiled
+     * instance is reused at most once, and the returned mappings never include one: compiled instances may be in use
+     * by request threads, so they must never be compiled again. Nothing is reused if the settings the mappings are
+     * compiled with changed, the config must then be parsed from scratch.
+     *
+     * @param previous the previous compiled config, can be null.
+     * @return the mappings that were not replaced, which still have to be validated and compiled.
+     * @throws IllegalStateException if the settings changed but the config still holds compiled instances.
+     * @see #compilesMappingsLike(MockWebAppConfig)
+     */
+    protected List<Mapping> reuseMappings(MockWebAppConfig previous) {
+        if (previous == null) return mappings;
+        final Set<Mapping> live = Collections.newSetFromMap(new IdentityHashMap<Mapping, Boolean>());
+        live.addAll(previous.mappings);
+        if (previous.documents != null)
+            for (Parser.Document document : previous.documents) if (document.content.mappings != null) live.addAll(document.content.mappings);
+        if (!compilesMappingsLike(previous)) {
+            for (Mapping mapping : mappings)
+                if (live.contains(mapping)) throw new IllegalStateException("Compiled mappings cannot be compiled again");
+            return mappings;
+        }
+        final Set<Mapping> kept = Collections.newSetFromMap(new IdentityHashMap<Mapping, Boolean>());
+        for (Mapping mapping : mappings) if (live.contains(mapping)) kept.add(mapping);
+        final Map<String, LinkedList<Mapping>> compiled = new HashMap<String, LinkedList<Mapping>>();
+        for (Mapping mapping : previous.mappings) {
+            if (mapping.digest == null || kept.contains(mapping)) continue;
+            LinkedList<Mapping> candidates = compiled.get(mapping.digest);
+            if (candidates == null) compiled.put(mapping.digest, candidates = new LinkedList<Mapping>());
+            candidates.add(mapping);
+        }
+        final List<Mapping> changed = new ArrayList<Mapping>();
+        for (int i = 0; i < mappings.size(); i++) {
+            final Mapping mapping = mappings.get(i);
+            if (kept.contains(mapping)) continue;
+            final LinkedList<Mapping> candidates = mapping.digest == null ? null : compiled.get(mapping.digest);
+            if (candidates == null || candidates.isEmpty()) changed.add(mapping);
+            else mappings.set(i, candidates.removeFirst());
+        }
+        return changed;
+    }
+
+    /**
+     * Test whether the mappings of this config are compiled with the same settings as the ones of another config.
+     *
+     * @param other the other config.
+     * @return true if compiled mappings of {@code other} can be reused as is.
+     */
+    protected boolean compilesMappingsLike(MockWebAppConfig other) {
+        return Boolean.TRUE.equals(adaptiveOrdering) == Boolean.TRUE.equals(other.adaptiveOrdering);
+    }
+
+    /**
+     * Compile some of the {@link #mappings}.
+     * <p/>
+     * The address and header conditions are not bound here, see {@link #bindConditions()}.
+     *
+     * @param targets the mappings to compile.
+     */
+    protected void compileMappings(List<Mapping> targets) {
+        final Map<List<String>, HeaderSet> headerSets = new HashMap<List<String>, HeaderSet>();
+        for (Mapping mapping : targets) {
+            for (WhenStatement whenStatement : mapping.whenStatements)
+                if (whenStatement instanceof MethodCondition) ((MethodCondition) whenStatement).compile();
+            mapping.compile(Boolean.TRUE.equals(adaptiveOrdering), headerSets);
+        }
+    }
+
+    /**
+     * Build a single {@link AddressTrie} and {@link HeaderIndex} for all the {@link #mappings}, and bind their
+     * conditions to them.
+     * <p/>
+     * The mappings reused from a previous config are bound again, so each config matches against its own structures
+     * only. The structures are complete before the first condition is bound to them, and each condition switches to its
+     * new {@link Slot} atomically: requests still evaluating the previous config get the same answers from both.
+     */
+    protected void bindConditions() {
+        final AddressTrie addresses = new AddressTrie();
+        final HeaderIndex headers = new HeaderIndex();
+        final List<RemoteAddressCondition> addressConditions = new ArrayList<RemoteAddressCondition>();
+        final List<HeaderCondition> headerConditions = new ArrayList<HeaderCondition>();
+        final List<Integer> headerSlots = new ArrayList<Integer>();
+        for (Mapping mapping : mappings) {
+            for (WhenStatement whenStatement : mapping.whenStatements) {
+                if (whenStatement instanceof RemoteAddressCondition) {
+                    final RemoteAddressCondition condition = (RemoteAddressCondition) whenStatement;
+                    addresses.add(condition.address, addressConditions.size());
+                    addressConditions.add(condition);
+                } else if (whenStatement instanceof HeaderCondition) {
+                    final HeaderCondition condition = (HeaderCondition) whenStatement;
+                    headerSlots.add(headers.add(condition.name, condition.pattern));
+                    headerConditions.add(condition);
+                }
+            }
+        }
+        for (int i = 0; i < addressConditions.size(); i++)
+            addressConditions.get(i).bind(new Slot<AddressTrie>(addresses, i));
+        for (int i = 0; i < headerConditions.size(); i++)
+            headerConditions.get(i).bind(new Slot<HeaderIndex>(headers, headerSlots.get(i)));
+    }
+
+    /**
+     * Set up an empty {@link #matchCache} if enabled and if all the {@link #mappings} statements can be keyed by
+     * {@link RequestSignature}.
+     */
+    protected void compileMatchCache() {
+        matchCache = null;
+        signature = null;
+        if (matchCacheSize == null) return;
+        final Map<String, String> headerNames = new LinkedHashMap<String, String>();
+        boolean onMethod = false, onURI = false, onQuery = false, onAddress = false;
+        for (Mapping mapping : mappings) {
+            for (WhenStatement whenStatement : mapping.whenStatements) {
+                if (whenStatement instanceof RemoteAddressCondition) {
+                    onAddress = true;
+                } else if (whenStatement instanceof HeaderCondition) {
+                    final String name = ((HeaderCondition) whenStatement).name;
+                    final String key = name.toLowerCase(Locale.ENGLISH);
+                    if (!headerNames.containsKey(key)) headerNames.put(key, name);
+                } else if (whenStatement instanceof MethodCondition) {
+                    onMethod = true;
+                } else if (whenStatement instanceof URLCondition || whenStatement instanceof PathCondition) {
+                    onURI = true;
+                } else if (whenStatement instanceof QueryParamCondition) {
+                    onQuery = true;
+                } else {
+                    return;
+                }
+            }
+        }
+        signature = new RequestSignature(onMethod, onURI, onQuery, onAddress,
+                                         headerNames.values().toArray(new String[headerNames.size()]));
+        matchCache = new ClockCache<String, Mapping[]>(matchCacheSize, "match-cache");
+    }
+
+    /**
+     * Exercise some of the compiled {@link #mappings} with {@link #warmup} synthetic requests each.
+     * <p/>
+     * Each mapping is given the {@link SyntheticRequest} derived from its statements, or {@code GET /} if none can be,
+     * and {@link Mapping#warmUp(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse) warmed
+     * up} with it. Warmup is best effort: a mapping failing with a synthetic request is skipped, and the failure is
+     * kept in {@link #warmupFailures} to be logged.
+     *
+     * @param targets the mappings to warm up.
+     */
+    protected void warmUp(List<Mapping> targets) {
+        final long start = System.nanoTime();
+        final HttpServletResponse resp = SyntheticRequest.newResponse();
+        final List<Exception> failures = new ArrayList<Exception>();
+        int warmedUp = 0;
+        for (Mapping mapping : targets) {
+            SyntheticRequest request = SyntheticRequest.of(mapping);
+            if (request == null) request = new SyntheticRequest("GET", "/", Collections.<String, String>emptyMap());
+            try {
+                for (int i = 0; i < warmup; i++) {
+                    final HttpServletRequest req = request.toRequest();
+                    try {
+                        mapping.warmUp(req, resp);
+                    } finally {
+                        RequestView.release(req);
+                    }
+                }
+                warmedUp++;
+            } catch (Exception e) {
+                // Synthetic requests lack some request fields, the mapping is warmed up by the first real requests.
+                failures.add(new IllegalStateException("Failed warming up mapping " + (mapping.id != null ? mapping.id : request), e));
+            }
+        }
+        warmupFailures = failures;
+        warmedUpMappings = warmedUp;
+        warmupNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Describe the warmup done when this config was built.
+     *
+     * @return a description such as {@code warmed up 3 mappings in 12 ms}, or null if there was no warmup.
+     */
+    public String describeWarmup() {
+        if (warmup == null) return null;
+        return "warmed up " + warmedUpMappings + " mappings in " + warmupNanos / 1000000L + " ms";
+    }
+
+    /**
+     * Get the failures of the {@link Mapping}s that could not be warmed up when this config was built.
+     *
+     * @return the failures, each caused by the exception thrown by the mapping, may be empty.
+     */
+    public List<Exception> getWarmupFailures() {
+        return warmupFailures;
+    }
+
+    /**
+     * Get the files this config was parsed from, including the included ones.
+     *
+     * @return the canonical files, empty if the config was not parsed from files.
+     */
+    public List<File> getFiles() {
+        final List<File> files = new ArrayList<File>();
+        if (documents != null) for (Parser.Document document : documents) files.add(document.file);
+        return files;
+    }
+
+    /**
+     * Find a {@link Mapping} by {@link Mapping#id}.
+     *
+     * @param id the mapping id.
+     * @return the mapping index in {@link #mappings}, or -1 if not found.
+     */
+    public int indexOfMapping(String id) {
+        for (int i = 0; i < mappings.size(); i++) if (id.equals(mappings.get(i).id)) return i;
+        return -1;
+    }
+
+    /**
+     * Apply the {@link #runtimeChanges} of a previous config to this config, parsed again from the config file.
+     * <p/>
+     * The runtime changes take precedence over the mappings of the file with the same id. A mapping that is not in
+     * the file is inserted before the mapping that followed it in the previous config. The compiled mappings of the previous config are
+     * reused, unless the settings they are compiled with changed, in which case they are copied.
+     *
+     * @param previous the previous compiled config, can be null.
+     * @throws Exception if a mapping could not be copied.
+     * @see #compilesMappingsLike(MockWebAppConfig)
+     */
+    protected void applyRuntimeChanges(MockWebAppConfig previous) throws Exception {
+        if (previous == null || previous.runtimeChanges.isEmpty() || mappings == null) return;
+        final boolean reuse = compilesMappingsLike(previous);
+        final Map<String, Mapping> changes = new LinkedHashMap<String, Mapping>();
+        for (Map.Entry<String, Mapping> change : previous.runtimeChanges.entrySet()) {
+            final int existing = indexOfMapping(change.getKey());
+            if (change.getValue() == null) {
+                if (existing >= 0 && mappings.size() > 1) mappings.remove(existing);
+                changes.put(change.getKey(), null);
+                continue;
+            }
+            final Mapping mapping = reuse ? change.getValue() : Parser.copyMapping(change.getValue());
+            if (existing >= 0) mappings.set(existing, mapping);
+            else mappings.add(indexOfFollower(previous, change.getKey()), mapping);
+            changes.put(change.getKey(), mapping);
+        }
+        runtimeChanges = changes;
+    }
+
+    /**
+     * Find where to insert a {@link Mapping} of a previous config, to keep it before the mapping that followed it.
+     *
+     * @param previous the previous config.
+     * @param id       the id of the mapping in {@code previous}.
+     * @return the index in {@link #mappings} of the first mapping following it in {@code previous}, by id or
+     *         {@link Mapping#digest}, or the number of mappings if there is none.
+     */
+    protected int indexOfFollower(MockWebAppConfig previous, String id) {
+        final int position = previous.indexOfMapping(id);
+        if (position >= 0) {
+            for (int i = position + 1; i < previous.mappings.size(); i++) {
+                final Mapping next = previous.mappings.get(i);
+                if (next.id != null) {
+                    final int index = indexOfMapping(next.id);
+                    if (index >= 0) return index;
+                } else if (next.digest != null) {
+                    for (int j = 0; j < mappings.size(); j++) if (next.digest.equals(mappings.get(j).digest)) return j;
+                }
+            }
+        }
+        return mappings.size();
+    }
+
+    /**
+     * Build a copy of this compiled config with a {@link Mapping} added or replaced.
+     * <p/>
+     * Only the given mapping is compiled: the other ones are shared with this config, which is left unchanged and can
+     * keep serving requests until the copy is published. The copy has its own empty {@link #matchCache}. A mapping
+     * with an id is kept in the {@link #runtimeChanges}, so that it survives reloads of the config file.
+     *
+     * @param mapping the valid mapping to add, replacing the mapping with the same {@link Mapping#id} if any.
+     * @param index   the position to insert the mapping at if new, or -1 to append it.
+     * @return the new compiled config.
+     */
+    public MockWebAppConfig withMapping(Mapping mapping, int index) {
+        final List<Mapping> newMappings = new ArrayList<Mapping>(mappings);
+        final int existing = mapping.id == null ? -1 : indexOfMapping(mapping.id);
+        if (existing >= 0) newMappings.set(existing, mapping);
+        else newMappings.add(index < 0 || index > newMappings.size() ? newMappings.size() : index, mapping);
+        return derive(newMappings, Collections.singletonList(mapping), mapping.id, mapping);
+    }
+
+    /**
+     * Build a copy of this compiled config with a {@link Mapping} removed.
+     * <p/>
+     * The removal is kept in the {@link #runtimeChanges}, so that it survives reloads of the config file.
+     *
+     * @param id the {@link Mapping#id} of the mapping to remove.
+     * @return the new compiled config, or null if there is no such mapping or it is the only one.
+     */
+    public MockWebAppConfig withoutMapping(String id) {
+        final int existing = indexOfMapping(id);
+        if (existing < 0 || mappings.size() == 1) return null;
+        final List<Mapping> newMappings = new ArrayList<Mapping>(mappings);
+        newMappings.remove(existing);
+        return derive(newMappings, Collections.<Mapping>emptyList(), id, null);
+    }
+
+    /**
+     * Build a copy of this compiled config with other mappings.
+     *
+     * @param newMappings the mappings of the copy.
+     * @param added       the mappings in {@code newMappings} that still have to be compiled.
+     * @param id          the id of the changed mapping, or null if it has none.
+     * @param mapping     the mapping added or replaced, or null if removed.
+     * @return the new compiled config.
+     */
+    protected MockWebAppConfig derive(List<Mapping> newMappings, List<Mapping> added, String id, Mapping mapping) {
+        final MockWebAppConfig copy = new MockWebAppConfig();
+        copy.matchingStrategy = matchingStrategy;
+        copy.adaptiveOrdering = adaptiveOrdering;
+        copy.matchCacheSize = matchCacheSize;
+        copy.warmup = warmup;
+        copy.proxy = proxy;
+        copy.mappings = newMappings;
+        copy.documents = documents;
+        copy.runtimeChanges = new LinkedHashMap<String, Mapping>(runtimeChanges);
+        if (id != null) {
+            copy.runtimeChanges.remove(id);
+            copy.runtimeChanges.put(id, mapping);
+        }
+        copy.compileMappings(added);
+        copy.bindConditions();
+        copy.compileMatchCache();
+        if (warmup != null) copy.warmUp(added);
+        return copy;
     }
 
     /**
@@ -116,23 +665,58 @@ public class MockWebAppConfig implements ConfigFragment {
         /**
          * The path to the XSD schema file used to validate the XML config files.
          *
-         * @see #initUnmarshaller()
+         * @see #initContext()
          */
         public static final String XSD_SCHEMA_PATH = "/mock-web-app.xsd";
 
+        /**
+         * The XML namespace of config files.
+         */
+        public static final String NAMESPACE = "net.nicoulaj.benchmark.mockwebapp:mock-web-app";
+
         /**
          * The path to the XSD schema file used to validate the XML config files, for running tests.
          * <p/>
          * FIXME Find a way to get rid of this.
          *
-         * @see #initUnmarshaller()
+         * @see #initContext()
          */
         public static final String XSD_SCHEMA_TESTS_PATH = "file:target/schemas/mock-web-app.xsd";
 
         /**
-         * The JAXB {@link Unmarshaller} used to parse XML config files.
+         * The JAXB context of {@link MockWebAppConfig}, created once and shared, as it is thread safe.
+         *
+         * @see #initContext()
+         */
+        protected static volatile JAXBContext context;
+
+        /**
+         * The XSD schema used to validate the XML config files, compiled once and shared, as it is thread safe.
+         * <p/>
+         * Set after {@link #context}, so that both are initialized once it is not null.
+         *
+         * @see #initContext()
+         */
+        protected static volatile Schema schema;
+
+        /**
+         * The maximum number of idle {@link Unmarshaller}s and {@link XMLReader}s kept for reuse: one per parse
+         * worker, with room for a few admin updates parsed at the same time on small machines.
+         */
+        protected static final int POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+        /**
+         * The idle JAXB {@link Unmarshaller}s, as unmarshallers are not thread safe. Each parse takes one, or creates
+         * one if there is none, and gives it back once done.
+         */
+        protected static final BlockingQueue<Unmarshaller> unmarshallers = new ArrayBlockingQueue<Unmarshaller>(POOL_SIZE);
+
+        /**
+         * The idle SAX {@link XMLReader}s, as readers are not thread safe.
+         *
+         * @see #unmarshallers
          */
-        protected static Unmarshaller unmarshaller;
+        protected static final BlockingQueue<XMLReader> readers = new ArrayBlockingQueue<XMLReader>(POOL_SIZE);
 
         /**
          * Parse a config file.
@@ -143,58 +727,437 @@ public class MockWebAppConfig implements ConfigFragment {
          *                   could not be initialized or the file was not valid.
          */
         public static MockWebAppConfig parseConfig(File file) throws Exception {
+            return parseConfig(file, null);
+        }
+
+        /**
+         * Parse a config file or directory, reusing the parsed files and compiled mappings of a previous config that
+         * did not change.
+         * <p/>
+         * A directory config is made of all its {@code .xml} files, by name order: the settings are read from the
+         * first one, and the mappings of all of them are merged. The config files and the files they
+         * {@link MockWebAppConfig#includes include} are parsed in parallel, one level of inclusion at a time, then
+         * merged in a deterministic order: the mappings of each file come after the ones of the files it includes.
+         * <p/>
+         * Only the files modified since {@code previous}, according to their size and modification date, are parsed
+         * again, and only the mappings that changed are validated and compiled. Reloading a config costs in proportion
+         * to the size of the change rather than the size of the config. The mappings changed at runtime in
+         * {@code previous} are {@link MockWebAppConfig#applyRuntimeChanges(MockWebAppConfig) applied again}.
+         *
+         * @param file     the file or directory to parse.
+         * @param previous the previous compiled config, can be null.
+         * @return the corresponding {@link MockWebAppConfig}
+         * @throws Exception if the file could not be read, the JAXB unmarshaller
+         *                   could not be initialized or the file was not valid.
+         * @see MockWebAppConfig#reuseMappings(MockWebAppConfig)
+         */
+        public static MockWebAppConfig parseConfig(File file, MockWebAppConfig previous) throws Exception {
 
             // Check the given file exists.
-            if (file == null || !file.exists() || !file.isFile()) {
+            if (file == null || !file.exists()) {
                 throw new Exception("The config file could not be read");
             }
 
-            // Initialize the Java XML binding unmarshaller if needed.
-            if (unmarshaller == null) {
-                try {
-                    initUnmarshaller();
-                } catch (Exception e) {
-                    throw new Exception("Failed initializing configuration unmarshaller", e);
-                }
+            // Initialize the Java XML binding context if needed.
+            try {
+                initContext();
+            } catch (Exception e) {
+                throw new Exception("Failed initializing configuration unmarshaller", e);
             }
 
-            // Unmarshall the config file.
-            MockWebAppConfig config;
+            // Unmarshall the config files, and merge them.
+            final MockWebAppConfig config;
             try {
-                config = (MockWebAppConfig) unmarshaller.unmarshal(file);
+                MockWebAppConfig merged = merge(parseDocuments(file, previous));
+                // The unmodified files hold compiled mappings, which cannot be compiled with other settings.
+                if (previous != null && !merged.compilesMappingsLike(previous)) merged = merge(parseDocuments(file, null));
+                config = merged;
             } catch (Exception e) {
                 throw new Exception("Failed parsing configuration file", e);
             }
 
+            // Apply the runtime changes again.
+            try {
+                config.applyRuntimeChanges(previous);
+            } catch (Exception e) {
+                throw new Exception("Failed applying runtime changes", e);
+            }
+
             // Validate the config.
+            final List<Mapping> changed = config.mappings == null ? null : config.reuseMappings(previous);
             try {
-                config.validate();
+                config.validate(changed);
             } catch (Throwable t) {
                 throw new Exception("Failed validating configuration file", t);
             }
 
+            // Compile the config.
+            try {
+                config.compile(changed);
+            } catch (Exception e) {
+                throw new Exception("Failed compiling configuration file", e);
+            }
+
+            // Warm the changed mappings up, before the config is published.
+            if (config.warmup != null) config.warmUp(changed);
+
             return config;
         }
 
         /**
-         * Initialize the JAXB {@link Unmarshaller} {@link #unmarshaller}.
+         * Parse a single {@code <mapping>} XML fragment, with the same schema as config files.
+         * <p/>
+         * The returned mapping is valid but not compiled.
          *
-         * @throws Exception if the unmarshaller could not be initialized or the XSD schema file could not be loaded.
+         * @param fragment the XML fragment, with or without XML declaration and namespace.
+         * @return the corresponding {@link Mapping}.
+         * @throws Exception if the JAXB unmarshaller could not be initialized or the fragment was not a valid mapping.
          */
-        protected static void initUnmarshaller() throws Exception {
+        public static Mapping parseMapping(String fragment) throws Exception {
 
-            // Create the JAXB unmarshaller.
-            synchronized (JAXBContext.class) {
-                unmarshaller = JAXBContext.newInstance(MockWebAppConfig.class).createUnmarshaller();
+            // Initialize the Java XML binding context if needed.
+            try {
+                initContext();
+            } catch (Exception e) {
+                throw new Exception("Failed initializing configuration unmarshaller", e);
             }
 
-            // Load the XSD schema.
+            // Wrap the fragment in a config document and unmarshall it.
+            String body = fragment.trim();
+            if (body.startsWith("<?xml")) body = body.substring(body.indexOf("?>") + 2);
+            final String document = "<mock-web-app xmlns=\"" + NAMESPACE + "\">" + body + "</mock-web-app>";
+            MockWebAppConfig config;
             try {
-                URL resource = MockWebAppConfig.class.getClassLoader().getResource(XSD_SCHEMA_PATH);
-                if (resource == null) resource = new URL(XSD_SCHEMA_TESTS_PATH);
-                unmarshaller.setSchema(SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(resource));
+                final Unmarshaller unmarshaller = takeUnmarshaller();
+                config = (MockWebAppConfig) unmarshaller.unmarshal(new StringReader(document));
+                unmarshallers.offer(unmarshaller);
             } catch (Exception e) {
-                throw new Exception("Failed loading XSD schema file", e);
+                throw new Exception("Failed parsing mapping", e);
+            }
+
+            // Validate the mapping.
+            try {
+                assert config.mappings != null && config.mappings.size() == 1 : "The fragment must contain exactly one mapping";
+                config.mappings.get(0).validate();
+            } catch (Throwable t) {
+                throw new Exception("Failed validating mapping", t);
+            }
+
+            return config.mappings.get(0);
+        }
+
+        /**
+         * Copy a {@link Mapping}, by writing it as a {@code <mapping>} XML fragment and parsing it again.
+         *
+         * @param mapping the mapping to copy, compiled or not.
+         * @return the valid, not compiled copy.
+         * @throws Exception if the mapping could not be written or parsed.
+         */
+        public static Mapping copyMapping(Mapping mapping) throws Exception {
+            initContext();
+            final StringWriter writer = new StringWriter();
+            final Marshaller marshaller = context.createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+            marshaller.marshal(new JAXBElement<Mapping>(new QName(NAMESPACE, "mapping"), Mapping.class, mapping), writer);
+            return parseMapping(writer.toString());
+        }
+
+        /**
+         * Parse a config file or directory, and the files it includes.
+         *
+         * @param file     the config file or directory.
+         * @param previous the previous compiled config, whose unmodified files are not parsed again, can be null.
+         * @return the documents of the config file or directory, with their {@link Document#includes} set.
+         * @throws Exception if a file could not be read or was not valid against the XSD schema, or is included more
+         *                   than once.
+         */
+        protected static List<Document> parseDocuments(File file, MockWebAppConfig previous) throws Exception {
+            final Map<File, Document> parsed = new HashMap<File, Document>();
+            if (previous != null && previous.documents != null)
+                for (Document document : previous.documents) parsed.put(document.file, document);
+            final Set<File> seen = new HashSet<File>();
+            final List<Document> roots = new ArrayList<Document>();
+            for (File root : listFiles(file)) {
+                seen.add(root);
+                roots.add(new Document(root));
+            }
+            List<Document> pending = roots;
+            while (!pending.isEmpty()) {
+                unmarshal(pending, parsed);
+                final List<Document> next = new ArrayList<Document>();
+                for (Document document : pending) {
+                    if (document.content.includes == null) continue;
+                    for (String include : document.content.includes) {
+                        if (include.trim().length() == 0)
+                            throw new Exception("The config file " + document.file + " has an empty include");
+                        File target = new File(include.trim());
+                        if (!target.isAbsolute()) target = new File(document.file.getParentFile(), include.trim());
+                        for (File included : listFiles(target)) {
+                            if (!seen.add(included))
+                                throw new Exception("The config file " + included + " is included more than once");
+                            final Document child = new Document(included);
+                            document.includes.add(child);
+                            next.add(child);
+                        }
+                    }
+                }
+                pending = next;
+            }
+            return roots;
+        }
+
+        /**
+         * List the config files of a path.
+         *
+         * @param file a config file, or a directory of config files.
+         * @return the canonical config file, or the {@code .xml} files of the directory by name order.
+         * @throws Exception if the path could not be read.
+         */
+        protected static List<File> listFiles(File file) throws Exception {
+            final File canonical = file.getCanonicalFile();
+            if (canonical.isFile()) return Collections.singletonList(canonical);
+            final File[] children = canonical.listFiles();
+            if (children == null) throw new Exception("The config file " + file + " could not be read");
+            Arrays.sort(children);
+            final List<File> files = new ArrayList<File>();
+            for (File child : children) if (child.isFile() && child.getName().endsWith(".xml")) files.add(child);
+            return files;
+        }
+
+        /**
+         * Unmarshall documents, in parallel if there are several of them.
+         * <p/>
+         * Each worker thread takes an {@link Unmarshaller} from the shared pool for each document.
+         *
+         * @param documents the documents to unmarshall.
+         * @param parsed    the documents already parsed, by file.
+         * @throws Exception if a file could not be read or was not valid against the XSD schema.
+         */
+        protected static void unmarshal(List<Document> documents, Map<File, Document> parsed) throws Exception {
+            final List<Document> modified = new ArrayList<Document>();
+            for (Document document : documents) {
+                final Document previous = parsed.get(document.file);
+                if (previous != null && previous.lastModified == document.lastModified && previous.length == document.length)
+                    document.content = previous.content;
+                else modified.add(document);
+            }
+            final int threads = Math.min(modified.size(), Runtime.getRuntime().availableProcessors());
+            if (threads <= 1) {
+                for (Document document : modified) document.unmarshal();
+                return;
+            }
+            final AtomicInteger next = new AtomicInteger();
+            final ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                final List<Future<Void>> workers = new ArrayList<Future<Void>>(threads);
+                for (int i = 0; i < threads; i++) {
+                    workers.add(executor.submit(new Callable<Void>() {
+                        public Void call() throws Exception {
+                            for (int j = next.getAndIncrement(); j < modified.size(); j = next.getAndIncrement())
+                                modified.get(j).unmarshal();
+                            return null;
+                        }
+                    }));
+                }
+                for (Future<Void> worker : workers) {
+                    try {
+                        worker.get();
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+                        throw e;
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        /**
+         * Merge parsed config documents.
+         *
+         * @param roots the documents of the config file or directory.
+         * @return the config with the settings of the first document, and the mappings of all of them.
+         * @throws Exception if there is no document.
+         */
+        protected static MockWebAppConfig merge(List<Document> roots) throws Exception {
+            if (roots.isEmpty()) throw new Exception("The config directory does not contain any config file");
+            final MockWebAppConfig settings = roots.get(0).content;
+            final MockWebAppConfig config = new MockWebAppConfig();
+            config.matchingStrategy = settings.matchingStrategy;
+            config.adaptiveOrdering = settings.adaptiveOrdering;
+            config.matchCacheSize = settings.matchCacheSize;
+            config.warmup = settings.warmup;
+            config.proxy = settings.proxy;
+            config.mappings = new ArrayList<Mapping>();
+            config.documents = new ArrayList<Document>();
+            for (Document root : roots) root.merge(config);
+            return config;
+        }
+
+        /**
+         * Unmarshall a config document with an {@link Unmarshaller} and an {@link XMLReader} taken from the pools,
+         * setting the {@link Mapping#digest} of each mapping.
+         * <p/>
+         * They are given back only if the document was unmarshalled, so a failure never leaves them half reset. The
+         * readers resolve XInclude elements, so that bodies can be read from text files.
+         *
+         * @param source the document to unmarshall.
+         * @return the corresponding {@link MockWebAppConfig}, neither validated nor compiled.
+         * @throws Exception if the document could not be read or was not valid against the XSD schema.
+         */
+        protected static MockWebAppConfig unmarshal(InputSource source) throws Exception {
+            XMLReader reader = readers.poll();
+            if (reader == null) {
+                final SAXParserFactory factory = SAXParserFactory.newInstance();
+                factory.setNamespaceAware(true);
+                factory.setXIncludeAware(true);
+                reader = factory.newSAXParser().getXMLReader();
+            }
+            final Unmarshaller unmarshaller = takeUnmarshaller();
+            final MockWebAppConfig config = unmarshal(source, unmarshaller, reader);
+            unmarshallers.offer(unmarshaller);
+            readers.offer(reader);
+            return config;
+        }
+
+        /**
+         * Unmarshall a config document, setting the {@link Mapping#digest} of each mapping.
+         *
+         * @param source       the document to unmarshall.
+         * @param unmarshaller the unmarshaller to use, not used by other threads in the meantime.
+         * @param reader       the reader to use, not used by other threads in the meantime.
+         * @return the corresponding {@link MockWebAppConfig}, neither validated nor compiled.
+         * @throws Exception if the document could not be read or was not valid against the XSD schema.
+         */
+        protected static MockWebAppConfig unmarshal(InputSource source, Unmarshaller unmarshaller, XMLReader reader) throws Exception {
+
+            // Insert the digester between the reader and the unmarshaller. Unmarshalling from a SAXSource rather than
+            // through an UnmarshallerHandler lets JAXB skip interning names the reader already interned. JAXB resets
+            // the content handler once done, so only the first one is digested.
+            final ElementDigester[] digester = new ElementDigester[1];
+            final XMLFilterImpl filter = new XMLFilterImpl(reader) {
+                @Override
+                public void setContentHandler(ContentHandler handler) {
+                    if (digester[0] == null) super.setContentHandler(digester[0] = new ElementDigester(handler, "mapping"));
+                    else super.setContentHandler(handler);
+                }
+            };
+            final MockWebAppConfig config = (MockWebAppConfig) unmarshaller.unmarshal(new SAXSource(filter, source));
+            final List<String> digests = digester[0].getDigests();
+            if (config.mappings != null && digests.size() == config.mappings.size())
+                for (int i = 0; i < digests.size(); i++) config.mappings.get(i).digest = digests.get(i);
+            return config;
+        }
+
+        /**
+         * Take an idle JAXB {@link Unmarshaller} from the pool, creating one if there is none.
+         * <p/>
+         * The caller should give it back to {@link #unmarshallers} once done, unless unmarshalling failed.
+         *
+         * @return the unmarshaller, validating XML config files against the XSD schema.
+         * @throws Exception if the unmarshaller could not be created or the XSD schema file could not be loaded.
+         */
+        protected static Unmarshaller takeUnmarshaller() throws Exception {
+            Unmarshaller unmarshaller = unmarshallers.poll();
+            if (unmarshaller == null) {
+                initContext();
+                unmarshaller = context.createUnmarshaller();
+                unmarshaller.setSchema(schema);
+            }
+            return unmarshaller;
+        }
+
+        /**
+         * Initialize the shared JAXB {@link #context} and XSD {@link #schema}, once.
+         *
+         * @throws Exception if the context could not be created or the XSD schema file could not be loaded.
+         */
+        protected static void initContext() throws Exception {
+            if (schema != null) return;
+            synchronized (Parser.class) {
+                if (schema != null) return;
+
+                // Create the JAXB context.
+                context = JAXBContext.newInstance(MockWebAppConfig.class);
+
+                // Load the XSD schema.
+                try {
+                    URL resource = MockWebAppConfig.class.getClassLoader().getResource(XSD_SCHEMA_PATH);
+                    if (resource == null) resource = new URL(XSD_SCHEMA_TESTS_PATH);
+                    schema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(resource);
+                } catch (Exception e) {
+                    throw new Exception("Failed loading XSD schema file", e);
+                }
+            }
+        }
+
+        /**
+         * A config file, parsed but neither validated nor compiled.
+         *
+         * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+         * @since 1.0.0
+         */
+        @XmlTransient
+        protected static class Document {
+
+            /**
+             * The canonical config file.
+             */
+            protected final File file;
+
+            /**
+             * The modification date of {@link #file} before it was parsed.
+             */
+            protected final long lastModified;
+
+            /**
+             * The size of {@link #file} before it was parsed.
+             */
+            protected final long length;
+
+            /**
+             * The content of {@link #file}.
+             */
+            protected MockWebAppConfig content;
+
+            /**
+             * The documents of the files included by this one, in order.
+             */
+            protected final List<Document> includes = new ArrayList<Document>();
+
+            /**
+             * Build a new {@link Document}.
+             *
+             * @param file the canonical config file.
+             */
+            protected Document(File file) {
+                this.file = file;
+                this.lastModified = file.lastModified();
+                this.length = file.length();
+            }
+
+            /**
+             * Unmarshall {@link #file} into {@link #content}, with an {@link Unmarshaller} from the pool.
+             *
+             * @throws Exception if the file could not be read or was not valid against the XSD schema.
+             */
+            protected void unmarshal() throws Exception {
+                try {
+                    content = Parser.unmarshal(new InputSource(file.toURI().toString()));
+                } catch (Exception e) {
+                    throw new Exception("Failed parsing " + file, e);
+                }
+            }
+
+            /**
+             * Add the mappings of the included documents then of this one to a config.
+             *
+             * @param config the config to add the mappings and documents to.
+             */
+            protected void merge(MockWebAppConfig config) {
+                for (Document include : includes) include.merge(config);
+                if (content.mappings != null) config.mappings.addAll(content.mappings);
+                config.documents.add(this);
             }
         }
     }
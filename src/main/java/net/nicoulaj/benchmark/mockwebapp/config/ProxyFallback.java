@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config;
+
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.CachedResponse;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Metrics;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.RequestView;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.ResponseCache;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlTransient;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link ProxyFallback} forwards the requests matching no {@link Mapping} to an upstream server.
+ * <p/>
+ * Requests are sent with {@link HttpURLConnection}, which keeps idle upstream connections alive in a pool shared by
+ * the JVM (sized by the {@code http.maxConnections} system property). Request and response bodies are streamed in
+ * both directions through a small buffer, starting with the body prefix already read by body conditions. Hop-by-hop
+ * headers are not forwarded.
+ * <p/>
+ * If {@link #cacheSize} is set, complete {@code 200} responses to {@code GET} requests are kept in a
+ * {@link ResponseCache}, by request URI and query string, and replayed without calling upstream again. Responses that
+ * may be specific to a client are neither cached nor replayed: responses to requests with an {@code Authorization}
+ * header, and responses with a {@code Set-Cookie} header, a {@code Cache-Control} header with {@code no-store},
+ * {@code no-cache} or {@code private}, or a {@code Vary: *} header. A response with another {@code Vary} header is
+ * only replayed to requests with the same values of the headers it lists.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class ProxyFallback implements ConfigFragment {
+
+    /**
+     * The default {@link #connectTimeout}, in milliseconds.
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+
+    /**
+     * The default {@link #readTimeout}, in milliseconds.
+     */
+    public static final int DEFAULT_READ_TIMEOUT = 30000;
+
+    /**
+     * The default {@link #maxCachedBody}, in bytes.
+     */
+    public static final int DEFAULT_MAX_CACHED_BODY = 1048576;
+
+    /**
+     * The headers that are not forwarded, in lower case: the hop-by-hop ones, and those set for each connection.
+     */
+    protected static final Set<String> UNFORWARDED_HEADERS = new HashSet<String>(Arrays.asList(
+            "connection", "keep-alive", "proxy-authenticate", "proxy-authorization", "te", "trailer", "trailers",
+            "transfer-encoding", "upgrade", "host", "content-length"));
+
+    /**
+     * The size of the buffer used to stream bodies.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The upstream base URL, eg: {@code http://localhost:8081}. The request URI and query string are appended to it.
+     */
+    @XmlAttribute(required = true)
+    public String url;
+
+    /**
+     * The upstream connection timeout in milliseconds, defaults to {@link #DEFAULT_CONNECT_TIMEOUT}.
+     */
+    @XmlAttribute(name = "connect-timeout", required = false)
+    public Integer connectTimeout;
+
+    /**
+     * The upstream read timeout in milliseconds, defaults to {@link #DEFAULT_READ_TIMEOUT}.
+     */
+    @XmlAttribute(name = "read-timeout", required = false)
+    public Integer readTimeout;
+
+    /**
+     * The maximum total size of the cached responses, in bytes.
+     * <p/>
+     * Can be null, in which case responses are not cached.
+     */
+    @XmlAttribute(name = "cache-size", required = false)
+    public Long cacheSize;
+
+    /**
+     * The maximum size of a cached response body in bytes, defaults to {@link #DEFAULT_MAX_CACHED_BODY}.
+     */
+    @XmlAttribute(name = "max-cached-body", required = false)
+    public Integer maxCachedBody;
+
+    /**
+     * The {@link #url} without trailing slash, or null if not compiled.
+     */
+    @XmlTransient
+    protected String baseURL;
+
+    /**
+     * The upstream responses cache, or null if disabled.
+     */
+    @XmlTransient
+    protected ResponseCache cache;
+
+    /**
+     * The counter for forwarded requests.
+     */
+    @XmlTransient
+    protected final AtomicLong forwarded = Metrics.counter("proxy.forwarded");
+
+    /**
+     * The counter for failed upstream calls.
+     */
+    @XmlTransient
+    protected final AtomicLong errors = Metrics.counter("proxy.errors");
+
+    /**
+     * Assert this {@link ProxyFallback} is valid.
+     * <p/>
+     * Checks everything that cannot be enforced through the XML schema.
+     *
+     * @throws Throwable if an element of the {@link ProxyFallback} is invalid.
+     */
+    public void validate() throws Throwable {
+        assert url != null : "The proxy url must be defined";
+        assert isHttpURL(url) : "The proxy url must be an absolute http or https URL";
+        assert connectTimeout == null || connectTimeout > 0 : "The proxy connect-timeout must be positive";
+        assert readTimeout == null || readTimeout > 0 : "The proxy read-timeout must be positive";
+        assert cacheSize == null || cacheSize > 0 : "The proxy cache-size must be positive";
+        assert maxCachedBody == null || maxCachedBody > 0 : "The proxy max-cached-body must be positive";
+    }
+
+    /**
+     * Test whether a string is an absolute http or https URL.
+     *
+     * @param url the string.
+     * @return true if valid.
+     */
+    private static boolean isHttpURL(String url) {
+        try {
+            final String protocol = new URL(url).getProtocol();
+            return "http".equals(protocol) || "https".equals(protocol);
+        } catch (MalformedURLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Compile this {@link ProxyFallback} for handling requests, setting up the {@link #cache} if enabled.
+     */
+    public void compile() {
+        baseURL = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        cache = cacheSize == null ? null : new ResponseCache(cacheSize, "proxy.cache");
+    }
+
+    /**
+     * Process an HTTP request/response by forwarding it upstream, or replaying a cached response.
+     * <p/>
+     * Answers {@code 501 Not Implemented} for methods {@link HttpURLConnection} cannot send, and
+     * {@code 502 Bad Gateway} if the upstream server could not be reached.
+     *
+     * @param req  the {@link HttpServletRequest} to process.
+     * @param resp the {@link HttpServletResponse} to use.
+     * @throws IOException if writing the response failed.
+     */
+    public void process(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (baseURL == null) compile();
+        final String method = req.getMethod();
+        final String query = req.getQueryString();
+        final String target = query == null || query.length() == 0 ? req.getRequestURI() : req.getRequestURI() + '?' + query;
+        final boolean cacheable = cache != null && "GET".equals(method) && req.getHeader("Authorization") == null;
+        if (cacheable) {
+            final CachedResponse cached = cache.get(target);
+            if (cached != null && cached.matches(req)) {
+                cached.writeTo(resp, false);
+                return;
+            }
+        }
+
+        forwarded.incrementAndGet();
+        final HttpURLConnection connection = (HttpURLConnection) new URL(baseURL + target).openConnection();
+        try {
+            connection.setRequestMethod(method);
+        } catch (ProtocolException e) {
+            resp.setStatus(HttpServletResponse.SC_NOT_IMPLEMENTED);
+            return;
+        }
+        connection.setConnectTimeout(connectTimeout == null ? DEFAULT_CONNECT_TIMEOUT : connectTimeout);
+        connection.setReadTimeout(readTimeout == null ? DEFAULT_READ_TIMEOUT : readTimeout);
+        connection.setInstanceFollowRedirects(false);
+        connection.setUseCaches(false);
+        for (Enumeration<?> names = req.getHeaderNames(); names.hasMoreElements(); ) {
+            final String name = (String) names.nextElement();
+            if (UNFORWARDED_HEADERS.contains(name.toLowerCase(Locale.ENGLISH))) continue;
+            for (Enumeration<?> values = req.getHeaders(name); values.hasMoreElements(); )
+                connection.addRequestProperty(name, (String) values.nextElement());
+        }
+
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        final int status;
+        final InputStream body;
+        try {
+            final int length = req.getContentLength();
+            final InputStream in = length == 0 ? null : RequestView.of(req).getBodyStream();
+            final int first = in == null ? -1 : in.read(buffer);
+            if (first >= 0) {
+                connection.setDoOutput(true);
+                if (length > 0) connection.setFixedLengthStreamingMode(length);
+                else connection.setChunkedStreamingMode(BUFFER_SIZE);
+                final OutputStream upstream = connection.getOutputStream();
+                upstream.write(buffer, 0, first);
+                copy(in, upstream, null, buffer);
+                upstream.close();
+            }
+            status = connection.getResponseCode();
+            body = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        } catch (IOException e) {
+            errors.incrementAndGet();
+            connection.disconnect();
+            resp.setStatus(HttpServletResponse.SC_BAD_GATEWAY);
+            return;
+        }
+
+        resp.setStatus(status);
+        final List<String> headerNames = new ArrayList<String>();
+        final List<String> headerValues = new ArrayList<String>();
+        final List<String> varyNames = new ArrayList<String>();
+        boolean storable = true;
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            final String name = header.getKey();
+            if (name == null) continue;
+            final String lowerCaseName = name.toLowerCase(Locale.ENGLISH);
+            if (UNFORWARDED_HEADERS.contains(lowerCaseName)) continue;
+            for (String value : header.getValue()) {
+                resp.addHeader(name, value);
+                headerNames.add(name);
+                headerValues.add(value);
+                if ("set-cookie".equals(lowerCaseName) || "set-cookie2".equals(lowerCaseName)) storable = false;
+                else if ("cache-control".equals(lowerCaseName) && !isShared(value)) storable = false;
+                else if ("vary".equals(lowerCaseName)) {
+                    for (String vary : value.split(",")) {
+                        if ("*".equals(vary.trim())) storable = false;
+                        else if (vary.trim().length() > 0) varyNames.add(vary.trim());
+                    }
+                }
+            }
+        }
+        final int contentLength = connection.getContentLength();
+        if (contentLength >= 0) resp.setContentLength(contentLength);
+        if (body == null) return;
+
+        final int maxBody = maxCachedBody == null ? DEFAULT_MAX_CACHED_BODY : maxCachedBody;
+        final ByteArrayOutputStream copy = cacheable && storable && status == HttpServletResponse.SC_OK && contentLength <= maxBody
+                                           ? new ByteArrayOutputStream(contentLength < 0 ? BUFFER_SIZE : contentLength)
+                                           : null;
+        try {
+            final long size = copy(body, resp.getOutputStream(), copy, buffer);
+            if (copy != null && size <= maxBody) {
+                cache.put(target, new CachedResponse(status,
+                                                     headerNames.toArray(new String[headerNames.size()]),
+                                                     headerValues.toArray(new String[headerValues.size()]),
+                                                     copy.toByteArray(),
+                                                     varyNames.toArray(new String[varyNames.size()]), req));
+            }
+        } finally {
+            body.close();
+        }
+    }
+
+    /**
+     * Test whether a {@code Cache-Control} response header lets a shared cache replay the response without asking
+     * upstream again.
+     *
+     * @param cacheControl the header value.
+     * @return false if the value has a {@code no-store}, {@code no-cache} or {@code private} directive.
+     */
+    private static boolean isShared(String cacheControl) {
+        for (String directive : cacheControl.split(",")) {
+            final String name = directive.trim().toLowerCase(Locale.ENGLISH);
+            if (name.startsWith("no-store") || name.startsWith("no-cache") || name.startsWith("private")) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stream bytes from an input to an output, optionally keeping a copy.
+     *
+     * @param in     the input, read up to its end.
+     * @param out    the output.
+     * @param copy   the output to copy the bytes to, abandoned past {@link #maxCachedBody}, may be null.
+     * @param buffer the buffer to use.
+     * @return the number of bytes streamed.
+     * @throws IOException if reading or writing failed.
+     */
+    private long copy(InputStream in, OutputStream out, ByteArrayOutputStream copy, byte[] buffer) throws IOException {
+        final int maxBody = maxCachedBody == null ? DEFAULT_MAX_CACHED_BODY : maxCachedBody;
+        long size = 0;
+        int count;
+        while ((count = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, count);
+            size += count;
+            if (copy != null && size <= maxBody) copy.write(buffer, 0, count);
+        }
+        return size;
+    }
+}
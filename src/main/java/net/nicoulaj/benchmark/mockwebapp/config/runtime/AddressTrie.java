@@ -0,0 +1,531 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.runtime;
+
+import javax.xml.bind.annotation.XmlTransient;
+import java.util.Arrays;
+
+/**
+ * A binary trie over IP addresses bits, mapping address ranges to the indexes of the conditions declaring them.
+ * <p/>
+ * IPv4 and IPv6 addresses are stored in two separate trees (IPv4-mapped IPv6 addresses are stored as IPv4). Each
+ * node holds the set of conditions matching all addresses under it, including the ones inherited from its ancestors,
+ * so a lookup is a single walk down the tree whose cost only depends on the address length. Lookups parse the textual
+ * address without allocating, and the last result is cached per thread so that all conditions evaluated for a given
+ * request share a single walk.
+ * <p/>
+ * Ranges must all be {@link #add(String, int) added} before the trie is published to other threads.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @see net.nicoulaj.benchmark.mockwebapp.config.when.RemoteAddressCondition
+ * @since 1.0.0
+ */
+@XmlTransient
+public final class AddressTrie {
+
+    /**
+     * The empty set of conditions.
+     */
+    private static final long[] NONE = new long[0];
+
+    /**
+     * The IPv4 addresses tree.
+     */
+    private final Tree v4 = new Tree(32);
+
+    /**
+     * The IPv6 addresses tree.
+     */
+    private final Tree v6 = new Tree(128);
+
+    /**
+     * The last lookup done by each thread.
+     */
+    private final ThreadLocal<Lookup> lookups = new ThreadLocal<Lookup>() {
+        @Override
+        protected Lookup initialValue() {
+            return new Lookup();
+        }
+    };
+
+    /**
+     * Test whether an address range specification is valid.
+     *
+     * @param spec the range specification, see {@link #add(String, int)}.
+     * @return true if the specification can be added to a trie.
+     */
+    public static boolean isValid(String spec) {
+        try {
+            new AddressTrie().add(spec, 0);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Register an address range for a condition.
+     *
+     * @param spec  the range specification, either a single address ({@code 10.0.0.1}, {@code ::1}), a CIDR block
+     *              ({@code 10.0.0.0/8}, {@code 2001:db8::/32}) or an inclusive range ({@code 10.0.0.1-10.0.0.20}).
+     * @param index the index of the condition.
+     * @throws IllegalArgumentException if the specification is invalid.
+     */
+    public void add(String spec, int index) {
+        final String trimmed = spec.trim();
+        final long[] start = new long[2];
+        final int slash = trimmed.indexOf('/');
+        final int dash = trimmed.indexOf('-');
+        if (slash >= 0) {
+            final int bits = parse(trimmed, 0, slash, start);
+            int length;
+            try {
+                length = Integer.parseInt(trimmed.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid prefix length in '" + spec + "'");
+            }
+            if (bits == 32 && start[1] >>> 32 != 0) length -= 96; // IPv4-mapped IPv6 block.
+            if (bits == 0 || length < 0 || length > bits) throw new IllegalArgumentException("Invalid CIDR block '" + spec + "'");
+            start[1] &= bits == 32 ? 0xFFFFFFFFL : -1L;
+            tree(bits).addPrefix(start[0], start[1], length, index);
+        } else if (dash >= 0) {
+            final long[] end = new long[2];
+            final int bits = parse(trimmed, 0, dash, start);
+            if (bits == 0 || bits != parse(trimmed, dash + 1, trimmed.length(), end))
+                throw new IllegalArgumentException("Invalid address range '" + spec + "'");
+            if (bits == 32) {
+                start[1] &= 0xFFFFFFFFL;
+                end[1] &= 0xFFFFFFFFL;
+            }
+            if (compare(start[0], start[1], end[0], end[1]) > 0)
+                throw new IllegalArgumentException("Invalid address range '" + spec + "'");
+            tree(bits).addRange(start[0], start[1], end[0], end[1], index);
+        } else {
+            final int bits = parse(trimmed, 0, trimmed.length(), start);
+            if (bits == 0) throw new IllegalArgumentException("Invalid address '" + spec + "'");
+            tree(bits).addPrefix(start[0], start[1], bits, index);
+        }
+    }
+
+    /**
+     * Test whether an address belongs to the ranges of a condition.
+     *
+     * @param address the textual address to test.
+     * @param index   the index of the condition.
+     * @return true if the address belongs to one of the ranges registered for the condition.
+     */
+    public boolean matches(String address, int index) {
+        final long[] conditions = lookup(address);
+        final int word = index >>> 6;
+        return word < conditions.length && (conditions[word] & (1L << index)) != 0;
+    }
+
+    /**
+     * Get the set of conditions matching an address.
+     *
+     * @param address the textual address to look up.
+     * @return the bitset of matching conditions indexes, must not be modified.
+     */
+    public long[] lookup(String address) {
+        final Lookup lookup = lookups.get();
+        if (address == null) return NONE;
+        if (!address.equals(lookup.address)) {
+            final int bits = parse(address, 0, address.length(), lookup.scratch);
+            lookup.result = bits == 0 ? NONE : tree(bits).lookup(lookup.scratch[0], lookup.scratch[1]);
+            lookup.address = address;
+        }
+        return lookup.result;
+    }
+
+    /**
+     * Get the tree for an address length.
+     *
+     * @param bits the address length, 32 or 128.
+     * @return the matching tree.
+     */
+    private Tree tree(int bits) {
+        return bits == 32 ? v4 : v6;
+    }
+
+    /**
+     * Parse a textual IPv4 or IPv6 address.
+     * <p/>
+     * IPv4-mapped IPv6 addresses are returned as IPv4 addresses, with the mapping prefix left in the upper bits of
+     * {@code out[1]} so that callers can adjust prefix lengths.
+     *
+     * @param s    the text to parse.
+     * @param from the index of the first character of the address.
+     * @param to   the index after the last character of the address.
+     * @param out  receives the address high and low 64 bits.
+     * @return 32 for an IPv4 address, 128 for an IPv6 address, 0 if the text is not a valid address.
+     */
+    static int parse(CharSequence s, int from, int to, long[] out) {
+        for (int i = from; i < to; i++) {
+            final char c = s.charAt(i);
+            if (c == ':') return parse6(s, from, to, out);
+            if (c == '.') break;
+        }
+        final long v4 = parse4(s, from, to);
+        if (v4 < 0) return 0;
+        out[0] = 0;
+        out[1] = v4;
+        return 32;
+    }
+
+    /**
+     * Parse a textual IPv4 address.
+     *
+     * @param s    the text to parse.
+     * @param from the index of the first character of the address.
+     * @param to   the index after the last character of the address.
+     * @return the address as an unsigned 32 bits value, or -1 if the text is not a valid address.
+     */
+    private static long parse4(CharSequence s, int from, int to) {
+        long value = 0;
+        int octets = 0;
+        int i = from;
+        while (i < to) {
+            int octet = 0;
+            int digits = 0;
+            char c;
+            while (i < to && (c = s.charAt(i)) >= '0' && c <= '9' && digits < 4) {
+                octet = octet * 10 + c - '0';
+                digits++;
+                i++;
+            }
+            if (digits == 0 || digits > 3 || octet > 255 || ++octets > 4) return -1;
+            value = value << 8 | octet;
+            if (i < to && (s.charAt(i) != '.' || ++i == to)) return -1;
+        }
+        return octets == 4 ? value : -1;
+    }
+
+    /**
+     * Parse a textual IPv6 address, possibly compressed ({@code ::}), with an embedded IPv4 address or a zone index.
+     *
+     * @param s    the text to parse.
+     * @param from the index of the first character of the address.
+     * @param to   the index after the last character of the address.
+     * @param out  receives the address high and low 64 bits.
+     * @return 128, 32 for an IPv4-mapped address or 0 if the text is not a valid address.
+     */
+    private static int parse6(CharSequence s, int from, int to, long[] out) {
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) == '%') {
+                to = i;
+                break;
+            }
+        }
+        long headHi = 0, headLo = 0, tailHi = 0, tailLo = 0;
+        int head = 0, tail = 0;
+        boolean compressed = false;
+        int i = from;
+        if (to - i >= 2 && s.charAt(i) == ':' && s.charAt(i + 1) == ':') {
+            compressed = true;
+            i += 2;
+        }
+        while (i < to) {
+            final int start = i;
+            int group = 0;
+            int digits = 0;
+            int digit;
+            while (i < to && digits < 5 && (digit = Character.digit(s.charAt(i), 16)) >= 0) {
+                group = group << 4 | digit;
+                digits++;
+                i++;
+            }
+            final int groups;
+            final long value;
+            if (i < to && s.charAt(i) == '.') {
+                final long v4 = parse4(s, start, to);
+                if (v4 < 0) return 0;
+                groups = 2;
+                value = v4;
+                i = to;
+            } else {
+                if (digits == 0 || digits > 4) return 0;
+                groups = 1;
+                value = group;
+            }
+            final int shift = 16 * groups;
+            if (compressed) {
+                tailHi = tailHi << shift | tailLo >>> (64 - shift);
+                tailLo = tailLo << shift | value;
+                tail += groups;
+            } else {
+                headHi = headHi << shift | headLo >>> (64 - shift);
+                headLo = headLo << shift | value;
+                head += groups;
+            }
+            if (i == to) break;
+            if (s.charAt(i++) != ':' || i == to) return 0;
+            if (s.charAt(i) == ':') {
+                if (compressed) return 0;
+                compressed = true;
+                i++;
+            }
+        }
+        if (compressed ? head + tail > 7 : head != 8) return 0;
+
+        // Move the head groups to the upper bits and merge the tail groups.
+        final int shift = 16 * (8 - head);
+        long hi, lo;
+        if (shift == 0) {
+            hi = headHi;
+            lo = headLo;
+        } else if (shift < 64) {
+            hi = headHi << shift | headLo >>> (64 - shift);
+            lo = headLo << shift;
+        } else if (shift < 128) {
+            hi = headLo << (shift - 64);
+            lo = 0;
+        } else {
+            hi = 0;
+            lo = 0;
+        }
+        out[0] = hi | tailHi;
+        out[1] = lo | tailLo;
+
+        if (out[0] == 0 && out[1] >>> 32 == 0xFFFFL) return 32;
+        return 128;
+    }
+
+    /**
+     * Compare two unsigned 128 bits values.
+     *
+     * @param hi1 the first value high bits.
+     * @param lo1 the first value low bits.
+     * @param hi2 the second value high bits.
+     * @param lo2 the second value low bits.
+     * @return a negative number, zero or a positive number if the first value is lower, equal or greater than the second.
+     */
+    private static int compare(long hi1, long lo1, long hi2, long lo2) {
+        if (hi1 != hi2) return hi1 + Long.MIN_VALUE < hi2 + Long.MIN_VALUE ? -1 : 1;
+        if (lo1 != lo2) return lo1 + Long.MIN_VALUE < lo2 + Long.MIN_VALUE ? -1 : 1;
+        return 0;
+    }
+
+    /**
+     * Set a bit in a bitset, growing it if needed.
+     *
+     * @param bitset the bitset, may be null.
+     * @param index  the bit to set.
+     * @return the updated bitset.
+     */
+    private static long[] set(long[] bitset, int index) {
+        final int word = index >>> 6;
+        final long[] result = bitset == null ? new long[word + 1] : bitset.length <= word ? Arrays.copyOf(bitset, word + 1) : bitset;
+        result[word] |= 1L << index;
+        return result;
+    }
+
+    /**
+     * A binary tree over the bits of addresses of a given length.
+     *
+     * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+     * @since 1.0.0
+     */
+    private static final class Tree {
+
+        /**
+         * The addresses length.
+         */
+        final int bits;
+
+        /**
+         * The nodes children, {@code children[2 * node + bit]}, 0 if none.
+         */
+        int[] children = new int[32];
+
+        /**
+         * The nodes sets of matching conditions, including inherited ones, null if the node ends no range.
+         */
+        long[][] conditions = new long[16][];
+
+        /**
+         * The number of nodes, the root is node 0.
+         */
+        int size = 1;
+
+        /**
+         * Build a new {@link Tree}.
+         *
+         * @param bits the addresses length.
+         */
+        Tree(int bits) {
+            this.bits = bits;
+        }
+
+        /**
+         * Get an address bit.
+         *
+         * @param hi    the address high bits.
+         * @param lo    the address low bits.
+         * @param depth the bit position, starting from the most significant one.
+         * @return 0 or 1.
+         */
+        int bit(long hi, long lo, int depth) {
+            final int position = bits - 1 - depth;
+            return (int) ((position >= 64 ? hi >>> (position - 64) : lo >>> position) & 1L);
+        }
+
+        /**
+         * Get the deepest set of conditions on the path of an address.
+         *
+         * @param hi the address high bits.
+         * @param lo the address low bits.
+         * @return the bitset of matching conditions indexes.
+         */
+        long[] lookup(long hi, long lo) {
+            long[] result = conditions[0] == null ? NONE : conditions[0];
+            int node = 0;
+            for (int depth = 0; depth < bits; depth++) {
+                node = children[2 * node + bit(hi, lo, depth)];
+                if (node == 0) break;
+                if (conditions[node] != null) result = conditions[node];
+            }
+            return result;
+        }
+
+        /**
+         * Register a CIDR block.
+         *
+         * @param hi     the block address high bits.
+         * @param lo     the block address low bits.
+         * @param length the prefix length.
+         * @param index  the index of the condition.
+         */
+        void addPrefix(long hi, long lo, int length, int index) {
+            long[] inherited = conditions[0];
+            int node = 0;
+            for (int depth = 0; depth < length; depth++) {
+                final int slot = 2 * node + bit(hi, lo, depth);
+                if (children[slot] == 0) {
+                    final int child = newNode();
+                    children[slot] = child;
+                }
+                node = children[slot];
+                if (conditions[node] != null) inherited = conditions[node];
+            }
+            if (conditions[node] == null && inherited != null) conditions[node] = inherited.clone();
+            mark(node, index);
+        }
+
+        /**
+         * Register an inclusive address range, as the minimal set of CIDR blocks covering it.
+         *
+         * @param startHi the first address high bits.
+         * @param startLo the first address low bits.
+         * @param endHi   the last address high bits.
+         * @param endLo   the last address low bits.
+         * @param index   the index of the condition.
+         */
+        void addRange(long startHi, long startLo, long endHi, long endLo, int index) {
+            addRange(0, 0, 0, startHi, startLo, endHi, endLo, index);
+        }
+
+        /**
+         * Register the part of an inclusive address range under a given block.
+         *
+         * @param hi      the block address high bits.
+         * @param lo      the block address low bits.
+         * @param length  the block prefix length.
+         * @param startHi the first address high bits.
+         * @param startLo the first address low bits.
+         * @param endHi   the last address high bits.
+         * @param endLo   the last address low bits.
+         * @param index   the index of the condition.
+         */
+        private void addRange(long hi, long lo, int length, long startHi, long startLo, long endHi, long endLo, int index) {
+            final int free = bits - length;
+            final long lastHi = free > 64 ? hi | -1L >>> (128 - free) : hi;
+            final long lastLo = free >= 64 ? -1L : lo | ((1L << free) - 1);
+            if (compare(lastHi, lastLo, startHi, startLo) < 0 || compare(hi, lo, endHi, endLo) > 0) return;
+            if (compare(hi, lo, startHi, startLo) >= 0 && compare(lastHi, lastLo, endHi, endLo) <= 0) {
+                addPrefix(hi, lo, length, index);
+                return;
+            }
+            final int position = free - 1;
+            addRange(hi, lo, length + 1, startHi, startLo, endHi, endLo, index);
+            if (position >= 64) addRange(hi | 1L << (position - 64), lo, length + 1, startHi, startLo, endHi, endLo, index);
+            else addRange(hi, lo | 1L << position, length + 1, startHi, startLo, endHi, endLo, index);
+        }
+
+        /**
+         * Add a condition to a node and to all the nodes ending a range under it.
+         *
+         * @param node  the node.
+         * @param index the index of the condition.
+         */
+        private void mark(int node, int index) {
+            conditions[node] = set(conditions[node], index);
+            markDescendants(node, index);
+        }
+
+        /**
+         * Add a condition to all the nodes ending a range under a node.
+         *
+         * @param node  the node.
+         * @param index the index of the condition.
+         */
+        private void markDescendants(int node, int index) {
+            for (int bit = 0; bit < 2; bit++) {
+                final int child = children[2 * node + bit];
+                if (child != 0) {
+                    if (conditions[child] != null) conditions[child] = set(conditions[child], index);
+                    markDescendants(child, index);
+                }
+            }
+        }
+
+        /**
+         * Allocate a new node.
+         *
+         * @return the node index.
+         */
+        private int newNode() {
+            if (size == conditions.length) {
+                children = Arrays.copyOf(children, 4 * size);
+                conditions = Arrays.copyOf(conditions, 2 * size);
+            }
+            return size++;
+        }
+    }
+
+    /**
+     * The last lookup done by a thread.
+     *
+     * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+     * @since 1.0.0
+     */
+    private static final class Lookup {
+
+        /**
+         * The last looked up address.
+         */
+        String address;
+
+        /**
+         * The set of conditions matching {@link #address}.
+         */
+        long[] result = NONE;
+
+        /**
+         * Scratch space for parsing addresses.
+         */
+        final long[] scratch = new long[2];
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.runtime;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.bind.annotation.XmlTransient;
+import java.io.IOException;
+import java.util.Enumeration;
+
+/**
+ * A complete upstream response, kept in a {@link ResponseCache}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+@XmlTransient
+public final class CachedResponse {
+
+    /**
+     * The fixed memory overhead accounted for each response, in bytes.
+     */
+    private static final int OVERHEAD = 128;
+
+    /**
+     * The status code.
+     */
+    private final int status;
+
+    /**
+     * The header names, parallel to {@link #headerValues}.
+     */
+    private final String[] headerNames;
+
+    /**
+     * The header values, parallel to {@link #headerNames}.
+     */
+    private final String[] headerValues;
+
+    /**
+     * The body.
+     */
+    private final byte[] body;
+
+    /**
+     * The names of the request headers listed by the {@code Vary} response header, parallel to {@link #varyValues}.
+     */
+    private final String[] varyNames;
+
+    /**
+     * The values of the {@link #varyNames} headers in the request this response was cached for, null if absent.
+     */
+    private final String[] varyValues;
+
+    /**
+     * Build a new {@link CachedResponse}.
+     *
+     * @param status       the status code.
+     * @param headerNames  the header names, parallel to {@code headerValues}.
+     * @param headerValues the header values, parallel to {@code headerNames}.
+     * @param body         the body.
+     */
+    public CachedResponse(int status, String[] headerNames, String[] headerValues, byte[] body) {
+        this(status, headerNames, headerValues, body, new String[0], null);
+    }
+
+    /**
+     * Build a new {@link CachedResponse}, only replayed for requests with the same values of some headers.
+     *
+     * @param status       the status code.
+     * @param headerNames  the header names, parallel to {@code headerValues}.
+     * @param headerValues the header values, parallel to {@code headerNames}.
+     * @param body         the body.
+     * @param varyNames    the names of the request headers listed by the {@code Vary} response header.
+     * @param req          the request the response was received for.
+     */
+    public CachedResponse(int status, String[] headerNames, String[] headerValues, byte[] body, String[] varyNames,
+                          HttpServletRequest req) {
+        this.status = status;
+        this.headerNames = headerNames;
+        this.headerValues = headerValues;
+        this.body = body;
+        this.varyNames = varyNames;
+        this.varyValues = new String[varyNames.length];
+        for (int i = 0; i < varyNames.length; i++) varyValues[i] = getHeader(req, varyNames[i]);
+    }
+
+    /**
+     * Get all the values of a request header, joined.
+     *
+     * @param req  the request.
+     * @param name the header name.
+     * @return the values joined with commas, or null if the header is absent.
+     */
+    private static String getHeader(HttpServletRequest req, String name) {
+        StringBuilder joined = null;
+        for (Enumeration<?> values = req.getHeaders(name); values != null && values.hasMoreElements(); ) {
+            if (joined == null) joined = new StringBuilder();
+            else joined.append(',');
+            joined.append(values.nextElement());
+        }
+        return joined == null ? null : joined.toString();
+    }
+
+    /**
+     * Test whether this response can be replayed for a request, that is whether the request has the same values of
+     * the headers the response varies on.
+     *
+     * @param req the request.
+     * @return true if the response can be replayed.
+     */
+    public boolean matches(HttpServletRequest req) {
+        for (int i = 0; i < varyNames.length; i++) {
+            final String value = getHeader(req, varyNames[i]);
+            if (value == null ? varyValues[i] != null : !value.equals(varyValues[i])) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the approximate memory used by this response.
+     *
+     * @return the size, in bytes.
+     */
+    public long getWeight() {
+        long weight = OVERHEAD + body.length;
+        for (int i = 0; i < headerNames.length; i++) weight += 2 * (headerNames[i].length() + headerValues[i].length());
+        for (int i = 0; i < varyNames.length; i++)
+            weight += 2 * (varyNames[i].length() + (varyValues[i] == null ? 0 : varyValues[i].length()));
+        return weight;
+    }
+
+    /**
+     * Write this response.
+     *
+     * @param resp the {@link HttpServletResponse} to write to.
+     * @param head whether to skip the body, for {@code HEAD} requests.
+     * @throws IOException if writing the response failed.
+     */
+    public void writeTo(HttpServletResponse resp, boolean head) throws IOException {
+        resp.setStatus(status);
+        for (int i = 0; i < headerNames.length; i++) resp.addHeader(headerNames[i], headerValues[i]);
+        resp.setContentLength(body.length);
+        if (!head) resp.getOutputStream().write(body);
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.runtime;
+
+import javax.xml.bind.annotation.XmlTransient;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded concurrent cache evicting entries with the CLOCK (second chance) algorithm.
+ * <p/>
+ * Hits are lock-free: they only mark the entry as referenced. Insertions are serialized; when the cache is full, the
+ * clock hand sweeps the entries, clearing reference marks, and evicts the first entry not referenced since the last
+ * sweep.
+ *
+ * @param <K> the type of the keys.
+ * @param <V> the type of the values.
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+@XmlTransient
+public final class ClockCache<K, V> {
+
+    /**
+     * The entries, by key.
+     */
+    private final ConcurrentMap<K, Entry<K, V>> entries;
+
+    /**
+     * The entries, by clock slot.
+     */
+    private final Entry<?, ?>[] slots;
+
+    /**
+     * The number of used {@link #slots}.
+     */
+    private int size;
+
+    /**
+     * The clock hand position in {@link #slots}.
+     */
+    private int hand;
+
+    /**
+     * The counter for cache hits.
+     */
+    private final AtomicLong hits;
+
+    /**
+     * The counter for cache misses.
+     */
+    private final AtomicLong misses;
+
+    /**
+     * The counter for evictions.
+     */
+    private final AtomicLong evictions;
+
+    /**
+     * Build a new {@link ClockCache}.
+     *
+     * @param capacity the maximum number of entries.
+     * @param metrics  the prefix of the {@link Metrics} counters for hits, misses and evictions.
+     */
+    public ClockCache(int capacity, String metrics) {
+        this.entries = new ConcurrentHashMap<K, Entry<K, V>>(capacity * 4 / 3 + 1);
+        this.slots = new Entry<?, ?>[capacity];
+        this.hits = Metrics.counter(metrics + ".hits");
+        this.misses = Metrics.counter(metrics + ".misses");
+        this.evictions = Metrics.counter(metrics + ".evictions");
+    }
+
+    /**
+     * Get a cached value.
+     *
+     * @param key the key.
+     * @return the value, or null if not cached.
+     */
+    public V get(K key) {
+        final Entry<K, V> entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (!entry.referenced) entry.referenced = true;
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * Cache a value, evicting another entry if the cache is full.
+     *
+     * @param key   the key.
+     * @param value the value.
+     */
+    public synchronized void put(K key, V value) {
+        if (entries.containsKey(key)) return;
+        final int slot;
+        if (size < slots.length) {
+            slot = size++;
+        } else {
+            while (slots[hand].referenced) {
+                slots[hand].referenced = false;
+                hand = (hand + 1) % slots.length;
+            }
+            entries.remove(slots[hand].key);
+            evictions.incrementAndGet();
+            slot = hand;
+            hand = (hand + 1) % slots.length;
+        }
+        final Entry<K, V> entry = new Entry<K, V>(key, value);
+        slots[slot] = entry;
+        entries.put(key, entry);
+    }
+
+    /**
+     * Get the number of cached entries.
+     *
+     * @return the number of entries.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * A cache entry.
+     *
+     * @param <K> the type of the key.
+     * @param <V> the type of the value.
+     */
+    private static final class Entry<K, V> {
+
+        /**
+         * The entry key.
+         */
+        final K key;
+
+        /**
+         * The entry value.
+         */
+        final V value;
+
+        /**
+         * Whether the entry was hit since the clock hand last passed it.
+         * <p/>
+         * Updated without synchronization: a lost mark only makes the entry evicted earlier.
+         */
+        boolean referenced;
+
+        /**
+         * Build a new {@link Entry}.
+         *
+         * @param key   the entry key.
+         * @param value the entry value.
+         */
+        Entry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
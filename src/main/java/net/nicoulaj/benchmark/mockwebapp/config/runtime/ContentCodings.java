@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.runtime;
+
+import javax.xml.bind.annotation.XmlTransient;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content codings support: compression and {@code Accept-Encoding} negotiation.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @see net.nicoulaj.benchmark.mockwebapp.config.then.BodyAction
+ * @since 1.0.0
+ */
+@XmlTransient
+public final class ContentCodings {
+
+    /**
+     * The {@code gzip} content coding.
+     */
+    public static final String GZIP = "gzip";
+
+    /**
+     * The {@code deflate} content coding.
+     */
+    public static final String DEFLATE = "deflate";
+
+    /**
+     * Not instantiable.
+     */
+    private ContentCodings() {
+    }
+
+    /**
+     * Test whether a content coding is supported.
+     *
+     * @param coding the content coding name.
+     * @return true if {@link #encode(String, byte[])} supports it.
+     */
+    public static boolean isSupported(String coding) {
+        return GZIP.equals(coding) || DEFLATE.equals(coding);
+    }
+
+    /**
+     * Compress bytes with a content coding, at the best compression level.
+     *
+     * @param coding the content coding name.
+     * @param bytes  the bytes to compress.
+     * @return the compressed bytes.
+     * @throws IllegalArgumentException if the coding is not supported.
+     */
+    public static byte[] encode(String coding, byte[] bytes) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 64);
+        try {
+            if (GZIP.equals(coding)) {
+                final GZIPOutputStream gzip = new GZIPOutputStream(out) {{
+                    def.setLevel(Deflater.BEST_COMPRESSION);
+                }};
+                gzip.write(bytes);
+                gzip.close();
+            } else if (DEFLATE.equals(coding)) {
+                final DeflaterOutputStream deflate = new DeflaterOutputStream(out, new Deflater(Deflater.BEST_COMPRESSION));
+                deflate.write(bytes);
+                deflate.close();
+            } else {
+                throw new IllegalArgumentException("Unsupported content coding '" + coding + "'");
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed compressing in memory", e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Choose a content coding from an {@code Accept-Encoding} header.
+     *
+     * @param header  the header value, may be null.
+     * @param codings the available codings, by order of preference.
+     * @return the index in {@code codings} of the preferred acceptable coding with the highest quality, or -1 to
+     *         send the content without coding.
+     */
+    public static int negotiate(String header, String[] codings) {
+        if (header == null) return -1;
+        int best = -1;
+        double bestQuality = 0;
+        for (int i = 0; i < codings.length; i++) {
+            final double quality = quality(header, codings[i]);
+            if (quality > bestQuality) {
+                best = i;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Get the quality an {@code Accept-Encoding} header gives to a content coding.
+     *
+     * @param header the header value.
+     * @param coding the content coding name.
+     * @return the quality, between 0 (not acceptable) and 1.
+     */
+    public static double quality(String header, String coding) {
+        double wildcard = 0;
+        final int length = header.length();
+        int pos = 0;
+        while (pos < length) {
+            int end = header.indexOf(',', pos);
+            if (end < 0) end = length;
+            int nameStart = skipSpaces(header, pos, end);
+            int nameEnd = nameStart;
+            while (nameEnd < end && header.charAt(nameEnd) != ';' && header.charAt(nameEnd) != ' ') nameEnd++;
+            final int nameLength = nameEnd - nameStart;
+            final boolean matches = nameLength == coding.length() && header.regionMatches(true, nameStart, coding, 0, nameLength);
+            final boolean isWildcard = nameLength == 1 && header.charAt(nameStart) == '*';
+            if (matches || isWildcard) {
+                final double quality = parseQuality(header, nameEnd, end);
+                if (matches) return quality;
+                wildcard = quality;
+            }
+            pos = end + 1;
+        }
+        return wildcard;
+    }
+
+    /**
+     * Parse the {@code q} parameter of an {@code Accept-Encoding} element.
+     *
+     * @param header the header value.
+     * @param start  the position after the coding name.
+     * @param end    the element end.
+     * @return the quality, 1 if not specified or invalid.
+     */
+    private static double parseQuality(String header, int start, int end) {
+        int pos = header.indexOf(';', start);
+        while (pos >= 0 && pos < end) {
+            final int paramStart = skipSpaces(header, pos + 1, end);
+            if (paramStart + 1 < end && (header.charAt(paramStart) == 'q' || header.charAt(paramStart) == 'Q') && header.charAt(paramStart + 1) == '=') {
+                int valueEnd = paramStart + 2;
+                while (valueEnd < end && header.charAt(valueEnd) != ';' && header.charAt(valueEnd) != ' ') valueEnd++;
+                try {
+                    final double quality = Double.parseDouble(header.substring(paramStart + 2, valueEnd));
+                    return quality < 0 ? 0 : quality > 1 ? 1 : quality;
+                } catch (NumberFormatException e) {
+                    return 1;
+                }
+            }
+            pos = header.indexOf(';', pos + 1);
+        }
+        return 1;
+    }
+
+    /**
+     * Skip spaces.
+     *
+     * @param s     the string.
+     * @param start the position to start from.
+     * @param end   the position to stop at.
+     * @return the position of the first non-space character, or {@code end}.
+     */
+    private static int skipSpaces(String s, int start, int end) {
+        while (start < end && (s.charAt(start) == ' ' || s.charAt(start) == '\t')) start++;
+        return start;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.runtime;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.xml.bind.annotation.XmlTransient;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Waits against {@link System#nanoTime()} deadlines, and reports the requested and measured waits.
+ * <p/>
+ * Threads are parked until the deadline, in several steps if woken early. Parking overshoots by the OS timer slack,
+ * typically tens of microseconds and up to a few milliseconds on a busy host, so precise waits are parked until
+ * {@link #SPIN_NANOS} before the deadline only and spin for the rest.
+ * <p/>
+ * Delays are measured either from the time they start, or from the request arrival, in which case they only wait
+ * for what remains of the delay after the time spent matching and processing the request so far. They are reported
+ * in the {@code delay.count}, {@code delay.requested-ns}, {@code delay.measured-ns} and {@code delay.max-overshoot-ns}
+ * {@link Metrics} counters, and the delays from arrival already elapsed when they start in {@code delay.late}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @see net.nicoulaj.benchmark.mockwebapp.config.then.DelayAction
+ * @since 1.0.0
+ */
+@XmlTransient
+public final class Delays {
+
+    /**
+     * The time spent spinning at the end of precise waits (ns).
+     */
+    public static final long SPIN_NANOS = 100000L;
+
+    /**
+     * The number of waits.
+     */
+    private static final AtomicLong COUNT = Metrics.counter("delay.count");
+
+    /**
+     * The total time requested (ns).
+     */
+    private static final AtomicLong REQUESTED_NANOS = Metrics.counter("delay.requested-ns");
+
+    /**
+     * The total time measured (ns).
+     */
+    private static final AtomicLong MEASURED_NANOS = Metrics.counter("delay.measured-ns");
+
+    /**
+     * The largest time measured past the requested one (ns).
+     */
+    private static final AtomicLong MAX_OVERSHOOT_NANOS = Metrics.counter("delay.max-overshoot-ns");
+
+    /**
+     * The number of delays from arrival already elapsed when they started.
+     */
+    private static final AtomicLong LATE = Metrics.counter("delay.late");
+
+    /**
+     * Not instantiable.
+     */
+    private Delays() {
+    }
+
+    /**
+     * Delay a request, and report the delay.
+     *
+     * @param req         the request to delay.
+     * @param nanos       the delay (ns).
+     * @param precise     whether to spin for the last {@link #SPIN_NANOS} rather than park.
+     * @param fromArrival whether to measure the delay from the request arrival rather than from now.
+     * @return false if the thread was interrupted before the end of the delay, in which case its interrupted status
+     *         is cleared.
+     * @see RequestView#getArrivalNanos()
+     */
+    public static boolean delay(HttpServletRequest req, long nanos, boolean precise, boolean fromArrival) {
+        final long now = System.nanoTime();
+        final long origin = fromArrival ? RequestView.of(req).getArrivalNanos() : now;
+        final long deadline = origin + nanos;
+        if (fromArrival && deadline - now <= 0) LATE.incrementAndGet();
+        final boolean completed = waitUntil(deadline, precise);
+        record(nanos, System.nanoTime() - origin);
+        return completed;
+    }
+
+    /**
+     * Wait until a deadline.
+     *
+     * @param deadline the time to wait for, from {@link System#nanoTime()}.
+     * @param precise  whether to spin for the last {@link #SPIN_NANOS} rather than park.
+     * @return false if the thread was interrupted before the deadline, in which case its interrupted status is
+     *         cleared.
+     */
+    public static boolean waitUntil(long deadline, boolean precise) {
+        final long park = precise ? SPIN_NANOS : 0L;
+        for (long remaining = deadline - System.nanoTime(); remaining > park; remaining = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(remaining - park);
+            if (Thread.interrupted()) return false;
+        }
+        while (deadline - System.nanoTime() > 0) {
+            // Spin until the deadline.
+        }
+        return true;
+    }
+
+    /**
+     * Report a wait in the {@link Metrics} counters.
+     *
+     * @param requestedNanos the time requested (ns).
+     * @param measuredNanos  the time measured (ns).
+     */
+    public static void record(long requestedNanos, long measuredNanos) {
+        COUNT.incrementAndGet();
+        REQUESTED_NANOS.addAndGet(requestedNanos);
+        MEASURED_NANOS.addAndGet(measuredNanos);
+        Metrics.max(MAX_OVERSHOOT_NANOS, measuredNanos - requestedNanos);
+    }
+}
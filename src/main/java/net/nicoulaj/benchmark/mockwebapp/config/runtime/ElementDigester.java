@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.runtime;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+import javax.xml.bind.annotation.XmlTransient;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SAX handler computing a content digest of some children of the root element, while the document is parsed.
+ * <p/>
+ * Element names, attributes and text are digested, so two elements have the same digest only if they have the same
+ * content. Events are forwarded to another handler, so digests are computed in the same pass as unmarshalling. Used
+ * to recognize the {@link net.nicoulaj.benchmark.mockwebapp.config.Mapping}s that did not change when
+ * a config is reloaded, without serializing them again.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+@XmlTransient
+public class ElementDigester implements ContentHandler {
+
+    /**
+     * The hexadecimal digits.
+     */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * The handler to forward events to.
+     */
+    @XmlTransient
+    protected final ContentHandler handler;
+
+    /**
+     * The local name of the digested elements.
+     */
+    protected final String name;
+
+    /**
+     * The digests of the elements found so far, in document order.
+     */
+    protected final List<String> digests = new ArrayList<String>();
+
+    /**
+     * The digest of the current element.
+     */
+    protected final MessageDigest digest;
+
+    /**
+     * The buffer used to feed {@link #digest}, so that it is updated once per block rather than once per value.
+     */
+    protected final byte[] buffer = new byte[4096];
+
+    /**
+     * The number of bytes in {@link #buffer}.
+     */
+    protected int position;
+
+    /**
+     * The depth of the current element, the root element being at depth 1.
+     */
+    protected int depth;
+
+    /**
+     * Whether the current element is inside a digested element.
+     */
+    protected boolean digesting;
+
+    /**
+     * Build a new {@link ElementDigester}.
+     *
+     * @param handler the handler to forward events to.
+     * @param name    the local name of the root children to digest.
+     */
+    public ElementDigester(ContentHandler handler, String name) {
+        this.handler = handler;
+        this.name = name;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    /**
+     * Get the digests of the elements parsed so far.
+     *
+     * @return the hexadecimal digests, in document order.
+     */
+    public List<String> getDigests() {
+        return digests;
+    }
+
+    /**
+     * Forward the document locator.
+     */
+    public void setDocumentLocator(Locator locator) {
+        handler.setDocumentLocator(locator);
+    }
+
+    /**
+     * Forward the start of the document.
+     */
+    public void startDocument() throws SAXException {
+        handler.startDocument();
+    }
+
+    /**
+     * Forward the end of the document.
+     */
+    public void endDocument() throws SAXException {
+        handler.endDocument();
+    }
+
+    /**
+     * Forward the start of a prefix mapping.
+     */
+    public void startPrefixMapping(String prefix, String uri) throws SAXException {
+        handler.startPrefixMapping(prefix, uri);
+    }
+
+    /**
+     * Forward the end of a prefix mapping.
+     */
+    public void endPrefixMapping(String prefix) throws SAXException {
+        handler.endPrefixMapping(prefix);
+    }
+
+    /**
+     * Start digesting a root child named {@link #name}, digest the element name and attributes if digesting, and
+     * forward the event.
+     */
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+        depth++;
+        if (depth == 2 && name.equals(localName)) {
+            digest.reset();
+            position = 0;
+            digesting = true;
+        }
+        if (digesting) {
+            update('<', localName);
+            for (int i = 0; i < atts.getLength(); i++) {
+                update('@', atts.getLocalName(i));
+                update('=', atts.getValue(i));
+            }
+        }
+        handler.startElement(uri, localName, qName, atts);
+    }
+
+    /**
+     * Digest the end of the element if digesting, record the digest of a root child named {@link #name}, and
+     * forward the event.
+     */
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        if (digesting) {
+            update('>', localName);
+            if (depth == 2) {
+                digest.update(buffer, 0, position);
+                digests.add(toHex(digest.digest()));
+                digesting = false;
+            }
+        }
+        depth--;
+        handler.endElement(uri, localName, qName);
+    }
+
+    /**
+     * Digest the text if digesting, and forward the event.
+     */
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        if (digesting) update(ch, start, length);
+        handler.characters(ch, start, length);
+    }
+
+    /**
+     * Forward ignorable whitespace, which is not digested.
+     */
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        handler.ignorableWhitespace(ch, start, length);
+    }
+
+    /**
+     * Forward a processing instruction, which is not digested.
+     */
+    public void processingInstruction(String target, String data) throws SAXException {
+        handler.processingInstruction(target, data);
+    }
+
+    /**
+     * Forward a skipped entity.
+     */
+    public void skippedEntity(String name) throws SAXException {
+        handler.skippedEntity(name);
+    }
+
+    /**
+     * Digest a tagged string, prefixed with its length so that consecutive values cannot be confused.
+     *
+     * @param tag   the kind of value.
+     * @param value the value.
+     */
+    protected void update(char tag, String value) {
+        final int length = value.length();
+        if (position + 5 > buffer.length) flush();
+        buffer[position++] = (byte) tag;
+        buffer[position++] = (byte) (length >>> 24);
+        buffer[position++] = (byte) (length >>> 16);
+        buffer[position++] = (byte) (length >>> 8);
+        buffer[position++] = (byte) length;
+        for (int i = 0; i < length; i++) {
+            if (position + 2 > buffer.length) flush();
+            final char c = value.charAt(i);
+            buffer[position++] = (byte) (c >>> 8);
+            buffer[position++] = (byte) c;
+        }
+    }
+
+    /**
+     * Digest a text chunk.
+     * <p/>
+     * Text is digested as a stream of characters, so the digest does not depend on how the parser splits it.
+     *
+     * @param ch     the characters.
+     * @param start  the index of the first character.
+     * @param length the number of characters.
+     */
+    protected void update(char[] ch, int start, int length) {
+        for (int i = start; i < start + length; i++) {
+            if (position + 2 > buffer.length) flush();
+            buffer[position++] = (byte) (ch[i] >>> 8);
+            buffer[position++] = (byte) ch[i];
+        }
+    }
+
+    /**
+     * Feed {@link #buffer} to {@link #digest}.
+     */
+    protected void flush() {
+        digest.update(buffer, 0, position);
+        position = 0;
+    }
+
+    /**
+     * Format a digest.
+     *
+     * @param bytes the digest.
+     * @return the hexadecimal digest.
+     */
+    protected static String toHex(byte[] bytes) {
+        final char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.runtime;
+
+import javax.xml.bind.annotation.XmlTransient;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Entity tags support: computing strong {@code ETag} values and matching {@code If-None-Match} headers.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @see net.nicoulaj.benchmark.mockwebapp.config.then.BodyAction
+ * @since 1.0.0
+ */
+@XmlTransient
+public final class EntityTags {
+
+    /**
+     * The number of digest bytes kept in entity tags.
+     */
+    private static final int TAG_BYTES = 16;
+
+    /**
+     * The hexadecimal digits.
+     */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Not instantiable.
+     */
+    private EntityTags() {
+    }
+
+    /**
+     * Compute the strong entity tag of some content.
+     *
+     * @param bytes the content.
+     * @return the quoted entity tag, derived from the SHA-1 digest of {@code bytes}.
+     */
+    public static String of(byte[] bytes) {
+        final byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+        final char[] tag = new char[TAG_BYTES * 2 + 2];
+        tag[0] = '"';
+        for (int i = 0; i < TAG_BYTES; i++) {
+            tag[2 * i + 1] = HEX[(digest[i] >> 4) & 0xf];
+            tag[2 * i + 2] = HEX[digest[i] & 0xf];
+        }
+        tag[tag.length - 1] = '"';
+        return new String(tag);
+    }
+
+    /**
+     * Test whether an {@code If-None-Match} header matches an entity tag.
+     * <p/>
+     * Uses the weak comparison, as required for {@code If-None-Match}: {@code W/} prefixes are ignored.
+     *
+     * @param header the header value.
+     * @param tag    the quoted entity tag.
+     * @return true if the header is {@code *} or lists {@code tag}.
+     */
+    public static boolean matches(String header, String tag) {
+        final int length = header.length();
+        int pos = 0;
+        while (pos < length) {
+            int end = header.indexOf(',', pos);
+            if (end < 0) end = length;
+            int start = pos;
+            while (start < end && Character.isWhitespace(header.charAt(start))) start++;
+            int stop = end;
+            while (stop > start && Character.isWhitespace(header.charAt(stop - 1))) stop--;
+            if (stop - start == 1 && header.charAt(start) == '*') return true;
+            if (header.startsWith("W/", start)) start += 2;
+            if (stop - start == tag.length() && header.regionMatches(start, tag, 0, tag.length())) return true;
+            pos = end + 1;
+        }
+        return false;
+    }
+}
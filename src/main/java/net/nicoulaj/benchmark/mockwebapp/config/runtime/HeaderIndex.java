@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.runtime;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.xml.bind.annotation.XmlTransient;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * An index of header conditions, grouped by header name.
+ * <p/>
+ * Each header is fetched once per request and tested against all the patterns declared for it together: literal
+ * patterns are resolved by a single hash lookup, other patterns are matched in turn. The results for all the
+ * conditions of a header are memoized in the {@link RequestView} for the duration of the request.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @see net.nicoulaj.benchmark.mockwebapp.config.when.HeaderCondition
+ * @since 1.0.0
+ */
+@XmlTransient
+public final class HeaderIndex {
+
+    /**
+     * Memoized result for a matched condition.
+     */
+    private static final byte MATCHED = 1;
+
+    /**
+     * Memoized result for a condition not matched.
+     */
+    private static final byte NOT_MATCHED = 2;
+
+    /**
+     * The characters that have a special meaning in patterns.
+     */
+    private static final String PATTERN_METACHARACTERS = "\\[](){}.*+?^$|";
+
+    /**
+     * The groups of conditions, by lower-cased header name.
+     */
+    private final Map<String, Group> groups = new HashMap<String, Group>();
+
+    /**
+     * The group of each registered condition, by slot.
+     */
+    private final List<Group> slots = new ArrayList<Group>();
+
+    /**
+     * Test whether a pattern can be matched as a literal string.
+     *
+     * @param pattern the pattern.
+     * @return true if the pattern has no special characters.
+     */
+    public static boolean isLiteral(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if (PATTERN_METACHARACTERS.indexOf(pattern.charAt(i)) >= 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Register a header condition.
+     *
+     * @param name    the header name, case insensitive.
+     * @param pattern the pattern the header must match, or null if the header must only be present.
+     * @return the slot of the condition, to be passed to {@link #matches(HttpServletRequest, int)}.
+     */
+    public int add(String name, String pattern) {
+        final String key = name.toLowerCase(Locale.ENGLISH);
+        Group group = groups.get(key);
+        if (group == null) {
+            group = new Group(name);
+            groups.put(key, group);
+        }
+        final int slot = slots.size();
+        slots.add(group);
+        group.slots = append(group.slots, slot);
+        if (pattern == null) {
+            group.present = append(group.present, slot);
+        } else if (isLiteral(pattern)) {
+            group.literals.put(pattern, append(group.literals.get(pattern), slot));
+        } else {
+            group.patternSlots = append(group.patternSlots, slot);
+            group.patterns = Arrays.copyOf(group.patterns, group.patterns.length + 1);
+            group.patterns[group.patterns.length - 1] = Pattern.compile(pattern);
+        }
+        return slot;
+    }
+
+    /**
+     * Get the number of registered conditions.
+     *
+     * @return the number of conditions.
+     */
+    public int size() {
+        return slots.size();
+    }
+
+    /**
+     * Get the number of distinct headers checked.
+     *
+     * @return the number of headers.
+     */
+    public int getHeaderCount() {
+        return groups.size();
+    }
+
+    /**
+     * Get the names of the distinct headers checked.
+     *
+     * @return the header names, as first declared.
+     */
+    public String[] getHeaderNames() {
+        final String[] names = new String[groups.size()];
+        int i = 0;
+        for (Group group : groups.values()) names[i++] = group.name;
+        return names;
+    }
+
+    /**
+     * Test whether a request matches a registered condition.
+     *
+     * @param req  the request.
+     * @param slot the slot of the condition.
+     * @return true if the condition is matched.
+     */
+    public boolean matches(HttpServletRequest req, int slot) {
+        final byte[] memo = RequestView.of(req).getMemo(this, slots.size());
+        if (memo[slot] == 0) evaluate(req, slots.get(slot), memo);
+        return memo[slot] == MATCHED;
+    }
+
+    /**
+     * Evaluate all the conditions of a group and memoize the results.
+     *
+     * @param req   the request.
+     * @param group the group to evaluate.
+     * @param memo  the array to memoize results in.
+     */
+    private static void evaluate(HttpServletRequest req, Group group, byte[] memo) {
+        for (int slot : group.slots) memo[slot] = NOT_MATCHED;
+        final String value = req.getHeader(group.name);
+        if (value == null) return;
+        for (int slot : group.present) memo[slot] = MATCHED;
+        final int[] literals = group.literals.get(value);
+        if (literals != null) for (int slot : literals) memo[slot] = MATCHED;
+        for (int i = 0; i < group.patterns.length; i++) {
+            if (group.patterns[i].matcher(value).matches()) memo[group.patternSlots[i]] = MATCHED;
+        }
+    }
+
+    /**
+     * Append a value to an array.
+     *
+     * @param array the array, may be null.
+     * @param value the value to append.
+     * @return a new array.
+     */
+    private static int[] append(int[] array, int value) {
+        if (array == null) return new int[]{value};
+        final int[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = value;
+        return result;
+    }
+
+    /**
+     * The conditions declared for a header.
+     */
+    private static final class Group {
+
+        /**
+         * The header name.
+         */
+        final String name;
+
+        /**
+         * All the slots of the group.
+         */
+        int[] slots = new int[0];
+
+        /**
+         * The slots of the conditions only checking the header presence.
+         */
+        int[] present = new int[0];
+
+        /**
+         * The slots of the literal conditions, by value.
+         */
+        final Map<String, int[]> literals = new HashMap<String, int[]>();
+
+        /**
+         * The non-literal patterns.
+         */
+        Pattern[] patterns = new Pattern[0];
+
+        /**
+         * The slots of the conditions for each of {@link #patterns}.
+         */
+        int[] patternSlots = new int[0];
+
+        /**
+         * Build a new {@link Group}.
+         *
+         * @param name the header name.
+         */
+        Group(String name) {
+            this.name = name;
+        }
+    }
+}
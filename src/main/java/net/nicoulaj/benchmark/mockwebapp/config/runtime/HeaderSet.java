@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.runtime;
+
+import net.nicoulaj.benchmark.mockwebapp.config.then.HeaderAction;
+import net.nicoulaj.benchmark.mockwebapp.config.then.ThenStatement;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.bind.annotation.XmlTransient;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A set of response headers, applied with one call per header value.
+ * <p/>
+ * Built once per config from consecutive {@link HeaderAction}s: the values templates are compiled, and the first value
+ * of each header is set while the following ones (eg: several {@code Set-Cookie}) are added. Identical sets are
+ * interned, so mappings declaring the same headers share a single instance.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+@XmlTransient
+public final class HeaderSet implements ThenStatement {
+
+    /**
+     * The headers names.
+     */
+    private final String[] names;
+
+    /**
+     * The headers values.
+     */
+    private final Template[] values;
+
+    /**
+     * Whether each header value is added to the previous ones rather than set.
+     */
+    private final boolean[] added;
+
+    /**
+     * Build a new {@link HeaderSet}.
+     *
+     * @param actions the actions setting the headers.
+     */
+    private HeaderSet(List<HeaderAction> actions) {
+        final int size = actions.size();
+        this.names = new String[size];
+        this.values = new Template[size];
+        this.added = new boolean[size];
+        final Set<String> seen = new HashSet<String>();
+        for (int i = 0; i < size; i++) {
+            names[i] = actions.get(i).name;
+            values[i] = Template.compile(actions.get(i).value);
+            added[i] = !seen.add(names[i].toLowerCase(Locale.ENGLISH));
+        }
+    }
+
+    /**
+     * Get the {@link HeaderSet} for a list of actions, reusing an identical one if already built.
+     *
+     * @param actions  the actions setting the headers.
+     * @param interned the sets already built, by key.
+     * @return the header set.
+     */
+    public static HeaderSet intern(List<HeaderAction> actions, Map<List<String>, HeaderSet> interned) {
+        final List<String> key = new ArrayList<String>(actions.size() * 2);
+        for (HeaderAction action : actions) {
+            key.add(action.name);
+            key.add(action.value);
+        }
+        HeaderSet set = interned.get(key);
+        if (set == null) {
+            set = new HeaderSet(actions);
+            interned.put(key, set);
+        }
+        return set;
+    }
+
+    /**
+     * Nothing to validate, the {@link HeaderAction}s were validated.
+     */
+    public void validate() {
+    }
+
+    /**
+     * Process an HTTP request/response.
+     * <p/>
+     * Sets or adds each header, in declaration order.
+     *
+     * @param req  the {@link HttpServletRequest} to process.
+     * @param resp the {@link HttpServletResponse} to use.
+     */
+    public void process(HttpServletRequest req, HttpServletResponse resp) {
+        for (int i = 0; i < names.length; i++) {
+            if (added[i]) resp.addHeader(names[i], values[i].render(req));
+            else resp.setHeader(names[i], values[i].render(req));
+        }
+    }
+}
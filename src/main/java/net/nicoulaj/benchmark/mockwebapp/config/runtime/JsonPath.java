@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.runtime;
+
+import javax.xml.bind.annotation.XmlTransient;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A simple JSON path, such as {@code $.order.items[0].id}, evaluated by scanning JSON text without building a tree.
+ * <p/>
+ * Only member ({@code .name}) and array index ({@code [n]}) steps are supported. The text may be truncated, in which
+ * case paths leading past its end evaluate to nothing.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @see net.nicoulaj.benchmark.mockwebapp.config.when.BodyCondition
+ * @since 1.0.0
+ */
+@XmlTransient
+public final class JsonPath {
+
+    /**
+     * The path steps: {@link String} member names or {@link Integer} array indexes.
+     */
+    private final Object[] steps;
+
+    /**
+     * Build a new {@link JsonPath}.
+     *
+     * @param steps the path steps.
+     */
+    private JsonPath(Object[] steps) {
+        this.steps = steps;
+    }
+
+    /**
+     * Compile a JSON path expression.
+     *
+     * @param expression the expression, with or without the leading {@code $}.
+     * @return the compiled path.
+     * @throws IllegalArgumentException if the expression is invalid.
+     */
+    public static JsonPath compile(String expression) {
+        final List<Object> steps = new ArrayList<Object>();
+        final int length = expression.length();
+        int i = expression.startsWith("$") ? 1 : 0;
+        boolean leading = i == 0;
+        while (i < length) {
+            final char c = expression.charAt(i);
+            if (c == '[') {
+                final int end = expression.indexOf(']', i);
+                if (end < 0) throw new IllegalArgumentException("Unclosed index in JSON path '" + expression + "'");
+                final int index;
+                try {
+                    index = Integer.parseInt(expression.substring(i + 1, end));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid index in JSON path '" + expression + "'");
+                }
+                if (index < 0) throw new IllegalArgumentException("Negative index in JSON path '" + expression + "'");
+                steps.add(index);
+                i = end + 1;
+            } else if (c == '.' || leading) {
+                if (c == '.') i++;
+                int end = i;
+                while (end < length && expression.charAt(end) != '.' && expression.charAt(end) != '[') end++;
+                if (end == i) throw new IllegalArgumentException("Empty member name in JSON path '" + expression + "'");
+                steps.add(expression.substring(i, end));
+                i = end;
+            } else {
+                throw new IllegalArgumentException("Unexpected character '" + c + "' in JSON path '" + expression + "'");
+            }
+            leading = false;
+        }
+        return new JsonPath(steps.toArray());
+    }
+
+    /**
+     * Test whether a JSON path expression is valid.
+     *
+     * @param expression the expression.
+     * @return true if {@link #compile(String)} accepts the expression.
+     */
+    public static boolean isValid(String expression) {
+        try {
+            compile(expression);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Evaluate this path against some JSON text.
+     *
+     * @param json the JSON text.
+     * @return the unescaped value for strings, the raw text for other values, or null if the path does not exist.
+     */
+    public String evaluate(CharSequence json) {
+        int pos = skipWhitespace(json, 0);
+        for (Object step : steps) {
+            if (pos >= json.length()) return null;
+            if (step instanceof String) {
+                if (json.charAt(pos) != '{') return null;
+                pos = findMember(json, pos + 1, (String) step);
+            } else {
+                if (json.charAt(pos) != '[') return null;
+                pos = findElement(json, pos + 1, (Integer) step);
+            }
+            if (pos < 0) return null;
+        }
+        if (pos >= json.length()) return null;
+        final int end = skipValue(json, pos);
+        if (end < 0) return null;
+        if (json.charAt(pos) == '"') return unescape(json, pos + 1, end - 1);
+        return json.subSequence(pos, end).toString();
+    }
+
+    /**
+     * Find an object member value.
+     *
+     * @param json the JSON text.
+     * @param pos  the position after the object opening brace.
+     * @param name the member name.
+     * @return the position of the member value, or -1 if not found.
+     */
+    private static int findMember(CharSequence json, int pos, String name) {
+        while (true) {
+            pos = skipWhitespace(json, pos);
+            if (pos >= json.length() || json.charAt(pos) != '"') return -1;
+            final int nameEnd = skipString(json, pos);
+            if (nameEnd < 0) return -1;
+            final boolean found = unescape(json, pos + 1, nameEnd - 1).equals(name);
+            pos = skipWhitespace(json, nameEnd);
+            if (pos >= json.length() || json.charAt(pos) != ':') return -1;
+            pos = skipWhitespace(json, pos + 1);
+            if (found) return pos;
+            if (pos >= json.length()) return -1;
+            pos = skipValue(json, pos);
+            if (pos < 0) return -1;
+            pos = skipWhitespace(json, pos);
+            if (pos >= json.length() || json.charAt(pos) != ',') return -1;
+            pos++;
+        }
+    }
+
+    /**
+     * Find an array element.
+     *
+     * @param json  the JSON text.
+     * @param pos   the position after the array opening bracket.
+     * @param index the element index.
+     * @return the position of the element, or -1 if not found.
+     */
+    private static int findElement(CharSequence json, int pos, int index) {
+        for (int i = 0; ; i++) {
+            pos = skipWhitespace(json, pos);
+            if (pos >= json.length() || json.charAt(pos) == ']') return -1;
+            if (i == index) return pos;
+            pos = skipValue(json, pos);
+            if (pos < 0) return -1;
+            pos = skipWhitespace(json, pos);
+            if (pos >= json.length() || json.charAt(pos) != ',') return -1;
+            pos++;
+        }
+    }
+
+    /**
+     * Skip a JSON value.
+     *
+     * @param json the JSON text.
+     * @param pos  the value position.
+     * @return the position after the value, or -1 if the text ends before.
+     */
+    private static int skipValue(CharSequence json, int pos) {
+        final int length = json.length();
+        final char first = json.charAt(pos);
+        if (first == '"') return skipString(json, pos);
+        if (first == '{' || first == '[') {
+            int depth = 0;
+            while (pos < length) {
+                final char c = json.charAt(pos);
+                if (c == '"') {
+                    pos = skipString(json, pos);
+                    if (pos < 0) return -1;
+                    continue;
+                }
+                if (c == '{' || c == '[') depth++;
+                else if ((c == '}' || c == ']') && --depth == 0) return pos + 1;
+                pos++;
+            }
+            return -1;
+        }
+        while (pos < length) {
+            final char c = json.charAt(pos);
+            if (c == ',' || c == '}' || c == ']' || Character.isWhitespace(c)) return pos;
+            pos++;
+        }
+        return -1;
+    }
+
+    /**
+     * Skip a JSON string.
+     *
+     * @param json the JSON text.
+     * @param pos  the position of the opening quote.
+     * @return the position after the closing quote, or -1 if the text ends before.
+     */
+    private static int skipString(CharSequence json, int pos) {
+        final int length = json.length();
+        for (pos++; pos < length; pos++) {
+            final char c = json.charAt(pos);
+            if (c == '\\') pos++;
+            else if (c == '"') return pos + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Skip whitespace.
+     *
+     * @param json the JSON text.
+     * @param pos  the position to start from.
+     * @return the position of the next non-whitespace character.
+     */
+    private static int skipWhitespace(CharSequence json, int pos) {
+        final int length = json.length();
+        while (pos < length && Character.isWhitespace(json.charAt(pos))) pos++;
+        return pos;
+    }
+
+    /**
+     * Unescape the content of a JSON string.
+     *
+     * @param json  the JSON text.
+     * @param start the string content start.
+     * @param end   the string content end.
+     * @return the unescaped content.
+     */
+    private static String unescape(CharSequence json, int start, int end) {
+        int i = start;
+        while (i < end && json.charAt(i) != '\\') i++;
+        if (i == end) return json.subSequence(start, end).toString();
+        final StringBuilder builder = new StringBuilder(end - start).append(json, start, i);
+        while (i < end) {
+            char c = json.charAt(i++);
+            if (c == '\\' && i < end) {
+                c = json.charAt(i++);
+                switch (c) {
+                    case 'b': c = '\b'; break;
+                    case 'f': c = '\f'; break;
+                    case 'n': c = '\n'; break;
+                    case 'r': c = '\r'; break;
+                    case 't': c = '\t'; break;
+                    case 'u':
+                        if (i + 4 <= end) {
+                            try {
+                                c = (char) Integer.parseInt(json.subSequence(i, i + 4).toString(), 16);
+                                i += 4;
+                            } catch (NumberFormatException ignored) {
+                            }
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.runtime;
+
+import net.nicoulaj.benchmark.mockwebapp.config.when.MethodCondition;
+
+import javax.xml.bind.annotation.XmlTransient;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry assigning a bit to each HTTP method name, so that sets of methods can be represented and tested as
+ * {@code long} masks.
+ * <p/>
+ * The methods of {@link MethodCondition.HTTPMethod} are registered
+ * upfront, in declaration order. Extension methods are registered on demand by the conditions that declare them, up to
+ * {@link #MAX_METHODS} methods in total. Methods never registered resolve to an empty mask, matched by no condition.
+ * <p/>
+ * The registry lives as long as the JVM, across config reloads. Once it is full, further methods get no bit and the
+ * conditions declaring them compare the method names instead.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+@XmlTransient
+public final class MethodBits {
+
+    /**
+     * The maximum number of distinct methods.
+     */
+    public static final int MAX_METHODS = 64;
+
+    /**
+     * The characters allowed in a method name, besides letters and digits (RFC 7230 {@code tchar}).
+     */
+    private static final String TOKEN_CHARACTERS = "!#$%&'*+-.^_`|~";
+
+    /**
+     * The bit of each registered method.
+     */
+    private static final ConcurrentMap<String, Long> BITS = new ConcurrentHashMap<String, Long>();
+
+    static {
+        reset();
+    }
+
+    /**
+     * Not instantiable.
+     */
+    private MethodBits() {
+    }
+
+    /**
+     * Test whether a string is a valid method name.
+     *
+     * @param name the method name.
+     * @return true if the name is a non-empty token.
+     */
+    public static boolean isValid(String name) {
+        if (name == null || name.length() == 0) return false;
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || TOKEN_CHARACTERS.indexOf(c) >= 0)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the bit of a method, registering it if needed.
+     *
+     * @param name the method name, case sensitive.
+     * @return the method bit, or 0 if {@link #MAX_METHODS} methods are already registered.
+     */
+    public static synchronized long register(String name) {
+        final Long bit = BITS.get(name);
+        if (bit != null) return bit;
+        if (BITS.size() >= MAX_METHODS) return 0L;
+        final long newBit = 1L << BITS.size();
+        BITS.put(name, newBit);
+        return newBit;
+    }
+
+    /**
+     * Forget the extension methods, keeping only the {@link MethodCondition.HTTPMethod} ones.
+     * <p/>
+     * Meant for tests: the conditions compiled before must be compiled again, as extension methods may get other bits.
+     */
+    public static synchronized void reset() {
+        BITS.clear();
+        for (MethodCondition.HTTPMethod method : MethodCondition.HTTPMethod.values()) register(method.name());
+    }
+
+    /**
+     * Get the bit of a method.
+     *
+     * @param name the method name, case sensitive.
+     * @return the method bit, or 0 if the method was never registered.
+     */
+    public static long lookup(String name) {
+        if (name == null) return 0L;
+        final Long bit = BITS.get(name);
+        return bit == null ? 0L : bit;
+    }
+}
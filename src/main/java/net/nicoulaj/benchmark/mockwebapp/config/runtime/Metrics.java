@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.runtime;
+
+import javax.xml.bind.annotation.XmlTransient;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of the counters reported by the statements while handling requests.
+ * <p/>
+ * Counters are identified by a dotted name (eg: {@code cpu-burn.measured-ns}) and created on first access. Statements
+ * should look their counters up once and keep a reference to them rather than resolving them on every request.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @see net.nicoulaj.benchmark.mockwebapp.MetricsServlet
+ * @since 1.0.0
+ */
+@XmlTransient
+public final class Metrics {
+
+    /**
+     * The registered counters, by name.
+     */
+    private static final ConcurrentMap<String, AtomicLong> COUNTERS = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * Not instantiable.
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Get the counter with the given name, creating it if needed.
+     *
+     * @param name the counter name.
+     * @return the counter, never null.
+     */
+    public static AtomicLong counter(String name) {
+        AtomicLong counter = COUNTERS.get(name);
+        if (counter == null) {
+            final AtomicLong created = new AtomicLong();
+            counter = COUNTERS.putIfAbsent(name, created);
+            if (counter == null) counter = created;
+        }
+        return counter;
+    }
+
+    /**
+     * Raise a counter to the given value if it is currently lower.
+     *
+     * @param counter the counter to update.
+     * @param value   the candidate maximum.
+     */
+    public static void max(AtomicLong counter, long value) {
+        long current;
+        while ((current = counter.get()) < value) if (counter.compareAndSet(current, value)) return;
+    }
+
+    /**
+     * Take a snapshot of all counters values.
+     *
+     * @return the counters values, sorted by name.
+     */
+    public static SortedMap<String, Long> snapshot() {
+        final SortedMap<String, Long> snapshot = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : COUNTERS.entrySet()) snapshot.put(entry.getKey(), entry.getValue().get());
+        return snapshot;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.runtime;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.xml.bind.annotation.XmlTransient;
+
+/**
+ * Computes the signature of a request, covering only the request attributes a config conditions on.
+ * <p/>
+ * Two requests with the same signature are matched by the same mappings, so the signature can be used as a
+ * {@link ClockCache} key for match results.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+@XmlTransient
+public final class RequestSignature {
+
+    /**
+     * The separator between signature parts, which cannot appear in any of them.
+     */
+    private static final char SEPARATOR = '\n';
+
+    /**
+     * The marker for a missing part.
+     */
+    private static final char MISSING = '\u0000';
+
+    /**
+     * The per-thread signature buffers.
+     */
+    private static final ThreadLocal<StringBuilder> BUFFERS = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    /**
+     * Whether the signature covers the request method.
+     */
+    private final boolean method;
+
+    /**
+     * Whether the signature covers the request URI.
+     */
+    private final boolean uri;
+
+    /**
+     * Whether the signature covers the request query string.
+     */
+    private final boolean query;
+
+    /**
+     * Whether the signature covers the request remote address.
+     */
+    private final boolean remoteAddress;
+
+    /**
+     * The names of the headers the signature covers.
+     */
+    private final String[] headers;
+
+    /**
+     * Build a new {@link RequestSignature}.
+     *
+     * @param method        whether to cover the request method.
+     * @param uri           whether to cover the request URI.
+     * @param query         whether to cover the request query string.
+     * @param remoteAddress whether to cover the request remote address.
+     * @param headers       the names of the headers to cover.
+     */
+    public RequestSignature(boolean method, boolean uri, boolean query, boolean remoteAddress, String[] headers) {
+        this.method = method;
+        this.uri = uri;
+        this.query = query;
+        this.remoteAddress = remoteAddress;
+        this.headers = headers.clone();
+    }
+
+    /**
+     * Compute the signature of a request.
+     *
+     * @param req the request.
+     * @return the signature.
+     */
+    public String of(HttpServletRequest req) {
+        final StringBuilder buffer = BUFFERS.get();
+        buffer.setLength(0);
+        if (method) append(buffer, req.getMethod());
+        if (uri) append(buffer, req.getRequestURI());
+        if (query) append(buffer, req.getQueryString());
+        if (remoteAddress) append(buffer, req.getRemoteAddr());
+        for (String header : headers) append(buffer, req.getHeader(header));
+        return buffer.toString();
+    }
+
+    /**
+     * Append a signature part.
+     *
+     * @param buffer the signature buffer.
+     * @param part   the part, may be null.
+     */
+    private static void append(StringBuilder buffer, String part) {
+        if (part == null) buffer.append(MISSING);
+        else buffer.append(part);
+        buffer.append(SEPARATOR);
+    }
+}
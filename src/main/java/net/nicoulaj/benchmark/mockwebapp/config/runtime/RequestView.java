@@ -0,0 +1,638 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.runtime;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.bind.annotation.XmlTransient;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pre-parsed view of an {@link HttpServletRequest}, shared by all the statements evaluated for that request.
+ * <p/>
+ * Parts of the request (query string, path segments) are parsed lazily, at most once per request, into offsets in
+ * the original strings. The body is buffered on demand, up to the longest prefix requested, into a buffer reused
+ * across requests; the rest of the body is drained when the view is released.
+ * <p/>
+ * Views are pooled per thread and bound to the request through the {@link #ATTRIBUTE} request attribute, so a request
+ * handled by a {@link net.nicoulaj.benchmark.mockwebapp.config.MockWebAppConfig} does not allocate a new one.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+@XmlTransient
+public final class RequestView {
+
+    /**
+     * The name of the request attribute the view is bound to.
+     */
+    public static final String ATTRIBUTE = RequestView.class.getName();
+
+    /**
+     * The prefix of the requests identifiers.
+     */
+    private static final String ID_PREFIX = Integer.toHexString(new Random().nextInt()) + '-';
+
+    /**
+     * The sequence of the requests identifiers.
+     */
+    private static final AtomicLong ID_SEQUENCE = new AtomicLong();
+
+    /**
+     * The charset used to decode bodies of requests without a declared encoding.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The views pool.
+     */
+    private static final ThreadLocal<RequestView> POOL = new ThreadLocal<RequestView>() {
+        @Override
+        protected RequestView initialValue() {
+            return new RequestView();
+        }
+    };
+
+    /**
+     * The request this view is bound to.
+     */
+    private HttpServletRequest request;
+
+    /**
+     * The request query string, or null if not parsed yet or absent.
+     */
+    private String query;
+
+    /**
+     * Whether {@link #query} was parsed.
+     */
+    private boolean queryParsed;
+
+    /**
+     * The number of query parameters.
+     */
+    private int parameterCount;
+
+    /**
+     * The query parameters offsets in {@link #query}: name start, name end, value start, value end.
+     */
+    private int[] parameterOffsets = new int[32];
+
+    /**
+     * The decoded query parameters values, filled lazily.
+     */
+    private String[] parameterValues = new String[8];
+
+    /**
+     * The request URI, or null if not parsed yet.
+     */
+    private String path;
+
+    /**
+     * The number of non-empty path segments.
+     */
+    private int segmentCount;
+
+    /**
+     * The path segments offsets in {@link #path}: start, end.
+     */
+    private int[] segmentOffsets = new int[16];
+
+    /**
+     * The path segments, filled lazily.
+     */
+    private String[] segments = new String[8];
+
+    /**
+     * The buffered body prefix, reused across requests.
+     */
+    private byte[] body = new byte[0];
+
+    /**
+     * The number of bytes of {@link #body} read.
+     */
+    private int bodyLength;
+
+    /**
+     * Whether the request input stream was read from.
+     */
+    private boolean bodyRead;
+
+    /**
+     * Whether the request input stream end was reached.
+     */
+    private boolean bodyEnded;
+
+    /**
+     * The decoded body prefix, reused across requests.
+     */
+    private CharBuffer bodyText = CharBuffer.allocate(0);
+
+    /**
+     * The number of bytes decoded into {@link #bodyText}, -1 if not decoded yet.
+     */
+    private int bodyTextBytes = -1;
+
+    /**
+     * The decoder used for the last decoded body.
+     */
+    private CharsetDecoder decoder;
+
+    /**
+     * The request identifier, or null if not generated yet.
+     */
+    private String requestId;
+
+    /**
+     * The request time (ms), 0 if not read yet.
+     */
+    private long requestTime;
+
+    /**
+     * The time the view was bound to the request, from {@link System#nanoTime()}.
+     */
+    private long arrivalNanos;
+
+    /**
+     * The response status set by the statements, as the Servlet API cannot read it back from the response.
+     */
+    private int status;
+
+    /**
+     * The {@link MethodBits} bit of the request method, -1 if not resolved yet.
+     */
+    private long methodBit = -1L;
+
+    /**
+     * The owners of {@link #memos} for the current request, the first {@link #memoCount} are valid.
+     */
+    private Object[] memoOwners = new Object[2];
+
+    /**
+     * Per-request memoized results, by owner, reused across requests.
+     */
+    private byte[][] memos = new byte[2][];
+
+    /**
+     * The number of owners of {@link #memos} for the current request.
+     */
+    private int memoCount;
+
+    /**
+     * Only instantiated by {@link #of(HttpServletRequest)}.
+     */
+    private RequestView() {
+    }
+
+    /**
+     * Get the view of a request, binding one if needed.
+     *
+     * @param req the request.
+     * @return the view bound to the request.
+     */
+    public static RequestView of(HttpServletRequest req) {
+        final Object attribute = req.getAttribute(ATTRIBUTE);
+        if (attribute instanceof RequestView && ((RequestView) attribute).request == req) return (RequestView) attribute;
+        final RequestView view = POOL.get();
+        view.bind(req);
+        req.setAttribute(ATTRIBUTE, view);
+        return view;
+    }
+
+    /**
+     * Unbind the view of a request, so that it can be reused for the next request handled by the thread.
+     *
+     * @param req the request.
+     */
+    public static void release(HttpServletRequest req) {
+        final Object attribute = req.getAttribute(ATTRIBUTE);
+        if (attribute instanceof RequestView) {
+            req.removeAttribute(ATTRIBUTE);
+            final RequestView view = (RequestView) attribute;
+            if (view.request == req) {
+                view.drainBody();
+                view.bind(null);
+            }
+        }
+    }
+
+    /**
+     * Bind this view to a request, resetting any state.
+     *
+     * @param req the request, may be null.
+     */
+    private void bind(HttpServletRequest req) {
+        request = req;
+        query = null;
+        queryParsed = false;
+        Arrays.fill(parameterValues, 0, Math.min(parameterCount, parameterValues.length), null);
+        parameterCount = 0;
+        path = null;
+        Arrays.fill(segments, 0, Math.min(segmentCount, segments.length), null);
+        segmentCount = 0;
+        bodyLength = 0;
+        bodyRead = false;
+        bodyEnded = false;
+        bodyTextBytes = -1;
+        Arrays.fill(memoOwners, 0, memoCount, null);
+        memoCount = 0;
+        methodBit = -1L;
+        requestId = null;
+        requestTime = 0L;
+        status = HttpServletResponse.SC_OK;
+        if (req != null) arrivalNanos = System.nanoTime();
+    }
+
+    /**
+     * Get the request this view is bound to.
+     *
+     * @return the request.
+     */
+    public HttpServletRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * Get the number of query parameters, counting each value of multi-valued parameters.
+     *
+     * @return the number of query parameters.
+     */
+    public int getQueryParameterCount() {
+        parseQuery();
+        return parameterCount;
+    }
+
+    /**
+     * Find the next query parameter with the given name.
+     *
+     * @param name the decoded parameter name.
+     * @param from the index to start searching from.
+     * @return the parameter index, or -1 if not found.
+     */
+    public int findQueryParameter(String name, int from) {
+        parseQuery();
+        for (int i = from; i < parameterCount; i++) {
+            final int start = parameterOffsets[4 * i];
+            final int end = parameterOffsets[4 * i + 1];
+            if (isEncoded(query, start, end)) {
+                if (name.equals(decode(query.substring(start, end)))) return i;
+            } else if (end - start == name.length() && query.regionMatches(start, name, 0, end - start)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the decoded value of a query parameter.
+     *
+     * @param index the parameter index.
+     * @return the value, empty if the parameter has no value.
+     */
+    public String getQueryParameterValue(int index) {
+        parseQuery();
+        if (index >= parameterValues.length) parameterValues = Arrays.copyOf(parameterValues, Math.max(index + 1, 2 * parameterValues.length));
+        String value = parameterValues[index];
+        if (value == null) {
+            final int start = parameterOffsets[4 * index + 2];
+            final int end = parameterOffsets[4 * index + 3];
+            value = query.substring(start, end);
+            if (isEncoded(query, start, end)) value = decode(value);
+            parameterValues[index] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Get the first value of a query parameter.
+     *
+     * @param name the decoded parameter name.
+     * @return the decoded value, or null if the parameter is absent.
+     */
+    public String getQueryParameter(String name) {
+        final int index = findQueryParameter(name, 0);
+        return index < 0 ? null : getQueryParameterValue(index);
+    }
+
+    /**
+     * Get the number of non-empty segments in the request URI.
+     *
+     * @return the number of segments.
+     */
+    public int getPathSegmentCount() {
+        parsePath();
+        return segmentCount;
+    }
+
+    /**
+     * Test whether a segment of the request URI equals a given string.
+     *
+     * @param index   the segment index, starting at 0.
+     * @param literal the string to compare to.
+     * @return true if the segment is equal to the string.
+     */
+    public boolean pathSegmentEquals(int index, String literal) {
+        parsePath();
+        if (index >= segmentCount) return false;
+        final int start = segmentOffsets[2 * index];
+        final int length = segmentOffsets[2 * index + 1] - start;
+        return length == literal.length() && path.regionMatches(start, literal, 0, length);
+    }
+
+    /**
+     * Get a segment of the request URI.
+     *
+     * @param index the segment index, starting at 0.
+     * @return the segment, or null if the URI has less segments.
+     */
+    public String getPathSegment(int index) {
+        parsePath();
+        if (index >= segmentCount) return null;
+        if (index >= segments.length) segments = Arrays.copyOf(segments, Math.max(index + 1, 2 * segments.length));
+        if (segments[index] == null) segments[index] = path.substring(segmentOffsets[2 * index], segmentOffsets[2 * index + 1]);
+        return segments[index];
+    }
+
+    /**
+     * Get the decoded text of a prefix of the request body.
+     * <p/>
+     * The returned text is only valid until the next call, and must not be modified.
+     *
+     * @param limit the maximum number of body bytes to decode.
+     * @return the decoded text, empty if the request has no body.
+     */
+    public CharSequence getBodyText(int limit) {
+        readBody(limit);
+        final int bytes = Math.min(limit, bodyLength);
+        if (bodyTextBytes != bytes) {
+            Charset charset;
+            try {
+                charset = request.getCharacterEncoding() == null ? UTF_8 : Charset.forName(request.getCharacterEncoding());
+            } catch (Exception e) {
+                charset = UTF_8;
+            }
+            if (decoder == null || !decoder.charset().equals(charset)) {
+                decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+            final int capacity = (int) Math.ceil(bytes * (double) decoder.maxCharsPerByte());
+            if (bodyText.capacity() < capacity) bodyText = CharBuffer.allocate(capacity);
+            bodyText.clear();
+            decoder.reset();
+            decoder.decode(ByteBuffer.wrap(body, 0, bytes), bodyText, true);
+            decoder.flush(bodyText);
+            bodyText.flip();
+            bodyTextBytes = bytes;
+        }
+        return bodyText;
+    }
+
+    /**
+     * Get an identifier unique to the request.
+     * <p/>
+     * Identifiers are made of a random prefix, chosen once per JVM, and a sequence number.
+     *
+     * @return the request identifier.
+     */
+    public String getRequestId() {
+        if (requestId == null) requestId = ID_PREFIX + Long.toHexString(ID_SEQUENCE.incrementAndGet());
+        return requestId;
+    }
+
+    /**
+     * Get the time the request was first asked for its time.
+     *
+     * @return the request time, in milliseconds since the epoch.
+     */
+    public long getRequestTime() {
+        if (requestTime == 0L) requestTime = System.currentTimeMillis();
+        return requestTime;
+    }
+
+    /**
+     * Get the time the request arrived, ie: the time the view was bound to it.
+     * <p/>
+     * Requests handled by a {@link net.nicoulaj.benchmark.mockwebapp.config.MockWebAppConfig} are bound before being
+     * matched.
+     *
+     * @return the arrival time, from {@link System#nanoTime()}.
+     */
+    public long getArrivalNanos() {
+        return arrivalNanos;
+    }
+
+    /**
+     * Get the response status set by the statements so far.
+     *
+     * @return the status, {@code 200} if none was set.
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Record the response status set by a statement.
+     *
+     * @param status the status.
+     */
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    /**
+     * Get the {@link MethodBits} bit of the request method.
+     *
+     * @return the method bit, 0 if the method is unknown.
+     */
+    public long getMethodBit() {
+        if (methodBit == -1L) methodBit = MethodBits.lookup(request.getMethod());
+        return methodBit;
+    }
+
+    /**
+     * Get an array for memoizing results for the duration of the request.
+     * <p/>
+     * The array is cleared the first time it is requested by an owner for the request. Each owner gets its own array,
+     * so that structures built by successive compilations of a config do not clear each other's results. Owners are
+     * looked up linearly, there are only a few of them per config.
+     *
+     * @param owner the structure memoizing results, used as the key.
+     * @param size  the number of results to memoize.
+     * @return an array of at least {@code size} elements.
+     */
+    public byte[] getMemo(Object owner, int size) {
+        for (int i = 0; i < memoCount; i++) {
+            if (memoOwners[i] == owner) return memos[i];
+        }
+        if (memoCount == memoOwners.length) {
+            memoOwners = Arrays.copyOf(memoOwners, memoCount * 2);
+            memos = Arrays.copyOf(memos, memoCount * 2);
+        }
+        byte[] memo = memos[memoCount];
+        if (memo == null || memo.length < size) memo = memos[memoCount] = new byte[size];
+        else Arrays.fill(memo, 0, size, (byte) 0);
+        memoOwners[memoCount++] = owner;
+        return memo;
+    }
+
+    /**
+     * Get the whole request body as a stream, including the prefix already buffered by {@link #getBodyText(int)}.
+     * <p/>
+     * The stream must be read before the view is released.
+     *
+     * @return the buffered prefix followed by the rest of the request input stream.
+     * @throws IOException if the request input stream could not be opened.
+     */
+    public InputStream getBodyStream() throws IOException {
+        final InputStream in = request.getInputStream();
+        if (bodyLength == 0) return in;
+        return new SequenceInputStream(new ByteArrayInputStream(body, 0, bodyLength), in);
+    }
+
+    /**
+     * Buffer a prefix of the request body into {@link #body}, if not done yet.
+     *
+     * @param limit the length of the prefix to buffer.
+     */
+    private void readBody(int limit) {
+        if (bodyEnded || bodyLength >= limit) return;
+        if (body.length < limit) body = Arrays.copyOf(body, limit);
+        bodyRead = true;
+        try {
+            final InputStream in = request.getInputStream();
+            while (bodyLength < limit) {
+                final int read = in.read(body, bodyLength, limit - bodyLength);
+                if (read < 0) {
+                    bodyEnded = true;
+                    break;
+                }
+                bodyLength += read;
+            }
+        } catch (IOException e) {
+            bodyEnded = true;
+        }
+    }
+
+    /**
+     * Consume the rest of the request body if it was partially read, reusing {@link #body} as a scratch buffer.
+     */
+    private void drainBody() {
+        if (!bodyRead || bodyEnded || body.length == 0) return;
+        bodyTextBytes = -1;
+        try {
+            final InputStream in = request.getInputStream();
+            while (in.read(body, 0, body.length) >= 0) {
+                // Discard.
+            }
+        } catch (IOException e) {
+            // The connection will not be reused, nothing else to do.
+        }
+        bodyEnded = true;
+    }
+
+    /**
+     * Parse the request query string into {@link #parameterOffsets}, if not done yet.
+     */
+    private void parseQuery() {
+        if (queryParsed) return;
+        queryParsed = true;
+        query = request.getQueryString();
+        if (query == null) return;
+        final int length = query.length();
+        int start = 0;
+        while (start < length) {
+            int end = query.indexOf('&', start);
+            if (end < 0) end = length;
+            if (end > start) {
+                int equals = query.indexOf('=', start);
+                if (equals < 0 || equals > end) equals = end;
+                if (4 * parameterCount + 4 > parameterOffsets.length) parameterOffsets = Arrays.copyOf(parameterOffsets, 2 * parameterOffsets.length);
+                parameterOffsets[4 * parameterCount] = start;
+                parameterOffsets[4 * parameterCount + 1] = equals;
+                parameterOffsets[4 * parameterCount + 2] = Math.min(equals + 1, end);
+                parameterOffsets[4 * parameterCount + 3] = end;
+                parameterCount++;
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Parse the request URI into {@link #segmentOffsets}, if not done yet.
+     */
+    private void parsePath() {
+        if (path != null) return;
+        path = request.getRequestURI();
+        if (path == null) path = "";
+        final int length = path.length();
+        int start = 0;
+        while (start < length) {
+            int end = path.indexOf('/', start);
+            if (end < 0) end = length;
+            if (end > start) {
+                if (2 * segmentCount + 2 > segmentOffsets.length) segmentOffsets = Arrays.copyOf(segmentOffsets, 2 * segmentOffsets.length);
+                segmentOffsets[2 * segmentCount] = start;
+                segmentOffsets[2 * segmentCount + 1] = end;
+                segmentCount++;
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Test whether a part of a query string is URL-encoded.
+     *
+     * @param s     the query string.
+     * @param start the part start.
+     * @param end   the part end.
+     * @return true if the part contains {@code %} or {@code +}.
+     */
+    private static boolean isEncoded(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            final char c = s.charAt(i);
+            if (c == '%' || c == '+') return true;
+        }
+        return false;
+    }
+
+    /**
+     * Decode a part of a query string.
+     *
+     * @param s the URL-encoded string.
+     * @return the decoded string, or the original one if it is not properly encoded.
+     */
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return s;
+        } catch (IllegalArgumentException e) {
+            return s;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.runtime;
+
+import javax.xml.bind.annotation.XmlTransient;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer for rendering responses, pooled per thread.
+ * <p/>
+ * Buffers larger than {@link #MAX_POOLED_SIZE} are dropped when {@link #release() released}, so that a single large
+ * response does not pin memory for the lifetime of the thread.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+@XmlTransient
+public final class ResponseBuffer {
+
+    /**
+     * The initial buffer size.
+     */
+    private static final int INITIAL_SIZE = 4096;
+
+    /**
+     * The maximum size of a buffer kept in the pool.
+     */
+    public static final int MAX_POOLED_SIZE = 1048576;
+
+    /**
+     * The buffers pool.
+     */
+    private static final ThreadLocal<ResponseBuffer> POOL = new ThreadLocal<ResponseBuffer>() {
+        @Override
+        protected ResponseBuffer initialValue() {
+            return new ResponseBuffer();
+        }
+    };
+
+    /**
+     * The buffered bytes.
+     */
+    private byte[] bytes = new byte[INITIAL_SIZE];
+
+    /**
+     * The number of {@link #bytes} used.
+     */
+    private int length;
+
+    /**
+     * A scratch builder for values to encode.
+     */
+    private final StringBuilder scratch = new StringBuilder(64);
+
+    /**
+     * The encoder used for the last encoded value.
+     */
+    private CharsetEncoder encoder;
+
+    /**
+     * Only instantiated by {@link #POOL}.
+     */
+    private ResponseBuffer() {
+    }
+
+    /**
+     * Get the empty buffer of the current thread.
+     *
+     * @return the buffer.
+     */
+    public static ResponseBuffer get() {
+        final ResponseBuffer buffer = POOL.get();
+        buffer.length = 0;
+        return buffer;
+    }
+
+    /**
+     * Get the scratch builder, emptied.
+     *
+     * @return the scratch builder.
+     */
+    public StringBuilder getScratch() {
+        scratch.setLength(0);
+        return scratch;
+    }
+
+    /**
+     * Append bytes.
+     *
+     * @param b the bytes to append.
+     */
+    public void write(byte[] b) {
+        ensureCapacity(length + b.length);
+        System.arraycopy(b, 0, bytes, length, b.length);
+        length += b.length;
+    }
+
+    /**
+     * Append encoded characters.
+     *
+     * @param s       the characters to encode.
+     * @param charset the charset to encode with.
+     */
+    public void write(CharSequence s, Charset charset) {
+        if (s.length() == 0) return;
+        if (encoder == null || !encoder.charset().equals(charset)) {
+            encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        encoder.reset();
+        final CharBuffer in = CharBuffer.wrap(s);
+        ensureCapacity(length + (int) Math.ceil(s.length() * (double) encoder.averageBytesPerChar()));
+        boolean flushing = false;
+        while (true) {
+            final ByteBuffer out = ByteBuffer.wrap(bytes, length, bytes.length - length);
+            final CoderResult result = flushing ? encoder.flush(out) : encoder.encode(in, out, true);
+            length = out.position();
+            if (result.isOverflow()) ensureCapacity(bytes.length + 16);
+            else if (flushing) return;
+            else flushing = true;
+        }
+    }
+
+    /**
+     * Get the number of bytes written.
+     *
+     * @return the buffer size.
+     */
+    public int size() {
+        return length;
+    }
+
+    /**
+     * Write the buffered bytes to a stream.
+     *
+     * @param out the stream to write to.
+     * @throws IOException if writing failed.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, length);
+    }
+
+    /**
+     * Release this buffer, dropping its storage if it grew beyond {@link #MAX_POOLED_SIZE}.
+     */
+    public void release() {
+        length = 0;
+        if (bytes.length > MAX_POOLED_SIZE) bytes = new byte[INITIAL_SIZE];
+    }
+
+    /**
+     * Grow {@link #bytes} if needed.
+     *
+     * @param capacity the minimum capacity.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(capacity, 2 * bytes.length));
+    }
+}
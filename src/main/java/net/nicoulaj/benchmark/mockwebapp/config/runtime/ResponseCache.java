@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.runtime;
+
+import javax.xml.bind.annotation.XmlTransient;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A least recently used cache of {@link CachedResponse}s, bounded by their total weight in bytes.
+ * <p/>
+ * Accesses are serialized on a single lock: lookups are a hash probe and a list relink, negligible next to the
+ * upstream calls the cache saves.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @see net.nicoulaj.benchmark.mockwebapp.config.ProxyFallback
+ * @since 1.0.0
+ */
+@XmlTransient
+public final class ResponseCache {
+
+    /**
+     * The responses, by key, in access order.
+     */
+    private final LinkedHashMap<String, CachedResponse> responses = new LinkedHashMap<String, CachedResponse>(64, 0.75f, true);
+
+    /**
+     * The maximum total weight, in bytes.
+     */
+    private final long capacity;
+
+    /**
+     * The total weight of {@link #responses}, in bytes.
+     */
+    private long weight;
+
+    /**
+     * The counter for cache hits.
+     */
+    private final AtomicLong hits;
+
+    /**
+     * The counter for cache misses.
+     */
+    private final AtomicLong misses;
+
+    /**
+     * The counter for evictions.
+     */
+    private final AtomicLong evictions;
+
+    /**
+     * Build a new {@link ResponseCache}.
+     *
+     * @param capacity the maximum total weight, in bytes.
+     * @param metrics  the prefix of the {@link Metrics} counters for hits, misses and evictions.
+     */
+    public ResponseCache(long capacity, String metrics) {
+        this.capacity = capacity;
+        this.hits = Metrics.counter(metrics + ".hits");
+        this.misses = Metrics.counter(metrics + ".misses");
+        this.evictions = Metrics.counter(metrics + ".evictions");
+    }
+
+    /**
+     * Get a cached response.
+     *
+     * @param key the key.
+     * @return the response, or null if not cached.
+     */
+    public CachedResponse get(String key) {
+        final CachedResponse response;
+        synchronized (responses) {
+            response = responses.get(key);
+        }
+        (response == null ? misses : hits).incrementAndGet();
+        return response;
+    }
+
+    /**
+     * Cache a response, evicting the least recently used ones to make room for it.
+     * <p/>
+     * Responses heavier than the whole cache are not cached.
+     *
+     * @param key      the key.
+     * @param response the response.
+     */
+    public void put(String key, CachedResponse response) {
+        final long added = response.getWeight();
+        if (added > capacity) return;
+        synchronized (responses) {
+            final CachedResponse previous = responses.put(key, response);
+            if (previous != null) weight -= previous.getWeight();
+            weight += added;
+            final Iterator<CachedResponse> eldest = responses.values().iterator();
+            while (weight > capacity) {
+                weight -= eldest.next().getWeight();
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Get the total weight of the cached responses.
+     *
+     * @return the weight, in bytes.
+     */
+    public long getWeight() {
+        synchronized (responses) {
+            return weight;
+        }
+    }
+
+    /**
+     * Get the number of cached responses.
+     *
+     * @return the number of responses.
+     */
+    public int size() {
+        synchronized (responses) {
+            return responses.size();
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.runtime;
+
+import javax.xml.bind.annotation.XmlTransient;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A piecewise linear function of time, used to vary statements parameters, eg: latency ramps, spikes or daily
+ * cycles.
+ * <p/>
+ * A schedule is defined by points {@code offset=value}, offsets in milliseconds in non-decreasing order, eg:
+ * {@code 0=1 540000=1 540000=20 600000=20}. Values are interpolated linearly between points, held before the first
+ * one and after the last one; two points with the same offset make a step. The time is measured either from the
+ * schedule compilation or from the epoch (UTC), and wraps around a period if any.
+ * <p/>
+ * Values are not computed per request: each schedule is sampled once into a table at compilation, and a background
+ * tick every {@link #TICK_MILLIS} looks the current value up in the table, so that reading it is a volatile read.
+ * Schedules are only weakly referenced by the tick, which stops when they are all garbage collected or on
+ * {@link #shutdown()}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+@XmlTransient
+public final class Schedule {
+
+    /**
+     * The interval between two refreshes of the current values (ms).
+     */
+    public static final long TICK_MILLIS = 50L;
+
+    /**
+     * The maximum number of samples per schedule.
+     */
+    private static final int MAX_SAMPLES = 1 << 16;
+
+    /**
+     * The schedules refreshed by {@link #ticker}, weakly referenced.
+     */
+    private static final Set<Schedule> SCHEDULES = Collections.newSetFromMap(new WeakHashMap<Schedule, Boolean>());
+
+    /**
+     * The background tick, or null if not running. Guarded by {@link #SCHEDULES}.
+     */
+    private static ScheduledExecutorService ticker;
+
+    /**
+     * The points offsets (ms).
+     */
+    private final long[] offsets;
+
+    /**
+     * The points values.
+     */
+    private final double[] values;
+
+    /**
+     * The period the time wraps around (ms), 0 if none.
+     */
+    private final long period;
+
+    /**
+     * The time origin, from {@link System#currentTimeMillis()}.
+     */
+    private final long origin;
+
+    /**
+     * The time between two samples (ms).
+     */
+    private final long step;
+
+    /**
+     * The values sampled every {@link #step}.
+     */
+    private final double[] samples;
+
+    /**
+     * The current value.
+     */
+    private volatile double value;
+
+    /**
+     * Build a new {@link Schedule}.
+     *
+     * @param offsets the points offsets (ms).
+     * @param values  the points values.
+     * @param period  the period the time wraps around (ms), 0 if none.
+     * @param origin  the time origin, from {@link System#currentTimeMillis()}.
+     */
+    private Schedule(long[] offsets, double[] values, long period, long origin) {
+        this.offsets = offsets;
+        this.values = values;
+        this.period = period;
+        this.origin = origin;
+        final long span = Math.max(1L, period > 0 ? period : offsets[offsets.length - 1] + 1);
+        step = Math.max(Math.min(TICK_MILLIS, span), (span + MAX_SAMPLES - 1) / MAX_SAMPLES);
+        samples = new double[(int) ((span + step - 1) / step)];
+        for (int i = 0; i < samples.length; i++) samples[i] = valueAt(i * step);
+    }
+
+    /**
+     * Compile a schedule and register it for refreshes.
+     *
+     * @param points the points, as {@code offset=value} strings.
+     * @param period the period the time wraps around (ms), or null if none.
+     * @param wall   whether to measure the time from the epoch rather than from now.
+     * @return the compiled schedule.
+     * @throws IllegalArgumentException if the points are not valid.
+     */
+    public static Schedule compile(List<String> points, Long period, boolean wall) {
+        final long now = System.currentTimeMillis();
+        final Schedule schedule = parse(points, period == null ? 0L : period, wall ? 0L : now);
+        schedule.refresh(now);
+        register(schedule);
+        return schedule;
+    }
+
+    /**
+     * Test whether a list of points is a valid schedule.
+     *
+     * @param points the points, as {@code offset=value} strings.
+     * @param max    the largest value allowed.
+     * @return true if the points are valid.
+     */
+    public static boolean isValid(List<String> points, double max) {
+        try {
+            for (double value : parse(points, 0L, 0L).values) if (value > max) return false;
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parse a schedule.
+     *
+     * @param points the points, as {@code offset=value} strings.
+     * @param period the period the time wraps around (ms), 0 if none.
+     * @param origin the time origin, from {@link System#currentTimeMillis()}.
+     * @return the schedule, not registered for refreshes.
+     * @throws IllegalArgumentException if the points are not valid.
+     */
+    private static Schedule parse(List<String> points, long period, long origin) {
+        final int size = points.size();
+        if (size == 0) throw new IllegalArgumentException("A schedule must have at least one point");
+        final long[] offsets = new long[size];
+        final double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            final String point = points.get(i);
+            final int separator = point.indexOf('=');
+            if (separator < 0) throw new IllegalArgumentException("Invalid schedule point: " + point);
+            try {
+                offsets[i] = Long.parseLong(point.substring(0, separator));
+                values[i] = Double.parseDouble(point.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid schedule point: " + point);
+            }
+            if (offsets[i] < 0 || (i > 0 && offsets[i] < offsets[i - 1]))
+                throw new IllegalArgumentException("The schedule offsets must be positive and in order");
+            if (values[i] < 0 || Double.isNaN(values[i]) || Double.isInfinite(values[i]))
+                throw new IllegalArgumentException("The schedule values must be positive numbers");
+        }
+        return new Schedule(offsets, values, period, origin);
+    }
+
+    /**
+     * Get the value at a time.
+     *
+     * @param time the time since the origin, wrapped around the period (ms).
+     * @return the interpolated value.
+     */
+    public double valueAt(long time) {
+        int i = 0;
+        while (i + 1 < offsets.length && offsets[i + 1] <= time) i++;
+        if (time < offsets[i] || i + 1 == offsets.length) return values[i];
+        final double ratio = (double) (time - offsets[i]) / (offsets[i + 1] - offsets[i]);
+        return values[i] + ratio * (values[i + 1] - values[i]);
+    }
+
+    /**
+     * Get the current value.
+     *
+     * @return the value at the last tick.
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * Look the current value up in the samples.
+     *
+     * @param now the current time, from {@link System#currentTimeMillis()}.
+     */
+    void refresh(long now) {
+        long time = Math.max(0L, now - origin);
+        if (period > 0) time %= period;
+        value = time >= offsets[offsets.length - 1] && period == 0 ? values[values.length - 1] : samples[(int) Math.min(time / step, samples.length - 1)];
+    }
+
+    /**
+     * Register a schedule for refreshes, starting the tick if needed.
+     *
+     * @param schedule the schedule.
+     */
+    private static void register(Schedule schedule) {
+        synchronized (SCHEDULES) {
+            SCHEDULES.add(schedule);
+            if (ticker != null) return;
+            ticker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "mock-web-app-schedules");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            ticker.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    tick();
+                }
+            }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop the background tick and forget the registered schedules, so that no thread outlives the web application.
+     * <p/>
+     * The schedules already compiled keep their last value; compiling a new one starts the tick again.
+     */
+    public static void shutdown() {
+        synchronized (SCHEDULES) {
+            SCHEDULES.clear();
+            if (ticker == null) return;
+            ticker.shutdownNow();
+            ticker = null;
+        }
+    }
+
+    /**
+     * Refresh all the schedules, stopping the tick if there are none left.
+     */
+    private static void tick() {
+        final List<Schedule> schedules;
+        synchronized (SCHEDULES) {
+            if (ticker == null) return;
+            if (SCHEDULES.isEmpty()) {
+                ticker.shutdown();
+                ticker = null;
+                return;
+            }
+            schedules = new ArrayList<Schedule>(SCHEDULES);
+        }
+        final long now = System.currentTimeMillis();
+        for (Schedule schedule : schedules) schedule.refresh(now);
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.runtime;
+
+import net.nicoulaj.benchmark.mockwebapp.config.when.WhenStatement;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.xml.bind.annotation.XmlTransient;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Adaptive evaluation order for the {@link WhenStatement}s of a {@link net.nicoulaj.benchmark.mockwebapp.config.Mapping}.
+ * <p/>
+ * One evaluation out of {@link #SAMPLE_INTERVAL} is sampled: all the statements are evaluated, without
+ * short-circuiting, and their rejections recorded. Every {@link #REORDER_INTERVAL} samples, statements are sorted by
+ * increasing cost per rejection, which minimizes the expected cost of evaluating the conjunction. Since all the
+ * statements must match, the order never changes the result.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+@XmlTransient
+public final class Selectivity {
+
+    /**
+     * The number of evaluations between two samples.
+     */
+    public static final int SAMPLE_INTERVAL = 64;
+
+    /**
+     * The number of samples between two reorderings.
+     */
+    public static final int REORDER_INTERVAL = 256;
+
+    /**
+     * The statements, in declaration order.
+     */
+    private final WhenStatement[] statements;
+
+    /**
+     * The static cost of each of {@link #statements}.
+     */
+    private final int[] costs;
+
+    /**
+     * The number of sampled rejections for each of {@link #statements}.
+     */
+    private final AtomicIntegerArray rejections;
+
+    /**
+     * The indexes in {@link #statements} of the current evaluation order.
+     */
+    private volatile int[] order;
+
+    /**
+     * The statements in the current evaluation order.
+     */
+    private volatile WhenStatement[] ordered;
+
+    /**
+     * The number of evaluations.
+     * <p/>
+     * Updated without synchronization: lost updates only shift sampling.
+     */
+    private int evaluations;
+
+    /**
+     * The number of samples since the last reordering.
+     * <p/>
+     * Updated without synchronization: lost updates only delay reordering.
+     */
+    private int samples;
+
+    /**
+     * Build a new {@link Selectivity}.
+     *
+     * @param statements the statements, in their initial evaluation order.
+     */
+    public Selectivity(WhenStatement[] statements) {
+        this.statements = statements.clone();
+        this.costs = new int[statements.length];
+        for (int i = 0; i < statements.length; i++) costs[i] = statements[i].getCost();
+        this.rejections = new AtomicIntegerArray(statements.length);
+        final int[] initial = new int[statements.length];
+        for (int i = 0; i < initial.length; i++) initial[i] = i;
+        publish(initial);
+    }
+
+    /**
+     * Sort statements by increasing static cost, keeping the declaration order for statements of equal cost.
+     *
+     * @param statements the statements to sort.
+     * @return a sorted copy of the statements.
+     */
+    public static WhenStatement[] sortByCost(WhenStatement[] statements) {
+        final WhenStatement[] sorted = statements.clone();
+        Arrays.sort(sorted, new Comparator<WhenStatement>() {
+            public int compare(WhenStatement o1, WhenStatement o2) {
+                final int c1 = o1.getCost(), c2 = o2.getCost();
+                return c1 < c2 ? -1 : c1 == c2 ? 0 : 1;
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * Get the statements in the current evaluation order.
+     *
+     * @return the ordered statements, must not be modified.
+     */
+    public WhenStatement[] getOrder() {
+        return ordered;
+    }
+
+    /**
+     * Test whether a request matches all the statements.
+     *
+     * @param req the request.
+     * @return true if all the statements match.
+     */
+    public boolean matches(HttpServletRequest req) {
+        if (++evaluations % SAMPLE_INTERVAL != 0) {
+            for (WhenStatement statement : ordered) if (!statement.matches(req)) return false;
+            return true;
+        }
+        boolean matches = true;
+        for (int i : order) {
+            if (!statements[i].matches(req)) {
+                rejections.incrementAndGet(i);
+                matches = false;
+            }
+        }
+        if (++samples >= REORDER_INTERVAL) reorder();
+        return matches;
+    }
+
+    /**
+     * Sort statements by increasing cost per sampled rejection, then decay the sampled rejections.
+     */
+    private synchronized void reorder() {
+        if (samples < REORDER_INTERVAL) return;
+        final int total = samples;
+        samples = 0;
+        final double[] ranks = new double[statements.length];
+        final Integer[] sorted = new Integer[statements.length];
+        for (int i = 0; i < statements.length; i++) {
+            final int rejected = rejections.get(i);
+            rejections.addAndGet(i, -rejected / 2);
+            ranks[i] = costs[i] * (total + 2) / (double) (rejected + 1);
+            sorted[i] = order[i];
+        }
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(ranks[o1], ranks[o2]);
+            }
+        });
+        final int[] newOrder = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) newOrder[i] = sorted[i];
+        publish(newOrder);
+    }
+
+    /**
+     * Publish a new evaluation order.
+     *
+     * @param newOrder the indexes in {@link #statements} of the new evaluation order.
+     */
+    private void publish(int[] newOrder) {
+        final WhenStatement[] newOrdered = new WhenStatement[newOrder.length];
+        for (int i = 0; i < newOrder.length; i++) newOrdered[i] = statements[newOrder[i]];
+        ordered = newOrdered;
+        order = newOrder;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.runtime;
+
+import javax.xml.bind.annotation.XmlTransient;
+
+/**
+ * A position in a shared matching structure, such as an {@link AddressTrie} or a {@link HeaderIndex}.
+ * <p/>
+ * Conditions keep the structure and their position in it together in a single {@code volatile} {@link Slot}, so they
+ * can be switched to the structure of a newer config while requests are being evaluated, without ever reading a
+ * structure with the position of another one.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+@XmlTransient
+public final class Slot<T> {
+
+    /**
+     * The shared structure.
+     */
+    public final T owner;
+
+    /**
+     * The position in {@link #owner}.
+     */
+    public final int index;
+
+    /**
+     * Build a new {@link Slot}.
+     *
+     * @param owner the shared structure, already complete.
+     * @param index the position in {@code owner}.
+     */
+    public Slot(T owner, int index) {
+        this.owner = owner;
+        this.index = index;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.runtime;
+
+import javax.xml.bind.annotation.XmlTransient;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per key call counters, expiring after some idle time.
+ * <p/>
+ * Keys are spread over independent stripes, each one an access ordered map guarded by its own lock, so that
+ * concurrent clients rarely contend. Each access first drops the idle entries at the head of its stripe, and the least
+ * recently used entry is dropped when a stripe is full, so memory stays bounded whatever the number of clients.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @see net.nicoulaj.benchmark.mockwebapp.config.then.SequenceAction
+ * @since 1.0.0
+ */
+@XmlTransient
+public final class StripedCounters {
+
+    /**
+     * The stripes, by key hash.
+     */
+    private final Stripe[] stripes;
+
+    /**
+     * The bit mask selecting a stripe from a key hash.
+     */
+    private final int mask;
+
+    /**
+     * The idle time after which an entry expires, in milliseconds.
+     */
+    private final long ttl;
+
+    /**
+     * The maximum number of entries per stripe.
+     */
+    private final int stripeCapacity;
+
+    /**
+     * The counter for expired or evicted entries.
+     */
+    private final AtomicLong evictions = Metrics.counter("sequence.evictions");
+
+    /**
+     * Build a new {@link StripedCounters}.
+     *
+     * @param ttl      the idle time after which an entry expires, in milliseconds.
+     * @param capacity the maximum number of entries.
+     */
+    public StripedCounters(long ttl, int capacity) {
+        int count = 1;
+        while (count < 4 * Runtime.getRuntime().availableProcessors() && count < capacity) count <<= 1;
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) stripes[i] = new Stripe();
+        this.mask = count - 1;
+        this.ttl = ttl;
+        this.stripeCapacity = Math.max(1, capacity / count);
+    }
+
+    /**
+     * Increment the counter of a key.
+     *
+     * @param key the key.
+     * @param now the current time, in milliseconds.
+     * @return the counter value before the increment, 0 for a new or expired key.
+     */
+    public int increment(String key, long now) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        final Stripe stripe = stripes[hash & mask];
+        synchronized (stripe) {
+            final Iterator<Counter> idle = stripe.values().iterator();
+            while (idle.hasNext()) {
+                if (now - idle.next().lastAccess < ttl) break;
+                idle.remove();
+                evictions.incrementAndGet();
+            }
+            Counter entry = stripe.get(key);
+            if (entry == null) {
+                if (stripe.size() >= stripeCapacity) {
+                    final Iterator<Counter> eldest = stripe.values().iterator();
+                    eldest.next();
+                    eldest.remove();
+                    evictions.incrementAndGet();
+                }
+                entry = new Counter();
+                stripe.put(key, entry);
+            }
+            entry.lastAccess = now;
+            return entry.count == Integer.MAX_VALUE ? entry.count : entry.count++;
+        }
+    }
+
+    /**
+     * Get the number of entries, including the expired ones not dropped yet.
+     *
+     * @return the number of entries.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * A stripe: entries by key, in access order.
+     */
+    private static final class Stripe extends LinkedHashMap<String, Counter> {
+
+        /**
+         * Build a new {@link Stripe}.
+         */
+        Stripe() {
+            super(16, 0.75f, true);
+        }
+    }
+
+    /**
+     * A key counter.
+     */
+    private static final class Counter {
+
+        /**
+         * The counter value.
+         */
+        int count;
+
+        /**
+         * The last access time, in milliseconds.
+         */
+        long lastAccess;
+    }
+}
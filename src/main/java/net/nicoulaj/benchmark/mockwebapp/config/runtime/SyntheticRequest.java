@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.runtime;
+
+import net.nicoulaj.benchmark.mockwebapp.config.Mapping;
+import net.nicoulaj.benchmark.mockwebapp.config.when.*;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.bind.annotation.XmlTransient;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URLEncoder;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A request derived from a {@link Mapping}, satisfying its statements.
+ * <p/>
+ * Path templates variables are set to {@code 1}, URL, header and query parameter patterns must be literal, and
+ * missing header or query parameter patterns are satisfied with {@code 1}. No request is derived from mappings with
+ * other statements, or with patterns that are not literal.
+ * <p/>
+ * Synthetic requests can be sent over HTTP, or handled in process through {@link #toRequest()} and
+ * {@link #newResponse()}, eg: to warm a config up before it is used.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @see net.nicoulaj.benchmark.mockwebapp.load.LoadScenario
+ * @since 1.0.0
+ */
+@XmlTransient
+public final class SyntheticRequest {
+
+    /**
+     * The characters with a special meaning in Java patterns.
+     */
+    private static final Pattern METACHARACTERS = Pattern.compile("[\\\\^$.|?*+()\\[\\]{}]");
+
+    /**
+     * A pattern entirely quoted with {@link Pattern#quote(String)}.
+     */
+    private static final Pattern QUOTED = Pattern.compile("\\\\Q(.*?)\\\\E");
+
+    /**
+     * The path template variables.
+     */
+    private static final Pattern VARIABLE = Pattern.compile("\\{[^/}]*\\}");
+
+    /**
+     * The request method.
+     */
+    public final String method;
+
+    /**
+     * The request URI, with its query string.
+     */
+    public final String uri;
+
+    /**
+     * The request headers.
+     */
+    public final Map<String, String> headers;
+
+    /**
+     * Build a new {@link SyntheticRequest}.
+     *
+     * @param method  the request method.
+     * @param uri     the request URI, with its query string.
+     * @param headers the request headers.
+     */
+    public SyntheticRequest(String method, String uri, Map<String, String> headers) {
+        this.method = method;
+        this.uri = uri;
+        this.headers = headers;
+    }
+
+    /**
+     * Derive a request from a mapping.
+     *
+     * @param mapping the mapping.
+     * @return a request matched by the mapping, or null if none can be derived.
+     */
+    public static SyntheticRequest of(Mapping mapping) {
+        String method = "GET";
+        String path = null;
+        final Map<String, String> query = new LinkedHashMap<String, String>();
+        final Map<String, String> headers = new LinkedHashMap<String, String>();
+        for (WhenStatement whenStatement : mapping.whenStatements) {
+            if (whenStatement instanceof MethodCondition) {
+                final List<String> methods = ((MethodCondition) whenStatement).methods;
+                if (methods.contains("GET")) method = "GET";
+                else if (!methods.isEmpty()) method = methods.get(0);
+            } else if (whenStatement instanceof PathCondition) {
+                path = VARIABLE.matcher(((PathCondition) whenStatement).template).replaceAll("1");
+            } else if (whenStatement instanceof URLCondition) {
+                path = literal(((URLCondition) whenStatement).pattern);
+                if (path == null || !path.startsWith("/")) return null;
+            } else if (whenStatement instanceof QueryParamCondition) {
+                final QueryParamCondition condition = (QueryParamCondition) whenStatement;
+                final String value = condition.valuePattern == null ? "1" : literal(condition.valuePattern);
+                if (value == null) return null;
+                query.put(condition.name, value);
+            } else if (whenStatement instanceof HeaderCondition) {
+                final HeaderCondition condition = (HeaderCondition) whenStatement;
+                final String value = condition.pattern == null || condition.pattern.length() == 0 ? "1" : literal(condition.pattern);
+                if (value == null) return null;
+                headers.put(condition.name, value);
+            } else {
+                return null;
+            }
+        }
+        if (path == null) return null;
+        final StringBuilder uri = new StringBuilder(path);
+        char separator = '?';
+        for (Map.Entry<String, String> parameter : query.entrySet()) {
+            uri.append(separator).append(encode(parameter.getKey())).append('=').append(encode(parameter.getValue()));
+            separator = '&';
+        }
+        return new SyntheticRequest(method, uri.toString(), headers);
+    }
+
+    /**
+     * Get the only string a pattern matches.
+     *
+     * @param pattern the Java-style pattern.
+     * @return the matched string, or null if the pattern is not literal.
+     */
+    private static String literal(String pattern) {
+        final Matcher quoted = QUOTED.matcher(pattern);
+        if (quoted.matches()) return quoted.group(1);
+        return METACHARACTERS.matcher(pattern).find() ? null : pattern;
+    }
+
+    /**
+     * Encode a query string component.
+     *
+     * @param value the component.
+     * @return the encoded component.
+     */
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported", e);
+        }
+    }
+
+    /**
+     * Build an in-process {@link HttpServletRequest} for this request, from the local address and without body.
+     * <p/>
+     * Only the request line, headers and attributes are implemented, other methods return null, 0, -1 or false.
+     *
+     * @return a new request.
+     */
+    public HttpServletRequest toRequest() {
+        final int separator = uri.indexOf('?');
+        final String requestURI = separator < 0 ? uri : uri.substring(0, separator);
+        final String queryString = separator < 0 ? null : uri.substring(separator + 1);
+        final Map<String, String> lowerCaseHeaders = new HashMap<String, String>();
+        for (Map.Entry<String, String> header : headers.entrySet())
+            lowerCaseHeaders.put(header.getKey().toLowerCase(Locale.ENGLISH), header.getValue());
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+        return (HttpServletRequest) Proxy.newProxyInstance(SyntheticRequest.class.getClassLoader(), new Class<?>[]{HttpServletRequest.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method m, Object[] args) {
+                final String name = m.getName();
+                if ("getMethod".equals(name)) return method;
+                if ("getRequestURI".equals(name) || "getPathInfo".equals(name)) return requestURI;
+                if ("getQueryString".equals(name)) return queryString;
+                if ("getRequestURL".equals(name)) return new StringBuffer("http://localhost").append(requestURI);
+                if ("getHeader".equals(name)) return lowerCaseHeaders.get(((String) args[0]).toLowerCase(Locale.ENGLISH));
+                if ("getHeaders".equals(name)) {
+                    final String value = lowerCaseHeaders.get(((String) args[0]).toLowerCase(Locale.ENGLISH));
+                    return Collections.enumeration(value == null ? Collections.<String>emptyList() : Collections.singletonList(value));
+                }
+                if ("getHeaderNames".equals(name)) return Collections.enumeration(headers.keySet());
+                if ("getAttribute".equals(name)) return attributes.get(args[0]);
+                if ("setAttribute".equals(name)) return attributes.put((String) args[0], args[1]);
+                if ("removeAttribute".equals(name)) return attributes.remove(args[0]);
+                if ("getRemoteAddr".equals(name) || "getLocalAddr".equals(name)) return "127.0.0.1";
+                if ("getContextPath".equals(name) || "getServletPath".equals(name)) return "";
+                if ("getInputStream".equals(name)) return new ServletInputStream() {
+                    @Override
+                    public int read() {
+                        return -1;
+                    }
+                };
+                return defaultValue(m, proxy, args);
+            }
+        });
+    }
+
+    /**
+     * Build an in-process {@link HttpServletResponse} discarding everything written to it.
+     * <p/>
+     * Only the output stream and writer are implemented, other methods return null, 0, -1 or false.
+     *
+     * @return a new response.
+     */
+    public static HttpServletResponse newResponse() {
+        final ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+        return (HttpServletResponse) Proxy.newProxyInstance(SyntheticRequest.class.getClassLoader(), new Class<?>[]{HttpServletResponse.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method m, Object[] args) {
+                if ("getOutputStream".equals(m.getName())) return out;
+                if ("getWriter".equals(m.getName())) return new PrintWriter((OutputStream) out);
+                if ("getCharacterEncoding".equals(m.getName())) return "UTF-8";
+                return defaultValue(m, proxy, args);
+            }
+        });
+    }
+
+    /**
+     * Get the value returned by the methods synthetic requests and responses do not implement.
+     *
+     * @param m     the method called.
+     * @param proxy the proxy the method was called on.
+     * @param args  the method arguments.
+     * @return -1 for numbers, false for booleans, null otherwise; or the {@link Object} methods results.
+     */
+    private static Object defaultValue(Method m, Object proxy, Object[] args) {
+        if ("equals".equals(m.getName()) && args != null && args.length == 1) return proxy == args[0];
+        if ("hashCode".equals(m.getName()) && args == null) return System.identityHashCode(proxy);
+        if ("toString".equals(m.getName()) && args == null) return "synthetic " + m.getDeclaringClass().getSimpleName();
+        final Class<?> type = m.getReturnType();
+        if (type == boolean.class) return Boolean.FALSE;
+        if (type == int.class) return -1;
+        if (type == long.class) return -1L;
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return method + ' ' + uri;
+    }
+}
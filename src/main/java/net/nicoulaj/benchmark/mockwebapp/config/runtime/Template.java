@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.runtime;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.xml.bind.annotation.XmlTransient;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A text with <code>${variable}</code> placeholders, substituted for each request.
+ * <p/>
+ * The text is split once into literal chunks and variable references, so rendering is a plain concatenation, without
+ * any pattern matching. The supported variables are:
+ * <ul>
+ * <li><code>${request.id}</code>: an identifier unique to the request.</li>
+ * <li><code>${request.time}</code>: the time the request was first rendered, in milliseconds since the epoch.</li>
+ * <li><code>${header.Name}</code>: the value of the {@code Name} request header, empty if missing.</li>
+ * <li><code>${path.N}</code>: the {@code N}th segment of the request URI, starting at 0, empty if missing.</li>
+ * <li><code>${query.name}</code>: the first value of the {@code name} query parameter, empty if missing.</li>
+ * </ul>
+ * <p/>
+ * Literal chunks can be {@link #encodeLiterals(Charset) encoded} once, so that renderers writing bytes only have to
+ * encode the variables values.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+@XmlTransient
+public final class Template {
+
+    /**
+     * The variable for the request identifier.
+     */
+    private static final String REQUEST_ID = "request.id";
+
+    /**
+     * The variable for the request time.
+     */
+    private static final String REQUEST_TIME = "request.time";
+
+    /**
+     * The prefix of the request headers variables.
+     */
+    private static final String HEADER_PREFIX = "header.";
+
+    /**
+     * The prefix of the path segments variables.
+     */
+    private static final String PATH_PREFIX = "path.";
+
+    /**
+     * The prefix of the query parameters variables.
+     */
+    private static final String QUERY_PREFIX = "query.";
+
+    /**
+     * Kind of the {@link #REQUEST_ID} variable.
+     */
+    private static final int KIND_REQUEST_ID = 0;
+
+    /**
+     * Kind of the {@link #REQUEST_TIME} variable.
+     */
+    private static final int KIND_REQUEST_TIME = 1;
+
+    /**
+     * Kind of the {@link #HEADER_PREFIX} variables.
+     */
+    private static final int KIND_HEADER = 2;
+
+    /**
+     * Kind of the {@link #PATH_PREFIX} variables.
+     */
+    private static final int KIND_PATH = 3;
+
+    /**
+     * Kind of the {@link #QUERY_PREFIX} variables.
+     */
+    private static final int KIND_QUERY = 4;
+
+    /**
+     * The literal chunks, one more than {@link #kinds}.
+     */
+    private final String[] literals;
+
+    /**
+     * The kind of each variable.
+     */
+    private final int[] kinds;
+
+    /**
+     * The argument of each variable, or null.
+     */
+    private final String[] arguments;
+
+    /**
+     * The index argument of each variable, or -1.
+     */
+    private final int[] indexes;
+
+    /**
+     * The text itself, if the template has no variables.
+     */
+    private final String constant;
+
+    /**
+     * Build a new {@link Template}.
+     *
+     * @param literals  the literal chunks.
+     * @param kinds     the kinds of variables.
+     * @param arguments the variables arguments.
+     */
+    private Template(String[] literals, int[] kinds, String[] arguments) {
+        this.literals = literals;
+        this.kinds = kinds;
+        this.arguments = arguments;
+        this.indexes = new int[kinds.length];
+        for (int i = 0; i < kinds.length; i++) indexes[i] = kinds[i] == KIND_PATH ? Integer.parseInt(arguments[i]) : -1;
+        this.constant = kinds.length == 0 ? literals[0] : null;
+    }
+
+    /**
+     * Compile a template.
+     *
+     * @param text the template text.
+     * @return the compiled template.
+     * @throws IllegalArgumentException if the template references an unknown variable or is malformed.
+     */
+    public static Template compile(String text) {
+        final List<String> literals = new ArrayList<String>();
+        final List<Integer> kinds = new ArrayList<Integer>();
+        final List<String> arguments = new ArrayList<String>();
+        int from = 0;
+        int start;
+        while ((start = text.indexOf("${", from)) >= 0) {
+            final int end = text.indexOf('}', start + 2);
+            if (end < 0) throw new IllegalArgumentException("Unclosed variable in template '" + text + "'");
+            final String variable = text.substring(start + 2, end);
+            literals.add(text.substring(from, start));
+            if (REQUEST_ID.equals(variable)) {
+                kinds.add(KIND_REQUEST_ID);
+                arguments.add(null);
+            } else if (REQUEST_TIME.equals(variable)) {
+                kinds.add(KIND_REQUEST_TIME);
+                arguments.add(null);
+            } else if (variable.startsWith(HEADER_PREFIX) && variable.length() > HEADER_PREFIX.length()) {
+                kinds.add(KIND_HEADER);
+                arguments.add(variable.substring(HEADER_PREFIX.length()));
+            } else if (variable.startsWith(PATH_PREFIX) && isIndex(variable.substring(PATH_PREFIX.length()))) {
+                kinds.add(KIND_PATH);
+                arguments.add(variable.substring(PATH_PREFIX.length()));
+            } else if (variable.startsWith(QUERY_PREFIX) && variable.length() > QUERY_PREFIX.length()) {
+                kinds.add(KIND_QUERY);
+                arguments.add(variable.substring(QUERY_PREFIX.length()));
+            } else {
+                throw new IllegalArgumentException("Unknown variable '" + variable + "' in template '" + text + "'");
+            }
+            from = end + 1;
+        }
+        literals.add(text.substring(from));
+        final int[] kindsArray = new int[kinds.size()];
+        for (int i = 0; i < kindsArray.length; i++) kindsArray[i] = kinds.get(i);
+        return new Template(literals.toArray(new String[literals.size()]), kindsArray, arguments.toArray(new String[arguments.size()]));
+    }
+
+    /**
+     * Test whether a template is valid.
+     *
+     * @param text the template text.
+     * @return true if {@link #compile(String)} accepts the template.
+     */
+    public static boolean isValid(String text) {
+        try {
+            compile(text);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Test whether a string is a valid path segment index.
+     *
+     * @param s the string to test.
+     * @return true if the string is a small non-negative decimal number.
+     */
+    private static boolean isIndex(String s) {
+        if (s.length() == 0 || s.length() > 4) return false;
+        for (int i = 0; i < s.length(); i++) if (s.charAt(i) < '0' || s.charAt(i) > '9') return false;
+        return true;
+    }
+
+    /**
+     * Test whether this template has no variables.
+     *
+     * @return true if the template renders the same text for all requests.
+     */
+    public boolean isConstant() {
+        return constant != null;
+    }
+
+    /**
+     * Render this template for a request.
+     *
+     * @param req the request.
+     * @return the rendered text.
+     */
+    public String render(HttpServletRequest req) {
+        if (constant != null) return constant;
+        final StringBuilder builder = new StringBuilder(64);
+        render(req, builder);
+        return builder.toString();
+    }
+
+    /**
+     * Render this template for a request.
+     *
+     * @param req     the request.
+     * @param builder the builder to append the rendered text to.
+     */
+    public void render(HttpServletRequest req, StringBuilder builder) {
+        builder.append(literals[0]);
+        for (int i = 0; i < kinds.length; i++) {
+            appendVariable(i, req, builder);
+            builder.append(literals[i + 1]);
+        }
+    }
+
+    /**
+     * Get the number of variables in this template.
+     *
+     * @return the number of variables, the number of literal chunks minus one.
+     */
+    public int getVariableCount() {
+        return kinds.length;
+    }
+
+    /**
+     * Encode the literal chunks of this template.
+     *
+     * @param charset the charset to encode with.
+     * @return the encoded chunks, one more than {@link #getVariableCount()}: the rendered text is made of the chunks
+     *         alternating with the variables values.
+     */
+    public byte[][] encodeLiterals(Charset charset) {
+        final byte[][] encoded = new byte[literals.length][];
+        for (int i = 0; i < literals.length; i++) encoded[i] = literals[i].getBytes(charset);
+        return encoded;
+    }
+
+    /**
+     * Append the value of a variable for a request.
+     *
+     * @param index   the variable index.
+     * @param req     the request.
+     * @param builder the builder to append the value to.
+     */
+    public void appendVariable(int index, HttpServletRequest req, StringBuilder builder) {
+        final String value;
+        switch (kinds[index]) {
+            case KIND_REQUEST_ID:
+                builder.append(RequestView.of(req).getRequestId());
+                return;
+            case KIND_REQUEST_TIME:
+                builder.append(RequestView.of(req).getRequestTime());
+                return;
+            case KIND_HEADER:
+                value = req.getHeader(arguments[index]);
+                break;
+            case KIND_PATH:
+                value = RequestView.of(req).getPathSegment(indexes[index]);
+                break;
+            case KIND_QUERY:
+                value = RequestView.of(req).getQueryParameter(arguments[index]);
+                break;
+            default:
+                throw new IllegalStateException("Unknown variable kind " + kinds[index]);
+        }
+        if (value != null) builder.append(value);
+    }
+}
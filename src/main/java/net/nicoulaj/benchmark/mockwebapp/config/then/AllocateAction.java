@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.then;
+
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Metrics;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlTransient;
+import java.util.Queue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link AllocateAction} allocates memory to serve the response, emulating a GC-heavy backend.
+ * <p/>
+ * Memory is allocated by chunks of {@link #CHUNK_SIZE} bytes, so that garbage never has to be allocated in one piece.
+ * When {@link #retainMs} is set, the chunks are kept reachable for that long, within a global budget of {@link
+ * #MAX_RETAINED_BYTES} bytes: allocations that would exceed it are not retained. Retained allocations are tracked in a
+ * single queue shared by all actions and released by the next allocation after their expiry, whichever action makes
+ * it, so that the budget still holds when the action that retained them is reloaded, removed or stops getting
+ * requests.
+ * <p/>
+ * Reports the {@code allocate.allocated-bytes}, {@code allocate.retained-bytes} and {@code allocate.rejected-bytes}
+ * {@link Metrics} counters.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class AllocateAction implements ThenStatement {
+
+    /**
+     * The name of the system property used to define the maximum amount of memory retained by {@link
+     * AllocateAction}s (bytes).
+     */
+    public static final String MAX_RETAINED_BYTES_PROPERTY = "mock-web-app.allocate.max-retained-bytes";
+
+    /**
+     * The maximum amount of memory retained by {@link AllocateAction}s (bytes), defaults to a quarter of the heap.
+     */
+    public static final long MAX_RETAINED_BYTES = Long.getLong(MAX_RETAINED_BYTES_PROPERTY, Runtime.getRuntime().maxMemory() / 4);
+
+    /**
+     * The size of the allocated chunks (bytes).
+     */
+    protected static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The total amount of memory allocated by {@link AllocateAction}s (bytes).
+     */
+    protected static final AtomicLong ALLOCATED_BYTES = Metrics.counter("allocate.allocated-bytes");
+
+    /**
+     * The amount of memory currently retained by {@link AllocateAction}s (bytes).
+     */
+    protected static final AtomicLong RETAINED_BYTES = Metrics.counter("allocate.retained-bytes");
+
+    /**
+     * The total amount of memory that could not be retained because of the {@link #MAX_RETAINED_BYTES} limit (bytes).
+     */
+    protected static final AtomicLong REJECTED_BYTES = Metrics.counter("allocate.rejected-bytes");
+
+    /**
+     * The allocations currently retained by all {@link AllocateAction}s, soonest expiry first.
+     */
+    protected static final Queue<Retained> RETAINED = new PriorityBlockingQueue<Retained>();
+
+    /**
+     * Sink for the allocated chunks, prevents the JIT from eliminating the allocations.
+     */
+    protected static volatile byte[] sink;
+
+    /**
+     * The amount of memory to allocate for each request (bytes).
+     */
+    @XmlAttribute(required = true)
+    public long bytes;
+
+    /**
+     * The time to keep the allocated memory reachable (ms).
+     * <p/>
+     * Can be null, in which case the memory is released right away.
+     */
+    @XmlAttribute(name = "retain-ms", required = false)
+    public Integer retainMs;
+
+    /**
+     * Assert this {@link AllocateAction} is valid.
+     * <p/>
+     * Checks everything that cannot be enforced through the XML schema.
+     *
+     * @throws Throwable if an element of the {@link AllocateAction} is invalid.
+     */
+    public void validate() throws Throwable {
+        assert bytes > 0 : "The amount of memory to allocate cannot be negative";
+        assert retainMs == null || retainMs > 0 : "The retention time cannot be negative";
+    }
+
+    /**
+     * Process an HTTP request/response.
+     * <p/>
+     * Allocates {@link #bytes} and retains them for {@link #retainMs} if set.
+     *
+     * @param req  the {@link HttpServletRequest} to process.
+     * @param resp the {@link HttpServletResponse} to use.
+     */
+    public void process(HttpServletRequest req, HttpServletResponse resp) {
+        final long now = System.nanoTime();
+        release(now);
+
+        final boolean retain = retainMs != null && reserve(bytes);
+        final byte[][] chunks = retain ? new byte[(int) ((bytes + CHUNK_SIZE - 1) / CHUNK_SIZE)][] : null;
+        long remaining = bytes;
+        for (int i = 0; remaining > 0; i++) {
+            final byte[] chunk = new byte[(int) Math.min(remaining, CHUNK_SIZE)];
+            chunk[0] = (byte) i;
+            if (retain) chunks[i] = chunk;
+            sink = chunk;
+            remaining -= chunk.length;
+        }
+        ALLOCATED_BYTES.addAndGet(bytes);
+
+        if (retain) RETAINED.add(new Retained(now + retainMs * 1000000L, chunks, bytes));
+        else if (retainMs != null) REJECTED_BYTES.addAndGet(bytes);
+    }
+
+    /**
+     * Reserve some of the {@link #MAX_RETAINED_BYTES} budget.
+     *
+     * @param size the amount of memory to reserve (bytes).
+     * @return true if the budget allowed the reservation.
+     */
+    protected static boolean reserve(long size) {
+        long current;
+        do {
+            current = RETAINED_BYTES.get();
+            if (current + size > MAX_RETAINED_BYTES) return false;
+        } while (!RETAINED_BYTES.compareAndSet(current, current + size));
+        return true;
+    }
+
+    /**
+     * Release the allocations whose retention time is over.
+     *
+     * @param now the current {@link System#nanoTime()}.
+     */
+    protected static void release(long now) {
+        Retained head;
+        while ((head = RETAINED.peek()) != null && head.expiry - now <= 0) {
+            if (RETAINED.remove(head)) RETAINED_BYTES.addAndGet(-head.size);
+        }
+    }
+
+    /**
+     * An allocation kept reachable until its expiry.
+     *
+     * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+     * @since 1.0.0
+     */
+    @XmlTransient
+    protected static final class Retained implements Comparable<Retained> {
+
+        /**
+         * The {@link System#nanoTime()} after which the allocation can be released.
+         */
+        final long expiry;
+
+        /**
+         * The allocated chunks.
+         */
+        final byte[][] chunks;
+
+        /**
+         * The allocation size (bytes).
+         */
+        final long size;
+
+        /**
+         * Build a new {@link Retained}.
+         *
+         * @param expiry the {@link System#nanoTime()} after which the allocation can be released.
+         * @param chunks the allocated chunks.
+         * @param size   the allocation size (bytes).
+         */
+        Retained(long expiry, byte[][] chunks, long size) {
+            this.expiry = expiry;
+            this.chunks = chunks;
+            this.size = size;
+        }
+
+        /**
+         * Order allocations by expiry.
+         *
+         * @param other the {@link Retained} to compare to.
+         * @return a negative integer, zero, or a positive integer as this allocation expires before, with, or after
+         *         {@code other}.
+         */
+        public int compareTo(Retained other) {
+            final long diff = expiry - other.expiry;
+            return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+        }
+    }
+}
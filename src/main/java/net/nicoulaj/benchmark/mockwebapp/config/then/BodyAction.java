@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.then;
+
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.ContentCodings;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.EntityTags;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.HeaderSet;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.RequestView;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.ResponseBuffer;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Template;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlList;
+import javax.xml.bind.annotation.XmlTransient;
+import javax.xml.bind.annotation.XmlValue;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link BodyAction} writes the response body.
+ * <p/>
+ * The body is a {@link Template}, so it can echo request fields such as <code>${path.1}</code>,
+ * <code>${header.X-Req-Id}</code> or <code>${query.page}</code>. Its literal chunks are encoded once; each response
+ * is rendered into a {@link ResponseBuffer} pooled per thread, then written with its content length. Bodies without
+ * variables are written directly from the encoded bytes.
+ * <p/>
+ * Bodies without variables can also list {@link #encodings}: each compressed variant is computed when the
+ * configuration is compiled, kept next to the plain bytes, and chosen per request from {@code Accept-Encoding}.
+ * <p/>
+ * Bodies without variables are sent with a strong {@code ETag}, hashed from each variant when compiled, and a
+ * {@code Last-Modified} date set to the compilation time. Conditional {@code GET} and {@code HEAD} requests
+ * matching them get a {@code 304 Not Modified} response without body, unless a previous {@link StatusAction} set
+ * another status than {@code 200}.
+ * <p/>
+ * In config files, the body can be read from a text file with an XInclude element, resolved against the config file:
+ * <pre>
+ * &lt;body content-type="application/json"&gt;&lt;xi:include xmlns:xi="http://www.w3.org/2001/XInclude" href="users.json" parse="text"/&gt;&lt;/body&gt;
+ * </pre>
+ * The file is read again only when the config file including it is modified.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class BodyAction implements ThenStatement, Compilable {
+
+    /**
+     * The body template.
+     */
+    @XmlValue
+    public String template;
+
+    /**
+     * The response content type, without charset, eg: {@code application/json}.
+     * <p/>
+     * Can be null, in which case no content type is set.
+     */
+    @XmlAttribute(name = "content-type", required = false)
+    public String contentType;
+
+    /**
+     * The charset to encode the body with, defaults to UTF-8.
+     */
+    @XmlAttribute(required = false)
+    public String charset;
+
+    /**
+     * The content codings to precompress the body with, by order of preference, eg: {@code gzip deflate}.
+     * <p/>
+     * Can be null, in which case the body is always sent without coding.
+     */
+    @XmlAttribute(required = false)
+    @XmlList
+    public List<String> encodings;
+
+    /**
+     * The compiled {@link #template}.
+     */
+    @XmlTransient
+    protected Template compiledTemplate;
+
+    /**
+     * The charset to encode the body with.
+     */
+    @XmlTransient
+    protected Charset compiledCharset;
+
+    /**
+     * The encoded literal chunks of {@link #compiledTemplate}.
+     */
+    @XmlTransient
+    protected byte[][] chunks;
+
+    /**
+     * The content codings of {@link #variants}.
+     */
+    @XmlTransient
+    protected String[] variantEncodings;
+
+    /**
+     * The body compressed with each of {@link #variantEncodings}.
+     */
+    @XmlTransient
+    protected byte[][] variants;
+
+    /**
+     * The entity tags of the plain body then of each of {@link #variants}.
+     */
+    @XmlTransient
+    protected String[] etags;
+
+    /**
+     * The time the body was compiled, in milliseconds rounded down to the second.
+     */
+    @XmlTransient
+    protected long lastModified;
+
+    /**
+     * Assert this {@link BodyAction} is valid.
+     * <p/>
+     * Checks everything that cannot be enforced through the XML schema.
+     *
+     * @throws Throwable if an element of the {@link BodyAction} is invalid.
+     */
+    public void validate() throws Throwable {
+        assert template != null : "The body template must be defined";
+        assert Template.isValid(template) : "The body is not a valid template";
+        assert charset == null || Charset.isSupported(charset) : "The body charset is not supported";
+        if (encodings != null) {
+            for (String encoding : encodings)
+                assert ContentCodings.isSupported(encoding) : "The body encoding '" + encoding + "' is not supported";
+            assert Template.compile(template).isConstant() : "The body encodings can only be used with a template without variables";
+        }
+    }
+
+    /**
+     * Compile {@link #template}, encode its literal chunks and compress its {@link #encodings} variants, and compute
+     * their entity tags.
+     */
+    public void compile() {
+        compiledCharset = Charset.forName(charset == null ? "UTF-8" : charset);
+        final Template newTemplate = Template.compile(template);
+        chunks = newTemplate.encodeLiterals(compiledCharset);
+        final int count = encodings == null || !newTemplate.isConstant() ? 0 : encodings.size();
+        final String[] newEncodings = new String[count];
+        final byte[][] newVariants = new byte[count][];
+        final String[] newEtags = new String[count + 1];
+        if (newTemplate.isConstant()) newEtags[0] = EntityTags.of(chunks[0]);
+        for (int i = 0; i < count; i++) {
+            newEncodings[i] = encodings.get(i);
+            newVariants[i] = ContentCodings.encode(newEncodings[i], chunks[0]);
+            newEtags[i + 1] = EntityTags.of(newVariants[i]);
+        }
+        variantEncodings = newEncodings;
+        variants = newVariants;
+        etags = newEtags;
+        lastModified = System.currentTimeMillis() / 1000 * 1000;
+        compiledTemplate = newTemplate;
+    }
+
+    /**
+     * Compile this statement for handling requests.
+     *
+     * @param headerSets unused.
+     * @see #compile()
+     */
+    public void compile(Map<List<String>, HeaderSet> headerSets) {
+        compile();
+    }
+
+    /**
+     * Process an HTTP request/response.
+     * <p/>
+     * Renders {@link #template} and writes it as the response body, or writes the compressed variant preferred by
+     * the {@code Accept-Encoding} request header. Only the headers are set for {@code HEAD} requests, and for
+     * conditional requests matching the {@code ETag} or {@code Last-Modified} of a body without variables.
+     *
+     * @param req  the {@link HttpServletRequest} to process.
+     * @param resp the {@link HttpServletResponse} to use.
+     * @throws IOException if writing the response failed.
+     */
+    public void process(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (compiledTemplate == null) compile();
+        if (contentType != null) resp.setContentType(contentType + "; charset=" + compiledCharset.name());
+        final boolean head = "HEAD".equals(req.getMethod());
+        if (compiledTemplate.isConstant()) {
+            int variant = -1;
+            if (variants.length > 0) {
+                resp.setHeader("Vary", "Accept-Encoding");
+                variant = ContentCodings.negotiate(req.getHeader("Accept-Encoding"), variantEncodings);
+            }
+            final String etag = etags[variant + 1];
+            resp.setHeader("ETag", etag);
+            resp.setDateHeader("Last-Modified", lastModified);
+            if (isNotModified(req, etag)) {
+                resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+            final byte[] bytes = variant < 0 ? chunks[0] : variants[variant];
+            if (variant >= 0) resp.setHeader("Content-Encoding", variantEncodings[variant]);
+            resp.setContentLength(bytes.length);
+            if (!head) resp.getOutputStream().write(bytes);
+            return;
+        }
+        final ResponseBuffer buffer = ResponseBuffer.get();
+        try {
+            buffer.write(chunks[0]);
+            for (int i = 0; i < compiledTemplate.getVariableCount(); i++) {
+                final StringBuilder value = buffer.getScratch();
+                compiledTemplate.appendVariable(i, req, value);
+                buffer.write(value, compiledCharset);
+                buffer.write(chunks[i + 1]);
+            }
+            resp.setContentLength(buffer.size());
+            if (!head) buffer.writeTo(resp.getOutputStream());
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Test whether a conditional request can be answered with {@code 304 Not Modified}.
+     * <p/>
+     * Only responses with a {@code 200} status can be. {@code If-None-Match} takes precedence over {@code If-Modified-Since}, which is ignored when invalid.
+     *
+     * @param req  the {@link HttpServletRequest} to test.
+     * @param etag the entity tag of the selected body.
+     * @return true if the client copy is still valid.
+     */
+    protected boolean isNotModified(HttpServletRequest req, String etag) {
+        final String method = req.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) return false;
+        if (RequestView.of(req).getStatus() != HttpServletResponse.SC_OK) return false;
+        final String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) return EntityTags.matches(ifNoneMatch, etag);
+        try {
+            final long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+            return ifModifiedSince >= 0 && lastModified <= ifModifiedSince;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
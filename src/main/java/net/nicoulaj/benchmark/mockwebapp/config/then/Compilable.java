@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.then;
+
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.HeaderSet;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link ThenStatement} with state to build before handling requests.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @see net.nicoulaj.benchmark.mockwebapp.config.Mapping#compileThenStatements(java.util.List, java.util.Map)
+ * @since 1.0.0
+ */
+public interface Compilable {
+
+    /**
+     * Compile this statement for handling requests.
+     * <p/>
+     * Must be called on a valid statement, before it is used by other threads.
+     *
+     * @param headerSets the {@link HeaderSet}s already built for the config, by key.
+     */
+    void compile(Map<List<String>, HeaderSet> headerSets);
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.then;
+
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Metrics;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlTransient;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link CpuBurnAction} consumes CPU time to serve the response, emulating a compute-heavy endpoint.
+ * <p/>
+ * The work is a xorshift sequence whose result is published to a volatile field, so the JIT can neither fold nor
+ * eliminate it. A {@link #duration} is burnt in slices of iterations, calibrated once per JVM, until the CPU time of
+ * the thread reaches it (or the elapsed time, if the JVM cannot measure thread CPU time); a number of
+ * {@link #iterations} is burnt as is. Either way, on an oversubscribed host the thread is descheduled while burning,
+ * so the measured elapsed time grows past the requested CPU time. Both are reported in the
+ * {@code cpu-burn.requested-ns} and {@code cpu-burn.measured-ns} {@link Metrics} counters.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class CpuBurnAction implements ThenStatement {
+
+    /**
+     * The number of requests processed by {@link CpuBurnAction}s.
+     */
+    protected static final AtomicLong COUNT = Metrics.counter("cpu-burn.count");
+
+    /**
+     * The total burn time requested by {@link CpuBurnAction}s (ns).
+     */
+    protected static final AtomicLong REQUESTED_NANOS = Metrics.counter("cpu-burn.requested-ns");
+
+    /**
+     * The total burn time measured by {@link CpuBurnAction}s (ns).
+     */
+    protected static final AtomicLong MEASURED_NANOS = Metrics.counter("cpu-burn.measured-ns");
+
+    /**
+     * The approximate CPU time spent between two clock checks when burning for a {@link #duration} (ns).
+     */
+    protected static final long SLICE_NANOS = 200000L;
+
+    /**
+     * The bean measuring the CPU time of the current thread, or null if not supported.
+     */
+    protected static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean().isCurrentThreadCpuTimeSupported()
+                                                  ? ManagementFactory.getThreadMXBean() : null;
+
+    /**
+     * Sink for the burn results, prevents the JIT from eliminating the work.
+     */
+    protected static volatile long sink;
+
+    /**
+     * The CPU time to consume for each request (ms).
+     * <p/>
+     * Exclusive with {@link #iterations}.
+     */
+    @XmlAttribute(required = false)
+    public Integer duration;
+
+    /**
+     * The number of work iterations to run for each request.
+     * <p/>
+     * Exclusive with {@link #duration}.
+     */
+    @XmlAttribute(required = false)
+    public Long iterations;
+
+    /**
+     * Assert this {@link CpuBurnAction} is valid.
+     * <p/>
+     * Checks everything that cannot be enforced through the XML schema.
+     *
+     * @throws Throwable if an element of the {@link CpuBurnAction} is invalid.
+     */
+    public void validate() throws Throwable {
+        assert (duration == null) != (iterations == null) : "Exactly one of the burn duration or iterations must be defined";
+        assert duration == null || duration > 0 : "The burn duration cannot be negative";
+        assert iterations == null || iterations > 0 : "The burn iterations cannot be negative";
+    }
+
+    /**
+     * Process an HTTP request/response.
+     * <p/>
+     * Runs {@link #iterations}, or slices of iterations calibrated to {@link #SLICE_NANOS} until the thread consumed
+     * {@link #duration} of CPU time, so that the burn time does not depend on the calibration accuracy but still
+     * stretches when the thread has to share its CPU.
+     *
+     * @param req  the {@link HttpServletRequest} to process.
+     * @param resp the {@link HttpServletResponse} to use.
+     */
+    public void process(HttpServletRequest req, HttpServletResponse resp) {
+        final double iterationsPerNano = Calibration.ITERATIONS_PER_NANO;
+        final long requestedNanos;
+        final long start = System.nanoTime();
+        if (iterations != null) {
+            requestedNanos = (long) (iterations / iterationsPerNano);
+            sink = burn(iterations, sink);
+        } else {
+            requestedNanos = duration * 1000000L;
+            final long slice = Math.max(1L, (long) (Math.min(requestedNanos, SLICE_NANOS) * iterationsPerNano));
+            final long cpuStart = THREADS == null ? -1L : THREADS.getCurrentThreadCpuTime();
+            if (cpuStart < 0) {
+                do {
+                    sink = burn(slice, sink);
+                } while (System.nanoTime() - start < requestedNanos);
+            } else {
+                do {
+                    sink = burn(slice, sink);
+                } while (THREADS.getCurrentThreadCpuTime() - cpuStart < requestedNanos);
+            }
+        }
+        final long measuredNanos = System.nanoTime() - start;
+
+        COUNT.incrementAndGet();
+        REQUESTED_NANOS.addAndGet(requestedNanos);
+        MEASURED_NANOS.addAndGet(measuredNanos);
+    }
+
+    /**
+     * Run the given number of work iterations.
+     *
+     * @param iterations the number of iterations to run.
+     * @param seed       the sequence seed.
+     * @return the sequence last value.
+     */
+    protected static long burn(long iterations, long seed) {
+        long x = seed | 1L;
+        for (long i = 0; i < iterations; i++) {
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+        }
+        return x;
+    }
+
+    /**
+     * Holder for the {@link #burn(long, long)} rate, measured on first use.
+     *
+     * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+     * @since 1.0.0
+     */
+    @XmlTransient
+    protected static final class Calibration {
+
+        /**
+         * The minimum time spent measuring the burn rate (ns).
+         */
+        private static final long MEASURE_NANOS = 50000000L;
+
+        /**
+         * The number of {@link #burn(long, long)} iterations per nanosecond on this host.
+         */
+        static final double ITERATIONS_PER_NANO = measure();
+
+        /**
+         * Measure the {@link #burn(long, long)} rate, after letting the JIT compile it.
+         *
+         * @return the number of iterations per nanosecond.
+         */
+        private static double measure() {
+            for (int i = 0; i < 20; i++) sink = burn(100000L, sink);
+            long total = 0;
+            long elapsed = 0;
+            long batch = 100000L;
+            while (elapsed < MEASURE_NANOS) {
+                final long start = System.nanoTime();
+                sink = burn(batch, sink);
+                elapsed += System.nanoTime() - start;
+                total += batch;
+                batch *= 2;
+            }
+            return (double) total / elapsed;
+        }
+    }
+}
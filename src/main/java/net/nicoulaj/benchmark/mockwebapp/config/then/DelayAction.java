@@ -15,27 +15,147 @@
  */
 package net.nicoulaj.benchmark.mockwebapp.config.then;
 
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Delays;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.HeaderSet;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Schedule;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlList;
+import javax.xml.bind.annotation.XmlTransient;
 import javax.xml.bind.annotation.XmlValue;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A {@link DelayAction} introduces a specified amount of latency to serve the response.
+ * <p/>
+ * The delay is waited against a {@link System#nanoTime()} deadline, in milliseconds or microseconds. Precise delays
+ * are parked for most of the interval then spin for the last {@link Delays#SPIN_NANOS}, so that short delays are not
+ * stretched by the OS timer slack, at the cost of some CPU time. The requested and measured delays are reported in the
+ * {@code delay.*} {@link net.nicoulaj.benchmark.mockwebapp.config.runtime.Metrics} counters.
+ * <p/>
+ * Delays {@link From#arrival} target a response time rather than an extra latency: they only wait for what remains
+ * of {@link #time} since the request arrived, so that the time spent matching the request or in the previous
+ * statements, eg: under load, does not add up to the configured latency.
+ * <p/>
+ * The delay can vary over time with a {@link #schedule} of factors applied to {@link #time}, eg: a ramp
+ * {@code 0=1 300000=10}, or a spike during the last minute of every ten with {@code 0=1 540000=1 540000=20} and a
+ * {@link #period} of {@code 600000}.
  *
  * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
  * @since 1.0.0
  */
 @XmlAccessorType(XmlAccessType.FIELD)
-public class DelayAction implements ThenStatement {
+public class DelayAction implements ThenStatement, Compilable {
+
+    /**
+     * Units of {@link DelayAction#time}.
+     *
+     * @see DelayAction#unit
+     */
+    public static enum Unit {
+
+        /**
+         * Milliseconds.
+         */
+        ms(1000000L),
+
+        /**
+         * Microseconds.
+         */
+        us(1000L);
+
+        /**
+         * The number of nanoseconds in one unit.
+         */
+        final long nanos;
+
+        /**
+         * Build a new {@link Unit}.
+         *
+         * @param nanos the number of nanoseconds in one unit.
+         */
+        Unit(long nanos) {
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * Origins of the delays.
+     *
+     * @see DelayAction#from
+     */
+    public static enum From {
+
+        /**
+         * Measure the delay from the time the action is processed.
+         */
+        action,
+
+        /**
+         * Measure the delay from the time the request arrived.
+         */
+        arrival
+    }
 
     /**
-     * The time to wait before processing each request (ms).
+     * The time to wait before processing each request, in {@link #unit}s.
      */
     @XmlValue
     public int time;
 
+    /**
+     * The unit of {@link #time}, defaults to {@link Unit#ms}.
+     */
+    @XmlAttribute(required = false)
+    public Unit unit;
+
+    /**
+     * Whether to spin at the end of the delay for accuracy, defaults to true for {@link Unit#us} and false otherwise.
+     */
+    @XmlAttribute(required = false)
+    public Boolean precise;
+
+    /**
+     * The origin of the delay, defaults to {@link From#action}.
+     */
+    @XmlAttribute(required = false)
+    public From from;
+
+    /**
+     * The factors to apply to {@link #time} over time, as {@link Schedule} points {@code offset=factor}, offsets in
+     * milliseconds.
+     * <p/>
+     * Can be null, in which case the delay is constant.
+     */
+    @XmlAttribute(required = false)
+    @XmlList
+    public List<String> schedule;
+
+    /**
+     * The period the {@link #schedule} repeats with (ms).
+     * <p/>
+     * Can be null, in which case the last factor is kept after the last point.
+     */
+    @XmlAttribute(required = false)
+    public Long period;
+
+    /**
+     * The clock the {@link #schedule} follows, defaults to {@link ScheduleClock#elapsed}.
+     */
+    @XmlAttribute(required = false)
+    public ScheduleClock clock;
+
+    /**
+     * The compiled {@link #schedule}, or null if none or not compiled yet.
+     */
+    @XmlTransient
+    protected Schedule compiledSchedule;
+
     /**
      * Assert this {@link DelayAction} is valid.
      * <p/>
@@ -45,21 +165,42 @@ public class DelayAction implements ThenStatement {
      */
     public void validate() throws Throwable {
         assert time > 0 : "The delay cannot be negative";
+        assert schedule == null || Schedule.isValid(schedule, Double.MAX_VALUE) : "The delay schedule is not valid";
+        assert period == null || period > 0 : "The delay schedule period must be positive";
+        assert clock != ScheduleClock.wall || period != null : "The delay schedule period is required with the wall clock";
+    }
+
+    /**
+     * Compile the {@link #schedule}, if any.
+     */
+    public void compile() {
+        if (schedule != null) compiledSchedule = Schedule.compile(schedule, period, clock == ScheduleClock.wall);
+    }
+
+    /**
+     * Compile this statement for handling requests.
+     *
+     * @param headerSets unused.
+     * @see #compile()
+     */
+    public void compile(Map<List<String>, HeaderSet> headerSets) {
+        compile();
     }
 
     /**
      * Process an HTTP request/response.
      * <p/>
-     * Sleeps for {@link #time}.
+     * Waits for {@link #time}, scaled by the current {@link #schedule} factor, from now or from the request arrival.
      *
      * @param req  the {@link HttpServletRequest} to process.
      * @param resp the {@link HttpServletResponse} to use.
      */
     public void process(HttpServletRequest req, HttpServletResponse resp) {
-        try {
-            Thread.sleep(time);
-        } catch (InterruptedException e) {
-            req.getSession().getServletContext().log("Failed sleeping for " + time + " milliseconds", e);
-        }
+        final Unit actualUnit = unit == null ? Unit.ms : unit;
+        if (schedule != null && compiledSchedule == null) compile();
+        long requestedNanos = time * actualUnit.nanos;
+        if (compiledSchedule != null) requestedNanos = (long) (requestedNanos * compiledSchedule.getValue());
+        if (!Delays.delay(req, requestedNanos, precise == null ? actualUnit == Unit.us : precise, from == From.arrival))
+            req.getSession().getServletContext().log("Interrupted while sleeping for " + time + " " + actualUnit);
     }
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.then;
+
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Template;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlTransient;
+
+/**
+ * A {@link HeaderAction} sets a response <a href="http://www.w3.org/Protocols/rfc2616/rfc2616-sec6.html#sec6.2">HTTP
+ * header</a>.
+ * <p/>
+ * The value is a {@link Template}, so it can include per-request values such as <code>${request.id}</code>. When a
+ * mapping is compiled, its consecutive {@link HeaderAction}s are merged into a single
+ * {@link net.nicoulaj.benchmark.mockwebapp.config.runtime.HeaderSet}, shared by all the mappings declaring the same
+ * headers. Within such a set, a header declared several times (eg: {@code Set-Cookie}) is sent with all its values.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class HeaderAction implements ThenStatement {
+
+    /**
+     * The name of the HTTP response header to set.
+     */
+    @XmlAttribute(required = true)
+    public String name;
+
+    /**
+     * The header value template.
+     */
+    @XmlAttribute(required = true)
+    public String value;
+
+    /**
+     * The compiled {@link #value}.
+     */
+    @XmlTransient
+    protected Template template;
+
+    /**
+     * Assert this {@link HeaderAction} is valid.
+     * <p/>
+     * Checks everything that cannot be enforced through the XML schema.
+     *
+     * @throws Throwable if an element of the {@link HeaderAction} is invalid.
+     */
+    public void validate() throws Throwable {
+        assert name != null && name.length() > 0 : "The header name must be defined";
+        assert value != null : "The header value must be defined";
+        assert Template.isValid(value) : "The header value is not a valid template";
+    }
+
+    /**
+     * Process an HTTP request/response.
+     * <p/>
+     * Sets the {@link #name} response header to the rendered {@link #value}.
+     *
+     * @param req  the {@link HttpServletRequest} to process.
+     * @param resp the {@link HttpServletResponse} to use.
+     */
+    public void process(HttpServletRequest req, HttpServletResponse resp) {
+        if (template == null) template = Template.compile(value);
+        resp.setHeader(name, template.render(req));
+    }
+}
@@ -15,15 +15,21 @@
  */
 package net.nicoulaj.benchmark.mockwebapp.config.then;
 
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Delays;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import java.util.Random;
 
 /**
  * A {@link RandomDelayAction} introduces a random amount of latency to serve the response.
+ * <p/>
+ * Like a {@link DelayAction}, the delay can be measured {@link DelayAction.From#arrival from the request arrival}, so
+ * that the configured latency range holds when the mock is busy.
  *
  * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
  * @since 1.0.0
@@ -48,6 +54,12 @@ public class RandomDelayAction implements ThenStatement {
     @XmlElement(required = true, nillable = false)
     public int max;
 
+    /**
+     * The origin of the delay, defaults to {@link DelayAction.From#action}.
+     */
+    @XmlAttribute(required = false)
+    public DelayAction.From from;
+
     /**
      * Assert this {@link RandomDelayAction} is valid.
      * <p/>
@@ -64,17 +76,14 @@ public class RandomDelayAction implements ThenStatement {
     /**
      * Process an HTTP request/response.
      * <p/>
-     * Sleeps for an amount of time in [{@link #min},{@link #max}].
+     * Sleeps for an amount of time in [{@link #min},{@link #max}], from now or from the request arrival.
      *
      * @param req  the {@link HttpServletRequest} to process.
      * @param resp the {@link HttpServletResponse} to use.
      */
     public void process(HttpServletRequest req, HttpServletResponse resp) {
         final int time = min + RANDOM.nextInt(max - min);
-        try {
-            Thread.sleep(time);
-        } catch (InterruptedException e) {
-            req.getSession().getServletContext().log("Failed sleeping for " + time + " milliseconds", e);
-        }
+        if (!Delays.delay(req, time * 1000000L, false, from == DelayAction.From.arrival))
+            req.getSession().getServletContext().log("Interrupted while sleeping for " + time + " milliseconds");
     }
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.then;
+
+/**
+ * Clocks the schedules of {@link DelayAction}s and {@link StatusAction}s are evaluated against.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @see net.nicoulaj.benchmark.mockwebapp.config.runtime.Schedule
+ * @since 1.0.0
+ */
+public enum ScheduleClock {
+
+    /**
+     * The time elapsed since the statement was compiled, ie: since the config was loaded.
+     */
+    elapsed,
+
+    /**
+     * The wall clock time since the epoch, so that schedules with a period of one day follow the time of day (UTC).
+     */
+    wall
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.then;
+
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.HeaderSet;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.StripedCounters;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.bind.annotation.*;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link SequenceAction} applies a different {@link SequenceStep} on each call from the same client.
+ * <p/>
+ * Clients are identified by a scenario {@link #key}: their remote address, a header or a cookie. The first call of a
+ * client gets the first step, the second call the second step, and so on; once all steps are used, the last one is
+ * repeated, or the sequence starts over if {@link #loop} is set. Requests without the key always get the first step.
+ * <p/>
+ * The call counts are kept in {@link StripedCounters}, forgotten after {@link #ttl} milliseconds without calls and
+ * bounded to {@link #maxClients} clients. The counts belong to the compiled action, so a sequence restarts only when
+ * its mapping is compiled again: when a reload or an admin change adds or modifies the mapping, or when a reload
+ * changes {@code adaptiveOrdering}, which recompiles every mapping. Other mappings keep their sequences where they were.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class SequenceAction implements ThenStatement, Compilable {
+
+    /**
+     * The default {@link #ttl}: 5 minutes.
+     */
+    public static final long DEFAULT_TTL = 300000L;
+
+    /**
+     * The default {@link #maxClients}.
+     */
+    public static final int DEFAULT_MAX_CLIENTS = 65536;
+
+    /**
+     * Ways of identifying the clients of a {@link SequenceAction}.
+     *
+     * @see SequenceAction#key
+     */
+    public static enum Key {
+
+        /**
+         * Identify clients by their remote address.
+         */
+        address,
+
+        /**
+         * Identify clients by the value of the {@link SequenceAction#name} header.
+         */
+        header,
+
+        /**
+         * Identify clients by the value of the {@link SequenceAction#name} cookie.
+         */
+        cookie
+    }
+
+    /**
+     * How to identify clients, defaults to {@link Key#address}.
+     */
+    @XmlAttribute(required = false)
+    public Key key;
+
+    /**
+     * The name of the header or cookie identifying clients.
+     * <p/>
+     * Required for the {@link Key#header} and {@link Key#cookie} keys only.
+     */
+    @XmlAttribute(required = false)
+    public String name;
+
+    /**
+     * The time after which an idle client restarts the sequence, in milliseconds, defaults to {@link #DEFAULT_TTL}.
+     */
+    @XmlAttribute(required = false)
+    public Long ttl;
+
+    /**
+     * The maximum number of clients tracked, defaults to {@link #DEFAULT_MAX_CLIENTS}.
+     * <p/>
+     * Past this, the least recently seen clients are forgotten.
+     */
+    @XmlAttribute(name = "max-clients", required = false)
+    public Integer maxClients;
+
+    /**
+     * Whether to start over after the last step rather than repeating it, defaults to false.
+     */
+    @XmlAttribute(required = false)
+    public Boolean loop;
+
+    /**
+     * The steps, in call order.
+     */
+    @XmlElement(name = "step", required = true)
+    public List<SequenceStep> steps;
+
+    /**
+     * The call counts by client, or null if not compiled.
+     */
+    @XmlTransient
+    protected volatile StripedCounters counters;
+
+    /**
+     * Assert this {@link SequenceAction} is valid.
+     * <p/>
+     * Checks everything that cannot be enforced through the XML schema.
+     *
+     * @throws Throwable if an element of the {@link SequenceAction} is invalid.
+     */
+    public void validate() throws Throwable {
+        assert steps != null && !steps.isEmpty() : "A sequence must have at least one step";
+        assert key == null || key == Key.address || name != null : "The sequence key name must be defined";
+        assert ttl == null || ttl > 0 : "The sequence ttl must be positive";
+        assert maxClients == null || maxClients > 0 : "The sequence max-clients must be positive";
+        for (SequenceStep step : steps) step.validate();
+    }
+
+    /**
+     * Compile the {@link #steps} and reset the call counts.
+     *
+     * @param headerSets the {@link HeaderSet}s already built for the config, by key.
+     */
+    public void compile(Map<List<String>, HeaderSet> headerSets) {
+        for (SequenceStep step : steps) step.compile(headerSets);
+        counters = newCounters();
+    }
+
+    /**
+     * Build empty call counts.
+     *
+     * @return the counters.
+     */
+    protected StripedCounters newCounters() {
+        return new StripedCounters(ttl == null ? DEFAULT_TTL : ttl, maxClients == null ? DEFAULT_MAX_CLIENTS : maxClients);
+    }
+
+    /**
+     * Get the scenario key of a request.
+     *
+     * @param req the {@link HttpServletRequest}.
+     * @return the key, or null if the request does not have one.
+     */
+    protected String getKey(HttpServletRequest req) {
+        if (key == null || key == Key.address) return req.getRemoteAddr();
+        if (key == Key.header) return req.getHeader(name);
+        final Cookie[] cookies = req.getCookies();
+        if (cookies != null) for (Cookie cookie : cookies) if (name.equals(cookie.getName())) return cookie.getValue();
+        return null;
+    }
+
+    /**
+     * Process an HTTP request/response.
+     * <p/>
+     * Applies the step matching the number of previous calls with the same scenario key.
+     *
+     * @param req  the {@link HttpServletRequest} to process.
+     * @param resp the {@link HttpServletResponse} to use.
+     * @throws IOException if writing the response failed.
+     */
+    public void process(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (counters == null) {
+            synchronized (this) {
+                if (counters == null) counters = newCounters();
+            }
+        }
+        final String client = getKey(req);
+        int index = 0;
+        if (client != null) {
+            final int calls = counters.increment(client, System.currentTimeMillis());
+            index = loop != null && loop ? calls % steps.size() : Math.min(calls, steps.size() - 1);
+        }
+        steps.get(index).process(req, resp);
+    }
+}
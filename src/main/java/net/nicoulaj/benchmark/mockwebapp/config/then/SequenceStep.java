@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.then;
+
+import net.nicoulaj.benchmark.mockwebapp.config.ConfigFragment;
+import net.nicoulaj.benchmark.mockwebapp.config.Mapping;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.HeaderSet;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.bind.annotation.*;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link SequenceStep} is the list of {@link ThenStatement}s applied to one call of a {@link SequenceAction}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class SequenceStep implements ConfigFragment {
+
+    /**
+     * The list of {@link ThenStatement}s defining how the call should be processed.
+     */
+    @XmlElements({
+                         @XmlElement(name = "status", type = StatusAction.class),
+                         @XmlElement(name = "delay", type = DelayAction.class),
+                         @XmlElement(name = "random-delay", type = RandomDelayAction.class),
+                         @XmlElement(name = "cpu-burn", type = CpuBurnAction.class),
+                         @XmlElement(name = "allocate", type = AllocateAction.class),
+                         @XmlElement(name = "header", type = HeaderAction.class),
+                         @XmlElement(name = "body", type = BodyAction.class)
+                 })
+    public List<ThenStatement> thenStatements;
+
+    /**
+     * The compiled {@link #thenStatements}, or null if not compiled.
+     *
+     * @see #compile(java.util.Map)
+     */
+    @XmlTransient
+    protected ThenStatement[] compiledThenStatements;
+
+    /**
+     * Assert this {@link SequenceStep} is valid.
+     * <p/>
+     * Checks everything that cannot be enforced through the XML schema.
+     *
+     * @throws Throwable if an element of the {@link SequenceStep} is invalid.
+     */
+    public void validate() throws Throwable {
+        assert thenStatements != null && !thenStatements.isEmpty() : "A sequence step must have at least one statement";
+        for (ThenStatement thenStatement : thenStatements) thenStatement.validate();
+    }
+
+    /**
+     * Compile {@link #thenStatements} the same way as {@link Mapping#compile(boolean, java.util.Map)}.
+     *
+     * @param headerSets the {@link HeaderSet}s already built for the config, by key.
+     */
+    public void compile(Map<List<String>, HeaderSet> headerSets) {
+        compiledThenStatements = Mapping.compileThenStatements(thenStatements, headerSets);
+    }
+
+    /**
+     * Process an HTTP request/response with each of {@link #thenStatements}.
+     *
+     * @param req  the {@link HttpServletRequest} to process.
+     * @param resp the {@link HttpServletResponse} to use.
+     * @throws IOException if writing the response failed.
+     */
+    public void process(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (compiledThenStatements != null) {
+            for (ThenStatement processor : compiledThenStatements) processor.process(req, resp);
+            return;
+        }
+        for (ThenStatement processor : thenStatements) processor.process(req, resp);
+    }
+}
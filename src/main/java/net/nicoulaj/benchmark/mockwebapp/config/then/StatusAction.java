@@ -15,20 +15,38 @@
  */
 package net.nicoulaj.benchmark.mockwebapp.config.then;
 
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.HeaderSet;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.RequestView;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Schedule;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlList;
+import javax.xml.bind.annotation.XmlTransient;
 import javax.xml.bind.annotation.XmlValue;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 /**
  * A {@link StatusAction} sets the response HTTP status code.
+ * <p/>
+ * Some responses can be given an {@link #errorStatus} instead, with a probability following an {@link #errorRate}
+ * schedule, eg: {@code 0=0 300000=0.5} for an error rate ramping up to 50% over five minutes.
  *
  * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
  * @since 1.0.0
  */
 @XmlAccessorType(XmlAccessType.FIELD)
-public class StatusAction implements ThenStatement {
+public class StatusAction implements ThenStatement, Compilable {
+
+    /**
+     * The {@link Random} number generator.
+     */
+    protected static final Random RANDOM = new Random();
 
     /**
      * The <a href="http://www.w3.org/Protocols/rfc2616/rfc2616-sec6.html#sec6.1.1">HTTP status code</a>.
@@ -36,6 +54,44 @@ public class StatusAction implements ThenStatement {
     @XmlValue
     public int statusCode;
 
+    /**
+     * The status code to respond with instead of {@link #statusCode} at the {@link #errorRate}.
+     * <p/>
+     * Can be null, in which case {@link #statusCode} is always used.
+     */
+    @XmlAttribute(name = "error-status", required = false)
+    public Integer errorStatus;
+
+    /**
+     * The probability of responding with the {@link #errorStatus} over time, as {@link Schedule} points
+     * {@code offset=rate}, offsets in milliseconds and rates between 0 and 1.
+     * <p/>
+     * Required with {@link #errorStatus} only.
+     */
+    @XmlAttribute(name = "error-rate", required = false)
+    @XmlList
+    public List<String> errorRate;
+
+    /**
+     * The period the {@link #errorRate} repeats with (ms).
+     * <p/>
+     * Can be null, in which case the last rate is kept after the last point.
+     */
+    @XmlAttribute(required = false)
+    public Long period;
+
+    /**
+     * The clock the {@link #errorRate} follows, defaults to {@link ScheduleClock#elapsed}.
+     */
+    @XmlAttribute(required = false)
+    public ScheduleClock clock;
+
+    /**
+     * The compiled {@link #errorRate}, or null if none or not compiled yet.
+     */
+    @XmlTransient
+    protected Schedule compiledErrorRate;
+
     /**
      * Assert this {@link StatusAction} is valid.
      * <p/>
@@ -45,17 +101,42 @@ public class StatusAction implements ThenStatement {
      */
     public void validate() throws Throwable {
         assert statusCode > 0 : "The HTTP status code cannot be negative";
+        assert errorStatus == null || errorStatus > 0 : "The HTTP error status code cannot be negative";
+        assert (errorStatus == null) == (errorRate == null) : "The error status and error rate must be defined together";
+        assert errorRate == null || Schedule.isValid(errorRate, 1) : "The error rate schedule is not valid";
+        assert period == null || period > 0 : "The error rate schedule period must be positive";
+        assert clock != ScheduleClock.wall || period != null : "The error rate schedule period is required with the wall clock";
+    }
+
+    /**
+     * Compile the {@link #errorRate}, if any.
+     */
+    public void compile() {
+        if (errorRate != null) compiledErrorRate = Schedule.compile(errorRate, period, clock == ScheduleClock.wall);
+    }
+
+    /**
+     * Compile this statement for handling requests.
+     *
+     * @param headerSets unused.
+     * @see #compile()
+     */
+    public void compile(Map<List<String>, HeaderSet> headerSets) {
+        compile();
     }
 
     /**
      * Process an HTTP request/response.
      * <p/>
-     * Sets the response status to {@link #statusCode}
+     * Sets the response status to {@link #statusCode}, or to {@link #errorStatus} at the current {@link #errorRate}.
      *
      * @param req  the {@link javax.servlet.http.HttpServletRequest} to process.
      * @param resp the {@link javax.servlet.http.HttpServletResponse} to use.
      */
     public void process(HttpServletRequest req, HttpServletResponse resp) {
-        resp.setStatus(statusCode);
+        if (errorRate != null && compiledErrorRate == null) compile();
+        final int status = compiledErrorRate != null && RANDOM.nextDouble() < compiledErrorRate.getValue() ? errorStatus : statusCode;
+        resp.setStatus(status);
+        RequestView.of(req).setStatus(status);
     }
 }
@@ -19,6 +19,7 @@ import net.nicoulaj.benchmark.mockwebapp.config.ConfigFragment;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 
 /**
  * A {@link ThenStatement} is a treatment to apply to an HTTP request response.
@@ -34,6 +35,7 @@ public interface ThenStatement extends ConfigFragment {
      *
      * @param req  the {@link HttpServletRequest} to process.
      * @param resp the {@link HttpServletResponse} to use.
+     * @throws IOException if writing the response failed.
      */
-    void process(HttpServletRequest req, HttpServletResponse resp);
+    void process(HttpServletRequest req, HttpServletResponse resp) throws IOException;
 }
@@ -19,10 +19,7 @@
  *
  * TODO: Implement following {@link ThenStatement}s:
  *   * Response content (random content, lorem ipsum, content from file)
- *   * Response MIME type
- *   * Response header
  *   * Response cookie
- *   * Response encoding
  *   * Redirection
  *   * Gaussian delay
  *   * Other delay types implementations (user provided, Groovy ?)
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.when;
+
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.JsonPath;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.RequestView;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlTransient;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link BodyCondition} matches requests against the content of their body.
+ * <p/>
+ * Only the first {@link #limit} bytes of the body are read and checked, into a buffer reused across requests. Any
+ * remaining part of the body is drained once the request is processed.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class BodyCondition implements WhenStatement {
+
+    /**
+     * The default value for {@link #limit}.
+     */
+    public static final int DEFAULT_LIMIT = 8192;
+
+    /**
+     * The maximum value for {@link #limit}.
+     */
+    public static final int MAX_LIMIT = 1048576;
+
+    /**
+     * A string the body must contain.
+     * <p/>
+     * Can be null.
+     */
+    @XmlAttribute(required = false)
+    public String contains;
+
+    /**
+     * The Java-style pattern to search in the body, or to match the {@link #jsonPath} value against.
+     * <p/>
+     * Can be null.
+     */
+    @XmlAttribute(required = false)
+    public String pattern;
+
+    /**
+     * A JSON path (eg: {@code $.order.items[0].id}) that must exist in the body.
+     * <p/>
+     * Can be null.
+     */
+    @XmlAttribute(name = "json-path", required = false)
+    public String jsonPath;
+
+    /**
+     * The value the {@link #jsonPath} must have.
+     * <p/>
+     * Can be null.
+     */
+    @XmlAttribute(required = false)
+    public String value;
+
+    /**
+     * The maximum number of body bytes to check, defaults to {@link #DEFAULT_LIMIT}.
+     */
+    @XmlAttribute(required = false)
+    public Integer limit;
+
+    /**
+     * The compiled {@link #pattern}.
+     */
+    @XmlTransient
+    protected Pattern compiledPattern;
+
+    /**
+     * The compiled {@link #jsonPath}.
+     */
+    @XmlTransient
+    protected JsonPath compiledJsonPath;
+
+    /**
+     * Assert this {@link BodyCondition} is valid.
+     * <p/>
+     * Checks everything that cannot be enforced through the XML schema.
+     *
+     * @throws Throwable if an element of the {@link BodyCondition} is invalid.
+     */
+    public void validate() throws Throwable {
+        assert contains != null || pattern != null || jsonPath != null : "At least one of contains, pattern or json-path must be defined";
+        assert value == null || jsonPath != null : "The body value can only be checked with a json-path";
+        assert limit == null || limit > 0 && limit <= MAX_LIMIT : "The body limit must be between 1 and " + MAX_LIMIT;
+        assert jsonPath == null || JsonPath.isValid(jsonPath) : "The json-path is not a valid JSON path";
+    }
+
+    /**
+     * Test whether the given {@link HttpServletRequest} matches this statement.
+     *
+     * @param req the {@link HttpServletRequest} to process.
+     * @return true if the checked part of the body:
+     *         <ul>
+     *         <li>Contains {@link #contains}, if given.
+     *         <li>Has a part matching {@link #pattern}, if given without {@link #jsonPath}.
+     *         <li>Has a value at {@link #jsonPath}, if given, equal to {@link #value} and fully matching
+     *         {@link #pattern}, if given.
+     *         </ul>
+     */
+    public boolean matches(HttpServletRequest req) {
+        final CharSequence body = RequestView.of(req).getBodyText(limit == null ? DEFAULT_LIMIT : limit);
+        if (contains != null && !contains(body, contains)) return false;
+        if (pattern != null && compiledPattern == null) compiledPattern = Pattern.compile(pattern);
+        if (jsonPath == null) return pattern == null || compiledPattern.matcher(body).find();
+        if (compiledJsonPath == null) compiledJsonPath = JsonPath.compile(jsonPath);
+        final String found = compiledJsonPath.evaluate(body);
+        return found != null
+               && (value == null || value.equals(found))
+               && (pattern == null || compiledPattern.matcher(found).matches());
+    }
+
+    /**
+     * Search a string in a {@link CharSequence}.
+     *
+     * @param text   the text to search in.
+     * @param search the string to search.
+     * @return true if {@code text} contains {@code search}.
+     */
+    private static boolean contains(CharSequence text, String search) {
+        final int length = search.length();
+        if (length == 0) return true;
+        final char first = search.charAt(0);
+        final int max = text.length() - length;
+        for (int i = 0; i <= max; i++) {
+            if (text.charAt(i) != first) continue;
+            int j = 1;
+            while (j < length && text.charAt(i + j) == search.charAt(j)) j++;
+            if (j == length) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the static relative cost of evaluating this statement.
+     *
+     * @return {@link #COST_BODY}, the request body is read.
+     */
+    public int getCost() {
+        return COST_BODY;
+    }
+}
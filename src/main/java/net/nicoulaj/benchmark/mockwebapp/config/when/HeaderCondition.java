@@ -15,13 +15,18 @@
  */
 package net.nicoulaj.benchmark.mockwebapp.config.when;
 
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.HeaderIndex;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Slot;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.xml.bind.annotation.*;
-import java.util.regex.Pattern;
 
 /**
  * A {@link HeaderCondition} matches requests against a specified
  * <a href="http://www.w3.org/Protocols/rfc2616/rfc2616-sec5.html#sec5.3">HTTP header</a> presence or content.
+ * <p/>
+ * All the conditions of a {@link net.nicoulaj.benchmark.mockwebapp.config.MockWebAppConfig} share a single
+ * {@link HeaderIndex}, so each header is only fetched and checked once per request.
  *
  * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
  * @since 1.0.0
@@ -46,10 +51,12 @@ public class HeaderCondition implements WhenStatement {
     public String pattern;
 
     /**
-     * The compiled {@link #pattern}.
+     * The {@link HeaderIndex} this condition is registered in, with its slot in the index.
+     *
+     * @see #bind(Slot)
      */
     @XmlTransient
-    protected Pattern compiledPattern;
+    protected volatile Slot<HeaderIndex> slot;
 
     /**
      * Assert this {@link HeaderCondition} is valid.
@@ -62,6 +69,27 @@ public class HeaderCondition implements WhenStatement {
         assert name != null && name.length() > 0 : "The header name must be defined";
     }
 
+    /**
+     * Use a shared {@link HeaderIndex} this condition was already added to.
+     * <p/>
+     * The index must not be modified any more: it may be used by concurrent requests as soon as this method returns.
+     *
+     * @param slot the {@link HeaderIndex} and the slot returned when adding {@link #name} and {@link #pattern}.
+     */
+    public void bind(Slot<HeaderIndex> slot) {
+        this.slot = slot;
+    }
+
+    /**
+     * Get the {@link HeaderIndex} this condition is currently bound to.
+     *
+     * @return the {@link HeaderIndex}, or null if the condition was not bound yet.
+     */
+    public HeaderIndex getHeaderIndex() {
+        final Slot<HeaderIndex> current = slot;
+        return current == null ? null : current.owner;
+    }
+
     /**
      * Test whether the given {@link HttpServletRequest} matches this statement.
      *
@@ -73,15 +101,20 @@ public class HeaderCondition implements WhenStatement {
      *         </ul>
      */
     public boolean matches(HttpServletRequest req) {
-        final String headerValue = req.getHeader(name);
-        if (headerValue != null) {
-            if (pattern != null) {
-                if (compiledPattern == null) compiledPattern = Pattern.compile(pattern);
-                return compiledPattern.matcher(headerValue).matches();
-            } else {
-                return true;
-            }
+        Slot<HeaderIndex> current = slot;
+        if (current == null) {
+            final HeaderIndex headers = new HeaderIndex();
+            slot = current = new Slot<HeaderIndex>(headers, headers.add(name, pattern));
         }
-        return false;
+        return current.owner.matches(req, current.index);
+    }
+
+    /**
+     * Get the static relative cost of evaluating this statement.
+     *
+     * @return {@link #COST_LOOKUP} if {@link #pattern} is null or literal, {@link #COST_PATTERN} otherwise.
+     */
+    public int getCost() {
+        return pattern == null || HeaderIndex.isLiteral(pattern) ? COST_LOOKUP : COST_PATTERN;
     }
 }
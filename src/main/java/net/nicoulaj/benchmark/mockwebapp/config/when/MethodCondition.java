@@ -15,13 +15,25 @@
  */
 package net.nicoulaj.benchmark.mockwebapp.config.when;
 
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.MethodBits;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.RequestView;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlList;
+import javax.xml.bind.annotation.XmlTransient;
 import javax.xml.bind.annotation.XmlValue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * A {@link MethodCondition} matches requests against their <a href="http://www.w3.org/Protocols/rfc2616/rfc2616-sec9.html">method</a>.
+ * <p/>
+ * The condition accepts a space-separated set of methods, standard ({@link HTTPMethod}) or extension ones (eg:
+ * {@code PROPFIND}). It is compiled to a {@link MethodBits} mask, tested against the request method bit resolved once
+ * per request. Methods that got no bit because the registry is full are compared by name.
  *
  * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
  * @since 1.0.0
@@ -30,7 +42,7 @@ import javax.xml.bind.annotation.XmlValue;
 public class MethodCondition implements WhenStatement {
 
     /**
-     * The supported <a href="http://www.w3.org/Protocols/rfc2616/rfc2616-sec9.html#sec9">HTTP methods</a>.
+     * The standard <a href="http://www.w3.org/Protocols/rfc2616/rfc2616-sec9.html#sec9">HTTP methods</a>.
      */
     public static enum HTTPMethod {
 
@@ -67,14 +79,66 @@ public class MethodCondition implements WhenStatement {
         /**
          * The <a href="http://www.w3.org/Protocols/rfc2616/rfc2616-sec9.html#sec9.8">TRACE HTTP method</a>.
          */
-        TRACE
+        TRACE,
+
+        /**
+         * The <a href="http://tools.ietf.org/html/rfc2616#section-9.9">CONNECT HTTP method</a>.
+         */
+        CONNECT,
+
+        /**
+         * The <a href="http://tools.ietf.org/html/rfc5789">PATCH HTTP method</a>.
+         */
+        PATCH
     }
 
     /**
-     * The {@link HTTPMethod} to check.
+     * The names of the HTTP methods to accept, case sensitive.
      */
     @XmlValue
-    public HTTPMethod method;
+    @XmlList
+    public List<String> methods;
+
+    /**
+     * The {@link MethodBits} mask of {@link #methods}, 0 if not compiled yet.
+     *
+     * @see #compile()
+     */
+    @XmlTransient
+    protected long mask;
+
+    /**
+     * The {@link #methods} without a {@link MethodBits} bit, or null if not compiled yet.
+     *
+     * @see #compile()
+     */
+    @XmlTransient
+    protected String[] unregistered;
+
+    /**
+     * Get the single standard method accepted by this condition.
+     *
+     * @return the method, or null if the condition accepts several methods or an extension method.
+     * @deprecated conditions accept sets of methods, use {@link #methods}.
+     */
+    @Deprecated
+    public HTTPMethod getMethod() {
+        if (methods == null || methods.size() != 1) return null;
+        for (HTTPMethod method : HTTPMethod.values()) if (method.name().equals(methods.get(0))) return method;
+        return null;
+    }
+
+    /**
+     * Make this condition accept a single standard method.
+     *
+     * @param method the method.
+     * @deprecated conditions accept sets of methods, use {@link #methods}.
+     */
+    @Deprecated
+    public void setMethod(HTTPMethod method) {
+        methods = new ArrayList<String>(Collections.singletonList(method.name()));
+        unregistered = null;
+    }
 
     /**
      * Assert this {@link MethodCondition} is valid.
@@ -84,16 +148,46 @@ public class MethodCondition implements WhenStatement {
      * @throws Throwable if an element of the {@link MethodCondition} is invalid.
      */
     public void validate() throws Throwable {
-        assert method != null : "The HTTP method is missing";
+        assert methods != null && !methods.isEmpty() : "The HTTP method is missing";
+        for (String method : methods) assert MethodBits.isValid(method) : "The HTTP method '" + method + "' is not a valid method name";
+    }
+
+    /**
+     * Compile {@link #methods} to a {@link MethodBits} mask, and the list of methods without a bit.
+     */
+    public void compile() {
+        long newMask = 0L;
+        final List<String> newUnregistered = new ArrayList<String>();
+        for (String method : methods) {
+            final long bit = MethodBits.register(method);
+            if (bit == 0L) newUnregistered.add(method);
+            newMask |= bit;
+        }
+        mask = newMask;
+        unregistered = newUnregistered.toArray(new String[newUnregistered.size()]);
     }
 
     /**
      * Test whether the given {@link HttpServletRequest} matches this statement.
      *
      * @param req the {@link HttpServletRequest} to process.
-     * @return true if the request method is {@link #method}.
+     * @return true if the request method is one of {@link #methods}.
      */
     public boolean matches(HttpServletRequest req) {
-        return HTTPMethod.valueOf(req.getMethod()).equals(method);
+        if (unregistered == null) compile();
+        if ((RequestView.of(req).getMethodBit() & mask) != 0L) return true;
+        if (unregistered.length == 0) return false;
+        final String method = req.getMethod();
+        for (String name : unregistered) if (name.equals(method)) return true;
+        return false;
+    }
+
+    /**
+     * Get the static relative cost of evaluating this statement.
+     *
+     * @return {@link #COST_CONSTANT}, the request method bit is tested against a mask.
+     */
+    public int getCost() {
+        return COST_CONSTANT;
     }
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.when;
+
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.RequestView;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlTransient;
+import javax.xml.bind.annotation.XmlValue;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link PathCondition} matches requests against a path template, such as {@code /users/{id}/orders}.
+ * <p/>
+ * The template and the request URI are compared segment by segment: literal segments must be equal, {@code {name}}
+ * segments match any non-empty segment. Empty segments are ignored, so trailing and duplicated slashes do not matter.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class PathCondition implements WhenStatement {
+
+    /**
+     * The path template to match requests URI against.
+     */
+    @XmlValue
+    public String template;
+
+    /**
+     * The compiled {@link #template}: the literal segments, null for variable ones.
+     */
+    @XmlTransient
+    protected String[] compiledTemplate;
+
+    /**
+     * Assert this {@link PathCondition} is valid.
+     * <p/>
+     * Checks everything that cannot be enforced through the XML schema.
+     *
+     * @throws Throwable if an element of the {@link PathCondition} is invalid.
+     */
+    public void validate() throws Throwable {
+        assert template != null && template.startsWith("/") : "The path template must be specified and start with '/'";
+    }
+
+    /**
+     * Test whether the given {@link HttpServletRequest} matches this statement.
+     *
+     * @param req the {@link HttpServletRequest} to process.
+     * @return true if the request URI matches {@link #template}.
+     */
+    public boolean matches(HttpServletRequest req) {
+        if (compiledTemplate == null) compiledTemplate = compile(template);
+        final RequestView view = RequestView.of(req);
+        if (view.getPathSegmentCount() != compiledTemplate.length) return false;
+        for (int i = 0; i < compiledTemplate.length; i++) {
+            if (compiledTemplate[i] != null && !view.pathSegmentEquals(i, compiledTemplate[i])) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Compile a path template.
+     *
+     * @param template the template to compile.
+     * @return the literal segments, null for variable ones.
+     */
+    protected static String[] compile(String template) {
+        final List<String> segments = new ArrayList<String>();
+        for (String segment : template.split("/")) {
+            if (segment.length() == 0) continue;
+            segments.add(segment.startsWith("{") && segment.endsWith("}") ? null : segment);
+        }
+        return segments.toArray(new String[segments.size()]);
+    }
+
+    /**
+     * Get the static relative cost of evaluating this statement.
+     *
+     * @return {@link #COST_STRING}, the path segments are compared to literals.
+     */
+    public int getCost() {
+        return COST_STRING;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.config.when;
+
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.RequestView;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlTransient;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link QueryParamCondition} matches requests against a query string parameter presence or value.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class QueryParamCondition implements WhenStatement {
+
+    /**
+     * The name of the query parameter to check.
+     */
+    @XmlAttribute(required = true)
+    public String name;
+
+    /**
+     * The Java-style pattern to match the parameter value against.
+     * <p/>
+     * Can be null.
+     *
+     * @see #matches(javax.servlet.http.HttpServletRequest)
+     */
+    @XmlAttribute(name = "value-pattern", required = false)
+    public String valuePattern;
+
+    /**
+     * The compiled {@link #valuePattern}.
+     */
+    @XmlTransient
+    protected Pattern compiledPattern;
+
+    /**
+     * Assert this {@link QueryParamCondition} is valid.
+     * <p/>
+     * Checks everything that cannot be enforced through the XML schema.
+     *
+     * @throws Throwable if an element of the {@link QueryParamCondition} is invalid.
+     */
+    public void validate() throws Throwable {
+        assert name != null && name.length() > 0 : "The query parameter name must be defined";
+    }
+
+    /**
+     * Test whether the given {@link HttpServletRequest} matches this statement.
+     *
+     * @param req the {@link HttpServletRequest} to process.
+     * @return true if:
+     *         <ul>
+     *         <li>No {@link #valuePattern} was given and the parameter is present.
+     *         <li>A {@link #valuePattern} was given and one of the parameter values matches the pattern.
+     *         </ul>
+     */
+    public boolean matches(HttpServletRequest req) {
+        final RequestView view = RequestView.of(req);
+        int index = view.findQueryParameter(name, 0);
+        if (valuePattern == null) return index >= 0;
+        if (compiledPattern == null) compiledPattern = Pattern.compile(valuePattern);
+        while (index >= 0) {
+            if (compiledPattern.matcher(view.getQueryParameterValue(index)).matches()) return true;
+            index = view.findQueryParameter(name, index + 1);
+        }
+        return false;
+    }
+
+    /**
+     * Get the static relative cost of evaluating this statement.
+     *
+     * @return {@link #COST_STRING} if {@link #valuePattern} is null, {@link #COST_PATTERN} otherwise.
+     */
+    public int getCost() {
+        return valuePattern == null ? COST_STRING : COST_PATTERN;
+    }
+}
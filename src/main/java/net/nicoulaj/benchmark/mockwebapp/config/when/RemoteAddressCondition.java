@@ -15,13 +15,21 @@
  */
 package net.nicoulaj.benchmark.mockwebapp.config.when;
 
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.AddressTrie;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Slot;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlTransient;
 import javax.xml.bind.annotation.XmlValue;
 
 /**
  * A {@link net.nicoulaj.benchmark.mockwebapp.config.when.RemoteAddressCondition} matches requests against the remote IP address.
+ * <p/>
+ * The address can be a single IPv4 or IPv6 address, a CIDR block ({@code 10.0.0.0/8}, {@code 2001:db8::/32}) or an
+ * inclusive range ({@code 10.0.0.1-10.0.0.20}). All the conditions of a {@link net.nicoulaj.benchmark.mockwebapp.config.MockWebAppConfig}
+ * share a single {@link AddressTrie}, so the cost of matching does not depend on the number of ranges declared.
  *
  * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
  * @since 1.0.0
@@ -30,11 +38,19 @@ import javax.xml.bind.annotation.XmlValue;
 public class RemoteAddressCondition implements WhenStatement {
 
     /**
-     * The IP address to match requests URL against.
+     * The IP address, CIDR block or address range to match requests remote address against.
      */
     @XmlValue
     public String address;
 
+    /**
+     * The {@link AddressTrie} this condition is registered in, with its index in the trie.
+     *
+     * @see #bind(Slot)
+     */
+    @XmlTransient
+    protected volatile Slot<AddressTrie> slot;
+
     /**
      * Assert this {@link RemoteAddressCondition} is valid.
      * <p/>
@@ -44,15 +60,52 @@ public class RemoteAddressCondition implements WhenStatement {
      */
     public void validate() throws Throwable {
         assert address != null && address.length() > 0 : "The remote address must be specified";
+        assert AddressTrie.isValid(address) : "The remote address is not a valid IP address, CIDR block or address range";
+    }
+
+    /**
+     * Use a shared {@link AddressTrie} this condition was already added to.
+     * <p/>
+     * The trie must not be modified any more: it may be used by concurrent requests as soon as this method returns.
+     *
+     * @param slot the {@link AddressTrie} and the index {@link #address} was added with.
+     */
+    public void bind(Slot<AddressTrie> slot) {
+        this.slot = slot;
+    }
+
+    /**
+     * Get the {@link AddressTrie} this condition is currently bound to.
+     *
+     * @return the {@link AddressTrie}, or null if the condition was not bound yet.
+     */
+    public AddressTrie getTrie() {
+        final Slot<AddressTrie> current = slot;
+        return current == null ? null : current.owner;
     }
 
     /**
      * Test whether the given {@link javax.servlet.http.HttpServletRequest} matches this statement.
      *
      * @param req the {@link javax.servlet.http.HttpServletRequest} to process.
-     * @return true if the request remote IP address matches {@link #address}.
+     * @return true if the request remote IP address belongs to {@link #address}.
      */
     public boolean matches(HttpServletRequest req) {
-        return req.getRemoteAddr().equals(address);
+        Slot<AddressTrie> current = slot;
+        if (current == null) {
+            final AddressTrie trie = new AddressTrie();
+            trie.add(address, 0);
+            slot = current = new Slot<AddressTrie>(trie, 0);
+        }
+        return current.owner.matches(req.getRemoteAddr(), current.index);
+    }
+
+    /**
+     * Get the static relative cost of evaluating this statement.
+     *
+     * @return {@link #COST_LOOKUP}, the remote address is resolved through the shared trie.
+     */
+    public int getCost() {
+        return COST_LOOKUP;
     }
 }
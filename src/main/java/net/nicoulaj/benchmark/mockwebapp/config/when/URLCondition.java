@@ -64,4 +64,13 @@ public class URLCondition implements WhenStatement {
         if (compiledPattern == null) compiledPattern = Pattern.compile(pattern);
         return compiledPattern.matcher(req.getRequestURI()).matches();
     }
+
+    /**
+     * Get the static relative cost of evaluating this statement.
+     *
+     * @return {@link #COST_PATTERN}, the request URL is matched against a regular expression.
+     */
+    public int getCost() {
+        return COST_PATTERN;
+    }
 }
@@ -28,6 +28,41 @@ import javax.servlet.http.HttpServletRequest;
  */
 public interface WhenStatement extends ConfigFragment {
 
+    /**
+     * The cost of a statement comparing constants, such as enums or bit sets.
+     *
+     * @see #getCost()
+     */
+    int COST_CONSTANT = 1;
+
+    /**
+     * The cost of a statement resolved through a shared index lookup.
+     *
+     * @see #getCost()
+     */
+    int COST_LOOKUP = 2;
+
+    /**
+     * The cost of a statement comparing strings.
+     *
+     * @see #getCost()
+     */
+    int COST_STRING = 4;
+
+    /**
+     * The cost of a statement matching a regular expression.
+     *
+     * @see #getCost()
+     */
+    int COST_PATTERN = 16;
+
+    /**
+     * The cost of a statement reading the request body.
+     *
+     * @see #getCost()
+     */
+    int COST_BODY = 64;
+
     /**
      * Test whether the given {@link HttpServletRequest} matches this statement.
      *
@@ -35,4 +70,13 @@ public interface WhenStatement extends ConfigFragment {
      * @return true if the request matches the statement.
      */
     boolean matches(HttpServletRequest req);
+
+    /**
+     * Get the static relative cost of evaluating this statement.
+     * <p/>
+     * Used to evaluate the cheapest statements of a {@link net.nicoulaj.benchmark.mockwebapp.config.Mapping} first.
+     *
+     * @return one of the {@code COST_*} constants.
+     */
+    int getCost();
 }
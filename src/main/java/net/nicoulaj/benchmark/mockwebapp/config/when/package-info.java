@@ -23,7 +23,6 @@
  *   * Protocol
  *   * Port
  *   * Request has content
- *   * Request content matching
  *
  * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
  * @since 1.0.0
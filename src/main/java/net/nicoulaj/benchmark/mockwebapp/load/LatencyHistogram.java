@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.load;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies with a bounded relative error, in the manner of HdrHistogram.
+ * <p/>
+ * Values are counted in log-linear buckets: values below {@code 2^}{@link #PRECISION_BITS} have their own bucket,
+ * larger ones share buckets spanning less than {@code 1/2^(}{@link #PRECISION_BITS}{@code -1)} of their value. Any
+ * positive {@code long} can be recorded in constant time and memory, without allocation, from concurrent threads.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class LatencyHistogram {
+
+    /**
+     * The number of significant bits kept for each value, so that the relative error is below 1%.
+     */
+    public static final int PRECISION_BITS = 8;
+
+    /**
+     * The number of buckets per power of two, above {@code 2^}{@link #PRECISION_BITS}.
+     */
+    private static final int HALF = 1 << (PRECISION_BITS - 1);
+
+    /**
+     * The counts, by bucket.
+     */
+    protected final AtomicLongArray counts = new AtomicLongArray((64 - PRECISION_BITS + 1) * HALF);
+
+    /**
+     * The number of recorded values.
+     */
+    protected final AtomicLong totalCount = new AtomicLong();
+
+    /**
+     * The sum of recorded values.
+     */
+    protected final AtomicLong totalValue = new AtomicLong();
+
+    /**
+     * The largest recorded value.
+     */
+    protected final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Get the bucket of a value.
+     *
+     * @param value the positive value.
+     * @return the bucket index.
+     */
+    protected static int indexOf(long value) {
+        if (value < 2 * HALF) return (int) value;
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - (PRECISION_BITS - 1);
+        return (shift + 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    /**
+     * Get the lowest value of a bucket.
+     *
+     * @param index the bucket index.
+     * @return the lowest value counted in the bucket.
+     */
+    protected static long lowestValueAt(int index) {
+        if (index < 2 * HALF) return index;
+        final int shift = index / HALF - 1;
+        return ((long) (index % HALF + HALF)) << shift;
+    }
+
+    /**
+     * Get the highest value of a bucket.
+     *
+     * @param index the bucket index.
+     * @return the highest value counted in the bucket.
+     */
+    protected static long highestValueAt(int index) {
+        if (index < 2 * HALF) return index;
+        return lowestValueAt(index) + (1L << (index / HALF - 1)) - 1;
+    }
+
+    /**
+     * Record a value.
+     *
+     * @param value the value, negative values are recorded as 0.
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(indexOf(value));
+        totalCount.incrementAndGet();
+        totalValue.addAndGet(value);
+        for (long max = maxValue.get(); value > max && !maxValue.compareAndSet(max, value); max = maxValue.get()) {
+            // Retry until the max is at least value.
+        }
+    }
+
+    /**
+     * Add the values recorded by another histogram.
+     *
+     * @param other the other histogram.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length(); i++) {
+            final long count = other.counts.get(i);
+            if (count != 0) counts.addAndGet(i, count);
+        }
+        totalCount.addAndGet(other.totalCount.get());
+        totalValue.addAndGet(other.totalValue.get());
+        final long otherMax = other.maxValue.get();
+        for (long max = maxValue.get(); otherMax > max && !maxValue.compareAndSet(max, otherMax); max = maxValue.get()) {
+            // Retry until the max is at least otherMax.
+        }
+    }
+
+    /**
+     * Get the number of recorded values.
+     *
+     * @return the number of values.
+     */
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Get the mean of the recorded values.
+     *
+     * @return the mean, 0 if there is no value.
+     */
+    public double getMean() {
+        final long count = totalCount.get();
+        return count == 0 ? 0 : (double) totalValue.get() / count;
+    }
+
+    /**
+     * Get the largest recorded value.
+     *
+     * @return the exact largest value, 0 if there is no value.
+     */
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    /**
+     * Get the value at a percentile.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the highest value equivalent to the value at the percentile, 0 if there is no value.
+     */
+    public long getValueAtPercentile(double percentile) {
+        final long count = totalCount.get();
+        if (count == 0) return 0;
+        final long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(highestValueAt(i), maxValue.get());
+        }
+        return maxValue.get();
+    }
+
+    /**
+     * Print the usual percentiles, the mean and the max.
+     *
+     * @param out   the stream to print to.
+     * @param title the title of the histogram.
+     * @param scale the ratio of the recorded values to the printed ones, eg: {@code 1e6} for nanoseconds printed as
+     *              milliseconds.
+     */
+    public void print(PrintStream out, String title, double scale) {
+        out.println(title + " (" + getTotalCount() + " values)");
+        for (double percentile : new double[]{50, 90, 99, 99.9, 99.99})
+            out.println(String.format("  p%-6s %12.3f", percentile, getValueAtPercentile(percentile) / scale));
+        out.println(String.format("  %-7s %12.3f", "mean", getMean() / scale));
+        out.println(String.format("  %-7s %12.3f", "max", getMax() / scale));
+    }
+}
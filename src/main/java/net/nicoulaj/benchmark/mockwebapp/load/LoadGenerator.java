@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.load;
+
+import net.nicoulaj.benchmark.mockwebapp.config.MockWebAppConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An open-model load generator, sending requests at a constant arrival rate.
+ * <p/>
+ * Request {@code i} is scheduled at {@code start + i / rate}, whatever the previous responses took, and sent by the
+ * first free worker. Its response time is measured from that intended time, not from the time it was actually sent,
+ * so that a stalled server is charged for the requests queued behind it instead of silently slowing the load down
+ * (the so-called coordinated omission). The time from the actual send is recorded separately as the service time.
+ * <p/>
+ * Requests cycle through the {@link LoadScenario.Target}s of a {@link LoadScenario}, over keep-alive connections.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class LoadGenerator {
+
+    /**
+     * The base URL the request URIs are appended to, without trailing slash.
+     */
+    protected final String baseUrl;
+
+    /**
+     * The requests to send, in turn.
+     */
+    protected final List<LoadScenario.Target> targets;
+
+    /**
+     * The number of requests per second.
+     */
+    protected final double rate;
+
+    /**
+     * The number of requests to send.
+     */
+    protected final long requestCount;
+
+    /**
+     * The number of concurrent workers, ie: the maximum number of requests in flight.
+     */
+    protected final int connections;
+
+    /**
+     * The index of the next request to send.
+     */
+    protected final AtomicLong next = new AtomicLong();
+
+    /**
+     * The number of requests that failed or got an error status.
+     */
+    protected final AtomicLong errorCount = new AtomicLong();
+
+    /**
+     * The response times, from the intended send times, in nanoseconds.
+     */
+    protected final LatencyHistogram responseTimes = new LatencyHistogram();
+
+    /**
+     * The service times, from the actual send times, in nanoseconds.
+     */
+    protected final LatencyHistogram serviceTimes = new LatencyHistogram();
+
+    /**
+     * Build a new {@link LoadGenerator}.
+     *
+     * @param baseUrl     the base URL the request URIs are appended to, eg: {@code http://localhost:8080/app}.
+     * @param targets     the requests to send, in turn.
+     * @param rate        the number of requests per second.
+     * @param duration    the duration of the run, in seconds.
+     * @param connections the number of concurrent workers.
+     */
+    public LoadGenerator(String baseUrl, List<LoadScenario.Target> targets, double rate, double duration, int connections) {
+        if (targets.isEmpty()) throw new IllegalArgumentException("At least one target should be given");
+        if (rate <= 0 || duration <= 0 || connections <= 0)
+            throw new IllegalArgumentException("The rate, duration and connections must be positive");
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.targets = targets;
+        this.rate = rate;
+        this.requestCount = Math.max(1, (long) (rate * duration));
+        this.connections = connections;
+    }
+
+    /**
+     * Send all the requests and wait for their responses.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void run() throws InterruptedException {
+        final ExecutorService executor = Executors.newFixedThreadPool(connections);
+        try {
+            final long start = System.nanoTime();
+            final List<Future<?>> workers = new ArrayList<Future<?>>(connections);
+            for (int i = 0; i < connections; i++)
+                workers.add(executor.submit(new Runnable() {
+                    public void run() {
+                        work(start);
+                    }
+                }));
+            for (Future<?> worker : workers) {
+                try {
+                    worker.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("A load worker failed", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Send the next scheduled requests until all of them were sent.
+     *
+     * @param start the intended send time of the first request, from {@link System#nanoTime()}.
+     */
+    protected void work(long start) {
+        for (long i = next.getAndIncrement(); i < requestCount; i = next.getAndIncrement()) {
+            final long intended = start + (long) (i * 1e9 / rate);
+            for (long wait = intended - System.nanoTime(); wait > 0; wait = intended - System.nanoTime())
+                LockSupport.parkNanos(wait);
+            final long sent = System.nanoTime();
+            if (!send(targets.get((int) (i % targets.size())))) errorCount.incrementAndGet();
+            final long done = System.nanoTime();
+            responseTimes.record(done - intended);
+            serviceTimes.record(done - sent);
+        }
+    }
+
+    /**
+     * Send a request and read its response.
+     *
+     * @param target the request to send.
+     * @return true if the response has a successful or redirection status.
+     */
+    protected boolean send(LoadScenario.Target target) {
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + target.uri).openConnection();
+            connection.setRequestMethod(target.method);
+            connection.setInstanceFollowRedirects(false);
+            connection.setUseCaches(false);
+            for (Map.Entry<String, String> header : target.headers.entrySet())
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            final int status = connection.getResponseCode();
+            final InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            if (in != null) drain(in);
+            return status >= 200 && status < 400;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Read a response body to the end and close it, so that its connection can be kept alive.
+     *
+     * @param in the response body.
+     * @throws IOException if reading failed.
+     */
+    protected static void drain(InputStream in) throws IOException {
+        try {
+            final byte[] buffer = new byte[4096];
+            while (in.read(buffer) >= 0) {
+                // Discard the body.
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Get the number of requests sent.
+     *
+     * @return the number of requests, once {@link #run()} returned.
+     */
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * Get the number of requests that failed or got an error status.
+     *
+     * @return the number of errors.
+     */
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    /**
+     * Get the response times, measured from the intended send times.
+     *
+     * @return the response times, in nanoseconds.
+     */
+    public LatencyHistogram getResponseTimes() {
+        return responseTimes;
+    }
+
+    /**
+     * Get the service times, measured from the actual send times.
+     *
+     * @return the service times, in nanoseconds.
+     */
+    public LatencyHistogram getServiceTimes() {
+        return serviceTimes;
+    }
+
+    /**
+     * Run a load against a mock web app, with requests derived from its config file.
+     *
+     * @param args the config file or directory, the base URL, the rate, the duration in seconds, and optionally the
+     *             number of connections.
+     * @throws Exception if the config could not be parsed or the run was interrupted.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 4 && args.length != 5) {
+            System.err.println("Usage: " + LoadGenerator.class.getName() + " <config.xml|config-dir> <base-url> <requests-per-second> <seconds> [connections]");
+            System.exit(1);
+        }
+        final LoadScenario scenario = new LoadScenario(MockWebAppConfig.Parser.parseConfig(new File(args[0])));
+        if (scenario.getTargets().isEmpty()) {
+            System.err.println("No request could be derived from the " + scenario.getSkippedMappingCount() + " mappings");
+            System.exit(1);
+        }
+        final LoadGenerator generator = new LoadGenerator(args[1], scenario.getTargets(), Double.parseDouble(args[2]),
+                                                          Double.parseDouble(args[3]),
+                                                          args.length == 5 ? Integer.parseInt(args[4]) : 16);
+        generator.run();
+        System.out.println("Sent " + generator.getRequestCount() + " requests to " + scenario.getTargets().size()
+                           + " targets (" + scenario.getSkippedMappingCount() + " mappings skipped), "
+                           + generator.getErrorCount() + " errors");
+        generator.getResponseTimes().print(System.out, "Response time (ms)", 1e6);
+        generator.getServiceTimes().print(System.out, "Service time (ms)", 1e6);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.load;
+
+import net.nicoulaj.benchmark.mockwebapp.config.Mapping;
+import net.nicoulaj.benchmark.mockwebapp.config.MockWebAppConfig;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.SyntheticRequest;
+
+import java.util.*;
+
+/**
+ * The requests sent by a {@link LoadGenerator}, derived from the {@link Mapping}s of a {@link MockWebAppConfig}.
+ * <p/>
+ * Each mapping gives one {@link Target} request satisfying its statements, as a {@link SyntheticRequest}. Mappings no
+ * request can be derived from, or with a method {@link java.net.HttpURLConnection} cannot send, are skipped.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class LoadScenario {
+
+    /**
+     * The methods {@link java.net.HttpURLConnection} can send.
+     */
+    protected static final Set<String> SUPPORTED_METHODS = new HashSet<String>(Arrays.asList("GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "TRACE"));
+
+    /**
+     * The requests, in mappings order.
+     */
+    protected final List<Target> targets = new ArrayList<Target>();
+
+    /**
+     * The number of mappings skipped.
+     */
+    protected int skippedMappings;
+
+    /**
+     * Build a {@link LoadScenario} from a config.
+     *
+     * @param config the config.
+     */
+    public LoadScenario(MockWebAppConfig config) {
+        for (Mapping mapping : config.mappings) {
+            final Target target = toTarget(mapping);
+            if (target == null) skippedMappings++;
+            else targets.add(target);
+        }
+    }
+
+    /**
+     * Get the requests of this scenario.
+     *
+     * @return the requests, in mappings order.
+     */
+    public List<Target> getTargets() {
+        return targets;
+    }
+
+    /**
+     * Get the number of mappings no request could be derived from.
+     *
+     * @return the number of mappings skipped.
+     */
+    public int getSkippedMappingCount() {
+        return skippedMappings;
+    }
+
+    /**
+     * Derive a request from a mapping.
+     *
+     * @param mapping the mapping.
+     * @return a request matched by the mapping, or null if none can be derived.
+     * @see SyntheticRequest#of(Mapping)
+     */
+    protected static Target toTarget(Mapping mapping) {
+        final SyntheticRequest request = SyntheticRequest.of(mapping);
+        if (request == null || !SUPPORTED_METHODS.contains(request.method)) return null;
+        return new Target(request.method, request.uri, request.headers);
+    }
+
+    /**
+     * A request sent by a {@link LoadGenerator}.
+     */
+    public static class Target {
+
+        /**
+         * The request method.
+         */
+        public final String method;
+
+        /**
+         * The request URI, with its query string.
+         */
+        public final String uri;
+
+        /**
+         * The request headers.
+         */
+        public final Map<String, String> headers;
+
+        /**
+         * Build a new {@link Target}.
+         *
+         * @param method  the request method.
+         * @param uri     the request URI, with its query string.
+         * @param headers the request headers.
+         */
+        public Target(String method, String uri, Map<String, String> headers) {
+            this.method = method;
+            this.uri = uri;
+            this.headers = headers;
+        }
+
+        @Override
+        public String toString() {
+            return method + ' ' + uri;
+        }
+    }
+}
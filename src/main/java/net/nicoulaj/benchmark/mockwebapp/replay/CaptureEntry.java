@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.replay;
+
+/**
+ * A captured HTTP exchange.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @see CaptureReader
+ * @since 1.0.0
+ */
+public class CaptureEntry {
+
+    /**
+     * The request method, eg: {@code GET}.
+     */
+    public String method;
+
+    /**
+     * The request URL, absolute or not, eg: {@code http://localhost/users?page=2}.
+     */
+    public String url;
+
+    /**
+     * The response status code.
+     */
+    public int status;
+
+    /**
+     * The response content type, with or without charset, eg: {@code application/json; charset=utf-8}.
+     * <p/>
+     * Can be null.
+     */
+    public String contentType;
+
+    /**
+     * The response body text.
+     * <p/>
+     * Can be null if the response had no body or a binary one.
+     */
+    public String body;
+
+    /**
+     * The time the server took to answer, in milliseconds.
+     * <p/>
+     * Negative if unknown.
+     */
+    public double latency = -1;
+
+    /**
+     * Get the path of {@link #url}, without scheme, authority, query or fragment.
+     *
+     * @return the path, as it would be received by the mock: not decoded.
+     */
+    public String getPath() {
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : url.indexOf('/', start + 3);
+        if (start < 0) return "/";
+        int end = url.length();
+        final int query = url.indexOf('?', start);
+        if (query >= 0) end = query;
+        final int fragment = url.indexOf('#', start);
+        if (fragment >= 0 && fragment < end) end = fragment;
+        return start == end ? "/" : url.substring(start, end);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A reader of {@link CaptureEntry}s, streaming them one at a time from a capture file.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @see TrafficImporter
+ * @since 1.0.0
+ */
+public interface CaptureReader extends Closeable {
+
+    /**
+     * Read the next entry.
+     *
+     * @return the entry, or null at the end of the capture.
+     * @throws IOException if the capture could not be read or is invalid.
+     */
+    CaptureEntry next() throws IOException;
+}
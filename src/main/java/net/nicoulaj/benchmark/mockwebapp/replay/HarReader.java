@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.replay;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+
+/**
+ * A {@link CaptureReader} for <a href="http://www.softwareishard.com/blog/har-12-spec/">HTTP Archive</a> files.
+ * <p/>
+ * The document is walked up to the {@code log.entries} array, whose elements are then read one at a time. The server
+ * latency is the {@code timings.wait} time if known, the total entry {@code time} otherwise. Base64 encoded (binary)
+ * bodies are ignored.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class HarReader implements CaptureReader {
+
+    /**
+     * The input.
+     */
+    protected final Reader in;
+
+    /**
+     * The JSON reader on {@link #in}.
+     */
+    protected final JsonReader json;
+
+    /**
+     * Whether {@link #json} is positioned inside the entries array.
+     */
+    protected boolean inEntries;
+
+    /**
+     * Build a new {@link HarReader}.
+     *
+     * @param in the HAR document.
+     */
+    public HarReader(Reader in) {
+        this.in = in;
+        this.json = new JsonReader(in);
+    }
+
+    /**
+     * Read the next entry.
+     *
+     * @return the entry, or null at the end of the capture.
+     * @throws IOException if the capture could not be read or is invalid.
+     */
+    public CaptureEntry next() throws IOException {
+        if (!inEntries) {
+            if (!seek("log") || !seek("entries")) return null;
+            json.beginArray();
+            inEntries = true;
+        }
+        if (!json.hasNext()) return null;
+        return toEntry(JsonValues.asMap(json.readValue()));
+    }
+
+    /**
+     * Enter an object and skip its members up to the given one.
+     *
+     * @param name the member name.
+     * @return true if positioned on the member value, false if the object does not have it.
+     * @throws IOException if the capture could not be read or is invalid.
+     */
+    protected boolean seek(String name) throws IOException {
+        if (json.peek() != JsonReader.Token.BEGIN_OBJECT) return false;
+        json.beginObject();
+        while (json.hasNext()) {
+            if (name.equals(json.nextName())) return true;
+            json.skipValue();
+        }
+        return false;
+    }
+
+    /**
+     * Convert a HAR entry.
+     *
+     * @param har the entry object.
+     * @return the {@link CaptureEntry}.
+     */
+    protected CaptureEntry toEntry(Map<String, Object> har) {
+        final Map<String, Object> request = JsonValues.asMap(har.get("request"));
+        final Map<String, Object> response = JsonValues.asMap(har.get("response"));
+        final Map<String, Object> content = JsonValues.asMap(response.get("content"));
+        final CaptureEntry entry = new CaptureEntry();
+        entry.method = JsonValues.asString(request.get("method"));
+        entry.url = JsonValues.asString(request.get("url"));
+        entry.status = (int) JsonValues.asNumber(response.get("status"), 0);
+        entry.contentType = JsonValues.asString(content.get("mimeType"));
+        if (!"base64".equals(content.get("encoding"))) entry.body = JsonValues.asString(content.get("text"));
+        final double wait = JsonValues.asNumber(JsonValues.asMap(har.get("timings")).get("wait"), -1);
+        entry.latency = wait >= 0 ? wait : JsonValues.asNumber(har.get("time"), -1);
+        return entry;
+    }
+
+    /**
+     * Close the input.
+     *
+     * @throws IOException if the input could not be closed.
+     */
+    public void close() throws IOException {
+        in.close();
+    }
+}
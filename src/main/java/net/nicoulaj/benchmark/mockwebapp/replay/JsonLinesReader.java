@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.replay;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+
+/**
+ * A {@link CaptureReader} for JSON lines files: one object per line, with the members:
+ * <ul>
+ * <li>{@code method}: the request method.</li>
+ * <li>{@code url}: the request URL.</li>
+ * <li>{@code status}: the response status code.</li>
+ * <li>{@code contentType}: the response content type, optional.</li>
+ * <li>{@code body}: the response body text, optional.</li>
+ * <li>{@code latency}: the server latency in milliseconds, optional.</li>
+ * </ul>
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class JsonLinesReader implements CaptureReader {
+
+    /**
+     * The input.
+     */
+    protected final Reader in;
+
+    /**
+     * The JSON reader on {@link #in}.
+     */
+    protected final JsonReader json;
+
+    /**
+     * Build a new {@link JsonLinesReader}.
+     *
+     * @param in the JSON lines.
+     */
+    public JsonLinesReader(Reader in) {
+        this.in = in;
+        this.json = new JsonReader(in);
+    }
+
+    /**
+     * Read the next entry.
+     *
+     * @return the entry, or null at the end of the capture.
+     * @throws IOException if the capture could not be read or is invalid.
+     */
+    public CaptureEntry next() throws IOException {
+        if (json.peek() == JsonReader.Token.END_DOCUMENT) return null;
+        final Map<String, Object> line = JsonValues.asMap(json.readValue());
+        final CaptureEntry entry = new CaptureEntry();
+        entry.method = JsonValues.asString(line.get("method"));
+        entry.url = JsonValues.asString(line.get("url"));
+        entry.status = (int) JsonValues.asNumber(line.get("status"), 0);
+        entry.contentType = JsonValues.asString(line.get("contentType"));
+        entry.body = JsonValues.asString(line.get("body"));
+        entry.latency = JsonValues.asNumber(line.get("latency"), -1);
+        return entry;
+    }
+
+    /**
+     * Close the input.
+     *
+     * @throws IOException if the input could not be closed.
+     */
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,483 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.replay;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A streaming JSON reader, pulling one token at a time from a {@link Reader}.
+ * <p/>
+ * Only the current value is held in memory, so documents of any size can be walked, and large arrays read one
+ * element at a time with {@link #readValue()}. The reader is lenient: separators are not checked, and consecutive
+ * top level values (eg: JSON lines) are read as a sequence.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public final class JsonReader {
+
+    /**
+     * The kinds of tokens.
+     */
+    public static enum Token {
+
+        /**
+         * The start of an object.
+         */
+        BEGIN_OBJECT,
+
+        /**
+         * The end of an object.
+         */
+        END_OBJECT,
+
+        /**
+         * The start of an array.
+         */
+        BEGIN_ARRAY,
+
+        /**
+         * The end of an array.
+         */
+        END_ARRAY,
+
+        /**
+         * An object member name.
+         */
+        NAME,
+
+        /**
+         * A string value.
+         */
+        STRING,
+
+        /**
+         * A number value.
+         */
+        NUMBER,
+
+        /**
+         * A boolean value.
+         */
+        BOOLEAN,
+
+        /**
+         * A null value.
+         */
+        NULL,
+
+        /**
+         * The end of the input.
+         */
+        END_DOCUMENT
+    }
+
+    /**
+     * The maximum nesting depth.
+     */
+    private static final int MAX_DEPTH = 256;
+
+    /**
+     * The input.
+     */
+    private final Reader in;
+
+    /**
+     * The input buffer.
+     */
+    private final char[] buffer = new char[8192];
+
+    /**
+     * The position of the next character in {@link #buffer}.
+     */
+    private int position;
+
+    /**
+     * The number of characters in {@link #buffer}.
+     */
+    private int limit;
+
+    /**
+     * Whether each open container is an object, by depth.
+     */
+    private final boolean[] objects = new boolean[MAX_DEPTH];
+
+    /**
+     * Whether each open object expects a member name next, by depth.
+     */
+    private final boolean[] expectNames = new boolean[MAX_DEPTH];
+
+    /**
+     * The number of open containers.
+     */
+    private int depth;
+
+    /**
+     * The next token, or null if not peeked yet.
+     */
+    private Token peeked;
+
+    /**
+     * The builder for strings, reused.
+     */
+    private final StringBuilder text = new StringBuilder();
+
+    /**
+     * Build a new {@link JsonReader}.
+     *
+     * @param in the input, should be buffered by the caller only if shared.
+     */
+    public JsonReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Get the kind of the next token, without consuming it.
+     *
+     * @return the next token.
+     * @throws IOException if the input could not be read or is not JSON.
+     */
+    public Token peek() throws IOException {
+        if (peeked != null) return peeked;
+        int c = read();
+        while (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == ',' || c == ':') c = read();
+        if (c < 0) return peeked = Token.END_DOCUMENT;
+        position--;
+        switch (c) {
+            case '{':
+                return peeked = Token.BEGIN_OBJECT;
+            case '}':
+                return peeked = Token.END_OBJECT;
+            case '[':
+                return peeked = Token.BEGIN_ARRAY;
+            case ']':
+                return peeked = Token.END_ARRAY;
+            case '"':
+                return peeked = depth > 0 && objects[depth - 1] && expectNames[depth - 1] ? Token.NAME : Token.STRING;
+            case 't':
+            case 'f':
+                return peeked = Token.BOOLEAN;
+            case 'n':
+                return peeked = Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) return peeked = Token.NUMBER;
+                throw new IOException("Unexpected character '" + (char) c + "' in JSON input");
+        }
+    }
+
+    /**
+     * Test whether the current object or array has more elements.
+     *
+     * @return true if the next token is neither the end of a container nor the end of the input.
+     * @throws IOException if the input could not be read or is not JSON.
+     */
+    public boolean hasNext() throws IOException {
+        final Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    /**
+     * Consume the start of an object.
+     *
+     * @throws IOException if the next token is not the start of an object.
+     */
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(true);
+    }
+
+    /**
+     * Consume the end of an object.
+     *
+     * @throws IOException if the next token is not the end of an object.
+     */
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        depth--;
+        afterValue();
+    }
+
+    /**
+     * Consume the start of an array.
+     *
+     * @throws IOException if the next token is not the start of an array.
+     */
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(false);
+    }
+
+    /**
+     * Consume the end of an array.
+     *
+     * @throws IOException if the next token is not the end of an array.
+     */
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        depth--;
+        afterValue();
+    }
+
+    /**
+     * Consume an object member name.
+     *
+     * @return the name.
+     * @throws IOException if the next token is not a name.
+     */
+    public String nextName() throws IOException {
+        if (peek() != Token.NAME) throw new IOException("Expected a JSON member name but found " + peeked);
+        peeked = null;
+        final String name = readString();
+        expectNames[depth - 1] = false;
+        return name;
+    }
+
+    /**
+     * Consume a scalar value as text.
+     *
+     * @return the string value, or the literal text of a number or boolean.
+     * @throws IOException if the next token is not a scalar.
+     */
+    public String nextString() throws IOException {
+        final Token token = peek();
+        peeked = null;
+        final String value;
+        if (token == Token.STRING) value = readString();
+        else if (token == Token.NUMBER || token == Token.BOOLEAN) value = readLiteral();
+        else throw new IOException("Expected a JSON scalar but found " + token);
+        afterValue();
+        return value;
+    }
+
+    /**
+     * Consume a number value.
+     *
+     * @return the number.
+     * @throws IOException if the next token is not a number.
+     */
+    public double nextNumber() throws IOException {
+        if (peek() != Token.NUMBER) throw new IOException("Expected a JSON number but found " + peeked);
+        return Double.parseDouble(nextString());
+    }
+
+    /**
+     * Consume any value, including whole objects and arrays.
+     *
+     * @throws IOException if the input could not be read or is not JSON.
+     */
+    public void skipValue() throws IOException {
+        int open = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    open++;
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    open++;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    open--;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    open--;
+                    break;
+                case NAME:
+                    nextName();
+                    break;
+                case NULL:
+                    peeked = null;
+                    readLiteral();
+                    afterValue();
+                    break;
+                case END_DOCUMENT:
+                    throw new IOException("Unexpected end of JSON input");
+                default:
+                    nextString();
+            }
+        } while (open > 0);
+    }
+
+    /**
+     * Consume any value as a tree.
+     *
+     * @return a {@link Map} for objects, a {@link List} for arrays, a {@link String}, a {@link Double}, a
+     *         {@link Boolean}, or null.
+     * @throws IOException if the input could not be read or is not JSON.
+     */
+    public Object readValue() throws IOException {
+        switch (peek()) {
+            case BEGIN_OBJECT:
+                final Map<String, Object> object = new LinkedHashMap<String, Object>();
+                beginObject();
+                while (hasNext()) {
+                    final String name = nextName();
+                    object.put(name, readValue());
+                }
+                endObject();
+                return object;
+            case BEGIN_ARRAY:
+                final List<Object> array = new ArrayList<Object>();
+                beginArray();
+                while (hasNext()) array.add(readValue());
+                endArray();
+                return array;
+            case NUMBER:
+                return nextNumber();
+            case BOOLEAN:
+                return Boolean.valueOf(nextString());
+            case NULL:
+                skipValue();
+                return null;
+            case STRING:
+                return nextString();
+            default:
+                throw new IOException("Expected a JSON value but found " + peeked);
+        }
+    }
+
+    /**
+     * Consume the next token, checking its kind.
+     *
+     * @param token the expected kind.
+     * @throws IOException if the next token is of another kind.
+     */
+    private void expect(Token token) throws IOException {
+        if (peek() != token) throw new IOException("Expected " + token + " but found " + peeked);
+        peeked = null;
+        position++;
+    }
+
+    /**
+     * Open a container.
+     *
+     * @param object whether the container is an object.
+     * @throws IOException if the maximum depth is exceeded.
+     */
+    private void push(boolean object) throws IOException {
+        if (depth == MAX_DEPTH) throw new IOException("JSON input nested too deeply");
+        objects[depth] = object;
+        expectNames[depth] = object;
+        depth++;
+    }
+
+    /**
+     * Update the state after a complete value.
+     */
+    private void afterValue() {
+        if (depth > 0 && objects[depth - 1]) expectNames[depth - 1] = true;
+    }
+
+    /**
+     * Read a quoted string, starting at its opening quote.
+     *
+     * @return the unescaped string.
+     * @throws IOException if the string is not terminated.
+     */
+    private String readString() throws IOException {
+        text.setLength(0);
+        read();
+        while (true) {
+            final int c = read();
+            if (c < 0) throw new IOException("Unterminated JSON string");
+            if (c == '"') break;
+            if (c != '\\') {
+                text.append((char) c);
+                continue;
+            }
+            final int escaped = read();
+            switch (escaped) {
+                case 'b':
+                    text.append('\b');
+                    break;
+                case 'f':
+                    text.append('\f');
+                    break;
+                case 'n':
+                    text.append('\n');
+                    break;
+                case 'r':
+                    text.append('\r');
+                    break;
+                case 't':
+                    text.append('\t');
+                    break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        final int digit = Character.digit(read(), 16);
+                        if (digit < 0) throw new IOException("Invalid JSON unicode escape");
+                        code = code * 16 + digit;
+                    }
+                    text.append((char) code);
+                    break;
+                case -1:
+                    throw new IOException("Unterminated JSON string");
+                default:
+                    text.append((char) escaped);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Read an unquoted literal: a number, {@code true}, {@code false} or {@code null}.
+     *
+     * @return the literal text.
+     * @throws IOException if the input could not be read.
+     */
+    private String readLiteral() throws IOException {
+        text.setLength(0);
+        int c;
+        while ((c = read()) >= 0) {
+            if (c == ',' || c == ':' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                position--;
+                break;
+            }
+            text.append((char) c);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Read the next character.
+     * <p/>
+     * Callers may step back one character by decrementing {@link #position}.
+     *
+     * @return the character, or -1 at the end of the input.
+     * @throws IOException if the input could not be read.
+     */
+    private int read() throws IOException {
+        if (position == limit) {
+            if (limit > 0) {
+                buffer[0] = buffer[limit - 1];
+                position = limit = 1;
+            }
+            final int count = in.read(buffer, limit, buffer.length - limit);
+            if (count <= 0) return -1;
+            limit += count;
+        }
+        return buffer[position++];
+    }
+}
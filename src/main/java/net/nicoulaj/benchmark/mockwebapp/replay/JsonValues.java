@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.replay;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Helpers for the values read by {@link JsonReader#readValue()}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+final class JsonValues {
+
+    /**
+     * Not instantiable.
+     */
+    private JsonValues() {
+    }
+
+    /**
+     * Get a value as an object.
+     *
+     * @param value the value.
+     * @return the object members, empty if the value is not an object.
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> asMap(Object value) {
+        return value instanceof Map ? (Map<String, Object>) value : Collections.<String, Object>emptyMap();
+    }
+
+    /**
+     * Get a value as a string.
+     *
+     * @param value the value.
+     * @return the string, or null if the value is not a string.
+     */
+    static String asString(Object value) {
+        return value instanceof String ? (String) value : null;
+    }
+
+    /**
+     * Get a value as a number.
+     *
+     * @param value        the value.
+     * @param defaultValue the value to return if {@code value} is not a number.
+     * @return the number.
+     */
+    static double asNumber(Object value, double defaultValue) {
+        return value instanceof Number ? ((Number) value).doubleValue() : defaultValue;
+    }
+}
@@ -0,0 +1,617 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.replay;
+
+import net.nicoulaj.benchmark.mockwebapp.config.Mapping;
+import net.nicoulaj.benchmark.mockwebapp.config.MockWebAppConfig;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.EntityTags;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.MethodBits;
+import net.nicoulaj.benchmark.mockwebapp.config.then.*;
+import net.nicoulaj.benchmark.mockwebapp.config.when.MethodCondition;
+import net.nicoulaj.benchmark.mockwebapp.config.when.URLCondition;
+import net.nicoulaj.benchmark.mockwebapp.config.when.WhenStatement;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Builds a {@link MockWebAppConfig} replaying captured traffic.
+ * <p/>
+ * Entries are {@link #add(CaptureEntry) added} one at a time, so captures of any size can be streamed through a
+ * {@link CaptureReader}. Entries are grouped by method and path into endpoints, each one mapped with literal
+ * {@link MethodCondition} and {@link URLCondition} statements. Equivalent responses are counted by content hash
+ * rather than stored, and only the body of the response currently leading each endpoint is kept, shared with the
+ * endpoints leading with an identical body: memory grows with the number of endpoints, not with the capture size nor
+ * with its number of distinct bodies. When the config is {@link #write(MockWebAppConfig, File) written to a file},
+ * each shared body is written once, to a body file included by the mappings.
+ * <p/>
+ * Each endpoint replays its most frequent response, with a delay spanning the 5th to 95th percentiles of its
+ * latencies, estimated from a bounded random sample.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class TrafficImporter {
+
+    /**
+     * The maximum number of distinct responses tracked per endpoint.
+     */
+    public static final int MAX_VARIANTS = 16;
+
+    /**
+     * The maximum number of latencies sampled per response.
+     */
+    public static final int MAX_SAMPLES = 1024;
+
+    /**
+     * The XML schema location of the written configs.
+     */
+    public static final String SCHEMA_LOCATION = "net.nicoulaj.benchmark.mockwebapp:mock-web-app /mock-web-app.xsd";
+
+    /**
+     * The XInclude namespace, used to include the shared bodies.
+     */
+    public static final String XINCLUDE_NAMESPACE = "http://www.w3.org/2001/XInclude";
+
+    /**
+     * The endpoints, by method and path, in order of first appearance.
+     */
+    protected final Map<String, Endpoint> endpoints = new LinkedHashMap<String, Endpoint>();
+
+    /**
+     * The bodies of the leading responses of {@link #endpoints}, by content hash.
+     */
+    protected final Map<String, SharedBody> bodies = new HashMap<String, SharedBody>();
+
+    /**
+     * The random generator for latency sampling.
+     */
+    protected final Random random = new Random(0);
+
+    /**
+     * The number of entries added.
+     */
+    protected long entries;
+
+    /**
+     * The number of entries ignored, because invalid or beyond {@link #MAX_VARIANTS}.
+     */
+    protected long ignoredEntries;
+
+    /**
+     * The number of bodies ignored, because they cannot be represented as a {@link BodyAction} template.
+     */
+    protected long ignoredBodies;
+
+    /**
+     * Add all the entries of a capture.
+     *
+     * @param reader the capture reader, closed when done.
+     * @throws IOException if the capture could not be read or is invalid.
+     */
+    public void add(CaptureReader reader) throws IOException {
+        try {
+            for (CaptureEntry entry = reader.next(); entry != null; entry = reader.next()) add(entry);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Add an entry.
+     *
+     * @param entry the entry.
+     */
+    public void add(CaptureEntry entry) {
+        entries++;
+        if (entry.method == null || !MethodBits.isValid(entry.method) || entry.url == null || entry.status <= 0) {
+            ignoredEntries++;
+            return;
+        }
+        final String path = entry.getPath();
+        final String endpointKey = entry.method + ' ' + path;
+        Endpoint endpoint = endpoints.get(endpointKey);
+        if (endpoint == null) {
+            endpoint = new Endpoint(entry.method, path);
+            endpoints.put(endpointKey, endpoint);
+        }
+        final BodyAction body = toBody(entry);
+        final String bodyKey = body == null ? null : bodyKey(body);
+        final String variantKey = entry.status + (bodyKey == null ? "" : ' ' + bodyKey);
+        Variant variant = endpoint.variants.get(variantKey);
+        if (variant == null) {
+            if (endpoint.variants.size() == MAX_VARIANTS) {
+                ignoredEntries++;
+                return;
+            }
+            variant = new Variant(entry.status, bodyKey);
+            endpoint.variants.put(variantKey, variant);
+        }
+        variant.count++;
+        if (endpoint.leader == null || variant != endpoint.leader && variant.count > endpoint.leader.count) {
+            if (endpoint.leader != null) releaseBody(endpoint.leader);
+            endpoint.leader = variant;
+            if (body != null) variant.body = internBody(bodyKey, body);
+        }
+        if (entry.latency >= 0) variant.sample(entry.latency, random);
+    }
+
+    /**
+     * Get the {@link BodyAction} for the body of an entry.
+     *
+     * @param entry the entry.
+     * @return the body action, or null if the entry has no body or one that cannot be represented.
+     */
+    protected BodyAction toBody(CaptureEntry entry) {
+        if (entry.body == null || entry.body.length() == 0) return null;
+        if (entry.body.contains("${") || !isXmlText(entry.body)) {
+            ignoredBodies++;
+            return null;
+        }
+        final BodyAction body = new BodyAction();
+        body.template = entry.body;
+        if (entry.contentType != null) {
+            final String[] parts = entry.contentType.split(";");
+            body.contentType = parts[0].trim().length() == 0 ? null : parts[0].trim();
+            for (int i = 1; i < parts.length; i++) {
+                final String parameter = parts[i].trim();
+                if (parameter.regionMatches(true, 0, "charset=", 0, 8)) {
+                    final String charset = parameter.substring(8).replace("\"", "");
+                    if (Charset.isSupported(charset)) body.charset = charset;
+                }
+            }
+        }
+        return body;
+    }
+
+    /**
+     * Get the shared {@link BodyAction} for a body, keeping it until {@link #releaseBody(Variant) released}.
+     *
+     * @param key  the body content hash.
+     * @param body the body.
+     * @return the shared body action, equivalent to {@code body}.
+     */
+    protected BodyAction internBody(String key, BodyAction body) {
+        SharedBody shared = bodies.get(key);
+        if (shared == null) bodies.put(key, shared = new SharedBody(body));
+        shared.references++;
+        return shared.body;
+    }
+
+    /**
+     * Release the body of a response that no longer leads its endpoint.
+     *
+     * @param variant the response.
+     */
+    protected void releaseBody(Variant variant) {
+        if (variant.body == null) return;
+        final SharedBody shared = bodies.get(variant.key);
+        if (--shared.references == 0) bodies.remove(variant.key);
+        variant.body = null;
+    }
+
+    /**
+     * Get the key identifying equivalent bodies.
+     *
+     * @param body the body.
+     * @return a hash of the body content, content type and charset.
+     */
+    protected static String bodyKey(BodyAction body) {
+        try {
+            return EntityTags.of((body.contentType + '\0' + body.charset + '\0' + body.template).getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Test whether a text only has characters allowed in XML documents.
+     *
+     * @param text the text.
+     * @return true if the text can be written in an XML config file.
+     */
+    protected static boolean isXmlText(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c < 0x20 && c != '\t' && c != '\n' && c != '\r') return false;
+            if (c == 0xFFFE || c == 0xFFFF) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Build the config replaying the entries added so far.
+     *
+     * @return the config, with one mapping per endpoint.
+     */
+    public MockWebAppConfig toConfig() {
+        final MockWebAppConfig config = new MockWebAppConfig();
+        config.matchingStrategy = MockWebAppConfig.MatchingStrategy.first;
+        config.mappings = new ArrayList<Mapping>(endpoints.size());
+        for (Endpoint endpoint : endpoints.values()) config.mappings.add(endpoint.toMapping());
+        return config;
+    }
+
+    /**
+     * Get the number of entries added.
+     *
+     * @return the number of entries.
+     */
+    public long getEntryCount() {
+        return entries;
+    }
+
+    /**
+     * Get the number of entries ignored, because invalid or beyond {@link #MAX_VARIANTS} distinct responses.
+     *
+     * @return the number of entries.
+     */
+    public long getIgnoredEntryCount() {
+        return ignoredEntries;
+    }
+
+    /**
+     * Get the number of bodies ignored, because binary or containing template placeholders.
+     *
+     * @return the number of bodies.
+     */
+    public long getIgnoredBodyCount() {
+        return ignoredBodies;
+    }
+
+    /**
+     * Get the number of distinct bodies of the replayed responses.
+     *
+     * @return the number of bodies.
+     */
+    public int getBodyCount() {
+        return bodies.size();
+    }
+
+    /**
+     * Open a capture file.
+     *
+     * @param file the file: HTTP Archive if named {@code *.har}, JSON lines otherwise.
+     * @return the capture reader.
+     * @throws IOException if the file could not be opened.
+     */
+    public static CaptureReader open(File file) throws IOException {
+        final Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        return file.getName().toLowerCase(Locale.ENGLISH).endsWith(".har") ? new HarReader(in) : new JsonLinesReader(in);
+    }
+
+    /**
+     * Write a config as XML.
+     *
+     * @param config the config.
+     * @param out    the output, not closed.
+     * @throws JAXBException if the config could not be written.
+     */
+    public static void write(MockWebAppConfig config, OutputStream out) throws JAXBException {
+        final Marshaller marshaller = JAXBContext.newInstance(MockWebAppConfig.class).createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+        marshaller.setProperty(Marshaller.JAXB_SCHEMA_LOCATION, SCHEMA_LOCATION);
+        marshaller.marshal(config, out);
+    }
+
+    /**
+     * Write a config as an XML file, with each body shared by several mappings written once, to a body file.
+     * <p/>
+     * The body files are written to the {@code <name>-bodies} directory next to the config file, and included in the
+     * mappings with XInclude {@code parse="text"} elements. The other bodies are written inline.
+     *
+     * @param config the config.
+     * @param file   the config file to write.
+     * @throws IOException   if a file could not be written.
+     * @throws JAXBException if the config could not be written.
+     */
+    public static void write(MockWebAppConfig config, File file) throws IOException, JAXBException {
+        final Map<BodyAction, Integer> uses = new IdentityHashMap<BodyAction, Integer>();
+        for (Mapping mapping : config.mappings) {
+            for (ThenStatement statement : mapping.thenStatements) {
+                if (!(statement instanceof BodyAction)) continue;
+                final Integer count = uses.get(statement);
+                uses.put((BodyAction) statement, count == null ? 1 : count + 1);
+            }
+        }
+
+        // Write the shared bodies, and replace them by placeholders in a copy of the config.
+        final String name = file.getName().endsWith(".xml") ? file.getName().substring(0, file.getName().length() - 4) : file.getName();
+        final File dir = new File(file.getAbsoluteFile().getParentFile(), name + "-bodies");
+        final String marker = "mock-web-app-body:" + UUID.randomUUID() + ':';
+        final Map<BodyAction, BodyAction> placeholders = new IdentityHashMap<BodyAction, BodyAction>();
+        final List<String> includes = new ArrayList<String>();
+        final MockWebAppConfig copy = new MockWebAppConfig();
+        copy.matchingStrategy = config.matchingStrategy;
+        copy.adaptiveOrdering = config.adaptiveOrdering;
+        copy.matchCacheSize = config.matchCacheSize;
+        copy.warmup = config.warmup;
+        copy.proxy = config.proxy;
+        copy.includes = config.includes;
+        copy.mappings = new ArrayList<Mapping>(config.mappings.size());
+        for (Mapping mapping : config.mappings) {
+            final Mapping mappingCopy = new Mapping();
+            mappingCopy.id = mapping.id;
+            mappingCopy.whenStatements = mapping.whenStatements;
+            mappingCopy.thenStatements = new ArrayList<ThenStatement>(mapping.thenStatements.size());
+            for (ThenStatement statement : mapping.thenStatements) {
+                if (statement instanceof BodyAction && uses.get(statement) > 1) {
+                    BodyAction placeholder = placeholders.get(statement);
+                    if (placeholder == null) {
+                        final BodyAction body = (BodyAction) statement;
+                        if (includes.isEmpty() && !dir.isDirectory() && !dir.mkdirs()) throw new IOException("Failed creating " + dir);
+                        final String bodyFile = (includes.size() + 1) + ".txt";
+                        writeBody(body.template, new File(dir, bodyFile));
+                        placeholder = new BodyAction();
+                        placeholder.contentType = body.contentType;
+                        placeholder.charset = body.charset;
+                        placeholder.encodings = body.encodings;
+                        placeholder.template = marker + includes.size() + ':';
+                        placeholders.put(body, placeholder);
+                        includes.add(toHref(dir.getName() + '/' + bodyFile));
+                    }
+                    statement = placeholder;
+                }
+                mappingCopy.thenStatements.add(statement);
+            }
+            copy.mappings.add(mappingCopy);
+        }
+
+        // Write the config, including the body files in place of the placeholders.
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        write(copy, buffer);
+        String xml = buffer.toString("UTF-8");
+        for (int i = 0; i < includes.size(); i++)
+            xml = xml.replace(marker + i + ':', "<xi:include xmlns:xi=\"" + XINCLUDE_NAMESPACE + "\" href=\"" + includes.get(i)
+                                                + "\" parse=\"text\" encoding=\"UTF-8\"/>");
+        final Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write(xml);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write a body file.
+     *
+     * @param template the body.
+     * @param file     the file to write, in UTF-8.
+     * @throws IOException if the file could not be written.
+     */
+    protected static void writeBody(String template, File file) throws IOException {
+        final Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write(template);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Escape a relative path for an XInclude {@code href} attribute.
+     *
+     * @param path the relative path.
+     * @return the escaped URI reference.
+     */
+    protected static String toHref(String path) {
+        try {
+            return new URI(null, null, path, null).toASCIIString().replace("&", "&amp;").replace("\"", "&quot;");
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid body file path " + path, e);
+        }
+    }
+
+    /**
+     * Import a capture file into a config file.
+     *
+     * @param args the capture file and the config file to write.
+     * @throws Exception if the import failed.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: " + TrafficImporter.class.getName() + " <capture.har|capture.jsonl> <config.xml>");
+            System.exit(1);
+        }
+        final TrafficImporter importer = new TrafficImporter();
+        importer.add(open(new File(args[0])));
+        write(importer.toConfig(), new File(args[1]));
+        System.out.println("Imported " + importer.getEntryCount() + " entries into " + importer.endpoints.size()
+                           + " mappings with " + importer.getBodyCount() + " distinct bodies ("
+                           + importer.getIgnoredEntryCount() + " entries and " + importer.getIgnoredBodyCount()
+                           + " bodies ignored)");
+    }
+
+    /**
+     * The responses captured for a method and path.
+     */
+    protected static class Endpoint {
+
+        /**
+         * The request method.
+         */
+        final String method;
+
+        /**
+         * The request path.
+         */
+        final String path;
+
+        /**
+         * The distinct responses, by status and body hash, in order of first appearance.
+         */
+        final Map<String, Variant> variants = new LinkedHashMap<String, Variant>();
+
+        /**
+         * The most frequent response, the first to reach the highest count, or null if none.
+         */
+        Variant leader;
+
+        /**
+         * Build a new {@link Endpoint}.
+         *
+         * @param method the request method.
+         * @param path   the request path.
+         */
+        Endpoint(String method, String path) {
+            this.method = method;
+            this.path = path;
+        }
+
+        /**
+         * Build the {@link Mapping} replaying the most frequent response.
+         *
+         * @return the mapping.
+         */
+        Mapping toMapping() {
+            final MethodCondition method = new MethodCondition();
+            method.methods = Collections.singletonList(this.method);
+            final URLCondition url = new URLCondition();
+            url.pattern = Pattern.quote(path);
+            final Mapping mapping = new Mapping();
+            mapping.whenStatements = new ArrayList<WhenStatement>(Arrays.<WhenStatement>asList(method, url));
+            mapping.thenStatements = leader.toThenStatements();
+            return mapping;
+        }
+    }
+
+    /**
+     * A distinct response of an {@link Endpoint}.
+     */
+    protected static class Variant {
+
+        /**
+         * The response status.
+         */
+        final int status;
+
+        /**
+         * The content hash of the response body, or null if none.
+         */
+        final String key;
+
+        /**
+         * The response body, only kept while the response leads its endpoint, or null.
+         */
+        BodyAction body;
+
+        /**
+         * The number of occurrences.
+         */
+        long count;
+
+        /**
+         * A uniform random sample of the latencies, in milliseconds.
+         */
+        double[] samples = new double[16];
+
+        /**
+         * The number of latencies offered to {@link #samples}.
+         */
+        long sampled;
+
+        /**
+         * Build a new {@link Variant}.
+         *
+         * @param status the response status.
+         * @param key    the content hash of the response body, or null if none.
+         */
+        Variant(int status, String key) {
+            this.status = status;
+            this.key = key;
+        }
+
+        /**
+         * Offer a latency to the sample, using reservoir sampling.
+         *
+         * @param latency the latency, in milliseconds.
+         * @param random  the random generator.
+         */
+        void sample(double latency, Random random) {
+            if (sampled < MAX_SAMPLES) {
+                if (sampled == samples.length) samples = Arrays.copyOf(samples, Math.min(MAX_SAMPLES, samples.length * 2));
+                samples[(int) sampled] = latency;
+            } else {
+                final long slot = (long) (random.nextDouble() * (sampled + 1));
+                if (slot < MAX_SAMPLES) samples[(int) slot] = latency;
+            }
+            sampled++;
+        }
+
+        /**
+         * Build the {@link ThenStatement}s replaying this response.
+         *
+         * @return the delay, status and body statements.
+         */
+        List<ThenStatement> toThenStatements() {
+            final List<ThenStatement> statements = new ArrayList<ThenStatement>(3);
+            final int size = (int) Math.min(sampled, MAX_SAMPLES);
+            if (size > 0) {
+                final double[] sorted = Arrays.copyOf(samples, size);
+                Arrays.sort(sorted);
+                final int min = Math.max(1, (int) Math.round(sorted[(int) ((size - 1) * 0.05)]));
+                final int max = (int) Math.round(sorted[(int) Math.ceil((size - 1) * 0.95)]);
+                if (max > min) {
+                    final RandomDelayAction delay = new RandomDelayAction();
+                    delay.min = min;
+                    delay.max = max;
+                    statements.add(delay);
+                } else if (max >= 1) {
+                    final DelayAction delay = new DelayAction();
+                    delay.time = max;
+                    statements.add(delay);
+                }
+            }
+            final StatusAction status = new StatusAction();
+            status.statusCode = this.status;
+            statements.add(status);
+            if (body != null) statements.add(body);
+            return statements;
+        }
+    }
+
+    /**
+     * A body shared by the endpoints whose leading responses have identical bodies.
+     */
+    protected static class SharedBody {
+
+        /**
+         * The body.
+         */
+        final BodyAction body;
+
+        /**
+         * The number of leading responses with this body.
+         */
+        int references;
+
+        /**
+         * Build a new {@link SharedBody}.
+         *
+         * @param body the body.
+         */
+        SharedBody(BodyAction body) {
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test;
+
+import com.meterware.httpunit.GetMethodWebRequest;
+import com.meterware.httpunit.PutMethodWebRequest;
+import com.meterware.httpunit.WebResponse;
+import com.meterware.servletunit.ServletUnitClient;
+import net.nicoulaj.benchmark.mockwebapp.MappingsServlet;
+import net.nicoulaj.benchmark.mockwebapp.MockWebAppServlet;
+import net.nicoulaj.benchmark.mockwebapp.config.Mapping;
+import net.nicoulaj.benchmark.mockwebapp.config.MockWebAppConfig;
+import org.apache.commons.vfs.FileChangeEvent;
+import org.apache.commons.vfs.FileSystemException;
+import org.apache.commons.vfs.VFS;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Hashtable;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for {@link MappingsServlet}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class MappingsServletTest extends AbstractMockWebAppTest {
+
+    /**
+     * The client used by test methods.
+     */
+    protected ServletUnitClient client;
+
+    /**
+     * Register the servlets with a config declaring the {@code users} and {@code default} mappings, and start them.
+     *
+     * @throws Exception should never happen.
+     */
+    @BeforeMethod(dependsOnMethods = "initServletRunner")
+    public void initServlets() throws Exception {
+        final Hashtable<String, String> initParams = new Hashtable<String, String>();
+        initParams.put(MockWebAppServlet.MOCK_WEB_APP_CONF_PROPERTY, new File(VALID_TEST_CONFIGS_DIR, "mapping-ids.xml").getAbsolutePath());
+        servletRunner.registerServlet("mock-web-app/mappings/*", MappingsServlet.class.getName());
+        servletRunner.registerServlet("/*", ReloadableServlet.class.getName(), initParams);
+        client = servletRunner.newClient();
+        client.setExceptionsThrownOnErrorStatus(false);
+        assertEquals(get("/users/1"), "user");
+    }
+
+    /**
+     * Assert a new mapping is inserted at the requested index and the existing ones are kept.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void putXmlMappingShouldInsertIt() throws Exception {
+        final WebResponse response = put("/mock-web-app/mappings/docs?index=0", "application/xml",
+                                         "<mapping><when><path>/users/docs</path></when><then><body>docs</body></then></mapping>");
+        assertEquals(response.getResponseCode(), 201);
+        assertEquals(get("/users/docs"), "docs");
+        assertEquals(get("/users/1"), "user");
+        assertEquals(get("/mock-web-app/mappings/"), "0 docs\n1 users\n2 default\n");
+    }
+
+    /**
+     * Assert a JSON mapping replaces the mapping with the same id in place.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void putJsonMappingShouldReplaceIt() throws Exception {
+        final WebResponse response = put("/mock-web-app/mappings/users", "application/json",
+                                         "{\"when\": [{\"path\": \"/users/{id}\"}], " +
+                                         "\"then\": [{\"status\": 201}, {\"body\": {\"content-type\": \"text/plain\", \"value\": \"<${path.1}>\"}}]}");
+        assertEquals(response.getResponseCode(), 200);
+        assertEquals(get("/users/2"), "<2>");
+        assertEquals(get("/mock-web-app/mappings/"), "0 users\n1 default\n");
+    }
+
+    /**
+     * Assert an invalid mapping is rejected and the config in use is left unchanged.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void putInvalidMappingShouldBeRejected() throws Exception {
+        final MockWebAppConfig config = getMockWebAppServlet().getMockWebAppConfig();
+        assertEquals(put("/mock-web-app/mappings/users", "application/xml", "<mapping><when/><then/></mapping>").getResponseCode(), 400);
+        assertEquals(put("/mock-web-app/mappings/users", "application/json", "{\"when\": [{\"path\": [\"/a\"]}]}").getResponseCode(), 400);
+        assertEquals(put("/mock-web-app/mappings/users", "application/json", "{\"when\": ").getResponseCode(), 400);
+        assertEquals(put("/mock-web-app/mappings/", "application/xml", "<mapping/>").getResponseCode(), 400);
+        assertSame(getMockWebAppServlet().getMockWebAppConfig(), config);
+    }
+
+    /**
+     * Assert a mapping can be removed, but not the last one.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void deleteShouldRemoveMapping() throws Exception {
+        assertEquals(delete("/mock-web-app/mappings/users").getResponseCode(), 204);
+        assertEquals(get("/users/1"), "default");
+        assertEquals(delete("/mock-web-app/mappings/users").getResponseCode(), 404);
+        assertEquals(delete("/mock-web-app/mappings/default").getResponseCode(), 409);
+    }
+
+    /**
+     * Assert the mappings changed at runtime survive reloads of the config file.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void changesShouldSurviveReloads() throws Exception {
+        assertEquals(put("/mock-web-app/mappings/docs?index=0", "application/xml",
+                         "<mapping><when><path>/users/docs</path></when><then><body>docs</body></then></mapping>").getResponseCode(), 201);
+        assertEquals(delete("/mock-web-app/mappings/users").getResponseCode(), 204);
+        getMockWebAppServlet().reload();
+        assertEquals(get("/users/docs"), "docs");
+        assertEquals(get("/users/1"), "default");
+        assertEquals(get("/mock-web-app/mappings/"), "0 docs\n1 default\n");
+    }
+
+    /**
+     * Assert the mappings changed at runtime are not lost when the config file is reloaded at the same time.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void concurrentReloadsShouldNotLoseChanges() throws Exception {
+        final ReloadableServlet servlet = getMockWebAppServlet();
+        final int count = 50;
+        final Thread reloads = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) servlet.reload();
+            }
+        };
+        reloads.start();
+        for (int i = 0; i < count; i++)
+            assertEquals(put("/mock-web-app/mappings/m" + i + "?index=0", "application/xml",
+                             "<mapping><when><path>/m/" + i + "</path></when><then><body>" + i + "</body></then></mapping>").getResponseCode(), 201);
+        reloads.join();
+        servlet.reload();
+        for (int i = 0; i < count; i++) assertEquals(get("/m/" + i), String.valueOf(i));
+        assertEquals(servlet.getMockWebAppConfig().mappings.size(), count + 2);
+    }
+
+    /**
+     * Assert deriving a config leaves the original config untouched.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void derivedConfigShouldNotChangeOriginal() throws Exception {
+        final MockWebAppConfig config = getMockWebAppServlet().getMockWebAppConfig();
+        final Mapping mapping = MockWebAppConfig.Parser.parseMapping("<mapping><when><path>/a</path></when><then><status>204</status></then></mapping>");
+        mapping.id = "a";
+        final MockWebAppConfig derived = config.withMapping(mapping, -1);
+        assertEquals(config.mappings.size(), 2);
+        assertEquals(derived.mappings.size(), 3);
+        assertSame(derived.mappings.get(0), config.mappings.get(0));
+        assertEquals(derived.indexOfMapping("a"), 2);
+        assertNull(config.withoutMapping("a"));
+        assertEquals(derived.withoutMapping("a").mappings, config.mappings);
+    }
+
+    /**
+     * Get the {@link MockWebAppServlet} started by {@link #initServlets()}.
+     *
+     * @return the servlet.
+     * @throws Exception should never happen.
+     */
+    protected ReloadableServlet getMockWebAppServlet() throws Exception {
+        return (ReloadableServlet) client.newInvocation("http://localhost/").getServlet();
+    }
+
+    /**
+     * Send a GET request.
+     *
+     * @param path the request path.
+     * @return the response body.
+     * @throws Exception should never happen.
+     */
+    protected String get(String path) throws Exception {
+        return client.getResponse(new GetMethodWebRequest("http://localhost" + path)).getText();
+    }
+
+    /**
+     * Send a PUT request.
+     *
+     * @param path        the request path, with its query string.
+     * @param contentType the request content type.
+     * @param content     the request body.
+     * @return the response.
+     * @throws Exception should never happen.
+     */
+    protected WebResponse put(String path, String contentType, String content) throws Exception {
+        return client.getResponse(new PutMethodWebRequest("http://localhost" + path,
+                                                          new ByteArrayInputStream(content.getBytes("UTF-8")), contentType));
+    }
+
+    /**
+     * Send a DELETE request.
+     *
+     * @param path the request path.
+     * @return the response.
+     * @throws Exception should never happen.
+     */
+    protected WebResponse delete(String path) throws Exception {
+        return client.getResponse(new GetMethodWebRequest("http://localhost" + path) {
+            @Override
+            public String getMethod() {
+                return "DELETE";
+            }
+        });
+    }
+
+    /**
+     * {@link MockWebAppServlet} that can be told its config file changed.
+     */
+    public static class ReloadableServlet extends MockWebAppServlet {
+
+        /**
+         * Reload the config file, as if it changed.
+         */
+        public void reload() {
+            try {
+                new ConfigFileListener() {
+                }.fileChanged(new FileChangeEvent(VFS.getManager().toFileObject(configFile)));
+            } catch (FileSystemException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config;
+
+import net.nicoulaj.benchmark.mockwebapp.config.MockWebAppConfig;
+import net.nicoulaj.benchmark.mockwebapp.test.AbstractMockWebAppTest;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Tests for {@link MockWebAppConfig.Parser} thread safety.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class ConcurrentParsingTest {
+
+    /**
+     * The number of mappings of each valid config file, parsed sequentially.
+     */
+    protected final Map<File, Integer> expectedMappings = new HashMap<File, Integer>();
+
+    /**
+     * Parse the valid config files sequentially.
+     *
+     * @throws Exception should never happen.
+     */
+    @BeforeClass
+    public void parseSequentially() throws Exception {
+        for (File file : new File(AbstractMockWebAppTest.VALID_TEST_CONFIGS_DIR).listFiles())
+            expectedMappings.put(file, MockWebAppConfig.Parser.parseConfig(file).mappings.size());
+    }
+
+    /**
+     * Assert parsing config files and mapping fragments from concurrent threads gives the same results.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test(threadPoolSize = 8, invocationCount = 32)
+    public void concurrentParsingShouldBeSafe() throws Exception {
+        for (Map.Entry<File, Integer> entry : expectedMappings.entrySet()) {
+            assertEquals(MockWebAppConfig.Parser.parseConfig(entry.getKey()).mappings.size(), entry.getValue().intValue(),
+                         entry.getKey().getName());
+            assertEquals(MockWebAppConfig.Parser.parseMapping("<mapping><when><path>/a</path></when><then><status>200</status></then></mapping>")
+                                                .whenStatements.size(), 1);
+        }
+    }
+}
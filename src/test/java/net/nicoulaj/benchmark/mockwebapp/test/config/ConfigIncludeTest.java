@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config;
+
+import net.nicoulaj.benchmark.mockwebapp.config.Mapping;
+import net.nicoulaj.benchmark.mockwebapp.config.MockWebAppConfig;
+import net.nicoulaj.benchmark.mockwebapp.test.AbstractMockWebAppTest;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for {@link MockWebAppConfig} split across several files.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class ConfigIncludeTest extends AbstractMockWebAppTest {
+
+    /**
+     * The directory of the included test configs.
+     */
+    public static final String INCLUDES_TEST_CONFIGS_DIR = TEST_CONFIGS_DIR + "/includes";
+
+    /**
+     * A config document.
+     *
+     * @param content the config elements.
+     * @return the config document.
+     */
+    protected static String document(String content) {
+        return "<mock-web-app xmlns=\"" + MockWebAppConfig.Parser.NAMESPACE + "\">" + content + "</mock-web-app>";
+    }
+
+    /**
+     * A mapping returning a status for a path.
+     *
+     * @param id   the mapping id.
+     * @param path the mapping path.
+     * @return the mapping XML element.
+     */
+    protected static String mapping(String id, String path) {
+        return "<mapping id=\"" + id + "\"><when><path>" + path + "</path></when><then><status>200</status></then></mapping>";
+    }
+
+    /**
+     * Write a file.
+     *
+     * @param file    the file to write.
+     * @param content the file content.
+     * @return the file.
+     * @throws IOException should never happen.
+     */
+    protected static File write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Create an empty temporary directory.
+     *
+     * @return the directory.
+     * @throws IOException should never happen.
+     */
+    protected static File createTempDir() throws IOException {
+        final File dir = File.createTempFile("mock-web-app", "");
+        assertTrue(dir.delete() && dir.mkdir(), "failed creating " + dir);
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    /**
+     * Get the ids of the mappings of a config.
+     *
+     * @param config the config.
+     * @return the mapping ids, in order.
+     */
+    protected static List<String> ids(MockWebAppConfig config) {
+        final List<String> ids = new ArrayList<String>();
+        for (Mapping mapping : config.mappings) ids.add(mapping.id);
+        return ids;
+    }
+
+    /**
+     * Assert included mappings come before the ones of the including file, in include then file name order.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void includedMappingsShouldBeMergedInOrder() throws Exception {
+        final MockWebAppConfig config = MockWebAppConfig.Parser.parseConfig(new File(VALID_TEST_CONFIGS_DIR, "includes.xml"));
+        assertEquals(ids(config).toString(), "[users, a, b, default]");
+        assertEquals(config.matchingStrategy, MockWebAppConfig.MatchingStrategy.first);
+        assertEquals(config.getFiles().size(), 4);
+    }
+
+    /**
+     * Assert a directory config merges all its files, with the settings of the first one.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void directoryConfigShouldMergeAllFiles() throws Exception {
+        final File dir = createTempDir();
+        for (int i = 9; i >= 0; i--)
+            write(new File(dir, "0" + i + ".xml"), document((i == 0 ? "<matchingStrategy>first</matchingStrategy>" : "") + mapping("m" + i, "/" + i)));
+        write(new File(dir, "README.txt"), "not a config");
+        final MockWebAppConfig config = MockWebAppConfig.Parser.parseConfig(dir);
+        assertEquals(ids(config).toString(), "[m0, m1, m2, m3, m4, m5, m6, m7, m8, m9]");
+        assertEquals(config.matchingStrategy, MockWebAppConfig.MatchingStrategy.first);
+    }
+
+    /**
+     * Assert only the modified files are parsed again when reloading.
+     * <p/>
+     * The unmodified file is replaced by garbage of the same size and modification date, which would fail the reload if
+     * it was parsed.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void reloadShouldOnlyParseModifiedFiles() throws Exception {
+        final File dir = createTempDir();
+        final File unmodified = write(new File(dir, "parts/unmodified.xml"), document(mapping("u", "/u")));
+        final File modified = write(new File(dir, "parts/modified.xml"), document(mapping("m", "/m")));
+        final File root = write(new File(dir, "root.xml"), document("<include>parts/unmodified.xml</include><include>" + modified.getAbsolutePath() + "</include>"));
+        final MockWebAppConfig previous = MockWebAppConfig.Parser.parseConfig(root);
+
+        final long lastModified = unmodified.lastModified();
+        final StringBuilder garbage = new StringBuilder();
+        while (garbage.length() < unmodified.length()) garbage.append('x');
+        write(unmodified, garbage.toString());
+        assertTrue(unmodified.setLastModified(lastModified));
+        write(modified, document(mapping("m", "/m2")));
+        assertTrue(modified.setLastModified(modified.lastModified() + 2000));
+
+        final MockWebAppConfig config = MockWebAppConfig.Parser.parseConfig(root, previous);
+        assertEquals(ids(config).toString(), "[u, m]");
+        assertSame(config.mappings.get(0), previous.mappings.get(0));
+        assertNotSame(config.mappings.get(1), previous.mappings.get(1));
+    }
+
+    /**
+     * Assert a file including itself is rejected.
+     *
+     * @throws Exception should always happen.
+     */
+    @Test(expectedExceptions = Exception.class,
+          expectedExceptionsMessageRegExp = "Failed parsing configuration file")
+    public void includeCycleShouldBeInvalid() throws Exception {
+        final File dir = createTempDir();
+        MockWebAppConfig.Parser.parseConfig(write(new File(dir, "root.xml"), document("<include>root.xml</include>" + mapping("a", "/a"))));
+    }
+
+    /**
+     * Assert an included file must be a valid config.
+     *
+     * @throws Exception should always happen.
+     */
+    @Test(expectedExceptions = Exception.class,
+          expectedExceptionsMessageRegExp = "Failed parsing configuration file")
+    public void invalidIncludedFileShouldBeInvalid() throws Exception {
+        final File dir = createTempDir();
+        write(new File(dir, "part.xml"), document("<mapping/>"));
+        MockWebAppConfig.Parser.parseConfig(write(new File(dir, "root.xml"), document("<include>part.xml</include>" + mapping("a", "/a"))));
+    }
+}
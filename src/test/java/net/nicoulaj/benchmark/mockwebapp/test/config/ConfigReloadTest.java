@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config;
+
+import net.nicoulaj.benchmark.mockwebapp.config.Mapping;
+import net.nicoulaj.benchmark.mockwebapp.config.MockWebAppConfig;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.AddressTrie;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.HeaderIndex;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.RequestView;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.SyntheticRequest;
+import net.nicoulaj.benchmark.mockwebapp.config.when.HeaderCondition;
+import net.nicoulaj.benchmark.mockwebapp.config.when.RemoteAddressCondition;
+import net.nicoulaj.benchmark.mockwebapp.config.when.WhenStatement;
+import net.nicoulaj.benchmark.mockwebapp.test.AbstractMockWebAppTest;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for incremental {@link MockWebAppConfig} reloading.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class ConfigReloadTest extends AbstractMockWebAppTest {
+
+    /**
+     * A mapping returning a status for a path.
+     *
+     * @param path   the mapping path.
+     * @param status the response status.
+     * @return the mapping XML element.
+     */
+    protected static String mapping(String path, int status) {
+        return "<mapping><when><path>" + path + "</path></when><then><status>" + status + "</status></then></mapping>";
+    }
+
+    /**
+     * Write a config file.
+     *
+     * @param settings the config settings elements.
+     * @param mappings the config mapping elements.
+     * @return the config file.
+     * @throws IOException should never happen.
+     */
+    protected static File write(String settings, String... mappings) throws IOException {
+        final File file = File.createTempFile("mock-web-app", ".xml");
+        file.deleteOnExit();
+        return write(file, settings, mappings);
+    }
+
+    /**
+     * Write a config file.
+     *
+     * @param file     the file to write.
+     * @param settings the config settings elements.
+     * @param mappings the config mapping elements.
+     * @return the config file.
+     * @throws IOException should never happen.
+     */
+    protected static File write(File file, String settings, String... mappings) throws IOException {
+        final StringBuilder document = new StringBuilder("<mock-web-app xmlns=\"" + MockWebAppConfig.Parser.NAMESPACE + "\">");
+        document.append(settings);
+        for (String mapping : mappings) document.append("\n  ").append(mapping);
+        document.append("\n</mock-web-app>");
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(document.toString().getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * Assert reloading a config reuses the compiled mappings that did not change, wherever they moved.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void reloadShouldReuseUnchangedMappings() throws Exception {
+        final MockWebAppConfig previous = MockWebAppConfig.Parser.parseConfig(write("", mapping("/a", 200), mapping("/b", 201), mapping("/c", 202)));
+        final MockWebAppConfig config = MockWebAppConfig.Parser.parseConfig(write("", mapping("/c", 202), mapping("/b", 299), mapping("/a", 200)), previous);
+        assertSame(config.mappings.get(0), previous.mappings.get(2));
+        assertNotSame(config.mappings.get(1), previous.mappings.get(1));
+        assertSame(config.mappings.get(2), previous.mappings.get(0));
+    }
+
+    /**
+     * Assert identical mappings are each reused once.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void reloadShouldReuseDuplicateMappingsOnce() throws Exception {
+        final MockWebAppConfig previous = MockWebAppConfig.Parser.parseConfig(write("", mapping("/a", 200), mapping("/a", 200)));
+        final MockWebAppConfig config = MockWebAppConfig.Parser.parseConfig(write("", mapping("/a", 200), mapping("/a", 200), mapping("/a", 200)), previous);
+        assertSame(config.mappings.get(0), previous.mappings.get(0));
+        assertSame(config.mappings.get(1), previous.mappings.get(1));
+        assertNotSame(config.mappings.get(2), previous.mappings.get(0));
+        assertNotSame(config.mappings.get(2), previous.mappings.get(1));
+    }
+
+    /**
+     * Assert whitespace or attributes changes are detected.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void reloadShouldNotReuseChangedMappings() throws Exception {
+        final MockWebAppConfig previous = MockWebAppConfig.Parser.parseConfig(write("", mapping("/a", 200)));
+        assertNotSame(MockWebAppConfig.Parser.parseConfig(write("", mapping("/a ", 200)), previous).mappings.get(0), previous.mappings.get(0));
+        assertNotSame(MockWebAppConfig.Parser.parseConfig(write("", mapping("/a", 200).replace("<mapping>", "<mapping id=\"a\">")), previous).mappings.get(0),
+                      previous.mappings.get(0));
+    }
+
+    /**
+     * Assert nothing is reused when the settings mappings are compiled with changed.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void reloadShouldNotReuseMappingsCompiledWithOtherSettings() throws Exception {
+        final MockWebAppConfig previous = MockWebAppConfig.Parser.parseConfig(write("", mapping("/a", 200)));
+        final MockWebAppConfig config = MockWebAppConfig.Parser.parseConfig(write("<adaptiveOrdering>true</adaptiveOrdering>", mapping("/a", 200)), previous);
+        assertNotSame(config.mappings.get(0), previous.mappings.get(0));
+    }
+
+    /**
+     * Assert the mappings changed at runtime are applied again on reload, and copied if the settings changed.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void reloadShouldApplyRuntimeChanges() throws Exception {
+        final File file = write("", mapping("/a", 200).replace("<mapping>", "<mapping id=\"a\">"), mapping("/b", 201));
+        final Mapping added = MockWebAppConfig.Parser.parseMapping(mapping("/c", 202));
+        added.id = "c";
+        final MockWebAppConfig previous = MockWebAppConfig.Parser.parseConfig(file).withMapping(added, 0).withoutMapping("a");
+
+        final MockWebAppConfig reloaded = MockWebAppConfig.Parser.parseConfig(file, previous);
+        assertEquals(reloaded.mappings.size(), 2);
+        assertSame(reloaded.mappings.get(0), added);
+        assertSame(reloaded.mappings.get(1), previous.mappings.get(1));
+
+        final MockWebAppConfig recompiled = MockWebAppConfig.Parser.parseConfig(
+                write(file, "<adaptiveOrdering>true</adaptiveOrdering>", mapping("/a", 200).replace("<mapping>", "<mapping id=\"a\">"), mapping("/b", 201)),
+                reloaded);
+        assertEquals(recompiled.mappings.size(), 2);
+        assertNotSame(recompiled.mappings.get(0), added);
+        assertEquals(recompiled.mappings.get(0).id, "c");
+        assertEquals(recompiled.mappings.get(0).getEvaluationOrder().size(), 1);
+    }
+
+    /**
+     * Assert all the address and header conditions of a config, including the reused ones, are bound to a single
+     * {@link AddressTrie} and {@link HeaderIndex}, and still match the same requests.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void reloadShouldBindConditionsToOneTriePerConfig() throws Exception {
+        final String a = "<mapping><when><remote-address>127.0.0.0/8</remote-address><header name=\"X-A\">a</header></when><then><status>200</status></then></mapping>";
+        final String b = "<mapping><when><remote-address>10.0.0.0/8</remote-address><header name=\"X-B\">b</header></when><then><status>201</status></then></mapping>";
+        final MockWebAppConfig previous = MockWebAppConfig.Parser.parseConfig(write("", a));
+        final AddressTrie previousTrie = ((RemoteAddressCondition) previous.mappings.get(0).whenStatements.get(0)).getTrie();
+        final MockWebAppConfig reloaded = MockWebAppConfig.Parser.parseConfig(write("", a, b), previous);
+        assertSame(reloaded.mappings.get(0), previous.mappings.get(0));
+        final Mapping added = MockWebAppConfig.Parser.parseMapping(a.replace("127.0.0.0/8", "127.0.0.1-127.0.0.2").replace("X-A", "X-C"));
+        final MockWebAppConfig config = reloaded.withMapping(added, 0);
+
+        AddressTrie trie = null;
+        HeaderIndex headers = null;
+        final HttpServletRequest req = new SyntheticRequest("GET", "/", Collections.singletonMap("X-A", "a")).toRequest();
+        try {
+            for (Mapping mapping : config.mappings) {
+                for (WhenStatement statement : mapping.whenStatements) {
+                    if (statement instanceof RemoteAddressCondition) {
+                        if (trie == null) trie = ((RemoteAddressCondition) statement).getTrie();
+                        assertSame(((RemoteAddressCondition) statement).getTrie(), trie);
+                    } else if (statement instanceof HeaderCondition) {
+                        if (headers == null) headers = ((HeaderCondition) statement).getHeaderIndex();
+                        assertSame(((HeaderCondition) statement).getHeaderIndex(), headers);
+                    }
+                }
+            }
+            assertNotNull(trie);
+            assertNotNull(headers);
+            assertNotSame(trie, previousTrie);
+            assertTrue(config.mappings.get(0).whenStatements.get(0).matches(req));
+            assertFalse(config.mappings.get(0).whenStatements.get(1).matches(req));
+            assertTrue(config.mappings.get(1).whenStatements.get(0).matches(req));
+            assertTrue(config.mappings.get(1).whenStatements.get(1).matches(req));
+            assertFalse(config.mappings.get(2).whenStatements.get(0).matches(req));
+            assertFalse(config.mappings.get(2).whenStatements.get(1).matches(req));
+        } finally {
+            RequestView.release(req);
+        }
+    }
+
+    /**
+     * Assert a reload that only toggles adaptive ordering in a directory config, whose mappings file is unmodified,
+     * compiles new mapping instances rather than the ones request threads are using.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void reloadShouldNotRecompileMappingsInUse() throws Exception {
+        final File dir = File.createTempFile("mock-web-app", "");
+        assertTrue(dir.delete() && dir.mkdir());
+        dir.deleteOnExit();
+        final File settings = new File(dir, "00-settings.xml");
+        settings.deleteOnExit();
+        final File mappings = new File(dir, "10-mappings.xml");
+        mappings.deleteOnExit();
+        write(mappings, "", "<mapping><when><header name=\"Accept\">text/.*</header><path>/a</path></when><then><status>200</status></then></mapping>",
+              mapping("/", 200));
+        write(settings, "<adaptiveOrdering>false</adaptiveOrdering>");
+        final MockWebAppConfig first = MockWebAppConfig.Parser.parseConfig(dir);
+
+        final AtomicReference<MockWebAppConfig> published = new AtomicReference<MockWebAppConfig>(first);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final Thread[] threads = new Thread[2];
+        final long end = System.currentTimeMillis() + 300;
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    final SyntheticRequest request = new SyntheticRequest("GET", "/a", Collections.singletonMap("Accept", "text/plain"));
+                    try {
+                        while (System.currentTimeMillis() < end) {
+                            final HttpServletRequest req = request.toRequest();
+                            try {
+                                published.get().process(req, SyntheticRequest.newResponse());
+                            } finally {
+                                RequestView.release(req);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        final Set<Object> compiled = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        for (Mapping mapping : first.mappings) {
+            compiled.add(mapping);
+            compiled.addAll(mapping.whenStatements);
+        }
+        MockWebAppConfig config = first;
+        for (int i = 0; i < 10; i++) {
+            write(settings, "<adaptiveOrdering>" + (i % 2 == 0) + "</adaptiveOrdering>" + (i % 2 == 0 ? "" : "  "));
+            assertTrue(settings.setLastModified(settings.lastModified() + 1000 * (i + 1)));
+            config = MockWebAppConfig.Parser.parseConfig(dir, config);
+            for (Mapping mapping : config.mappings) {
+                assertTrue(compiled.add(mapping), "a compiled mapping was compiled again");
+                for (Object statement : mapping.whenStatements)
+                    assertTrue(compiled.add(statement), "a compiled statement was compiled again");
+            }
+            published.set(config);
+        }
+        for (Thread thread : threads) thread.join();
+        assertNull(failure.get());
+    }
+
+    /**
+     * Assert an invalid changed mapping still fails the reload.
+     *
+     * @throws Exception should always happen.
+     */
+    @Test(expectedExceptions = Exception.class,
+          expectedExceptionsMessageRegExp = "Failed validating configuration file")
+    public void reloadShouldValidateChangedMappings() throws Exception {
+        final MockWebAppConfig previous = MockWebAppConfig.Parser.parseConfig(write("", mapping("/a", 200)));
+        MockWebAppConfig.Parser.parseConfig(write("", mapping("/a", 200), mapping("b", 200)), previous);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config;
+
+import com.meterware.httpunit.GetMethodWebRequest;
+import com.meterware.httpunit.PostMethodWebRequest;
+import com.meterware.httpunit.WebRequest;
+import net.nicoulaj.benchmark.mockwebapp.config.MockWebAppConfig;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Metrics;
+import net.nicoulaj.benchmark.mockwebapp.test.AbstractMockWebAppTest;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Tests for the {@link MockWebAppConfig#matchCacheSize match cache}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class MatchCacheTest extends AbstractMockWebAppTest {
+
+    /**
+     * Process a request with a config.
+     *
+     * @param config     the config.
+     * @param webRequest the request.
+     * @return the response status.
+     * @throws IOException should never happen.
+     */
+    private int process(MockWebAppConfig config, WebRequest webRequest) throws IOException {
+        final int[] status = new int[1];
+        config.process(getRequest(webRequest), new HttpServletResponseWrapper(getResponse(webRequest)) {
+            @Override
+            public void setStatus(int sc) {
+                status[0] = sc;
+            }
+        });
+        return status[0];
+    }
+
+    /**
+     * Assert cached matches give the same results as uncached ones, per signature.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void cachedMatchesShouldBeConsistent() throws Exception {
+        final MockWebAppConfig config = MockWebAppConfig.Parser.parseConfig(new File(VALID_TEST_CONFIGS_DIR, "match-cache.xml"));
+        final AtomicLong hits = Metrics.counter("match-cache.hits");
+        final AtomicLong misses = Metrics.counter("match-cache.misses");
+        final long initialHits = hits.get(), initialMisses = misses.get();
+
+        final WebRequest json = new GetMethodWebRequest("http://localhost/test");
+        json.setHeaderField("Accept", "application/json");
+        final WebRequest html = new GetMethodWebRequest("http://localhost/test");
+        html.setHeaderField("Accept", "text/html");
+        final WebRequest post = new PostMethodWebRequest("http://localhost/test");
+        post.setHeaderField("Accept", "application/json");
+
+        assertEquals(process(config, json), 200);
+        assertEquals(process(config, json), 200);
+        assertEquals(process(config, html), 202);
+        assertEquals(process(config, html), 202);
+        assertEquals(process(config, post), 202);
+        assertEquals(process(config, json), 200);
+
+        assertEquals(misses.get() - initialMisses, 3);
+        assertEquals(hits.get() - initialHits, 3);
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config;
+
+import net.nicoulaj.benchmark.mockwebapp.config.MockWebAppConfig;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import javax.xml.XMLConstants;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Benchmark of {@link MockWebAppConfig.Parser} on configs split across many files, parsed from several threads.
+ * <p/>
+ * Compares the pool of unmarshallers and readers used by the parser, against a single unmarshaller and reader shared
+ * under a lock, and against a context and schema created for each file. Each file goes through the same unmarshalling,
+ * digesting, validation and compilation. Not run with the tests:
+ * run {@link #main(String[])} from the project directory, after the XSD schema was generated, eg:
+ * <pre>
+ * java -cp target/classes:target/test-classes:... net.nicoulaj.benchmark.mockwebapp.test.config.ParserBenchmark 64 200 10
+ * </pre>
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class ParserBenchmark {
+
+    /**
+     * The number of threads parsing files.
+     */
+    protected final int threads;
+
+    /**
+     * The config files to parse.
+     */
+    protected final List<File> files = new ArrayList<File>();
+
+    /**
+     * The directory of {@link #files}.
+     */
+    protected final File dir;
+
+    /**
+     * Build a new {@link ParserBenchmark}, writing its config files.
+     *
+     * @param fileCount    the number of config files.
+     * @param mappingCount the number of mappings per file.
+     * @param threads      the number of threads parsing files.
+     * @throws IOException if the files could not be written.
+     */
+    public ParserBenchmark(int fileCount, int mappingCount, int threads) throws IOException {
+        this.threads = threads;
+        dir = File.createTempFile("mock-web-app-benchmark", "");
+        if (!dir.delete() || !dir.mkdir()) throw new IOException("Failed creating " + dir);
+        for (int i = 0; i < fileCount; i++) {
+            final StringBuilder content = new StringBuilder("<mock-web-app xmlns=\"" + MockWebAppConfig.Parser.NAMESPACE + "\">\n");
+            for (int j = 0; j < mappingCount; j++) {
+                content.append("  <mapping><when><method>GET</method><path>/f").append(i).append("/m").append(j).append("/{id}</path></when>")
+                       .append("<then><status>200</status><header name=\"X-Id\" value=\"${path.1}\"/>")
+                       .append("<body content-type=\"application/json\">{\"file\":").append(i).append(",\"mapping\":").append(j).append("}</body>")
+                       .append("</then></mapping>\n");
+            }
+            content.append("</mock-web-app>\n");
+            final File file = new File(dir, String.format("%04d.xml", i));
+            final OutputStream out = new FileOutputStream(file);
+            try {
+                out.write(content.toString().getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            files.add(file);
+        }
+    }
+
+    /**
+     * Delete the config files.
+     */
+    public void dispose() {
+        for (File file : files) file.delete();
+        dir.delete();
+    }
+
+    /**
+     * Parse all the files from {@link #threads} threads.
+     *
+     * @param parser the action parsing one file.
+     * @return the elapsed time, in milliseconds.
+     * @throws Exception if a file could not be parsed.
+     */
+    protected long parseAll(final FileParser parser) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final long start = System.nanoTime();
+            final List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for (final File file : files) {
+                results.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        return parser.parse(file);
+                    }
+                }));
+            }
+            for (Future<Object> result : results) result.get();
+            return (System.nanoTime() - start) / 1000000;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Load the XSD schema.
+     *
+     * @return the schema.
+     * @throws Exception if the schema could not be loaded.
+     */
+    protected static Schema loadSchema() throws Exception {
+        return SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(new URL(MockWebAppConfig.Parser.XSD_SCHEMA_TESTS_PATH));
+    }
+
+    /**
+     * Create a namespace aware SAX reader.
+     *
+     * @return the reader.
+     * @throws Exception if the reader could not be created.
+     */
+    protected static XMLReader newReader() throws Exception {
+        final SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newSAXParser().getXMLReader();
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args the number of files, the number of mappings per file, the number of rounds and the number of
+     *             threads, by default one per core.
+     * @throws Exception if the benchmark failed.
+     */
+    public static void main(String[] args) throws Exception {
+        final int fileCount = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        final int mappingCount = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        final int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        final int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        final ParserBenchmark benchmark = new ParserBenchmark(fileCount, mappingCount, threads);
+        try {
+            final Unmarshaller shared = JAXBContext.newInstance(MockWebAppConfig.class).createUnmarshaller();
+            shared.setSchema(loadSchema());
+            final XMLReader sharedReader = newReader();
+            final FileParser[] parsers = {
+                new FileParser("shared context, pooled unmarshallers") {
+                    Object parse(File file) throws Exception {
+                        return prepare(BenchmarkParser.unmarshalPooled(new InputSource(file.toURI().toString())));
+                    }
+                },
+                new FileParser("single unmarshaller under a lock") {
+                    Object parse(File file) throws Exception {
+                        final Object config;
+                        synchronized (shared) {
+                            config = BenchmarkParser.unmarshalWith(new InputSource(file.toURI().toString()), shared, sharedReader);
+                        }
+                        return prepare(config);
+                    }
+                },
+                new FileParser("context and schema per file") {
+                    Object parse(File file) throws Exception {
+                        final Unmarshaller unmarshaller = JAXBContext.newInstance(MockWebAppConfig.class).createUnmarshaller();
+                        unmarshaller.setSchema(loadSchema());
+                        return prepare(BenchmarkParser.unmarshalWith(new InputSource(file.toURI().toString()), unmarshaller, newReader()));
+                    }
+                }
+            };
+            System.out.println(fileCount + " files of " + mappingCount + " mappings, " + benchmark.threads + " threads");
+            // Warm every variant up, then interleave them, so that none is favored by the JIT or the GC.
+            for (int i = 0; i < rounds; i++) for (FileParser parser : parsers) benchmark.parseAll(parser);
+            final long[] best = new long[parsers.length], total = new long[parsers.length];
+            Arrays.fill(best, Long.MAX_VALUE);
+            for (int i = 0; i < rounds; i++) {
+                for (int j = 0; j < parsers.length; j++) {
+                    final long elapsed = benchmark.parseAll(parsers[j]);
+                    best[j] = Math.min(best[j], elapsed);
+                    total[j] += elapsed;
+                }
+            }
+            for (int j = 0; j < parsers.length; j++)
+                System.out.println(String.format("%-45s best %6d ms, mean %8.1f ms", parsers[j].name, best[j], (double) total[j] / rounds));
+            System.out.println(String.format("%-45s %6d ms", "directory config, parsed by the parser",
+                                             time(benchmark.dir)));
+        } finally {
+            benchmark.dispose();
+        }
+    }
+
+    /**
+     * Validate and compile a config, as the parser does.
+     *
+     * @param config the unmarshalled config.
+     * @return the compiled config.
+     * @throws Exception if the config is invalid.
+     */
+    protected static MockWebAppConfig prepare(Object config) throws Exception {
+        try {
+            ((MockWebAppConfig) config).validate();
+        } catch (Throwable t) {
+            throw new Exception("Invalid config", t);
+        }
+        ((MockWebAppConfig) config).compile();
+        return (MockWebAppConfig) config;
+    }
+
+    /**
+     * Time the parsing of a directory config.
+     *
+     * @param dir the directory.
+     * @return the elapsed time, in milliseconds.
+     * @throws Exception if the config could not be parsed.
+     */
+    protected static long time(File dir) throws Exception {
+        final long start = System.nanoTime();
+        MockWebAppConfig.Parser.parseConfig(dir);
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    /**
+     * Gives access to the unmarshalling steps of {@link MockWebAppConfig.Parser}.
+     */
+    protected static class BenchmarkParser extends MockWebAppConfig.Parser {
+
+        /**
+         * Unmarshall a document with pooled unmarshallers and readers.
+         *
+         * @param source the document.
+         * @return the unmarshalled config.
+         * @throws Exception if the document could not be unmarshalled.
+         */
+        static MockWebAppConfig unmarshalPooled(InputSource source) throws Exception {
+            return MockWebAppConfig.Parser.unmarshal(source);
+        }
+
+        /**
+         * Unmarshall a document with the given unmarshaller and reader.
+         *
+         * @param source       the document.
+         * @param unmarshaller the unmarshaller.
+         * @param reader       the reader.
+         * @return the unmarshalled config.
+         * @throws Exception if the document could not be unmarshalled.
+         */
+        static MockWebAppConfig unmarshalWith(InputSource source, Unmarshaller unmarshaller, XMLReader reader) throws Exception {
+            return MockWebAppConfig.Parser.unmarshal(source, unmarshaller, reader);
+        }
+    }
+
+    /**
+     * An action parsing one config file.
+     */
+    protected abstract static class FileParser {
+
+        /**
+         * The name of the action.
+         */
+        final String name;
+
+        /**
+         * Build a new {@link FileParser}.
+         *
+         * @param name the name of the action.
+         */
+        FileParser(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Parse a config file.
+         *
+         * @param file the file.
+         * @return the parsed config.
+         * @throws Exception if the file could not be parsed.
+         */
+        abstract Object parse(File file) throws Exception;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config;
+
+import net.nicoulaj.benchmark.mockwebapp.config.Mapping;
+import net.nicoulaj.benchmark.mockwebapp.config.MockWebAppConfig;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Metrics;
+import net.nicoulaj.benchmark.mockwebapp.test.AbstractMockWebAppTest;
+import org.testng.annotations.Test;
+
+import java.io.File;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the {@link MockWebAppConfig#warmup} of configs.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class WarmupTest extends AbstractMockWebAppTest {
+
+    /**
+     * Assert all the mappings are warmed up when the config is loaded, without waiting for their delays.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void mappingsShouldBeWarmedUpOnLoad() throws Exception {
+        final long delays = Metrics.counter("delay.count").get();
+        final long start = System.currentTimeMillis();
+        final MockWebAppConfig config = MockWebAppConfig.Parser.parseConfig(new File(VALID_TEST_CONFIGS_DIR, "warmup.xml"));
+        assertTrue(System.currentTimeMillis() - start < 1000, "Waited for the delays");
+        assertEquals(Metrics.counter("delay.count").get(), delays);
+        assertTrue(config.describeWarmup().matches("warmed up 2 mappings in \\d+ ms"), config.describeWarmup());
+        assertTrue(config.getWarmupFailures().isEmpty(), config.getWarmupFailures().toString());
+    }
+
+    /**
+     * Assert only the changed mappings are warmed up when the config is reloaded or updated.
+     *
+     * @throws Throwable should never happen.
+     */
+    @Test
+    public void onlyChangedMappingsShouldBeWarmedUp() throws Throwable {
+        final File file = new File(VALID_TEST_CONFIGS_DIR, "warmup.xml");
+        final MockWebAppConfig previous = MockWebAppConfig.Parser.parseConfig(file);
+        final MockWebAppConfig reloaded = MockWebAppConfig.Parser.parseConfig(file, previous);
+        assertTrue(reloaded.describeWarmup().startsWith("warmed up 0 mappings"), reloaded.describeWarmup());
+
+        final Mapping mapping = MockWebAppConfig.Parser.parseMapping(ConfigReloadTest.mapping("/added", 201));
+        mapping.validate();
+        final MockWebAppConfig updated = reloaded.withMapping(mapping, 0);
+        assertTrue(updated.describeWarmup().startsWith("warmed up 1 mappings"), updated.describeWarmup());
+    }
+
+    /**
+     * Assert configs without warmup are not warmed up.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void warmupShouldBeOptional() throws Exception {
+        assertNull(MockWebAppConfig.Parser.parseConfig(new File(VALID_TEST_CONFIGS_DIR, "config1.xml")).describeWarmup());
+    }
+
+    /**
+     * Assert validating a {@link MockWebAppConfig} with a warmup of no requests throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "The warmup requests count must be positive")
+    public void warmupShouldBePositive() throws Throwable {
+        final MockWebAppConfig config = MockWebAppConfig.Parser.parseConfig(new File(VALID_TEST_CONFIGS_DIR, "config1.xml"));
+        config.warmup = 0;
+        config.validate();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config.runtime;
+
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.AddressTrie;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link AddressTrie}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class AddressTrieTest {
+
+    /**
+     * Provide a list of (range, address, expected match).
+     * <p/>
+     * Can be used by tests method with a (String range, String address, boolean expected) signature.
+     *
+     * @return an {@link Iterator} of tuples.
+     */
+    @DataProvider
+    public Iterator<Object[]> rangesDataProvider() {
+        final List<Object[]> params = new ArrayList<Object[]>();
+        params.add(new Object[]{"192.168.0.2", "192.168.0.2", true});
+        params.add(new Object[]{"192.168.0.2", "192.168.0.3", false});
+        params.add(new Object[]{"192.168.0.0/16", "192.168.255.255", true});
+        params.add(new Object[]{"192.168.0.0/16", "192.169.0.0", false});
+        params.add(new Object[]{"10.0.0.10-10.0.1.3", "10.0.0.9", false});
+        params.add(new Object[]{"10.0.0.10-10.0.1.3", "10.0.0.10", true});
+        params.add(new Object[]{"10.0.0.10-10.0.1.3", "10.0.0.200", true});
+        params.add(new Object[]{"10.0.0.10-10.0.1.3", "10.0.1.3", true});
+        params.add(new Object[]{"10.0.0.10-10.0.1.3", "10.0.1.4", false});
+        params.add(new Object[]{"::1", "0:0:0:0:0:0:0:1", true});
+        params.add(new Object[]{"::1", "::2", false});
+        params.add(new Object[]{"2001:db8::/32", "2001:db8:ffff::1", true});
+        params.add(new Object[]{"2001:db8::/32", "2001:db9::1", false});
+        params.add(new Object[]{"fe80::/10", "fe80::1%eth0", true});
+        params.add(new Object[]{"2001:db8::1-2001:db8::1:0", "2001:db8::ffff", true});
+        params.add(new Object[]{"2001:db8::1-2001:db8::1:0", "2001:db8::1:1", false});
+        params.add(new Object[]{"10.0.0.0/8", "::ffff:10.1.2.3", true});
+        params.add(new Object[]{"::ffff:10.0.0.0/104", "10.1.2.3", true});
+        params.add(new Object[]{"10.0.0.0/8", "not an address", false});
+        params.add(new Object[]{"10.0.0.0/8", "10.0.0", false});
+        return params.iterator();
+    }
+
+    /**
+     * Assert addresses are matched against single ranges as expected.
+     *
+     * @param range    the range to register.
+     * @param address  the address to look up.
+     * @param expected whether the address should match.
+     */
+    @Test(dataProvider = "rangesDataProvider")
+    public void addressShouldMatchRange(String range, String address, boolean expected) {
+        final AddressTrie trie = new AddressTrie();
+        trie.add(range, 0);
+        assertEquals(trie.matches(address, 0), expected, "'" + address + "' in '" + range + "'");
+    }
+
+    /**
+     * Assert nested and overlapping ranges all match the addresses they contain.
+     */
+    @Test
+    public void nestedRangesShouldAllMatch() {
+        final AddressTrie trie = new AddressTrie();
+        trie.add("10.1.2.0/24", 0);
+        trie.add("10.0.0.0/8", 1);
+        trie.add("10.1.0.0/16", 2);
+        for (int i = 3; i < 100; i++) trie.add("172.16." + i + ".0/24", i);
+        trie.add("10.1.2.3", 100);
+
+        assertTrue(trie.matches("10.1.2.3", 0));
+        assertTrue(trie.matches("10.1.2.3", 1));
+        assertTrue(trie.matches("10.1.2.3", 2));
+        assertTrue(trie.matches("10.1.2.3", 100));
+        assertFalse(trie.matches("10.1.2.3", 3));
+
+        assertFalse(trie.matches("10.1.3.3", 0));
+        assertTrue(trie.matches("10.1.3.3", 1));
+        assertTrue(trie.matches("10.1.3.3", 2));
+        assertFalse(trie.matches("10.1.3.3", 100));
+
+        assertTrue(trie.matches("172.16.42.1", 42));
+        assertFalse(trie.matches("172.16.42.1", 43));
+    }
+
+    /**
+     * Assert invalid ranges are rejected.
+     */
+    @Test
+    public void invalidRangesShouldBeRejected() {
+        for (String range : new String[]{"", "10.0.0.256", "10.0.0.0/33", "10.0.0.0/x", "1:2:3:4:5:6:7:8:9", "1::2::3", "10.0.0.2-10.0.0.1", "10.0.0.1-::1"}) {
+            assertFalse(AddressTrie.isValid(range), "'" + range + "' should be invalid");
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config.runtime;
+
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.ClockCache;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Metrics;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+/**
+ * Tests for {@link ClockCache}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class ClockCacheTest {
+
+    /**
+     * Assert the cache is bounded and evicts entries not referenced first.
+     */
+    @Test
+    public void unreferencedEntriesShouldBeEvicted() {
+        final ClockCache<String, String> cache = new ClockCache<String, String>(3, "test-clock-cache");
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.put("c", "C");
+        assertEquals(cache.get("a"), "A");
+        assertEquals(cache.get("c"), "C");
+        cache.put("d", "D");
+        assertEquals(cache.size(), 3);
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+    }
+
+    /**
+     * Assert hits, misses and evictions are counted.
+     */
+    @Test
+    public void accessesShouldBeCounted() {
+        final ClockCache<String, String> cache = new ClockCache<String, String>(1, "test-counted-cache");
+        cache.get("a");
+        cache.put("a", "A");
+        cache.get("a");
+        cache.get("a");
+        cache.put("b", "B");
+        assertEquals(Metrics.counter("test-counted-cache.hits").get(), 2);
+        assertEquals(Metrics.counter("test-counted-cache.misses").get(), 1);
+        assertEquals(Metrics.counter("test-counted-cache.evictions").get(), 1);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config.runtime;
+
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.ContentCodings;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Tests for {@link ContentCodings}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class ContentCodingsTest {
+
+    /**
+     * Provide a list of (Accept-Encoding header, expected coding).
+     * <p/>
+     * Can be used by tests method with a (String header, String expected) signature, the available codings being
+     * {@code gzip} then {@code deflate}.
+     *
+     * @return an {@link Iterator} of tuples.
+     */
+    @DataProvider
+    public Iterator<Object[]> headersDataProvider() {
+        final List<Object[]> params = new ArrayList<Object[]>();
+        params.add(new Object[]{null, null});
+        params.add(new Object[]{"", null});
+        params.add(new Object[]{"identity", null});
+        params.add(new Object[]{"gzip", "gzip"});
+        params.add(new Object[]{"deflate, gzip", "gzip"});
+        params.add(new Object[]{"GZIP;q=0.2, deflate", "deflate"});
+        params.add(new Object[]{"gzip ; q=0, deflate;q=0.1", "deflate"});
+        params.add(new Object[]{"*", "gzip"});
+        params.add(new Object[]{"*;q=0.5, gzip;q=0", "deflate"});
+        params.add(new Object[]{"gzip;q=0, deflate;q=0.000", null});
+        params.add(new Object[]{"br, x-gzip", null});
+        params.add(new Object[]{"gzip;level=1;q=0.8, deflate;q=0.9", "deflate"});
+        return params.iterator();
+    }
+
+    /**
+     * Assert {@link ContentCodings#negotiate(String, String[])} picks the expected coding.
+     *
+     * @param header   the {@code Accept-Encoding} header.
+     * @param expected the expected coding, null for none.
+     */
+    @Test(dataProvider = "headersDataProvider")
+    public void negotiateShouldPickPreferredCoding(String header, String expected) {
+        final String[] codings = {ContentCodings.GZIP, ContentCodings.DEFLATE};
+        final int index = ContentCodings.negotiate(header, codings);
+        assertEquals(index < 0 ? null : codings[index], expected);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config.runtime;
+
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Delays;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link Delays}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class DelaysTest {
+
+    /**
+     * Assert precise waits end at the deadline, give or take a few milliseconds on a busy host.
+     */
+    @Test
+    public void preciseWaitShouldEndAtDeadline() {
+        for (long nanos : new long[]{50000L, 300000L, 2000000L}) {
+            final long start = System.nanoTime();
+            assertTrue(Delays.waitUntil(start + nanos, true));
+            final long elapsed = System.nanoTime() - start;
+            assertTrue(elapsed >= nanos, "Waited " + elapsed + "ns for " + nanos + "ns");
+            assertTrue(elapsed <= nanos + 20000000L, "Waited " + elapsed + "ns for " + nanos + "ns");
+        }
+    }
+
+    /**
+     * Assert waiting for a past deadline returns at once.
+     */
+    @Test
+    public void pastDeadlineShouldNotWait() {
+        final long start = System.nanoTime();
+        assertTrue(Delays.waitUntil(start - 1000000L, true));
+        assertTrue(Delays.waitUntil(start - 1000000L, false));
+        assertTrue(System.nanoTime() - start < 10000000L);
+    }
+
+    /**
+     * Assert an interrupted wait returns early and clears the interrupted status.
+     */
+    @Test
+    public void interruptedWaitShouldReturnEarly() {
+        Thread.currentThread().interrupt();
+        final long start = System.nanoTime();
+        assertFalse(Delays.waitUntil(start + 5000000000L, false));
+        assertTrue(System.nanoTime() - start < 1000000000L);
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+}
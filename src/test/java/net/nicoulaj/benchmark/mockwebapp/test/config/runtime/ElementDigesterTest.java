@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config.runtime;
+
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.ElementDigester;
+import org.testng.annotations.Test;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.SAXParserFactory;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for {@link ElementDigester}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class ElementDigesterTest {
+
+    /**
+     * Digest the {@code item} children of the root element of a document.
+     *
+     * @param document the XML document.
+     * @return the digests.
+     * @throws Exception should never happen.
+     */
+    protected static List<String> digest(String document) throws Exception {
+        final SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        final XMLReader reader = factory.newSAXParser().getXMLReader();
+        final ElementDigester digester = new ElementDigester(new DefaultHandler(), "item");
+        reader.setContentHandler(digester);
+        reader.parse(new InputSource(new StringReader(document)));
+        return digester.getDigests();
+    }
+
+    /**
+     * Assert only the root children with the given name are digested, and equal elements have equal digests.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void equalElementsShouldHaveEqualDigests() throws Exception {
+        final List<String> digests = digest("<root><item a=\"1\">x<b/></item><other/><item a=\"1\">x<b/></item>" +
+                                            "<group><item/></group><item a='1'>x<b></b></item></root>");
+        assertEquals(digests.size(), 3);
+        assertEquals(digests.get(0).length(), 40);
+        assertEquals(digests.get(1), digests.get(0));
+        assertEquals(digests.get(2), digests.get(0));
+    }
+
+    /**
+     * Assert elements differing by text, attributes or structure have different digests.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void differentElementsShouldHaveDifferentDigests() throws Exception {
+        final List<String> digests = digest("<root><item a=\"1\">x</item><item a=\"2\">x</item><item b=\"1\">x</item>" +
+                                            "<item a=\"1\">x </item><item a=\"1\"><x/></item><item a=\"1x\"/></root>");
+        assertEquals(digests.size(), 6);
+        for (int i = 0; i < digests.size(); i++)
+            for (int j = i + 1; j < digests.size(); j++) assertFalse(digests.get(i).equals(digests.get(j)), i + " vs " + j);
+    }
+
+    /**
+     * Assert the digest does not depend on how the text is split into chunks.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void digestShouldNotDependOnTextChunks() throws Exception {
+        final char[] text = "some text".toCharArray();
+        final ElementDigester digester = new ElementDigester(new DefaultHandler(), "item");
+        for (int split = 0; split <= text.length; split++) {
+            digester.startElement("", "root", "root", new AttributesImpl());
+            digester.startElement("", "item", "item", new AttributesImpl());
+            digester.characters(text, 0, split);
+            digester.characters(text, split, text.length - split);
+            digester.endElement("", "item", "item");
+            digester.endElement("", "root", "root");
+        }
+        for (String digest : digester.getDigests()) assertEquals(digest, digester.getDigests().get(0));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config.runtime;
+
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.EntityTags;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+/**
+ * Tests for {@link EntityTags}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class EntityTagsTest {
+
+    /**
+     * Provide a list of (If-None-Match header, expected match against {@code "abc"}).
+     * <p/>
+     * Can be used by tests method with a (String header, boolean expected) signature.
+     *
+     * @return an {@link Iterator} of tuples.
+     */
+    @DataProvider
+    public Iterator<Object[]> headersDataProvider() {
+        final List<Object[]> params = new ArrayList<Object[]>();
+        params.add(new Object[]{"\"abc\"", true});
+        params.add(new Object[]{" * ", true});
+        params.add(new Object[]{"W/\"abc\"", true});
+        params.add(new Object[]{"\"x\", \"abc\" ", true});
+        params.add(new Object[]{"\"abcd\"", false});
+        params.add(new Object[]{"abc", false});
+        params.add(new Object[]{"", false});
+        params.add(new Object[]{"\"x\",,\"y\"", false});
+        return params.iterator();
+    }
+
+    /**
+     * Assert {@link EntityTags#matches(String, String)} gives the expected result.
+     *
+     * @param header   the {@code If-None-Match} header.
+     * @param expected the expected result.
+     */
+    @Test(dataProvider = "headersDataProvider")
+    public void matchesShouldCompareTags(String header, boolean expected) {
+        assertEquals(EntityTags.matches(header, "\"abc\""), expected);
+    }
+
+    /**
+     * Assert entity tags are quoted and depend on the content.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void tagsShouldDependOnContent() throws Exception {
+        final String tag = EntityTags.of("content".getBytes("UTF-8"));
+        assertEquals(tag, EntityTags.of("content".getBytes("UTF-8")));
+        assertEquals(tag.length(), 34);
+        assertEquals(tag.charAt(0), '"');
+        assertFalse(tag.equals(EntityTags.of("content!".getBytes("UTF-8"))));
+    }
+}
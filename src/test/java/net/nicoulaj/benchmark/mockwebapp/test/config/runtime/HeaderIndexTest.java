@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config.runtime;
+
+import com.meterware.httpunit.GetMethodWebRequest;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.HeaderIndex;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.RequestView;
+import net.nicoulaj.benchmark.mockwebapp.test.AbstractMockWebAppTest;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import java.io.IOException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link HeaderIndex}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class HeaderIndexTest extends AbstractMockWebAppTest {
+
+    /**
+     * A request counting the headers fetched.
+     */
+    private static class CountingRequest extends HttpServletRequestWrapper {
+
+        /**
+         * The number of headers fetched.
+         */
+        int fetched;
+
+        /**
+         * Build a new {@link CountingRequest}.
+         *
+         * @param request the wrapped request.
+         */
+        CountingRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            fetched++;
+            return super.getHeader(name);
+        }
+    }
+
+    /**
+     * Assert literal, pattern and presence conditions on the same header are all resolved correctly.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void conditionsShouldBeResolved() throws IOException {
+        final HeaderIndex index = new HeaderIndex();
+        final int literal = index.add("Accept", "text/html");
+        final int otherLiteral = index.add("accept", "application/json");
+        final int pattern = index.add("ACCEPT", "text/.*");
+        final int present = index.add("Accept", null);
+        final int missing = index.add("X-Missing", null);
+        assertEquals(index.size(), 5);
+        assertEquals(index.getHeaderCount(), 2);
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        webRequest.setHeaderField("Accept", "text/html");
+        final HttpServletRequest req = getRequest(webRequest);
+        assertTrue(index.matches(req, literal));
+        assertFalse(index.matches(req, otherLiteral));
+        assertTrue(index.matches(req, pattern));
+        assertTrue(index.matches(req, present));
+        assertFalse(index.matches(req, missing));
+    }
+
+    /**
+     * Assert each header is fetched once per request.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void headersShouldBeFetchedOnce() throws IOException {
+        final HeaderIndex index = new HeaderIndex();
+        final int[] slots = new int[]{index.add("Accept", "text/html"), index.add("Accept", "text/.*"), index.add("Accept", null)};
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        webRequest.setHeaderField("Accept", "text/plain");
+        final CountingRequest req = new CountingRequest(getRequest(webRequest));
+        for (int i = 0; i < 3; i++) {
+            for (int slot : slots) index.matches(req, slot);
+        }
+        assertEquals(req.fetched, 1);
+        RequestView.release(req);
+        index.matches(req, slots[0]);
+        assertEquals(req.fetched, 2);
+    }
+
+    /**
+     * Assert several indexes evaluated for the same request keep their own memoized results, as when mappings were
+     * compiled by successive reloads.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void indexesShouldNotClearEachOther() throws IOException {
+        final HeaderIndex[] indexes = new HeaderIndex[3];
+        final int[] slots = new int[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = new HeaderIndex();
+            slots[i] = indexes[i].add("Accept", "text/.*");
+        }
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        webRequest.setHeaderField("Accept", "text/plain");
+        final CountingRequest req = new CountingRequest(getRequest(webRequest));
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < indexes.length; i++) assertTrue(indexes[i].matches(req, slots[i]));
+        }
+        assertEquals(req.fetched, indexes.length);
+    }
+
+    /**
+     * Assert literal patterns are detected.
+     */
+    @Test
+    public void literalsShouldBeDetected() {
+        assertTrue(HeaderIndex.isLiteral("text/html"));
+        assertTrue(HeaderIndex.isLiteral("gzip, deflate"));
+        assertFalse(HeaderIndex.isLiteral("text/.*"));
+        assertFalse(HeaderIndex.isLiteral("a|b"));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config.runtime;
+
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.JsonPath;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+/**
+ * Tests for {@link JsonPath}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class JsonPathTest {
+
+    /**
+     * Provide a list of (path, JSON text, expected value).
+     * <p/>
+     * Can be used by tests method with a (String path, String json, String expected) signature.
+     *
+     * @return an {@link Iterator} of tuples.
+     */
+    @DataProvider
+    public Iterator<Object[]> pathsDataProvider() {
+        final List<Object[]> params = new ArrayList<Object[]>();
+        params.add(new Object[]{"$.a", "{\"a\":\"x\"}", "x"});
+        params.add(new Object[]{"a", " { \"a\" : 12 , \"b\" : true } ", "12"});
+        params.add(new Object[]{"$.b", "{\"a\":{\"b\":1},\"b\":null}", "null"});
+        params.add(new Object[]{"$.a.b", "{\"a\":{\"b\":[1,2]}}", "[1,2]"});
+        params.add(new Object[]{"$[1].id", "[{\"id\":1},{\"id\":\"\\u0041\\\"\"}]", "A\""});
+        params.add(new Object[]{"$.k\"", "{\"k\\\"\":\"escaped key\"}", "escaped key"});
+        params.add(new Object[]{"$.a", "{\"b\":\"}\",\"a\":\"after\"}", "after"});
+        params.add(new Object[]{"$.missing", "{\"a\":1}", null});
+        params.add(new Object[]{"$[2]", "[1,2]", null});
+        params.add(new Object[]{"$.a", "[1,2]", null});
+        params.add(new Object[]{"$.a.b", "{\"a\":{\"b\":\"trunc", null});
+        params.add(new Object[]{"$.a", "not json", null});
+        return params.iterator();
+    }
+
+    /**
+     * Assert paths evaluate to the expected values.
+     *
+     * @param path     the path to evaluate.
+     * @param json     the JSON text to evaluate it against.
+     * @param expected the expected value.
+     */
+    @Test(dataProvider = "pathsDataProvider")
+    public void pathShouldEvaluate(String path, String json, String expected) {
+        assertEquals(JsonPath.compile(path).evaluate(json), expected);
+    }
+
+    /**
+     * Assert invalid expressions are rejected.
+     */
+    @Test
+    public void invalidPathsShouldBeRejected() {
+        assertFalse(JsonPath.isValid("$.a..b"));
+        assertFalse(JsonPath.isValid("$.a[1"));
+        assertFalse(JsonPath.isValid("$.a[-1]"));
+        assertFalse(JsonPath.isValid("$a"));
+    }
+}
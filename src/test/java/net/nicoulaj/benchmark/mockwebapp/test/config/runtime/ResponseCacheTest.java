@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config.runtime;
+
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.CachedResponse;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.ResponseCache;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for {@link ResponseCache}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class ResponseCacheTest {
+
+    /**
+     * Build a response.
+     *
+     * @param size the body size.
+     * @return the response.
+     */
+    private static CachedResponse response(int size) {
+        return new CachedResponse(200, new String[0], new String[0], new byte[size]);
+    }
+
+    /**
+     * Assert the least recently used responses are evicted to stay within the capacity.
+     */
+    @Test
+    public void leastRecentlyUsedShouldBeEvicted() {
+        final CachedResponse a = response(300), b = response(300), c = response(300);
+        final ResponseCache cache = new ResponseCache(3 * a.getWeight(), "test.response-cache");
+        cache.put("a", a);
+        cache.put("b", b);
+        cache.put("c", c);
+        assertSame(cache.get("a"), a);
+        cache.put("d", response(300));
+        assertNull(cache.get("b"));
+        assertSame(cache.get("a"), a);
+        assertSame(cache.get("c"), c);
+        assertEquals(cache.size(), 3);
+        assertTrue(cache.getWeight() <= 3 * a.getWeight());
+    }
+
+    /**
+     * Assert responses heavier than the cache are not cached.
+     */
+    @Test
+    public void heavyResponsesShouldNotBeCached() {
+        final ResponseCache cache = new ResponseCache(1000, "test.response-cache");
+        cache.put("small", response(10));
+        cache.put("big", response(2000));
+        assertNull(cache.get("big"));
+        assertNotNull(cache.get("small"));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config.runtime;
+
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Schedule;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link Schedule}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class ScheduleTest {
+
+    /**
+     * Assert values are interpolated between points, held outside them, and stepped at repeated offsets.
+     */
+    @Test
+    public void valuesShouldBeInterpolated() {
+        final Schedule schedule = Schedule.compile(Arrays.asList("100=1", "200=3", "300=3", "300=10"), null, false);
+        assertEquals(schedule.valueAt(0), 1.0);
+        assertEquals(schedule.valueAt(100), 1.0);
+        assertEquals(schedule.valueAt(150), 2.0);
+        assertEquals(schedule.valueAt(250), 3.0);
+        assertEquals(schedule.valueAt(299), 3.0);
+        assertEquals(schedule.valueAt(300), 10.0);
+        assertEquals(schedule.valueAt(100000), 10.0);
+    }
+
+    /**
+     * Assert the current value is set when compiled, then refreshed by the background tick.
+     *
+     * @throws InterruptedException should never happen.
+     */
+    @Test
+    public void valueShouldBeRefreshed() throws InterruptedException {
+        final Schedule schedule = Schedule.compile(Arrays.asList("0=0", "100=0", "100=5"), null, false);
+        assertEquals(schedule.getValue(), 0.0);
+        Thread.sleep(100 + 5 * Schedule.TICK_MILLIS);
+        assertEquals(schedule.getValue(), 5.0);
+    }
+
+    /**
+     * Assert the background tick thread stops on shutdown, and starts again for new schedules.
+     *
+     * @throws InterruptedException should never happen.
+     */
+    @Test
+    public void tickShouldStopOnShutdown() throws InterruptedException {
+        Schedule.compile(Arrays.asList("0=0", "100=1"), null, false);
+        assertNotNull(findTickThread());
+        Schedule.shutdown();
+        final Thread thread = findTickThread();
+        if (thread != null) thread.join(1000);
+        assertNull(findTickThread());
+
+        final Schedule schedule = Schedule.compile(Arrays.asList("0=0", "100=0", "100=5"), null, false);
+        Thread.sleep(100 + 5 * Schedule.TICK_MILLIS);
+        assertEquals(schedule.getValue(), 5.0);
+    }
+
+    /**
+     * Find the live background tick thread.
+     *
+     * @return the thread, or null if not running.
+     */
+    private static Thread findTickThread() {
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+            if ("mock-web-app-schedules".equals(thread.getName()) && thread.isAlive()) return thread;
+        return null;
+    }
+
+    /**
+     * Assert wall clock schedules follow the time of the period.
+     */
+    @Test
+    public void wallClockScheduleShouldFollowPeriod() {
+        final long period = 3600000L;
+        final Schedule schedule = Schedule.compile(Arrays.asList("0=0", "3600000=3600"), period, true);
+        final double expected = (System.currentTimeMillis() % period) / 1000.0;
+        assertTrue(Math.abs(schedule.getValue() - expected) < 1, schedule.getValue() + " instead of " + expected);
+    }
+
+    /**
+     * Assert invalid points are detected.
+     */
+    @Test
+    public void invalidPointsShouldBeDetected() {
+        assertTrue(Schedule.isValid(Arrays.asList("0=1", "10=2.5"), Double.MAX_VALUE));
+        assertFalse(Schedule.isValid(Arrays.<String>asList(), Double.MAX_VALUE));
+        assertFalse(Schedule.isValid(Arrays.asList("0:1"), Double.MAX_VALUE));
+        assertFalse(Schedule.isValid(Arrays.asList("a=1"), Double.MAX_VALUE));
+        assertFalse(Schedule.isValid(Arrays.asList("-1=1"), Double.MAX_VALUE));
+        assertFalse(Schedule.isValid(Arrays.asList("10=1", "5=1"), Double.MAX_VALUE));
+        assertFalse(Schedule.isValid(Arrays.asList("0=-1"), Double.MAX_VALUE));
+        assertFalse(Schedule.isValid(Arrays.asList("0=0.5", "10=1.5"), 1));
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config.runtime;
+
+import com.meterware.httpunit.GetMethodWebRequest;
+import net.nicoulaj.benchmark.mockwebapp.config.Mapping;
+import net.nicoulaj.benchmark.mockwebapp.config.MockWebAppConfig;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.HeaderSet;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Selectivity;
+import net.nicoulaj.benchmark.mockwebapp.config.then.StatusAction;
+import net.nicoulaj.benchmark.mockwebapp.config.then.ThenStatement;
+import net.nicoulaj.benchmark.mockwebapp.config.when.HeaderCondition;
+import net.nicoulaj.benchmark.mockwebapp.config.when.MethodCondition;
+import net.nicoulaj.benchmark.mockwebapp.config.when.URLCondition;
+import net.nicoulaj.benchmark.mockwebapp.config.when.WhenStatement;
+import net.nicoulaj.benchmark.mockwebapp.test.AbstractMockWebAppTest;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link Selectivity}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class SelectivityTest extends AbstractMockWebAppTest {
+
+    /**
+     * Assert statements are sorted by static cost, keeping the declaration order for equal costs.
+     */
+    @Test
+    public void statementsShouldBeSortedByCost() {
+        final URLCondition url = new URLCondition();
+        url.pattern = "/.*";
+        final HeaderCondition literalHeader = new HeaderCondition();
+        literalHeader.name = "Accept";
+        literalHeader.pattern = "text/html";
+        final HeaderCondition presentHeader = new HeaderCondition();
+        presentHeader.name = "Host";
+        final MethodCondition method = new MethodCondition();
+        method.methods = Arrays.asList("GET");
+        final WhenStatement[] sorted = Selectivity.sortByCost(new WhenStatement[]{url, literalHeader, presentHeader, method});
+        assertSame(sorted[0], method);
+        assertSame(sorted[1], literalHeader);
+        assertSame(sorted[2], presentHeader);
+        assertSame(sorted[3], url);
+    }
+
+    /**
+     * Assert parsed mappings evaluate their statements by increasing cost.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void parsedMappingsShouldBeSortedByCost() throws Exception {
+        final Mapping mapping = MockWebAppConfig.Parser.parseConfig(new File(VALID_TEST_CONFIGS_DIR, "adaptive-ordering.xml")).mappings.get(0);
+        assertTrue(mapping.whenStatements.get(0) instanceof URLCondition);
+        assertTrue(mapping.getEvaluationOrder().get(0) instanceof MethodCondition);
+        assertTrue(mapping.getEvaluationOrder().get(1) instanceof HeaderCondition);
+        assertTrue(mapping.getEvaluationOrder().get(2) instanceof URLCondition);
+    }
+
+    /**
+     * Assert the statement rejecting most requests is moved first when costs are equal, without changing results.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void mostSelectiveStatementShouldBeMovedFirst() throws IOException {
+        final URLCondition broad = new URLCondition();
+        broad.pattern = "/.*";
+        final URLCondition narrow = new URLCondition();
+        narrow.pattern = "/admin/.*";
+        final Selectivity selectivity = new Selectivity(new WhenStatement[]{broad, narrow});
+        assertSame(selectivity.getOrder()[0], broad);
+        final HttpServletRequest rejected = getRequest(new GetMethodWebRequest("http://localhost/test"));
+        final HttpServletRequest accepted = getRequest(new GetMethodWebRequest("http://localhost/admin/test"));
+        for (int i = 0; i < Selectivity.SAMPLE_INTERVAL * Selectivity.REORDER_INTERVAL; i++) {
+            assertFalse(selectivity.matches(rejected));
+        }
+        assertSame(selectivity.getOrder()[0], narrow);
+        assertEquals(selectivity.getOrder().length, 2);
+        assertTrue(selectivity.matches(accepted));
+    }
+
+    /**
+     * Assert warming a mapping up does not sample its statements, so synthetic requests cannot reorder them.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void warmupShouldNotReorderStatements() throws IOException {
+        final URLCondition broad = new URLCondition();
+        broad.pattern = "/.*";
+        final URLCondition narrow = new URLCondition();
+        narrow.pattern = "/admin/.*";
+        final StatusAction status = new StatusAction();
+        status.statusCode = 200;
+        final Mapping mapping = new Mapping();
+        mapping.whenStatements = Arrays.<WhenStatement>asList(broad, narrow);
+        mapping.thenStatements = Arrays.<ThenStatement>asList(status);
+        mapping.compile(true, new HashMap<List<String>, HeaderSet>());
+        final GetMethodWebRequest request = new GetMethodWebRequest("http://localhost/test");
+        final HttpServletRequest rejected = getRequest(request);
+        final HttpServletResponse resp = getResponse(request);
+        for (int i = 0; i < Selectivity.SAMPLE_INTERVAL * Selectivity.REORDER_INTERVAL; i++) mapping.warmUp(rejected, resp);
+        assertSame(mapping.getEvaluationOrder().get(0), broad);
+    }
+}
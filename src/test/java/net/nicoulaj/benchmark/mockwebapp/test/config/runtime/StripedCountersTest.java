@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config.runtime;
+
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.StripedCounters;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link StripedCounters}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class StripedCountersTest {
+
+    /**
+     * Assert counters are incremented per key.
+     */
+    @Test
+    public void countersShouldBeIncrementedPerKey() {
+        final StripedCounters counters = new StripedCounters(1000L, 100);
+        assertEquals(counters.increment("a", 0L), 0);
+        assertEquals(counters.increment("a", 1L), 1);
+        assertEquals(counters.increment("b", 2L), 0);
+        assertEquals(counters.increment("a", 3L), 2);
+        assertEquals(counters.size(), 2);
+    }
+
+    /**
+     * Assert idle keys expire.
+     */
+    @Test
+    public void idleKeysShouldExpire() {
+        final StripedCounters counters = new StripedCounters(1000L, 100);
+        counters.increment("a", 0L);
+        counters.increment("a", 500L);
+        assertEquals(counters.increment("a", 1499L), 2);
+        assertEquals(counters.increment("a", 2499L), 0);
+    }
+
+    /**
+     * Assert the number of keys stays bounded.
+     */
+    @Test
+    public void sizeShouldBeBounded() {
+        final StripedCounters counters = new StripedCounters(Long.MAX_VALUE, 64);
+        for (int i = 0; i < 10000; i++) counters.increment("client-" + i, i);
+        assertTrue(counters.size() <= 64, "size " + counters.size());
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config.runtime;
+
+import net.nicoulaj.benchmark.mockwebapp.config.Mapping;
+import net.nicoulaj.benchmark.mockwebapp.config.MockWebAppConfig;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.RequestView;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.SyntheticRequest;
+import net.nicoulaj.benchmark.mockwebapp.test.AbstractMockWebAppTest;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.util.Collections;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for {@link SyntheticRequest}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class SyntheticRequestTest extends AbstractMockWebAppTest {
+
+    /**
+     * Assert the in-process request derived from a mapping matches it.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void derivedRequestsShouldMatchTheirMapping() throws Exception {
+        final MockWebAppConfig config = MockWebAppConfig.Parser.parseConfig(new File(VALID_TEST_CONFIGS_DIR, "load-scenario.xml"));
+        int derived = 0;
+        for (Mapping mapping : config.mappings) {
+            final SyntheticRequest request = SyntheticRequest.of(mapping);
+            if (request == null) continue;
+            derived++;
+            final HttpServletRequest req = request.toRequest();
+            try {
+                assertTrue(mapping.matches(req), request.toString());
+            } finally {
+                RequestView.release(req);
+            }
+        }
+        assertEquals(derived, 3);
+    }
+
+    /**
+     * Assert in-process requests and responses answer the calls made by statements.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void requestAndResponseShouldBeUsable() throws Exception {
+        final HttpServletRequest req = new SyntheticRequest("POST", "/a/b?c=d", Collections.singletonMap("X-Test", "yes")).toRequest();
+        assertEquals(req.getMethod(), "POST");
+        assertEquals(req.getRequestURI(), "/a/b");
+        assertEquals(req.getQueryString(), "c=d");
+        assertEquals(req.getHeader("x-test"), "yes");
+        assertNull(req.getHeader("Accept"));
+        assertEquals(req.getDateHeader("If-Modified-Since"), -1L);
+        assertEquals(req.getInputStream().read(), -1);
+        req.setAttribute("a", "b");
+        assertEquals(req.getAttribute("a"), "b");
+
+        final HttpServletResponse resp = SyntheticRequest.newResponse();
+        resp.setStatus(200);
+        resp.getOutputStream().write(new byte[]{1, 2, 3});
+        assertFalse(resp.containsHeader("X-Test"));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config.runtime;
+
+import com.meterware.httpunit.GetMethodWebRequest;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Template;
+import net.nicoulaj.benchmark.mockwebapp.test.AbstractMockWebAppTest;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link Template}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class TemplateTest extends AbstractMockWebAppTest {
+
+    /**
+     * Assert templates without variables are constant.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void literalTemplateShouldBeConstant() throws IOException {
+        final Template template = Template.compile("max-age=60, $ {not a variable}");
+        assertTrue(template.isConstant());
+        assertEquals(template.render(getRequest(new GetMethodWebRequest("http://localhost/test"))), "max-age=60, $ {not a variable}");
+    }
+
+    /**
+     * Assert variables are substituted, the request id staying the same within a request.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void variablesShouldBeSubstituted() throws IOException {
+        final Template template = Template.compile("${request.id} ${header.Accept} ${header.Missing} ${request.id}");
+        assertFalse(template.isConstant());
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        webRequest.setHeaderField("Accept", "text/html");
+        final HttpServletRequest req = getRequest(webRequest);
+        final String[] parts = template.render(req).split(" ", -1);
+        assertEquals(parts.length, 4);
+        assertEquals(parts[1], "text/html");
+        assertEquals(parts[2], "");
+        assertEquals(parts[0], parts[3]);
+        assertNotEquals(template.render(getRequest(webRequest)).split(" ")[0], parts[0]);
+    }
+
+    /**
+     * Assert invalid templates are rejected.
+     */
+    @Test
+    public void invalidTemplatesShouldBeRejected() {
+        assertFalse(Template.isValid("${request.id"));
+        assertFalse(Template.isValid("${unknown}"));
+        assertFalse(Template.isValid("${header.}"));
+    }
+}
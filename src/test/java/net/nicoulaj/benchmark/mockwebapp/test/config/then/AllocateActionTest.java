@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config.then;
+
+import com.meterware.httpunit.GetMethodWebRequest;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Metrics;
+import net.nicoulaj.benchmark.mockwebapp.config.then.AllocateAction;
+import net.nicoulaj.benchmark.mockwebapp.test.AbstractMockWebAppTest;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Tests for {@link AllocateAction}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class AllocateActionTest extends AbstractMockWebAppTest {
+
+    /**
+     * Assert allocated memory is reported in the metrics, and not retained by default.
+     *
+     * @throws IOException  should never happen.
+     * @throws SAXException should never happen.
+     */
+    @Test
+    public void allocationShouldBeReportedInMetrics() throws IOException, SAXException {
+
+        final AllocateAction stmt = new AllocateAction();
+        stmt.bytes = 100000;
+
+        final long allocated = Metrics.counter("allocate.allocated-bytes").get();
+        final long retained = Metrics.counter("allocate.retained-bytes").get();
+
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        stmt.process(getRequest(webRequest), getResponse(webRequest));
+
+        assertEquals(Metrics.counter("allocate.allocated-bytes").get(), allocated + stmt.bytes);
+        assertEquals(Metrics.counter("allocate.retained-bytes").get(), retained);
+    }
+
+    /**
+     * Assert retained memory is released once the retention time is over.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void retainedMemoryShouldBeReleased() throws Exception {
+
+        final AllocateAction stmt = new AllocateAction();
+        stmt.bytes = 100000;
+        stmt.retainMs = 50;
+
+        final long retained = Metrics.counter("allocate.retained-bytes").get();
+
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        stmt.process(getRequest(webRequest), getResponse(webRequest));
+        assertEquals(Metrics.counter("allocate.retained-bytes").get(), retained + stmt.bytes);
+
+        Thread.sleep(stmt.retainMs + 10);
+        stmt.bytes = 1;
+        stmt.retainMs = null;
+        stmt.process(getRequest(webRequest), getResponse(webRequest));
+        assertEquals(Metrics.counter("allocate.retained-bytes").get(), retained);
+    }
+
+    /**
+     * Assert memory retained by an action is released by the allocations of other actions, so that a removed or idle
+     * action does not keep its retained memory counted.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void retainedMemoryShouldBeReleasedByOtherActions() throws Exception {
+
+        final AllocateAction removed = new AllocateAction();
+        removed.bytes = 100000;
+        removed.retainMs = 50;
+
+        final long retained = Metrics.counter("allocate.retained-bytes").get();
+
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        removed.process(getRequest(webRequest), getResponse(webRequest));
+        assertEquals(Metrics.counter("allocate.retained-bytes").get(), retained + removed.bytes);
+
+        Thread.sleep(removed.retainMs + 10);
+        final AllocateAction other = new AllocateAction();
+        other.bytes = 1;
+        other.process(getRequest(webRequest), getResponse(webRequest));
+        assertEquals(Metrics.counter("allocate.retained-bytes").get(), retained);
+    }
+
+    /**
+     * Assert memory is not retained past the {@link AllocateAction#MAX_RETAINED_BYTES} limit.
+     *
+     * @throws IOException  should never happen.
+     * @throws SAXException should never happen.
+     */
+    @Test
+    public void retainedMemoryShouldBeBounded() throws IOException, SAXException {
+
+        final AllocateAction stmt = new AllocateAction();
+        stmt.bytes = AllocateAction.MAX_RETAINED_BYTES + 1;
+        stmt.retainMs = 1000;
+
+        final long retained = Metrics.counter("allocate.retained-bytes").get();
+        final long rejected = Metrics.counter("allocate.rejected-bytes").get();
+
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        stmt.process(getRequest(webRequest), getResponse(webRequest));
+
+        assertEquals(Metrics.counter("allocate.retained-bytes").get(), retained);
+        assertEquals(Metrics.counter("allocate.rejected-bytes").get(), rejected + stmt.bytes);
+    }
+
+    /**
+     * Assert validating an {@link AllocateAction} with a negative amount of memory throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "The amount of memory to allocate cannot be negative")
+    public void bytesShouldBePositive() throws Throwable {
+        final AllocateAction stmt = new AllocateAction();
+        stmt.bytes = -1;
+        stmt.validate();
+    }
+
+    /**
+     * Assert validating an {@link AllocateAction} with a negative retention time throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "The retention time cannot be negative")
+    public void retentionTimeShouldBePositive() throws Throwable {
+        final AllocateAction stmt = new AllocateAction();
+        stmt.bytes = 1;
+        stmt.retainMs = -1;
+        stmt.validate();
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config.then;
+
+import com.meterware.httpunit.GetMethodWebRequest;
+import com.meterware.httpunit.HeadMethodWebRequest;
+import com.meterware.httpunit.WebRequest;
+import net.nicoulaj.benchmark.mockwebapp.config.then.BodyAction;
+import net.nicoulaj.benchmark.mockwebapp.config.then.StatusAction;
+import net.nicoulaj.benchmark.mockwebapp.test.AbstractMockWebAppTest;
+import org.testng.annotations.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+/**
+ * Tests for {@link BodyAction}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class BodyActionTest extends AbstractMockWebAppTest {
+
+    /**
+     * A response capturing its body, headers, content type and length.
+     */
+    private static class CapturingResponse extends HttpServletResponseWrapper {
+
+        /**
+         * The captured body.
+         */
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        /**
+         * The captured content type.
+         */
+        String contentType;
+
+        /**
+         * The captured content length.
+         */
+        int contentLength = -1;
+
+        /**
+         * The captured headers.
+         */
+        final Map<String, String> headers = new HashMap<String, String>();
+
+        /**
+         * The captured date headers.
+         */
+        final Map<String, Long> dateHeaders = new HashMap<String, Long>();
+
+        /**
+         * The captured status.
+         */
+        int status = HttpServletResponse.SC_OK;
+
+        /**
+         * Build a new {@link CapturingResponse}.
+         *
+         * @param response the wrapped response.
+         */
+        CapturingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    body.write(b);
+                }
+            };
+        }
+
+        @Override
+        public void setContentType(String type) {
+            contentType = type;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            contentLength = len;
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            headers.put(name, value);
+        }
+
+        @Override
+        public void setDateHeader(String name, long date) {
+            dateHeaders.put(name, date);
+        }
+
+        @Override
+        public void setStatus(int sc) {
+            status = sc;
+        }
+    }
+
+    /**
+     * Process a request with a body action.
+     *
+     * @param stmt       the action.
+     * @param webRequest the request.
+     * @return the captured response.
+     * @throws IOException should never happen.
+     */
+    private CapturingResponse process(BodyAction stmt, WebRequest webRequest) throws IOException {
+        final CapturingResponse resp = new CapturingResponse(getResponse(webRequest));
+        stmt.process(getRequest(webRequest), resp);
+        return resp;
+    }
+
+    /**
+     * Assert a constant body is written as is.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void constantBodyShouldBeWritten() throws IOException {
+        final BodyAction stmt = new BodyAction();
+        stmt.template = "{\"status\":\"ok\",\"name\":\"é\"}";
+        stmt.contentType = "application/json";
+        final CapturingResponse resp = process(stmt, new GetMethodWebRequest("http://localhost/test"));
+        assertEquals(resp.body.toString("UTF-8"), stmt.template);
+        assertEquals(resp.contentLength, stmt.template.getBytes("UTF-8").length);
+        assertEquals(resp.contentType, "application/json; charset=UTF-8");
+    }
+
+    /**
+     * Assert placeholders are replaced with the request fields.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void placeholdersShouldBeReplaced() throws IOException {
+        final BodyAction stmt = new BodyAction();
+        stmt.template = "{\"id\":\"${path.1}\",\"req\":\"${header.X-Req-Id}\",\"page\":${query.page},\"none\":\"${path.9}\"}";
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/users/42");
+        webRequest.setHeaderField("X-Req-Id", "r-ü");
+        webRequest.setParameter("page", "3");
+        final CapturingResponse resp = process(stmt, webRequest);
+        final String expected = "{\"id\":\"42\",\"req\":\"r-ü\",\"page\":3,\"none\":\"\"}";
+        assertEquals(resp.body.toString("UTF-8"), expected);
+        assertEquals(resp.contentLength, expected.getBytes("UTF-8").length);
+    }
+
+    /**
+     * Assert the body is encoded with the configured charset.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void charsetShouldBeHonored() throws IOException {
+        final BodyAction stmt = new BodyAction();
+        stmt.template = "été ${query.q}";
+        stmt.charset = "ISO-8859-1";
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        webRequest.setParameter("q", "ok");
+        final CapturingResponse resp = process(stmt, webRequest);
+        assertEquals(resp.body.toString("ISO-8859-1"), "été ok");
+        assertEquals(resp.contentLength, 6);
+    }
+
+    /**
+     * Assert no body is written for HEAD requests.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void headRequestShouldNotHaveBody() throws IOException {
+        final BodyAction stmt = new BodyAction();
+        stmt.template = "hello ${path.0}";
+        final CapturingResponse resp = process(stmt, new HeadMethodWebRequest("http://localhost/world"));
+        assertEquals(resp.body.size(), 0);
+        assertEquals(resp.contentLength, 11);
+    }
+
+    /**
+     * Assert validating a {@link BodyAction} with an unknown placeholder throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "The body is not a valid template")
+    public void templateShouldBeValid() throws Throwable {
+        final BodyAction stmt = new BodyAction();
+        stmt.template = "${path.first}";
+        stmt.validate();
+    }
+
+    /**
+     * Assert the gzip variant is sent to clients accepting it.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void gzipVariantShouldBeNegotiated() throws IOException {
+        final BodyAction stmt = new BodyAction();
+        stmt.template = "{\"items\":[\"a\",\"a\",\"a\",\"a\",\"a\",\"a\",\"a\",\"a\"]}";
+        stmt.encodings = Arrays.asList("deflate", "gzip");
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        webRequest.setHeaderField("Accept-Encoding", "gzip, deflate;q=0.5, br");
+        final CapturingResponse resp = process(stmt, webRequest);
+        assertEquals(resp.headers.get("Content-Encoding"), "gzip");
+        assertEquals(resp.headers.get("Vary"), "Accept-Encoding");
+        assertEquals(resp.contentLength, resp.body.size());
+        final InputStream in = new GZIPInputStream(new ByteArrayInputStream(resp.body.toByteArray()));
+        final ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        for (int b = in.read(); b >= 0; b = in.read()) plain.write(b);
+        assertEquals(plain.toString("UTF-8"), stmt.template);
+    }
+
+    /**
+     * Assert the plain body is sent to clients refusing the listed encodings.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void refusedEncodingsShouldSendPlainBody() throws IOException {
+        final BodyAction stmt = new BodyAction();
+        stmt.template = "plain";
+        stmt.encodings = Arrays.asList("gzip");
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        webRequest.setHeaderField("Accept-Encoding", "*;q=0.3, gzip;q=0");
+        final CapturingResponse resp = process(stmt, webRequest);
+        assertNull(resp.headers.get("Content-Encoding"));
+        assertEquals(resp.headers.get("Vary"), "Accept-Encoding");
+        assertEquals(resp.body.toString("UTF-8"), "plain");
+    }
+
+    /**
+     * Assert validating a {@link BodyAction} with an unsupported encoding throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "The body encoding 'br' is not supported")
+    public void encodingsShouldBeSupported() throws Throwable {
+        final BodyAction stmt = new BodyAction();
+        stmt.template = "plain";
+        stmt.encodings = Arrays.asList("gzip", "br");
+        stmt.validate();
+    }
+
+    /**
+     * Assert validating a {@link BodyAction} with encodings and variables throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "The body encodings can only be used with a template without variables")
+    public void encodingsShouldRequireConstantTemplate() throws Throwable {
+        final BodyAction stmt = new BodyAction();
+        stmt.template = "hello ${path.0}";
+        stmt.encodings = Arrays.asList("gzip");
+        stmt.validate();
+    }
+
+    /**
+     * Assert a request matching the body entity tag gets a 304 without body.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void matchingEtagShouldNotBeModified() throws IOException {
+        final BodyAction stmt = new BodyAction();
+        stmt.template = "cached";
+        final CapturingResponse first = process(stmt, new GetMethodWebRequest("http://localhost/test"));
+        final String etag = first.headers.get("ETag");
+        assertNotNull(etag);
+        assertNotNull(first.dateHeaders.get("Last-Modified"));
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        webRequest.setHeaderField("If-None-Match", "\"other\", W/" + etag);
+        final CapturingResponse resp = process(stmt, webRequest);
+        assertEquals(resp.status, HttpServletResponse.SC_NOT_MODIFIED);
+        assertEquals(resp.headers.get("ETag"), etag);
+        assertEquals(resp.body.size(), 0);
+    }
+
+    /**
+     * Assert a conditional request gets the body with the status set before it when that status is not 200.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void errorStatusShouldSendBody() throws IOException {
+        final BodyAction stmt = new BodyAction();
+        stmt.template = "failed";
+        final String etag = process(stmt, new GetMethodWebRequest("http://localhost/test")).headers.get("ETag");
+        final StatusAction status = new StatusAction();
+        status.statusCode = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        webRequest.setHeaderField("If-None-Match", etag);
+        webRequest.setHeaderField("If-Modified-Since", "Fri, 31 Dec 2100 23:59:59 GMT");
+        final HttpServletRequest req = getRequest(webRequest);
+        final CapturingResponse resp = new CapturingResponse(getResponse(webRequest));
+        status.process(req, resp);
+        stmt.process(req, resp);
+        assertEquals(resp.status, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        assertEquals(resp.body.toString("UTF-8"), "failed");
+    }
+
+    /**
+     * Assert a request with a stale entity tag gets the body, even if not modified since.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void staleEtagShouldSendBody() throws IOException {
+        final BodyAction stmt = new BodyAction();
+        stmt.template = "fresh";
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        webRequest.setHeaderField("If-None-Match", "\"stale\"");
+        webRequest.setHeaderField("If-Modified-Since", "Fri, 31 Dec 2100 23:59:59 GMT");
+        final CapturingResponse resp = process(stmt, webRequest);
+        assertEquals(resp.status, HttpServletResponse.SC_OK);
+        assertEquals(resp.body.toString("UTF-8"), "fresh");
+    }
+
+    /**
+     * Assert a request not modified since the body was compiled gets a 304.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void ifModifiedSinceShouldBeHonored() throws IOException {
+        final BodyAction stmt = new BodyAction();
+        stmt.template = "dated";
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        webRequest.setHeaderField("If-Modified-Since", "Fri, 31 Dec 2100 23:59:59 GMT");
+        assertEquals(process(stmt, webRequest).status, HttpServletResponse.SC_NOT_MODIFIED);
+        webRequest.setHeaderField("If-Modified-Since", "Thu, 01 Jan 1970 00:00:00 GMT");
+        assertEquals(process(stmt, webRequest).status, HttpServletResponse.SC_OK);
+    }
+
+    /**
+     * Assert compressed variants have their own entity tag, and bodies with variables have none.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void etagShouldDependOnVariant() throws IOException {
+        final BodyAction stmt = new BodyAction();
+        stmt.template = "variant variant variant";
+        stmt.encodings = Arrays.asList("gzip");
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        webRequest.setHeaderField("Accept-Encoding", "identity");
+        final String plain = process(stmt, webRequest).headers.get("ETag");
+        webRequest.setHeaderField("Accept-Encoding", "gzip");
+        final String gzip = process(stmt, webRequest).headers.get("ETag");
+        assertNotNull(plain);
+        assertNotNull(gzip);
+        assertFalse(plain.equals(gzip));
+        final BodyAction dynamic = new BodyAction();
+        dynamic.template = "hello ${path.0}";
+        assertNull(process(dynamic, new GetMethodWebRequest("http://localhost/test")).headers.get("ETag"));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config.then;
+
+import com.meterware.httpunit.GetMethodWebRequest;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Metrics;
+import net.nicoulaj.benchmark.mockwebapp.config.then.CpuBurnAction;
+import net.nicoulaj.benchmark.mockwebapp.test.AbstractMockWebAppTest;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link CpuBurnAction}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class CpuBurnActionTest extends AbstractMockWebAppTest {
+
+    /**
+     * Assert the burn time is reported in the metrics.
+     *
+     * @throws IOException  should never happen.
+     * @throws SAXException should never happen.
+     */
+    @Test
+    public void burnShouldBeReportedInMetrics() throws IOException, SAXException {
+
+        final CpuBurnAction stmt = new CpuBurnAction();
+        stmt.iterations = 1000000L;
+
+        final long count = Metrics.counter("cpu-burn.count").get();
+        final long requested = Metrics.counter("cpu-burn.requested-ns").get();
+        final long measured = Metrics.counter("cpu-burn.measured-ns").get();
+
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        stmt.process(getRequest(webRequest), getResponse(webRequest));
+
+        assertEquals(Metrics.counter("cpu-burn.count").get(), count + 1);
+        assertTrue(Metrics.counter("cpu-burn.requested-ns").get() > requested);
+        assertTrue(Metrics.counter("cpu-burn.measured-ns").get() > measured);
+    }
+
+    /**
+     * Assert the time elapsed for burning a given duration is roughly the right one.
+     *
+     * @throws IOException  should never happen.
+     * @throws SAXException should never happen.
+     */
+    @Test
+    public void elapsedTimeShouldApproximateDuration() throws IOException, SAXException {
+
+        final CpuBurnAction stmt = new CpuBurnAction();
+        stmt.duration = 100;
+
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        stmt.process(getRequest(webRequest), getResponse(webRequest)); // Trigger calibration.
+        final long startTime = System.currentTimeMillis();
+        stmt.process(getRequest(webRequest), getResponse(webRequest));
+        final long elapsedTime = System.currentTimeMillis() - startTime;
+
+        assertTrue(elapsedTime >= stmt.duration / 4, "Burnt for " + elapsedTime + "ms");
+        assertTrue(elapsedTime <= stmt.duration * 4, "Burnt for " + elapsedTime + "ms");
+    }
+
+    /**
+     * Assert the time measured for a duration burn is never below the requested CPU time, as the thread can only
+     * consume CPU time while running.
+     *
+     * @throws IOException  should never happen.
+     * @throws SAXException should never happen.
+     */
+    @Test
+    public void measuredTimeShouldNotBeBelowDuration() throws IOException, SAXException {
+
+        final CpuBurnAction stmt = new CpuBurnAction();
+        stmt.duration = 20;
+
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        stmt.process(getRequest(webRequest), getResponse(webRequest)); // Trigger calibration.
+        final long requested = Metrics.counter("cpu-burn.requested-ns").get();
+        final long measured = Metrics.counter("cpu-burn.measured-ns").get();
+        stmt.process(getRequest(webRequest), getResponse(webRequest));
+
+        assertEquals(Metrics.counter("cpu-burn.requested-ns").get() - requested, 20000000L);
+        assertTrue(Metrics.counter("cpu-burn.measured-ns").get() - measured >= 20000000L);
+    }
+
+    /**
+     * Assert validating a {@link CpuBurnAction} with neither duration nor iterations throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "Exactly one of the burn duration or iterations must be defined")
+    public void durationOrIterationsShouldBeDefined() throws Throwable {
+        new CpuBurnAction().validate();
+    }
+
+    /**
+     * Assert validating a {@link CpuBurnAction} with both duration and iterations throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "Exactly one of the burn duration or iterations must be defined")
+    public void durationAndIterationsShouldBeExclusive() throws Throwable {
+        final CpuBurnAction stmt = new CpuBurnAction();
+        stmt.duration = 10;
+        stmt.iterations = 1000L;
+        stmt.validate();
+    }
+
+    /**
+     * Assert validating a {@link CpuBurnAction} with a negative duration throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "The burn duration cannot be negative")
+    public void durationShouldBePositive() throws Throwable {
+        final CpuBurnAction stmt = new CpuBurnAction();
+        stmt.duration = -1;
+        stmt.validate();
+    }
+}
@@ -16,17 +16,22 @@
 package net.nicoulaj.benchmark.mockwebapp.test.config.then;
 
 import com.meterware.httpunit.GetMethodWebRequest;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.Metrics;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.RequestView;
 import net.nicoulaj.benchmark.mockwebapp.config.then.DelayAction;
 import net.nicoulaj.benchmark.mockwebapp.test.AbstractMockWebAppTest;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 import org.xml.sax.SAXException;
 
+import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
 /**
@@ -78,6 +83,142 @@ public class DelayActionTest extends AbstractMockWebAppTest {
         assertTrue(elapsedTime <= stmt.time + TOLERANCE);
     }
 
+    /**
+     * Assert the time elapsed for processing the request with a microseconds delay is the right one.
+     *
+     * @throws IOException  should never happen.
+     * @throws SAXException should never happen.
+     */
+    @Test
+    public void elapsedTimeShouldEqualMicrosecondsDelay() throws IOException, SAXException {
+
+        final DelayAction stmt = new DelayAction();
+        stmt.time = 500;
+        stmt.unit = DelayAction.Unit.us;
+
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        final long startTime = System.nanoTime();
+        stmt.process(getRequest(webRequest), getResponse(webRequest));
+        final long elapsedTime = System.nanoTime() - startTime;
+
+        assertTrue(elapsedTime >= 500000L, "Slept for " + elapsedTime + "ns");
+        assertTrue(elapsedTime <= 500000L + TOLERANCE * 1000000L, "Slept for " + elapsedTime + "ns");
+    }
+
+    /**
+     * Assert the requested and measured delays are reported in the metrics.
+     *
+     * @throws IOException  should never happen.
+     * @throws SAXException should never happen.
+     */
+    @Test
+    public void delayShouldBeReportedInMetrics() throws IOException, SAXException {
+
+        final DelayAction stmt = new DelayAction();
+        stmt.time = 2;
+        stmt.precise = true;
+
+        final long count = Metrics.counter("delay.count").get();
+        final long requested = Metrics.counter("delay.requested-ns").get();
+        final long measured = Metrics.counter("delay.measured-ns").get();
+
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        stmt.process(getRequest(webRequest), getResponse(webRequest));
+
+        assertEquals(Metrics.counter("delay.count").get(), count + 1);
+        assertEquals(Metrics.counter("delay.requested-ns").get(), requested + 2000000L);
+        assertTrue(Metrics.counter("delay.measured-ns").get() >= measured + 2000000L);
+        assertTrue(Metrics.counter("delay.max-overshoot-ns").get() >= 0);
+    }
+
+    /**
+     * Assert a delay from the request arrival only waits for what remains of it.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void delayFromArrivalShouldWaitForRemainder() throws Exception {
+
+        final DelayAction stmt = new DelayAction();
+        stmt.time = 200;
+        stmt.from = DelayAction.From.arrival;
+
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        final HttpServletRequest req = getRequest(webRequest);
+        final long arrivalTime = System.currentTimeMillis();
+        RequestView.of(req);
+        Thread.sleep(120);
+        stmt.process(req, getResponse(webRequest));
+        final long elapsedTime = System.currentTimeMillis() - arrivalTime;
+        RequestView.release(req);
+
+        assertTrue(elapsedTime >= stmt.time, "Responded after " + elapsedTime + "ms");
+        assertTrue(elapsedTime <= stmt.time + TOLERANCE, "Responded after " + elapsedTime + "ms");
+    }
+
+    /**
+     * Assert a delay from the request arrival already elapsed does not wait, and is reported as late.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void elapsedDelayFromArrivalShouldNotWait() throws Exception {
+
+        final DelayAction stmt = new DelayAction();
+        stmt.time = 10;
+        stmt.from = DelayAction.From.arrival;
+
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        final HttpServletRequest req = getRequest(webRequest);
+        RequestView.of(req);
+        Thread.sleep(50);
+        final long late = Metrics.counter("delay.late").get();
+        final long startTime = System.currentTimeMillis();
+        stmt.process(req, getResponse(webRequest));
+        final long elapsedTime = System.currentTimeMillis() - startTime;
+        RequestView.release(req);
+
+        assertTrue(elapsedTime < stmt.time, "Slept for " + elapsedTime + "ms");
+        assertEquals(Metrics.counter("delay.late").get(), late + 1);
+    }
+
+    /**
+     * Assert the delay is scaled by its schedule.
+     *
+     * @throws IOException  should never happen.
+     * @throws SAXException should never happen.
+     */
+    @Test
+    public void delayShouldBeScaledBySchedule() throws IOException, SAXException {
+
+        final DelayAction stmt = new DelayAction();
+        stmt.time = 40;
+        stmt.schedule = Arrays.asList("0=3", "3600000=3");
+        stmt.compile();
+
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        final long startTime = System.currentTimeMillis();
+        stmt.process(getRequest(webRequest), getResponse(webRequest));
+        final long elapsedTime = System.currentTimeMillis() - startTime;
+
+        assertTrue(elapsedTime >= 120, "Slept for " + elapsedTime + "ms");
+        assertTrue(elapsedTime <= 120 + TOLERANCE, "Slept for " + elapsedTime + "ms");
+    }
+
+    /**
+     * Assert validating a {@link DelayAction} with an invalid schedule throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "The delay schedule is not valid")
+    public void scheduleShouldBeValid() throws Throwable {
+        final DelayAction stmt = new DelayAction();
+        stmt.time = 10;
+        stmt.schedule = Arrays.asList("1000=1", "0=2");
+        stmt.validate();
+    }
+
     /**
      * Assert validating a {@link DelayAction} with a negative delay setting throws an error.
      *
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config.then;
+
+import com.meterware.httpunit.GetMethodWebRequest;
+import net.nicoulaj.benchmark.mockwebapp.config.Mapping;
+import net.nicoulaj.benchmark.mockwebapp.config.MockWebAppConfig;
+import net.nicoulaj.benchmark.mockwebapp.config.then.HeaderAction;
+import net.nicoulaj.benchmark.mockwebapp.test.AbstractMockWebAppTest;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link HeaderAction}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class HeaderActionTest extends AbstractMockWebAppTest {
+
+    /**
+     * A response recording the header calls, as {@code set|add name: value}.
+     */
+    private static class RecordingResponse extends HttpServletResponseWrapper {
+
+        /**
+         * The recorded calls.
+         */
+        final List<String> calls = new ArrayList<String>();
+
+        /**
+         * Build a new {@link RecordingResponse}.
+         *
+         * @param response the wrapped response.
+         */
+        RecordingResponse(javax.servlet.http.HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            calls.add("set " + name + ": " + value);
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            calls.add("add " + name + ": " + value);
+        }
+    }
+
+    /**
+     * Assert the header is set with the rendered value.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void headerShouldBeSet() throws IOException {
+        final HeaderAction stmt = new HeaderAction();
+        stmt.name = "X-Echo";
+        stmt.value = "echo ${header.X-Trace}!";
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        webRequest.setHeaderField("X-Trace", "abc");
+        final RecordingResponse resp = new RecordingResponse(getResponse(webRequest));
+        stmt.process(getRequest(webRequest), resp);
+        assertEquals(resp.calls.size(), 1);
+        assertEquals(resp.calls.get(0), "set X-Echo: echo abc!");
+    }
+
+    /**
+     * Assert compiled mappings apply their headers as sets, interned across mappings, with repeated headers added.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void headerSetsShouldBeApplied() throws Exception {
+        final MockWebAppConfig config = MockWebAppConfig.Parser.parseConfig(new File(VALID_TEST_CONFIGS_DIR, "header-action.xml"));
+        final Mapping first = config.mappings.get(0);
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        final HttpServletRequest req = getRequest(webRequest);
+        final RecordingResponse resp = new RecordingResponse(getResponse(webRequest));
+        first.process(req, resp);
+        assertEquals(resp.calls.get(0), "set Cache-Control: no-cache");
+        assertEquals(resp.calls.get(1), "set Set-Cookie: a=1");
+        assertEquals(resp.calls.get(2), "add Set-Cookie: b=2");
+        assertTrue(resp.calls.get(3).matches("set X-Request-Id: [0-9a-f]+-[0-9a-f]+"), resp.calls.get(3));
+        final RecordingResponse secondResp = new RecordingResponse(getResponse(webRequest));
+        config.mappings.get(1).process(req, secondResp);
+        assertEquals(secondResp.calls, resp.calls);
+    }
+
+    /**
+     * Assert validating a {@link HeaderAction} without name throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "The header name must be defined")
+    public void nameShouldBeDefined() throws Throwable {
+        final HeaderAction stmt = new HeaderAction();
+        stmt.value = "value";
+        stmt.validate();
+    }
+
+    /**
+     * Assert validating a {@link HeaderAction} with an unknown variable throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "The header value is not a valid template")
+    public void valueShouldBeValidTemplate() throws Throwable {
+        final HeaderAction stmt = new HeaderAction();
+        stmt.name = "X-Test";
+        stmt.value = "${unknown}";
+        stmt.validate();
+    }
+}
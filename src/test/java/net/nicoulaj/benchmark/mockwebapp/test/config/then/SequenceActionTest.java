@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config.then;
+
+import com.meterware.httpunit.GetMethodWebRequest;
+import com.meterware.httpunit.WebRequest;
+import net.nicoulaj.benchmark.mockwebapp.config.MockWebAppConfig;
+import net.nicoulaj.benchmark.mockwebapp.config.then.SequenceAction;
+import net.nicoulaj.benchmark.mockwebapp.config.then.SequenceStep;
+import net.nicoulaj.benchmark.mockwebapp.test.AbstractMockWebAppTest;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Tests for {@link SequenceAction}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class SequenceActionTest extends AbstractMockWebAppTest {
+
+    /**
+     * Process a request with a config.
+     *
+     * @param config     the config.
+     * @param webRequest the request.
+     * @return the response status.
+     * @throws IOException should never happen.
+     */
+    private int process(MockWebAppConfig config, WebRequest webRequest) throws IOException {
+        final int[] status = new int[1];
+        config.process(getRequest(webRequest), new HttpServletResponseWrapper(getResponse(webRequest)) {
+            @Override
+            public void setStatus(int sc) {
+                status[0] = sc;
+            }
+        });
+        return status[0];
+    }
+
+    /**
+     * Parse the sequence test config.
+     *
+     * @return the config.
+     * @throws Exception should never happen.
+     */
+    private MockWebAppConfig parseConfig() throws Exception {
+        return MockWebAppConfig.Parser.parseConfig(new File(VALID_TEST_CONFIGS_DIR, "sequence.xml"));
+    }
+
+    /**
+     * Assert each client steps through the sequence on its own, then stays on the last step.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void stepsShouldBeAppliedPerClient() throws Exception {
+        final MockWebAppConfig config = parseConfig();
+        final WebRequest alice = new GetMethodWebRequest("http://localhost/flaky");
+        alice.setHeaderField("X-Client", "alice");
+        final WebRequest bob = new GetMethodWebRequest("http://localhost/flaky");
+        bob.setHeaderField("X-Client", "bob");
+        assertEquals(process(config, alice), 503);
+        assertEquals(process(config, alice), 503);
+        assertEquals(process(config, bob), 503);
+        assertEquals(process(config, alice), 200);
+        assertEquals(process(config, alice), 200);
+        assertEquals(process(config, bob), 503);
+        assertEquals(process(config, bob), 200);
+    }
+
+    /**
+     * Assert requests without the key always get the first step.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void requestsWithoutKeyShouldGetFirstStep() throws Exception {
+        final MockWebAppConfig config = parseConfig();
+        final WebRequest anonymous = new GetMethodWebRequest("http://localhost/flaky");
+        for (int i = 0; i < 4; i++) assertEquals(process(config, anonymous), 503);
+    }
+
+    /**
+     * Assert looping sequences start over after the last step.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void loopingSequenceShouldStartOver() throws Exception {
+        final MockWebAppConfig config = parseConfig();
+        final WebRequest webRequest = new GetMethodWebRequest("http://localhost/pages");
+        webRequest.setHeaderField("Cookie", "session=s1");
+        assertEquals(process(config, webRequest), 200);
+        assertEquals(process(config, webRequest), 206);
+        assertEquals(process(config, webRequest), 200);
+        assertEquals(process(config, webRequest), 206);
+    }
+
+    /**
+     * Assert validating a {@link SequenceAction} without steps throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "A sequence must have at least one step")
+    public void stepsShouldBeDefined() throws Throwable {
+        final SequenceAction stmt = new SequenceAction();
+        stmt.steps = new ArrayList<SequenceStep>();
+        stmt.validate();
+    }
+
+    /**
+     * Assert validating a {@link SequenceAction} keyed by cookie without name throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "The sequence key name must be defined")
+    public void keyNameShouldBeDefined() throws Throwable {
+        final SequenceAction stmt = new SequenceAction();
+        stmt.key = SequenceAction.Key.cookie;
+        stmt.steps = Arrays.asList(new SequenceStep());
+        stmt.validate();
+    }
+}
@@ -23,11 +23,16 @@ import org.testng.annotations.Test;
 import org.xml.sax.SAXException;
 
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
 /**
  * Tests for {@link net.nicoulaj.benchmark.mockwebapp.config.then.StatusAction}.
  *
@@ -125,4 +130,74 @@ public class StatusActionTest extends AbstractMockWebAppTest {
         stmt.statusCode = -1;
         stmt.validate();
     }
+
+    /**
+     * Assert responses get the error status at the scheduled error rate.
+     *
+     * @throws IOException  should never happen.
+     * @throws SAXException should never happen.
+     */
+    @Test
+    public void errorStatusShouldFollowErrorRate() throws IOException, SAXException {
+        assertEquals(countErrors("0=0"), 0);
+        assertEquals(countErrors("0=1"), 200);
+        final int errors = countErrors("0=0.5");
+        assertTrue(errors > 50 && errors < 150, errors + " errors");
+    }
+
+    /**
+     * Process 200 requests with an error rate schedule.
+     *
+     * @param errorRate the error rate schedule.
+     * @return the number of responses with the error status.
+     * @throws IOException  should never happen.
+     * @throws SAXException should never happen.
+     */
+    private int countErrors(String errorRate) throws IOException, SAXException {
+        final StatusAction stmt = new StatusAction();
+        stmt.statusCode = HttpServletResponse.SC_OK;
+        stmt.errorStatus = HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+        stmt.errorRate = Arrays.asList(errorRate.split(" "));
+        stmt.compile();
+
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        final int[] errors = new int[1];
+        final HttpServletResponse response = new HttpServletResponseWrapper(getResponse(webRequest)) {
+            @Override
+            public void setStatus(int sc) {
+                if (sc == HttpServletResponse.SC_SERVICE_UNAVAILABLE) errors[0]++;
+            }
+        };
+        for (int i = 0; i < 200; i++) stmt.process(getRequest(webRequest), response);
+        return errors[0];
+    }
+
+    /**
+     * Assert validating a {@link StatusAction} with an error status but no error rate throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "The error status and error rate must be defined together")
+    public void errorStatusShouldHaveErrorRate() throws Throwable {
+        final StatusAction stmt = new StatusAction();
+        stmt.statusCode = 200;
+        stmt.errorStatus = 503;
+        stmt.validate();
+    }
+
+    /**
+     * Assert validating a {@link StatusAction} with an error rate above 1 throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "The error rate schedule is not valid")
+    public void errorRateShouldNotExceedOne() throws Throwable {
+        final StatusAction stmt = new StatusAction();
+        stmt.statusCode = 200;
+        stmt.errorStatus = 503;
+        stmt.errorRate = Arrays.asList("0=0", "1000=2");
+        stmt.validate();
+    }
 }
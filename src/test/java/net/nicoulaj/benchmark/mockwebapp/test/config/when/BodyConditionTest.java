@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config.when;
+
+import com.meterware.httpunit.PostMethodWebRequest;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.RequestView;
+import net.nicoulaj.benchmark.mockwebapp.config.when.BodyCondition;
+import net.nicoulaj.benchmark.mockwebapp.test.AbstractMockWebAppTest;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link BodyCondition}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class BodyConditionTest extends AbstractMockWebAppTest {
+
+    /**
+     * Build a request with the given body.
+     *
+     * @param body the request body.
+     * @return the request.
+     * @throws IOException should never happen.
+     */
+    private HttpServletRequest post(String body) throws IOException {
+        return getRequest(new PostMethodWebRequest("http://localhost/test",
+                                                   new ByteArrayInputStream(body.getBytes("UTF-8")),
+                                                   "application/json; charset=UTF-8"));
+    }
+
+    /**
+     * Assert the contains check searches a substring of the body.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void containsShouldSearchSubstring() throws IOException {
+        final BodyCondition stmt = new BodyCondition();
+        stmt.contains = "\"type\":\"order\"";
+        assertTrue(stmt.matches(post("{\"id\":1,\"type\":\"order\"}")));
+        assertFalse(stmt.matches(post("{\"id\":1,\"type\":\"invoice\"}")));
+        assertFalse(stmt.matches(post("")));
+    }
+
+    /**
+     * Assert the pattern check searches the body when no JSON path is given.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void patternShouldBeSearched() throws IOException {
+        final BodyCondition stmt = new BodyCondition();
+        stmt.pattern = "\"id\":\\s*\\d+";
+        assertTrue(stmt.matches(post("{\"id\": 42, \"name\": \"été\"}")));
+        assertFalse(stmt.matches(post("{\"id\": \"x\"}")));
+    }
+
+    /**
+     * Assert the JSON path check extracts values from the body.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void jsonPathShouldBeEvaluated() throws IOException {
+        final BodyCondition stmt = new BodyCondition();
+        stmt.jsonPath = "$.order.items[1].sku";
+        stmt.value = "B-2";
+        final String body = "{\"meta\":{\"a\":[1,{\"sku\":\"X\"}]},\"order\":{\"items\":[{\"sku\":\"A-1\"},{\"sku\":\"B-2\"}]}}";
+        assertTrue(stmt.matches(post(body)));
+        final BodyCondition matching = new BodyCondition();
+        matching.jsonPath = stmt.jsonPath;
+        matching.pattern = "[A-Z]-\\d";
+        assertTrue(matching.matches(post(body)));
+        final BodyCondition notMatching = new BodyCondition();
+        notMatching.jsonPath = stmt.jsonPath;
+        notMatching.pattern = "A-\\d";
+        assertFalse(notMatching.matches(post(body)));
+        final BodyCondition exists = new BodyCondition();
+        exists.jsonPath = stmt.jsonPath;
+        assertTrue(exists.matches(post(body)));
+        assertFalse(exists.matches(post("{\"order\":{\"items\":[{\"sku\":\"A-1\"}]}}")));
+    }
+
+    /**
+     * Assert only the configured prefix of the body is checked.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void limitShouldBeHonored() throws IOException {
+        final BodyCondition stmt = new BodyCondition();
+        stmt.contains = "needle";
+        stmt.limit = 16;
+        assertTrue(stmt.matches(post("0123456789needle")));
+        assertFalse(stmt.matches(post("0123456789abcdefneedle")));
+    }
+
+    /**
+     * Assert releasing the request drains the body and lets the view be reused.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void releaseShouldDrainBody() throws IOException {
+        final BodyCondition stmt = new BodyCondition();
+        stmt.contains = "a";
+        stmt.limit = 4;
+        final HttpServletRequest req = post("aaaaaaaaaaaaaaaaaaaa");
+        assertTrue(stmt.matches(req));
+        RequestView.release(req);
+        assertEquals(req.getInputStream().read(), -1);
+        assertFalse(stmt.matches(post("bbbb")));
+    }
+
+    /**
+     * Assert validating a {@link BodyCondition} without any check throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "At least one of contains, pattern or json-path must be defined")
+    public void checkShouldBeDefined() throws Throwable {
+        new BodyCondition().validate();
+    }
+
+    /**
+     * Assert validating a {@link BodyCondition} with a value but no JSON path throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "The body value can only be checked with a json-path")
+    public void valueShouldRequireJsonPath() throws Throwable {
+        final BodyCondition stmt = new BodyCondition();
+        stmt.contains = "a";
+        stmt.value = "b";
+        stmt.validate();
+    }
+
+    /**
+     * Assert validating a {@link BodyCondition} with an invalid JSON path throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "The json-path is not a valid JSON path")
+    public void jsonPathShouldBeValid() throws Throwable {
+        final BodyCondition stmt = new BodyCondition();
+        stmt.jsonPath = "$.items[first]";
+        stmt.validate();
+    }
+}
@@ -16,19 +16,24 @@
 package net.nicoulaj.benchmark.mockwebapp.test.config.when;
 
 import com.meterware.httpunit.*;
+import net.nicoulaj.benchmark.mockwebapp.config.runtime.MethodBits;
 import net.nicoulaj.benchmark.mockwebapp.config.when.MethodCondition;
 import net.nicoulaj.benchmark.mockwebapp.test.AbstractMockWebAppTest;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 import org.xml.sax.SAXException;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
 import static net.nicoulaj.benchmark.mockwebapp.config.when.MethodCondition.HTTPMethod;
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
@@ -68,8 +73,8 @@ public class MethodConditionTest extends AbstractMockWebAppTest {
     @Test(dataProvider = "matchingMethodsRequestsDataProvider")
     public void rightMethodShouldMatch(final MethodCondition.HTTPMethod method, final WebRequest request) throws IOException, SAXException {
         final MethodCondition methodCondition = new MethodCondition();
-        methodCondition.method = method;
-        assertTrue(methodCondition.matches(getRequest(request)), "A '" + methodCondition.method + "' condition should match a '" + request.getMethod() + "' request");
+        methodCondition.methods = Arrays.asList(method.name());
+        assertTrue(methodCondition.matches(getRequest(request)), "A '" + method + "' condition should match a '" + request.getMethod() + "' request");
     }
 
     /**
@@ -112,8 +117,108 @@ public class MethodConditionTest extends AbstractMockWebAppTest {
     @Test(dataProvider = "nonMatchingMethodsRequestsDataProvider")
     public void wrongMethodShouldNotMatch(final MethodCondition.HTTPMethod method, final WebRequest request) throws IOException, SAXException {
         final MethodCondition methodCondition = new MethodCondition();
-        methodCondition.method = method;
-        assertFalse(methodCondition.matches(getRequest(request)), "A '" + methodCondition.method + "' condition should not match a '" + request.getMethod() + "' request");
+        methodCondition.methods = Arrays.asList(method.name());
+        assertFalse(methodCondition.matches(getRequest(request)), "A '" + method + "' condition should not match a '" + request.getMethod() + "' request");
+    }
+
+    /**
+     * Build a request with an arbitrary method.
+     *
+     * @param method the request method.
+     * @return the request.
+     * @throws IOException should never happen.
+     */
+    private HttpServletRequest request(final String method) throws IOException {
+        return new HttpServletRequestWrapper(getRequest(new GetMethodWebRequest("http://localhost/test"))) {
+            @Override
+            public String getMethod() {
+                return method;
+            }
+        };
+    }
+
+    /**
+     * Assert a condition with several methods matches any of them, including PATCH and extension methods.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void methodSetShouldMatchAnyMethod() throws IOException {
+        final MethodCondition methodCondition = new MethodCondition();
+        methodCondition.methods = Arrays.asList("PUT", "PATCH", "PROPFIND");
+        assertTrue(methodCondition.matches(request("PUT")));
+        assertTrue(methodCondition.matches(request("PATCH")));
+        assertTrue(methodCondition.matches(request("PROPFIND")));
+        assertFalse(methodCondition.matches(request("GET")));
+        assertFalse(methodCondition.matches(request("patch")));
+    }
+
+    /**
+     * Assert methods declared once the {@link MethodBits} registry is full are still matched, by name.
+     * <p/>
+     * The registry is reset afterwards, so that the other tests keep matching through bits.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void methodsPastRegistryCapacityShouldMatch() throws IOException {
+        try {
+            final List<String> methods = new ArrayList<String>();
+            for (int i = 0; i < MethodBits.MAX_METHODS; i++) methods.add("OVERFLOW" + i);
+            final MethodCondition methodCondition = new MethodCondition();
+            methodCondition.methods = methods;
+            methodCondition.compile();
+            assertEquals(MethodBits.register("OVERFLOW-LAST"), 0L);
+            assertTrue(methodCondition.matches(request("OVERFLOW0")));
+            assertTrue(methodCondition.matches(request("OVERFLOW" + (MethodBits.MAX_METHODS - 1))));
+            assertFalse(methodCondition.matches(request("OVERFLOW-LAST")));
+            assertFalse(methodCondition.matches(request("GET")));
+        } finally {
+            MethodBits.reset();
+        }
+        assertTrue(MethodBits.register("OVERFLOW-LAST") != 0L);
+    }
+
+    /**
+     * Assert the deprecated single method accessors still work.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void singleMethodAccessorsShouldWork() throws IOException {
+        final MethodCondition methodCondition = new MethodCondition();
+        methodCondition.setMethod(HTTPMethod.DELETE);
+        assertEquals(methodCondition.getMethod(), HTTPMethod.DELETE);
+        assertTrue(methodCondition.matches(request("DELETE")));
+        assertFalse(methodCondition.matches(request("GET")));
+        methodCondition.methods = Arrays.asList("GET", "PUT");
+        assertEquals(methodCondition.getMethod(), null);
+    }
+
+    /**
+     * Assert a request with a method never declared is not matched and does not throw.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void unknownMethodShouldNotMatch() throws IOException {
+        final MethodCondition methodCondition = new MethodCondition();
+        methodCondition.methods = Arrays.asList(HTTPMethod.GET.name());
+        assertFalse(methodCondition.matches(request("UNDECLARED-METHOD")));
+    }
+
+    /**
+     * Assert validating a {@link MethodCondition} with an invalid method name throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "The HTTP method 'GET/POST' is not a valid method name")
+    public void methodShouldBeValid() throws Throwable {
+        final MethodCondition methodCondition = new MethodCondition();
+        methodCondition.methods = Arrays.asList("GET/POST");
+        methodCondition.validate();
     }
 
     /**
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config.when;
+
+import com.meterware.httpunit.GetMethodWebRequest;
+import net.nicoulaj.benchmark.mockwebapp.config.when.PathCondition;
+import net.nicoulaj.benchmark.mockwebapp.test.AbstractMockWebAppTest;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link PathCondition}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class PathConditionTest extends AbstractMockWebAppTest {
+
+    /**
+     * Assert requests with a URI matching the template are matched.
+     *
+     * @throws IOException  should never happen.
+     * @throws SAXException should never happen.
+     */
+    @Test
+    public void rightPathShouldMatch() throws IOException, SAXException {
+        final PathCondition stmt = new PathCondition();
+        stmt.template = "/users/{id}/orders";
+        assertTrue(stmt.matches(getRequest(new GetMethodWebRequest("http://localhost/users/42/orders"))));
+        assertTrue(stmt.matches(getRequest(new GetMethodWebRequest("http://localhost/users/john/orders/"))));
+    }
+
+    /**
+     * Assert requests with a URI not matching the template are not matched.
+     *
+     * @throws IOException  should never happen.
+     * @throws SAXException should never happen.
+     */
+    @Test
+    public void wrongPathShouldNotMatch() throws IOException, SAXException {
+        final PathCondition stmt = new PathCondition();
+        stmt.template = "/users/{id}/orders";
+        assertFalse(stmt.matches(getRequest(new GetMethodWebRequest("http://localhost/users/42"))));
+        assertFalse(stmt.matches(getRequest(new GetMethodWebRequest("http://localhost/users/42/orders/1"))));
+        assertFalse(stmt.matches(getRequest(new GetMethodWebRequest("http://localhost/groups/42/orders"))));
+    }
+
+    /**
+     * Assert validating a {@link PathCondition} without a template throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "The path template must be specified and start with '/'")
+    public void templateShouldBeDefined() throws Throwable {
+        new PathCondition().validate();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.config.when;
+
+import com.meterware.httpunit.GetMethodWebRequest;
+import net.nicoulaj.benchmark.mockwebapp.config.when.QueryParamCondition;
+import net.nicoulaj.benchmark.mockwebapp.test.AbstractMockWebAppTest;
+import org.testng.annotations.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link QueryParamCondition}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class QueryParamConditionTest extends AbstractMockWebAppTest {
+
+    /**
+     * Assert a request with the parameter and no pattern is matched.
+     *
+     * @throws IOException  should never happen.
+     * @throws SAXException should never happen.
+     */
+    @Test
+    public void presentParameterWithoutPatternShouldMatch() throws IOException, SAXException {
+        final QueryParamCondition stmt = new QueryParamCondition();
+        stmt.name = "debug";
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        webRequest.setParameter("page", "1");
+        webRequest.setParameter("debug", "");
+        assertTrue(stmt.matches(getRequest(webRequest)));
+    }
+
+    /**
+     * Assert a request without the parameter is not matched.
+     *
+     * @throws IOException  should never happen.
+     * @throws SAXException should never happen.
+     */
+    @Test
+    public void missingParameterShouldNotMatch() throws IOException, SAXException {
+        final QueryParamCondition stmt = new QueryParamCondition();
+        stmt.name = "debug";
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        assertFalse(stmt.matches(getRequest(webRequest)));
+        webRequest.setParameter("page", "1");
+        webRequest.setParameter("debugging", "true");
+        assertFalse(stmt.matches(getRequest(webRequest)));
+    }
+
+    /**
+     * Assert a request with the parameter and the right value is matched.
+     *
+     * @throws IOException  should never happen.
+     * @throws SAXException should never happen.
+     */
+    @Test
+    public void parameterWithRightValueShouldMatch() throws IOException, SAXException {
+        final QueryParamCondition stmt = new QueryParamCondition();
+        stmt.name = "page";
+        stmt.valuePattern = "\\d+";
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        webRequest.setParameter("sort", "asc");
+        webRequest.setParameter("page", "12");
+        assertTrue(stmt.matches(getRequest(webRequest)));
+        webRequest.setParameter("page", new String[]{"first", "12"});
+        assertTrue(stmt.matches(getRequest(webRequest)));
+    }
+
+    /**
+     * Assert a request with the parameter but the wrong value is not matched.
+     *
+     * @throws IOException  should never happen.
+     * @throws SAXException should never happen.
+     */
+    @Test
+    public void parameterWithWrongValueShouldNotMatch() throws IOException, SAXException {
+        final QueryParamCondition stmt = new QueryParamCondition();
+        stmt.name = "page";
+        stmt.valuePattern = "\\d+";
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        webRequest.setParameter("page", "first");
+        assertFalse(stmt.matches(getRequest(webRequest)));
+    }
+
+    /**
+     * Assert parameters names and values are URL-decoded before being matched.
+     *
+     * @throws IOException  should never happen.
+     * @throws SAXException should never happen.
+     */
+    @Test
+    public void encodedParameterShouldMatch() throws IOException, SAXException {
+        final QueryParamCondition stmt = new QueryParamCondition();
+        stmt.name = "sort by";
+        stmt.valuePattern = "name asc";
+        final GetMethodWebRequest webRequest = new GetMethodWebRequest("http://localhost/test");
+        webRequest.setParameter("sort by", "name asc");
+        assertTrue(stmt.matches(getRequest(webRequest)));
+    }
+
+    /**
+     * Assert validating a {@link QueryParamCondition} without parameter name throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "The query parameter name must be defined")
+    public void nameShouldBeDefined() throws Throwable {
+        new QueryParamCondition().validate();
+    }
+}
@@ -59,6 +59,49 @@ public class RemoteAddressConditionTest extends AbstractMockWebAppTest {
         assertFalse(stmt.matches(getRequest(new GetMethodWebRequest("http://localhost/test"))), "Request with remote address '" + stmt.address + "' should not have been matched");
     }
 
+    /**
+     * Assert a request with a remote address in the right CIDR block or range is matched.
+     *
+     * @throws java.io.IOException should never happen.
+     */
+    @Test
+    public void remoteAddressInRightBlockShouldMatch() throws IOException {
+        final HttpServletRequest req = getRequest(new GetMethodWebRequest("http://localhost/test"));
+        for (String address : new String[]{"127.0.0.0/8", "127.0.0.1/32", "0.0.0.0/0", "127.0.0.0-127.0.0.5", "::ffff:127.0.0.0/104"}) {
+            final RemoteAddressCondition stmt = new RemoteAddressCondition();
+            stmt.address = address;
+            assertTrue(stmt.matches(req), "Request with remote address '" + req.getRemoteAddr() + "' should have been matched by '" + address + "'");
+        }
+    }
+
+    /**
+     * Assert a request with a remote address out of the CIDR block or range is not matched.
+     *
+     * @throws java.io.IOException should never happen.
+     */
+    @Test
+    public void remoteAddressInWrongBlockShouldNotMatch() throws IOException {
+        final HttpServletRequest req = getRequest(new GetMethodWebRequest("http://localhost/test"));
+        for (String address : new String[]{"10.0.0.0/8", "127.0.0.2/31", "127.0.0.2-127.0.0.5", "::/0"}) {
+            final RemoteAddressCondition stmt = new RemoteAddressCondition();
+            stmt.address = address;
+            assertFalse(stmt.matches(req), "Request with remote address '" + req.getRemoteAddr() + "' should not have been matched by '" + address + "'");
+        }
+    }
+
+    /**
+     * Assert validating a {@link RemoteAddressCondition} with an invalid CIDR block throws an error.
+     *
+     * @throws Throwable should always happen.
+     */
+    @Test(expectedExceptions = Throwable.class,
+          expectedExceptionsMessageRegExp = "The remote address is not a valid IP address, CIDR block or address range")
+    public void addressShouldBeValid() throws Throwable {
+        final RemoteAddressCondition stmt = new RemoteAddressCondition();
+        stmt.address = "10.0.0.0/33";
+        stmt.validate();
+    }
+
     /**
      * Assert validating a {@link RemoteAddressCondition} without remote address throws an error.
      *
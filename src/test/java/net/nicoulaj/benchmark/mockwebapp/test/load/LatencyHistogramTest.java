@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.load;
+
+import net.nicoulaj.benchmark.mockwebapp.load.LatencyHistogram;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for {@link LatencyHistogram}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * Assert small values are counted exactly.
+     */
+    @Test
+    public void smallValuesShouldBeExact() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) histogram.record(i);
+        assertEquals(histogram.getTotalCount(), 100);
+        assertEquals(histogram.getValueAtPercentile(50), 50);
+        assertEquals(histogram.getValueAtPercentile(99), 99);
+        assertEquals(histogram.getValueAtPercentile(100), 100);
+        assertEquals(histogram.getMean(), 50.5, 1e-9);
+        assertEquals(histogram.getMax(), 100);
+    }
+
+    /**
+     * Assert large values are counted within 1% of their value.
+     */
+    @Test
+    public void largeValuesShouldBeWithinOnePercent() {
+        for (long value = 1000; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 7) {
+            final LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(value);
+            histogram.record(Long.MAX_VALUE);
+            final long recorded = histogram.getValueAtPercentile(50);
+            assertTrue(recorded >= value && recorded - value <= value / 100, value + " recorded as " + recorded);
+        }
+    }
+
+    /**
+     * Assert the percentiles of a skewed distribution are found.
+     */
+    @Test
+    public void percentilesShouldBeFound() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 990; i++) histogram.record(1000000);
+        for (int i = 0; i < 10; i++) histogram.record(500000000);
+        assertEquals(histogram.getValueAtPercentile(99), 1000000, 10000);
+        assertEquals(histogram.getValueAtPercentile(99.9), 500000000);
+        assertEquals(histogram.getMax(), 500000000);
+    }
+
+    /**
+     * Assert negative values are recorded as 0, and an empty histogram has only zeros.
+     */
+    @Test
+    public void negativeAndMissingValuesShouldBeZero() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(histogram.getValueAtPercentile(50), 0);
+        assertEquals(histogram.getMean(), 0.0);
+        histogram.record(-5);
+        assertEquals(histogram.getTotalCount(), 1);
+        assertEquals(histogram.getMax(), 0);
+    }
+
+    /**
+     * Assert histograms are merged.
+     */
+    @Test
+    public void histogramsShouldBeAdded() {
+        final LatencyHistogram first = new LatencyHistogram();
+        final LatencyHistogram second = new LatencyHistogram();
+        first.record(10);
+        second.record(20);
+        second.record(30);
+        first.add(second);
+        assertEquals(first.getTotalCount(), 3);
+        assertEquals(first.getMax(), 30);
+        assertEquals(first.getMean(), 20.0, 1e-9);
+        assertEquals(first.getValueAtPercentile(50), 20);
+    }
+}
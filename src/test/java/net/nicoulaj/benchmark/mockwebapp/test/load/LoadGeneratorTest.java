@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.load;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import net.nicoulaj.benchmark.mockwebapp.load.LoadGenerator;
+import net.nicoulaj.benchmark.mockwebapp.load.LoadScenario;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for {@link LoadGenerator}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class LoadGeneratorTest {
+
+    /**
+     * The server the load is sent to.
+     */
+    private HttpServer server;
+
+    /**
+     * The base URL of {@link #server}.
+     */
+    private String baseUrl;
+
+    /**
+     * The number of requests received by {@link #server}.
+     */
+    private final AtomicInteger requests = new AtomicInteger();
+
+    /**
+     * The number of requests received by {@link #server}, by method, URI and {@code X-Test} header.
+     */
+    private final Map<String, AtomicInteger> received = new ConcurrentHashMap<String, AtomicInteger>();
+
+    /**
+     * Start {@link #server}, answering {@code 404} for {@code /missing}, and stalling on the first request for
+     * {@code /stall}.
+     *
+     * @throws IOException should never happen.
+     */
+    @BeforeClass
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                final String key = exchange.getRequestMethod() + " " + exchange.getRequestURI() + " "
+                                   + exchange.getRequestHeaders().getFirst("X-Test");
+                received.putIfAbsent(key, new AtomicInteger());
+                received.get(key).incrementAndGet();
+                final String path = exchange.getRequestURI().getPath();
+                if (requests.incrementAndGet() == 1 && path.equals("/stall")) {
+                    try {
+                        Thread.sleep(500);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                final byte[] body = "ok".getBytes("UTF-8");
+                exchange.sendResponseHeaders(path.equals("/missing") ? 404 : 200, body.length);
+                final OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Stop {@link #server}.
+     */
+    @AfterClass
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    /**
+     * Reset the requests received by {@link #server}.
+     */
+    @BeforeMethod
+    public void resetRequests() {
+        requests.set(0);
+        received.clear();
+    }
+
+    /**
+     * Assert the targets are sent in turn, and error statuses counted.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void targetsShouldBeSentInTurn() throws Exception {
+        final List<LoadScenario.Target> targets = Arrays.asList(
+            new LoadScenario.Target("GET", "/ok?a=1", Collections.singletonMap("X-Test", "yes")),
+            new LoadScenario.Target("DELETE", "/missing", Collections.<String, String>emptyMap()));
+        final LoadGenerator generator = new LoadGenerator(baseUrl + "/", targets, 200, 0.1, 2);
+        generator.run();
+        assertEquals(generator.getRequestCount(), 20);
+        assertEquals(requests.get(), 20);
+        assertEquals(received.get("GET /ok?a=1 yes").get(), 10);
+        assertEquals(received.get("DELETE /missing null").get(), 10);
+        assertEquals(generator.getErrorCount(), 10);
+        assertEquals(generator.getResponseTimes().getTotalCount(), 20);
+        assertEquals(generator.getServiceTimes().getTotalCount(), 20);
+    }
+
+    /**
+     * Assert the requests queued behind a stall are charged for it in the response times, but not in the service
+     * times.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void stallShouldBeChargedToQueuedRequests() throws Exception {
+        final List<LoadScenario.Target> targets = Collections.singletonList(
+            new LoadScenario.Target("GET", "/stall", Collections.<String, String>emptyMap()));
+        final LoadGenerator generator = new LoadGenerator(baseUrl, targets, 100, 0.5, 1);
+        generator.run();
+        assertEquals(requests.get(), 50);
+        assertEquals(generator.getErrorCount(), 0);
+        assertTrue(generator.getServiceTimes().getMax() >= 500000000L);
+        assertTrue(generator.getServiceTimes().getValueAtPercentile(50) < 100000000L,
+                   "service time p50: " + generator.getServiceTimes().getValueAtPercentile(50));
+        assertTrue(generator.getResponseTimes().getValueAtPercentile(50) >= 100000000L,
+                   "response time p50: " + generator.getResponseTimes().getValueAtPercentile(50));
+    }
+
+    /**
+     * Assert a load without targets is refused.
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class,
+          expectedExceptionsMessageRegExp = "At least one target should be given")
+    public void loadWithoutTargetsShouldBeRefused() {
+        new LoadGenerator(baseUrl, Collections.<LoadScenario.Target>emptyList(), 100, 1, 1);
+    }
+}
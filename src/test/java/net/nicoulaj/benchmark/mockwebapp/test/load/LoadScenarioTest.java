@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.load;
+
+import net.nicoulaj.benchmark.mockwebapp.config.MockWebAppConfig;
+import net.nicoulaj.benchmark.mockwebapp.load.LoadScenario;
+import net.nicoulaj.benchmark.mockwebapp.test.AbstractMockWebAppTest;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for {@link LoadScenario}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class LoadScenarioTest extends AbstractMockWebAppTest {
+
+    /**
+     * Assert a request is derived from each mapping with literal conditions, and other mappings are skipped.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void targetsShouldBeDerivedFromMappings() throws Exception {
+        final LoadScenario scenario = new LoadScenario(MockWebAppConfig.Parser.parseConfig(new File(VALID_TEST_CONFIGS_DIR, "load-scenario.xml")));
+        final List<LoadScenario.Target> targets = scenario.getTargets();
+        assertEquals(targets.size(), 3);
+        assertEquals(scenario.getSkippedMappingCount(), 3);
+
+        assertEquals(targets.get(0).toString(), "GET /users/1");
+        assertTrue(targets.get(0).headers.isEmpty());
+
+        assertEquals(targets.get(1).toString(), "GET /search?q=mock&debug=1");
+        assertEquals(targets.get(1).headers.get("Accept"), "text/plain");
+
+        assertEquals(targets.get(2).toString(), "DELETE /items/1");
+    }
+
+    /**
+     * Assert every valid config can be turned into a scenario.
+     *
+     * @param file the valid config file to use for the test.
+     * @throws Exception should never happen.
+     */
+    @Test(dataProvider = "validConfigFilesDataProvider")
+    public void validConfigsShouldGiveScenarios(File file) throws Exception {
+        final MockWebAppConfig config = MockWebAppConfig.Parser.parseConfig(file);
+        final LoadScenario scenario = new LoadScenario(config);
+        assertEquals(scenario.getTargets().size() + scenario.getSkippedMappingCount(), config.mappings.size());
+        for (LoadScenario.Target target : scenario.getTargets()) assertTrue(target.uri.startsWith("/"), target.uri);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.replay;
+
+import net.nicoulaj.benchmark.mockwebapp.replay.JsonReader;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+/**
+ * Tests for {@link JsonReader}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class JsonReaderTest {
+
+    /**
+     * Assert values are read as trees.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void valuesShouldBeReadAsTrees() throws IOException {
+        final JsonReader json = new JsonReader(new StringReader("{\"a\": [1, -2.5e1, true, null], \"b\\\"\": \"x\\n\\u00e9\", \"c\": {}}"));
+        final Map<String, Object> expected = new LinkedHashMap<String, Object>();
+        expected.put("a", Arrays.<Object>asList(1.0, -25.0, true, null));
+        expected.put("b\"", "x\né");
+        expected.put("c", new LinkedHashMap<String, Object>());
+        assertEquals(json.readValue(), expected);
+        assertEquals(json.peek(), JsonReader.Token.END_DOCUMENT);
+    }
+
+    /**
+     * Assert values can be skipped while streaming through an array.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void valuesShouldBeSkipped() throws IOException {
+        final JsonReader json = new JsonReader(new StringReader("{\"skip\": {\"x\": [1, {\"y\": \"]\"}]}, \"keep\": [\"a\", 2]}"));
+        json.beginObject();
+        assertEquals(json.nextName(), "skip");
+        json.skipValue();
+        assertEquals(json.nextName(), "keep");
+        json.beginArray();
+        assertEquals(json.nextString(), "a");
+        assertEquals(json.nextNumber(), 2.0);
+        assertFalse(json.hasNext());
+        json.endArray();
+        json.endObject();
+        assertEquals(json.peek(), JsonReader.Token.END_DOCUMENT);
+    }
+
+    /**
+     * Assert consecutive top level values are read in sequence.
+     *
+     * @throws IOException should never happen.
+     */
+    @Test
+    public void consecutiveValuesShouldBeRead() throws IOException {
+        final StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 2000; i++) lines.append("{\"i\":").append(i).append("}\n");
+        final JsonReader json = new JsonReader(new StringReader(lines.toString()));
+        for (int i = 0; i < 2000; i++) assertEquals(((Map<?, ?>) json.readValue()).get("i"), (double) i);
+        assertEquals(json.peek(), JsonReader.Token.END_DOCUMENT);
+    }
+
+    /**
+     * Assert unterminated strings throw an error.
+     *
+     * @throws IOException should always happen.
+     */
+    @Test(expectedExceptions = IOException.class,
+          expectedExceptionsMessageRegExp = "Unterminated JSON string")
+    public void unterminatedStringShouldBeInvalid() throws IOException {
+        new JsonReader(new StringReader("[\"abc")).readValue();
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2011 Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.nicoulaj.benchmark.mockwebapp.test.replay;
+
+import net.nicoulaj.benchmark.mockwebapp.config.Mapping;
+import net.nicoulaj.benchmark.mockwebapp.config.MockWebAppConfig;
+import net.nicoulaj.benchmark.mockwebapp.config.then.BodyAction;
+import net.nicoulaj.benchmark.mockwebapp.config.then.DelayAction;
+import net.nicoulaj.benchmark.mockwebapp.config.then.RandomDelayAction;
+import net.nicoulaj.benchmark.mockwebapp.config.then.StatusAction;
+import net.nicoulaj.benchmark.mockwebapp.config.when.URLCondition;
+import net.nicoulaj.benchmark.mockwebapp.replay.CaptureEntry;
+import net.nicoulaj.benchmark.mockwebapp.replay.TrafficImporter;
+import net.nicoulaj.benchmark.mockwebapp.test.AbstractMockWebAppTest;
+import org.testng.annotations.Test;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for {@link TrafficImporter}.
+ *
+ * @author Julien Nicoulaud <julien.nicoulaud@gmail.com>
+ * @since 1.0.0
+ */
+public class TrafficImporterTest extends AbstractMockWebAppTest {
+
+    /**
+     * The directory containing the test captures.
+     */
+    public static final String TEST_CAPTURES_DIR = TEST_RESOURCES_DIR + "/captures";
+
+    /**
+     * Assert a HAR capture is imported into one mapping per endpoint.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void harCaptureShouldBeImported() throws Exception {
+        final TrafficImporter importer = new TrafficImporter();
+        importer.add(TrafficImporter.open(new File(TEST_CAPTURES_DIR, "sample.har")));
+        final MockWebAppConfig config = importer.toConfig();
+        assertEquals(importer.getEntryCount(), 5);
+        assertEquals(importer.getIgnoredEntryCount(), 1);
+        assertEquals(config.mappings.size(), 2);
+
+        final Mapping users = config.mappings.get(0);
+        assertEquals(((URLCondition) users.whenStatements.get(1)).pattern, "\\Q/api/users\\E");
+        final RandomDelayAction delay = (RandomDelayAction) users.thenStatements.get(0);
+        assertEquals(delay.min, 20);
+        assertEquals(delay.max, 40);
+        assertEquals(((StatusAction) users.thenStatements.get(1)).statusCode, 200);
+        final BodyAction body = (BodyAction) users.thenStatements.get(2);
+        assertEquals(body.template, "{\"users\":[]}");
+        assertEquals(body.contentType, "application/json");
+        assertEquals(body.charset, "UTF-8");
+
+        final Mapping logo = config.mappings.get(1);
+        assertEquals(((DelayAction) logo.thenStatements.get(0)).time, 12);
+        assertEquals(logo.thenStatements.size(), 2);
+    }
+
+    /**
+     * Assert identical bodies are shared, and bodies with placeholders ignored.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void bodiesShouldBeShared() throws Exception {
+        final TrafficImporter importer = new TrafficImporter();
+        importer.add(TrafficImporter.open(new File(TEST_CAPTURES_DIR, "sample.jsonl")));
+        final MockWebAppConfig config = importer.toConfig();
+        assertEquals(config.mappings.size(), 3);
+        assertEquals(importer.getBodyCount(), 1);
+        assertEquals(importer.getIgnoredBodyCount(), 1);
+        assertSame(config.mappings.get(0).thenStatements.get(2), config.mappings.get(1).thenStatements.get(1));
+        assertEquals(config.mappings.get(2).thenStatements.size(), 1);
+    }
+
+    /**
+     * Assert a body shared by several mappings is written once to a body file, and included back when parsed.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void sharedBodiesShouldBeWrittenOnce() throws Exception {
+        final TrafficImporter importer = new TrafficImporter();
+        final String shared = "{\"items\": [1, 2, 3]}\r\n<&>";
+        importer.add(entry("/a", 200, shared));
+        importer.add(entry("/b", 200, shared));
+        importer.add(entry("/c", 200, "unique"));
+        final File file = File.createTempFile("imported", ".xml");
+        file.deleteOnExit();
+        TrafficImporter.write(importer.toConfig(), file);
+        final File bodies = new File(file.getParentFile(), file.getName().replace(".xml", "-bodies"));
+        final File body = new File(bodies, "1.txt");
+        body.deleteOnExit();
+        bodies.deleteOnExit();
+        assertEquals(bodies.list().length, 1);
+
+        final byte[] bytes = new byte[(int) file.length()];
+        final DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        final String xml = new String(bytes, "UTF-8");
+        assertFalse(xml.contains("items"), xml);
+        assertTrue(xml.contains(">unique<"), xml);
+        assertEquals(xml.split("parse=\"text\"", -1).length, 3, xml);
+
+        final MockWebAppConfig config = MockWebAppConfig.Parser.parseConfig(file);
+        assertEquals(((BodyAction) config.mappings.get(0).thenStatements.get(1)).template, shared);
+        assertEquals(((BodyAction) config.mappings.get(1).thenStatements.get(1)).template, shared);
+        assertEquals(((BodyAction) config.mappings.get(1).thenStatements.get(1)).contentType, "text/plain");
+        assertEquals(((BodyAction) config.mappings.get(2).thenStatements.get(1)).template, "unique");
+    }
+
+    /**
+     * Build a capture entry.
+     *
+     * @param path   the request path.
+     * @param status the response status.
+     * @param body   the response body.
+     * @return the entry.
+     */
+    private static CaptureEntry entry(String path, int status, String body) {
+        final CaptureEntry entry = new CaptureEntry();
+        entry.method = "GET";
+        entry.url = "http://localhost" + path;
+        entry.status = status;
+        entry.contentType = "text/plain";
+        entry.body = body;
+        return entry;
+    }
+
+    /**
+     * Assert only the bodies of the leading responses are kept, whatever the number of distinct bodies.
+     */
+    @Test
+    public void onlyLeadingBodiesShouldBeKept() {
+        final TrafficImporter importer = new TrafficImporter();
+        for (int i = 0; i < 3; i++) importer.add(entry("/events", 200, "first"));
+        for (int i = 0; i < 10 * TrafficImporter.MAX_VARIANTS; i++) importer.add(entry("/events", 200, "event " + i));
+        assertEquals(importer.getBodyCount(), 1);
+        importer.add(entry("/events", 200, "event 0"));
+        importer.add(entry("/events", 200, "event 0"));
+        importer.add(entry("/events", 200, "event 0"));
+        assertEquals(importer.getBodyCount(), 1);
+        assertEquals(((BodyAction) importer.toConfig().mappings.get(0).thenStatements.get(1)).template, "event 0");
+    }
+
+    /**
+     * Assert bodies with CRLF line endings are kept, and written back as is.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void crlfBodiesShouldBeImported() throws Exception {
+        final TrafficImporter importer = new TrafficImporter();
+        importer.add(entry("/", 200, "line 1\r\nline 2\r\n"));
+        assertEquals(importer.getIgnoredBodyCount(), 0);
+        final File file = File.createTempFile("imported", ".xml");
+        file.deleteOnExit();
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            TrafficImporter.write(importer.toConfig(), out);
+        } finally {
+            out.close();
+        }
+        final MockWebAppConfig config = MockWebAppConfig.Parser.parseConfig(file);
+        assertEquals(((BodyAction) config.mappings.get(0).thenStatements.get(1)).template, "line 1\r\nline 2\r\n");
+    }
+
+    /**
+     * Assert the imported config can be written and parsed back.
+     *
+     * @throws Exception should never happen.
+     */
+    @Test
+    public void importedConfigShouldBeValid() throws Exception {
+        final TrafficImporter importer = new TrafficImporter();
+        importer.add(TrafficImporter.open(new File(TEST_CAPTURES_DIR, "sample.har")));
+        importer.add(TrafficImporter.open(new File(TEST_CAPTURES_DIR, "sample.jsonl")));
+        final File file = File.createTempFile("imported", ".xml");
+        file.deleteOnExit();
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            TrafficImporter.write(importer.toConfig(), out);
+        } finally {
+            out.close();
+        }
+        final MockWebAppConfig config = MockWebAppConfig.Parser.parseConfig(file);
+        assertEquals(config.mappings.size(), 5);
+        assertEquals(((BodyAction) config.mappings.get(2).thenStatements.get(2)).template, "{\"ok\":true}");
+    }
+}